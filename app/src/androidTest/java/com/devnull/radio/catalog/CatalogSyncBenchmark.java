@@ -0,0 +1,134 @@
+package com.devnull.radio.catalog;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.Room;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+
+import com.devnull.radio.station.StationJsonStreamDecoder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures how long filling the catalog from a full station list and answering
+ * typical queries takes on the device. Timings are logged with tag CatalogSyncBenchmark.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class CatalogSyncBenchmark {
+    private static final String TAG = "CatalogSyncBenchmark";
+    private static final int STATION_COUNT = 50000;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] TAGS = {"pop", "rock", "jazz", "news", "classical", "dance", "talk", "80s", "hits", "oldies"};
+    private static final String[] COUNTRY_CODES = {"US", "DE", "FR", "GB", "PL", "BR", "IT", "ES", "NL", "RU"};
+
+    private CatalogDatabase database;
+    private File dump;
+
+    @Before
+    public void init() throws IOException {
+        Context context = ApplicationProvider.getApplicationContext();
+        database = Room.inMemoryDatabaseBuilder(context, CatalogDatabase.class).build();
+
+        dump = new File(context.getCacheDir(), "catalog-benchmark.json");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(dump), UTF8)) {
+            writeStations(writer, STATION_COUNT);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        //noinspection ResultOfMethodCallIgnored
+        dump.delete();
+    }
+
+    private static void writeStations(Writer writer, int count) throws IOException {
+        writer.write('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write(String.format(Locale.US,
+                    "{\"changeuuid\":\"change-%1$d\",\"stationuuid\":\"station-%1$d\",\"name\":\"Radio %1$d %2$s\"," +
+                            "\"url\":\"http://stream%1$d.example.com/live\",\"homepage\":\"http://example.com/%1$d\"," +
+                            "\"favicon\":\"\",\"tags\":\"%2$s,%3$s\",\"country\":\"Country %4$s\",\"countrycode\":\"%4$s\"," +
+                            "\"state\":\"\",\"language\":\"english\",\"votes\":%5$d,\"lastchangetime\":\"2020-01-01 %6$02d:%7$02d:%8$02d\"," +
+                            "\"codec\":\"MP3\",\"bitrate\":128,\"hls\":0,\"lastcheckok\":%9$d,\"clickcount\":%10$d,\"clicktrend\":0}",
+                    i, TAGS[i % TAGS.length], TAGS[(i / TAGS.length) % TAGS.length], COUNTRY_CODES[i % COUNTRY_CODES.length],
+                    i % 1000, (i / 3600) % 24, (i / 60) % 60, i % 60, i % 7 == 0 ? 0 : 1, (i * 31) % 5000));
+        }
+        writer.write(']');
+    }
+
+    private long sync(long generation) throws IOException {
+        final long start = System.nanoTime();
+        StationCatalog.BatchWriter batchWriter = new StationCatalog.BatchWriter(database.catalogDao(), generation);
+        try (Reader reader = new InputStreamReader(new FileInputStream(dump), UTF8)) {
+            StationJsonStreamDecoder.decode(reader, StationCatalog.EXTRA_FIELDS, batchWriter);
+        }
+        batchWriter.flush();
+        database.catalogDao().deleteOlderGenerations(generation);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private long timeQuery(String relativeUrl, int expectedMinimum) {
+        CatalogQuery query = CatalogQuery.parse(relativeUrl, null);
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(args);
+
+        final long start = System.nanoTime();
+        List<CatalogStation> stations = database.catalogDao().query(new SimpleSQLiteQuery(sql, args.toArray()));
+        long took = (System.nanoTime() - start) / 1000000;
+
+        assertFalse(relativeUrl, stations.size() < expectedMinimum);
+        Log.i(TAG, relativeUrl + ": " + stations.size() + " stations in " + took + "ms");
+        return took;
+    }
+
+    @Test
+    public void fullSyncAndQueries() throws IOException {
+        long firstSync = sync(1);
+        assertEquals(STATION_COUNT, database.catalogDao().count());
+        Log.i(TAG, "Initial full sync of " + STATION_COUNT + " stations: " + firstSync + "ms");
+
+        // Every station exists already, all rows are updated
+        long secondSync = sync(2);
+        assertEquals(STATION_COUNT, database.catalogDao().count());
+        Log.i(TAG, "Repeated full sync of " + STATION_COUNT + " stations: " + secondSync + "ms");
+
+        timeQuery("json/stations/topclick/100", 100);
+        timeQuery("json/stations/byname/radio%20123", 1);
+        timeQuery("json/stations/bytagexact/jazz", STATION_COUNT / TAGS.length);
+        timeQuery("json/stations/bycountrycodeexact/DE?order=clickcount&reverse=true", STATION_COUNT / COUNTRY_CODES.length);
+
+        final long start = System.nanoTime();
+        List<CatalogCategory> tags = CatalogQuery.countListValues(database.catalogDao().getTags(true));
+        Log.i(TAG, "Tag categories: " + tags.size() + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+        assertEquals(TAGS.length, tags.size());
+    }
+}
@@ -0,0 +1,59 @@
+package com.devnull.radio.database;
+
+import android.database.Cursor;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Migrates databases created from the exported schemas in app/schemas.
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class RadioDroidDatabaseMigrationTest {
+    private static final String TEST_DB = "migration-test";
+
+    @Rule
+    public MigrationTestHelper helper = new MigrationTestHelper(InstrumentationRegistry.getInstrumentation(),
+            RadioDroidDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    @Test
+    public void migrate1To2_keepsHistoryAndAddsSavedStations() throws IOException {
+        try (SupportSQLiteDatabase db = helper.createDatabase(TEST_DB, 1)) {
+            db.execSQL("INSERT INTO track_history (station_uuid, station_icon_url, track, artist, title, start_time, end_time) "
+                    + "VALUES ('uuid', '', 'artist - title', 'artist', 'title', 1000, 2000)");
+        }
+
+        try (SupportSQLiteDatabase db = helper.runMigrationsAndValidate(TEST_DB, 2, true, RadioDroidDatabase.MIGRATION_1_2)) {
+            try (Cursor cursor = db.query("SELECT station_uuid, track FROM track_history")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("uuid", cursor.getString(0));
+                assertEquals("artist - title", cursor.getString(1));
+            }
+
+            try (Cursor cursor = db.query("SELECT COUNT(*) FROM saved_stations")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals(0, cursor.getInt(0));
+            }
+
+            db.execSQL("INSERT INTO saved_stations (list_id, station_key, position, station_json) VALUES ('favourites', 'uuid', 1, '{}')");
+            try (Cursor cursor = db.query("SELECT station_key FROM saved_stations WHERE list_id = 'favourites' ORDER BY position")) {
+                assertTrue(cursor.moveToFirst());
+                assertEquals("uuid", cursor.getString(0));
+            }
+        }
+    }
+}
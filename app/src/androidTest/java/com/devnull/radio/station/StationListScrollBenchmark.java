@@ -0,0 +1,139 @@
+package com.devnull.radio.station;
+
+import android.app.Instrumentation;
+import android.util.Log;
+import android.view.Choreographer;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.rule.ActivityTestRule;
+
+import com.devnull.radio.ActivityMain;
+import com.devnull.radio.R;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scrolls a long station list frame by frame and measures the time between frames, which
+ * includes binding the rows which scroll into view. Frame time percentiles and the count of
+ * frames which missed the display refresh are logged with tag StationListScrollBenchmark.
+ */
+@LargeTest
+@RunWith(AndroidJUnit4.class)
+public class StationListScrollBenchmark {
+    private static final String TAG = "StationListScrollBenchmark";
+    private static final int STATION_COUNT = 2000;
+    private static final int SCROLL_FRAMES = 600;
+    private static final int SCROLL_DP_PER_FRAME = 40;
+
+    private static final String[] TAGS = {"pop", "rock", "jazz", "news", "classical", "dance", "talk", "80s", "hits", "oldies"};
+
+    @Rule
+    public ActivityTestRule<ActivityMain> activityRule = new ActivityTestRule<>(ActivityMain.class);
+
+    private static List<DataRadioStation> generateStations(int count) {
+        List<DataRadioStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DataRadioStation station = new DataRadioStation();
+            station.StationUuid = "station-" + i;
+            station.ChangeUuid = "change-" + i;
+            station.Name = "Radio " + i + " " + TAGS[i % TAGS.length];
+            station.IconUrl = "";
+            station.TagsAll = TAGS[i % TAGS.length] + "," + TAGS[(i / TAGS.length) % TAGS.length];
+            station.Country = "Germany";
+            station.CountryCode = "DE";
+            station.Language = "german";
+            station.Codec = "MP3";
+            station.Bitrate = 128;
+            station.ClickTrend = i % 3 - 1;
+            stations.add(station);
+        }
+        return stations;
+    }
+
+    @Test
+    public void scrollLongList() throws InterruptedException {
+        final ActivityMain activity = activityRule.getActivity();
+        final Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        final RecyclerView[] recyclerView = new RecyclerView[1];
+
+        instrumentation.runOnMainSync(() -> {
+            recyclerView[0] = new RecyclerView(activity);
+            recyclerView[0].setLayoutManager(new LinearLayoutManager(activity));
+            ItemAdapterStation adapter = new ItemAdapterStation(activity, R.layout.list_item_station, StationsFilter.FilterType.LOCAL);
+            recyclerView[0].setAdapter(adapter);
+            activity.setContentView(recyclerView[0]);
+            adapter.updateList(null, generateStations(STATION_COUNT));
+        });
+        // The differ delivers the list after its background diff
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (recyclerView[0].getAdapter().getItemCount() < STATION_COUNT && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            instrumentation.waitForIdleSync();
+        }
+        assertEquals(STATION_COUNT, recyclerView[0].getAdapter().getItemCount());
+
+        final int scrollPx = (int) (SCROLL_DP_PER_FRAME * activity.getResources().getDisplayMetrics().density);
+        final List<Long> frameTimes = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch scrolled = new CountDownLatch(1);
+
+        instrumentation.runOnMainSync(() -> Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+            private long lastFrameTime = 0;
+            private int frames = 0;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (lastFrameTime != 0) {
+                    frameTimes.add(frameTimeNanos - lastFrameTime);
+                }
+                lastFrameTime = frameTimeNanos;
+
+                if (++frames > SCROLL_FRAMES) {
+                    scrolled.countDown();
+                    return;
+                }
+                recyclerView[0].scrollBy(0, scrollPx);
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        }));
+
+        assertTrue(scrolled.await(2, TimeUnit.MINUTES));
+        assertNotEquals(0, recyclerView[0].computeVerticalScrollOffset());
+
+        List<Long> sorted = new ArrayList<>(frameTimes);
+        Collections.sort(sorted);
+
+        final float refreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+        final long frameBudget = (long) (1000000000L / refreshRate);
+        int jankyFrames = 0;
+        for (long frameTime : sorted) {
+            if (frameTime > frameBudget * 3 / 2) {
+                jankyFrames++;
+            }
+        }
+
+        Log.i(TAG, String.format("%d frames, p50 %.1fms, p90 %.1fms, p99 %.1fms, %d frames over %.1fms budget",
+                sorted.size(), percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99),
+                jankyFrames, frameBudget / 1000000.0));
+    }
+
+    private static double percentile(List<Long> sorted, int percent) {
+        int index = Math.min(sorted.size() - 1, sorted.size() * percent / 100);
+        return sorted.get(index) / 1000000.0;
+    }
+}
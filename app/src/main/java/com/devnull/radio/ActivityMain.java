@@ -543,6 +543,9 @@ public class ActivityMain extends AppCompatActivity implements SearchView.OnQuer
         castHandler.onResume();
         castHandler.setActivity(this);
 
+        ((RadioDroidApp) getApplication()).getConnectionWarmer().warmUp();
+        ((RadioDroidApp) getApplication()).getStationCatalog().syncIfNeeded();
+
         if (playerBottomSheet.getState() == BottomSheetBehavior.STATE_EXPANDED) {
             appBarLayout.setExpanded(false);
         }
@@ -0,0 +1,135 @@
+package com.devnull.radio;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Opens connections to the hosts the user is most likely to need next, so the first
+ * tap does not pay for dns, tcp and tls handshakes: the preferred radio browser servers
+ * and the stream hosts of the first favourites.
+ * <p>
+ * Connections are opened with HEAD requests through a client which shares the connection pool
+ * and tls setup of all other clients, see {@link RadioDroidApp#newHttpClient()}, and stay in
+ * the pool until it evicts them as idle.
+ */
+public class ConnectionWarmer {
+    private static final String TAG = "ConnectionWarmer";
+
+    static final int API_SERVERS = 2;
+    static final int FAVOURITE_HOSTS = 3;
+
+    // Idle connections are evicted after 5 minutes, refresh them a bit before
+    static final long MIN_WARM_UP_INTERVAL = 4 * 60 * 1000;
+    static final int WARM_UP_TIMEOUT = 5;
+
+    private final RadioDroidApp radioDroidApp;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ConnectionWarmer");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private long lastWarmUp = 0;
+
+    public ConnectionWarmer(@NonNull RadioDroidApp radioDroidApp) {
+        this.radioDroidApp = radioDroidApp;
+    }
+
+    /**
+     * Warm up connections in background unless that was done recently.
+     */
+    public synchronized void warmUp() {
+        final long now = System.currentTimeMillis();
+        if (now - lastWarmUp < MIN_WARM_UP_INTERVAL) {
+            return;
+        }
+        if (!Utils.hasAnyConnection(radioDroidApp)) {
+            return;
+        }
+        lastWarmUp = now;
+
+        // Stream hosts are taken from the favourites, which load in background after start
+        radioDroidApp.getFavouriteManager().whenLoaded(() -> {
+            final List<HttpUrl> apiTargets = getApiTargets();
+            final List<HttpUrl> streamTargets = getStreamTargets();
+
+            // Connections are only reused by clients with the same dns, so stream hosts are
+            // warmed with the stream client
+            final OkHttpClient apiClient = newWarmUpClient(radioDroidApp.newHttpClient());
+            final OkHttpClient streamClient = newWarmUpClient(radioDroidApp.newStreamHttpClient());
+
+            executor.execute(() -> {
+                warmUp(apiClient, apiTargets);
+                warmUp(streamClient, streamTargets);
+
+                Log.d(TAG, radioDroidApp.getConnectionPoolStats().toString());
+            });
+        });
+    }
+
+    private List<HttpUrl> getApiTargets() {
+        Set<HttpUrl> targets = new LinkedHashSet<>();
+        String[] servers = RadioBrowserServerManager.getServersByPreference();
+        for (int i = 0; i < Math.min(API_SERVERS, servers.length); i++) {
+            addTarget(targets, RadioBrowserServerManager.constructEndpoint(servers[i], ""));
+        }
+        return new ArrayList<>(targets);
+    }
+
+    private List<HttpUrl> getStreamTargets() {
+        Set<HttpUrl> targets = new LinkedHashSet<>();
+        List<DataRadioStation> favourites = radioDroidApp.getFavouriteManager().getList();
+        for (int i = 0; i < favourites.size() && targets.size() < FAVOURITE_HOSTS; i++) {
+            addTarget(targets, favourites.get(i).StreamUrl);
+        }
+        return new ArrayList<>(targets);
+    }
+
+    private static void addTarget(Set<HttpUrl> targets, @Nullable String url) {
+        HttpUrl httpUrl = url != null ? HttpUrl.parse(url) : null;
+        if (httpUrl == null) {
+            return;
+        }
+
+        // Connections are per scheme, host and port, the path does not matter
+        targets.add(new HttpUrl.Builder().scheme(httpUrl.scheme()).host(httpUrl.host()).port(httpUrl.port()).build());
+    }
+
+    private static OkHttpClient newWarmUpClient(OkHttpClient.Builder builder) {
+        return builder
+                .connectTimeout(WARM_UP_TIMEOUT, TimeUnit.SECONDS)
+                .readTimeout(WARM_UP_TIMEOUT, TimeUnit.SECONDS)
+                .followRedirects(false)
+                .build();
+    }
+
+    private static void warmUp(OkHttpClient httpClient, List<HttpUrl> targets) {
+        for (HttpUrl target : targets) {
+            Request request = new Request.Builder().url(target).head().build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "Warmed " + target + ": " + response.code());
+                }
+            } catch (Exception e) {
+                Log.d(TAG, "Could not warm " + target + ": " + e);
+            }
+        }
+    }
+}
@@ -6,6 +6,8 @@ import android.content.Intent;
 import android.content.pm.ShortcutInfo;
 import android.content.pm.ShortcutManager;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
@@ -16,6 +18,16 @@ import java.util.ArrayList;
 import static java.lang.Math.min;
 
 public class FavouriteManager extends StationSaveManager {
+    // Shortcuts are published at most once per delay, e.g. not for every station of an import
+    private static final long SHORTCUTS_UPDATE_DELAY_MS = 2000;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private boolean shortcutsUpdateScheduled = false;
+    private final Runnable shortcutsUpdateRunnable = () -> {
+        shortcutsUpdateScheduled = false;
+        updateShortcuts();
+    };
+
     @Override
     protected String getSaveId() {
         return "favourites";
@@ -47,15 +59,25 @@ public class FavouriteManager extends StationSaveManager {
     }
 
     @Override
-    void Load() {
-        super.Load();
-        updateShortcuts();
+    protected void onStationsSaved() {
+        scheduleShortcutsUpdate();
     }
 
     @Override
-    void Save() {
-        super.Save();
-        updateShortcuts();
+    public void flush() {
+        super.flush();
+
+        if (shortcutsUpdateScheduled) {
+            handler.removeCallbacks(shortcutsUpdateRunnable);
+            shortcutsUpdateRunnable.run();
+        }
+    }
+
+    public void scheduleShortcutsUpdate() {
+        if (!shortcutsUpdateScheduled) {
+            shortcutsUpdateScheduled = true;
+            handler.postDelayed(shortcutsUpdateRunnable, SHORTCUTS_UPDATE_DELAY_MS);
+        }
     }
 
     public void updateShortcuts() {
@@ -0,0 +1,274 @@
+package com.devnull.radio;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.preference.PreferenceManager;
+
+import com.devnull.radio.service.ConnectivityChecker;
+import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.StationPagedDataSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warms the feeds of the browse tabs in background so a tab which is opened for the first
+ * time finds its list in the api response cache and already decoded.
+ * <p>
+ * Prefetching happens shortly after start and whenever an unmetered connection
+ * becomes available, never on metered connections. Endpoints are fetched in parallel,
+ * lower priority values first.
+ */
+public class FeedPrefetcher {
+    private static final String TAG = "FeedPrefetcher";
+
+    static final long STARTUP_DELAY = 3000;
+    static final long RECONNECT_DELAY = 1000;
+    static final int PARALLELISM = 3;
+    static final int MAX_DECODED_FEEDS = 8;
+
+    public enum CancellationPolicy {
+        /**
+         * Cancel if the connection becomes metered or goes away, the tab loads on demand then
+         */
+        CANCEL_ON_METERED,
+        /**
+         * Always let it finish once started
+         */
+        RUN_TO_COMPLETION
+    }
+
+    public static class Endpoint {
+        final String relativeUrl;
+        final int priority;
+        final CancellationPolicy cancellationPolicy;
+
+        public Endpoint(@NonNull String relativeUrl, int priority, @NonNull CancellationPolicy cancellationPolicy) {
+            this.relativeUrl = relativeUrl;
+            this.priority = priority;
+            this.cancellationPolicy = cancellationPolicy;
+        }
+    }
+
+    /**
+     * Stations decoded from a response body. Only a fingerprint of the body is kept,
+     * holding on to whole bodies would double the memory of every decoded feed.
+     */
+    private static class DecodedFeed {
+        final int bodyLength;
+        final int bodyHash;
+        final List<DataRadioStation> stations;
+
+        DecodedFeed(String body, List<DataRadioStation> stations) {
+            this.bodyLength = body.length();
+            this.bodyHash = body.hashCode();
+            this.stations = stations;
+        }
+
+        boolean isDecodedFrom(String body) {
+            return body.length() == bodyLength && body.hashCode() == bodyHash;
+        }
+    }
+
+    private class PrefetchTask extends FutureTask<Void> implements Comparable<PrefetchTask> {
+        final Endpoint endpoint;
+
+        PrefetchTask(final Endpoint endpoint) {
+            super(() -> {
+                prefetch(endpoint);
+                return null;
+            });
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public int compareTo(PrefetchTask other) {
+            return Integer.compare(endpoint.priority, other.endpoint.priority);
+        }
+
+        @Override
+        protected void done() {
+            synchronized (tasks) {
+                if (tasks.get(endpoint.relativeUrl) == this) {
+                    tasks.remove(endpoint.relativeUrl);
+                }
+            }
+        }
+    }
+
+    private final RadioDroidApp radioDroidApp;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final ConnectivityChecker connectivityChecker = new ConnectivityChecker();
+    private final ThreadPoolExecutor executor;
+
+    private final List<Endpoint> endpoints = new ArrayList<>();
+    private final Map<String, PrefetchTask> tasks = new HashMap<>();
+    private final LinkedHashMap<String, DecodedFeed> decodedFeeds = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Runnable prefetchRunnable = this::prefetchAll;
+
+    public FeedPrefetcher(@NonNull RadioDroidApp radioDroidApp) {
+        this.radioDroidApp = radioDroidApp;
+
+        executor = new ThreadPoolExecutor(PARALLELISM, PARALLELISM, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "FeedPrefetcher");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void addEndpoint(@NonNull Endpoint endpoint) {
+        endpoints.add(endpoint);
+    }
+
+    /**
+     * Schedule the first prefetch and listen for connectivity changes.
+     */
+    public void start() {
+        connectivityChecker.setNotifyReconnects(true);
+        connectivityChecker.startListening(radioDroidApp, (connected, connectionType) -> {
+            if (connected && connectionType == ConnectivityChecker.ConnectionType.NOT_METERED) {
+                Log.d(TAG, "Unmetered connection available");
+                schedule(RECONNECT_DELAY);
+            } else {
+                handler.removeCallbacks(prefetchRunnable);
+                cancel(true);
+            }
+        });
+
+        schedule(STARTUP_DELAY);
+    }
+
+    public void stop() {
+        connectivityChecker.stopListening(radioDroidApp);
+        handler.removeCallbacks(prefetchRunnable);
+        cancel(false);
+    }
+
+    private void schedule(long delay) {
+        handler.removeCallbacks(prefetchRunnable);
+        handler.postDelayed(prefetchRunnable, delay);
+    }
+
+    private boolean mayPrefetch() {
+        return Utils.hasAnyConnection(radioDroidApp)
+                && ConnectivityChecker.getCurrentConnectionType(radioDroidApp) == ConnectivityChecker.ConnectionType.NOT_METERED;
+    }
+
+    private void prefetchAll() {
+        if (!mayPrefetch()) {
+            Log.d(TAG, "Skipping prefetch, no unmetered connection");
+            return;
+        }
+
+        List<Endpoint> toPrefetch;
+        synchronized (this) {
+            toPrefetch = new ArrayList<>(endpoints);
+        }
+
+        synchronized (tasks) {
+            for (Endpoint endpoint : toPrefetch) {
+                if (tasks.containsKey(endpoint.relativeUrl)) {
+                    continue;
+                }
+
+                PrefetchTask task = new PrefetchTask(endpoint);
+                tasks.put(endpoint.relativeUrl, task);
+                executor.execute(task);
+            }
+        }
+    }
+
+    /**
+     * @param onlyCancellable only cancel tasks with {@link CancellationPolicy#CANCEL_ON_METERED}
+     */
+    private void cancel(boolean onlyCancellable) {
+        synchronized (tasks) {
+            Iterator<PrefetchTask> iterator = tasks.values().iterator();
+            while (iterator.hasNext()) {
+                PrefetchTask task = iterator.next();
+                if (!onlyCancellable || task.endpoint.cancellationPolicy == CancellationPolicy.CANCEL_ON_METERED) {
+                    Log.d(TAG, "Cancel prefetch of " + task.endpoint.relativeUrl);
+                    iterator.remove();
+                    task.cancel(true);
+                    executor.remove(task);
+                }
+            }
+        }
+    }
+
+    private void prefetch(Endpoint endpoint) {
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(radioDroidApp);
+        final boolean show_broken = sharedPref.getBoolean("show_broken", false);
+
+        // Same parameters as FragmentBase and FragmentStations so they share the cache entry
+        HashMap<String, String> p = new HashMap<String, String>();
+        p.put("hidebroken", "" + (!show_broken));
+
+        // FragmentStations loads search endpoints page by page, warming the first page is enough
+        final boolean pageable = StationPagedDataSource.isPageable(endpoint.relativeUrl);
+        if (pageable) {
+            StationPagedDataSource.addPageParams(p, 0, StationPagedDataSource.PAGE_SIZE);
+        }
+
+        String result = Utils.downloadFeedRelative(radioDroidApp.getHttpClient(), radioDroidApp, endpoint.relativeUrl, false, p);
+        if (result == null || pageable || Thread.currentThread().isInterrupted()) {
+            return;
+        }
+
+        synchronized (decodedFeeds) {
+            DecodedFeed decodedFeed = decodedFeeds.get(endpoint.relativeUrl);
+            if (decodedFeed != null && decodedFeed.isDecodedFrom(result)) {
+                return;
+            }
+        }
+
+        List<DataRadioStation> stations = DataRadioStation.DecodeJson(result);
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Prefetched " + endpoint.relativeUrl + ": " + stations.size() + " stations");
+        }
+
+        synchronized (decodedFeeds) {
+            decodedFeeds.put(endpoint.relativeUrl, new DecodedFeed(result, stations));
+            Iterator<DecodedFeed> iterator = decodedFeeds.values().iterator();
+            while (decodedFeeds.size() > MAX_DECODED_FEEDS && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @return copy of the stations which were decoded from exactly this response body
+     * of the relative url, null if it has not been prefetched.
+     */
+    public @Nullable
+    List<DataRadioStation> getDecodedStations(@Nullable String relativeUrl, @Nullable String body) {
+        if (relativeUrl == null || body == null) {
+            return null;
+        }
+
+        synchronized (decodedFeeds) {
+            DecodedFeed decodedFeed = decodedFeeds.get(relativeUrl);
+            if (decodedFeed == null || !decodedFeed.isDecodedFrom(body)) {
+                return null;
+            }
+            return new ArrayList<>(decodedFeed.stations);
+        }
+    }
+}
@@ -5,6 +5,8 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 import android.widget.Toast;
@@ -14,6 +16,7 @@ import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.preference.PreferenceManager;
 
 import com.devnull.radio.R;
+import com.devnull.radio.cache.ApiResponseCache;
 
 import java.util.HashMap;
 
@@ -28,6 +31,10 @@ public class FragmentBase extends Fragment {
     private boolean isCreated = false;
 
     private AsyncTask task = null;
+    // Tells revalidations of earlier downloads apart from the current one
+    private int downloadGeneration = 0;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     public FragmentBase() {
     }
@@ -64,6 +71,10 @@ public class FragmentBase extends Fragment {
         return urlResult;
     }
 
+    protected String getRelativeUrl() {
+        return relativeUrl;
+    }
+
     protected boolean hasUrl() {
         return !TextUtils.isEmpty(relativeUrl);
     }
@@ -90,6 +101,7 @@ public class FragmentBase extends Fragment {
             task.cancel(true);
             task = null;
         }
+        final int generation = ++downloadGeneration;
 
         SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(getContext());
         final boolean show_broken = sharedPref.getBoolean("show_broken", false);
@@ -99,55 +111,70 @@ public class FragmentBase extends Fragment {
         }
 
         if (TextUtils.isGraphic(relativeUrl)) {
-            String cache = Utils.getCacheFile(getActivity(), relativeUrl);
-            if (cache == null || forceUpdate) {
-                if (getContext() != null && displayProgress) {
-                    LocalBroadcastManager.getInstance(getContext()).sendBroadcast(new Intent(ActivityMain.ACTION_SHOW_LOADING));
+            RadioDroidApp radioDroidApp = (RadioDroidApp) getActivity().getApplication();
+            final OkHttpClient httpClient = radioDroidApp.getHttpClient();
+
+            final HashMap<String, String> p = new HashMap<String, String>();
+            p.put("hidebroken", ""+(!show_broken));
+
+            // Stale cached responses are shown at once and replaced once they are revalidated
+            final ApiResponseCache.RevalidationListener revalidationListener = body -> mainHandler.post(() -> {
+                if (generation == downloadGeneration && isAdded()) {
+                    urlResult = body;
+                    RefreshListGui();
                 }
+            });
 
-                RadioDroidApp radioDroidApp = (RadioDroidApp) getActivity().getApplication();
-                final OkHttpClient httpClient = radioDroidApp.getHttpClient();
+            task = new AsyncTask<Void, Void, String>() {
+                private boolean showsLoading = false;
 
-                task = new AsyncTask<Void, Void, String>() {
-                    @Override
-                    protected String doInBackground(Void... params) {
-                        HashMap<String, String> p = new HashMap<String, String>();
-                        p.put("hidebroken", ""+(!show_broken));
-                        return Utils.downloadFeedRelative(httpClient, getActivity(), relativeUrl, forceUpdate, p);
+                @Override
+                protected String doInBackground(Void... params) {
+                    if (!forceUpdate) {
+                        String cache = Utils.getCachedFeedRelative(httpClient, getActivity(), relativeUrl, p, revalidationListener);
+                        if (cache != null) {
+                            return cache;
+                        }
                     }
 
-                    @Override
-                    protected void onPostExecute(String result) {
-                        DownloadFinished();
-                        if(getContext() != null)
-                            LocalBroadcastManager.getInstance(getContext()).sendBroadcast(new Intent(ActivityMain.ACTION_HIDE_LOADING));
+                    publishProgress();
+                    return Utils.downloadFeedRelative(httpClient, getActivity(), relativeUrl, forceUpdate, p);
+                }
+
+                @Override
+                protected void onProgressUpdate(Void... values) {
+                    if (getContext() != null && displayProgress) {
+                        showsLoading = true;
+                        LocalBroadcastManager.getInstance(getContext()).sendBroadcast(new Intent(ActivityMain.ACTION_SHOW_LOADING));
+                    }
+                }
+
+                @Override
+                protected void onPostExecute(String result) {
+                    DownloadFinished();
+                    if (showsLoading && getContext() != null)
+                        LocalBroadcastManager.getInstance(getContext()).sendBroadcast(new Intent(ActivityMain.ACTION_HIDE_LOADING));
+                    if (BuildConfig.DEBUG) {
+                        Log.d(TAG, "Download relativeUrl finished:" + relativeUrl);
+                    }
+                    if (result != null) {
                         if (BuildConfig.DEBUG) {
-                            Log.d(TAG, "Download relativeUrl finished:" + relativeUrl);
+                            Log.d(TAG, "Download relativeUrl OK:" + relativeUrl);
                         }
-                        if (result != null) {
-                            if (BuildConfig.DEBUG) {
-                                Log.d(TAG, "Download relativeUrl OK:" + relativeUrl);
-                            }
-                            urlResult = result;
-                            RefreshListGui();
-                        } else {
-                            try {
-                                Toast toast = Toast.makeText(getContext(), getResources().getText(R.string.error_list_update), Toast.LENGTH_SHORT);
-                                toast.show();
-                            }
-                            catch(Exception e){
-                                Log.e("ERR",e.toString());
-                            }
+                        urlResult = result;
+                        RefreshListGui();
+                    } else {
+                        try {
+                            Toast toast = Toast.makeText(getContext(), getResources().getText(R.string.error_list_update), Toast.LENGTH_SHORT);
+                            toast.show();
+                        }
+                        catch(Exception e){
+                            Log.e("ERR",e.toString());
                         }
-                        super.onPostExecute(result);
                     }
-                }.execute();
-            } else {
-                urlResult = cache;
-                DownloadFinished();
-                RefreshListGui();
-
-            }
+                    super.onPostExecute(result);
+                }
+            }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
         } else {
             RefreshListGui();
         }
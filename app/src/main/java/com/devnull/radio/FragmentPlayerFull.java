@@ -394,6 +394,12 @@ public class FragmentPlayerFull extends Fragment {
         }
 
         fullUpdate();
+        // The last station is known once the history is loaded
+        ((RadioDroidApp) requireActivity().getApplication()).getHistoryManager().whenLoaded(() -> {
+            if (isVisible()) {
+                fullUpdate();
+            }
+        });
 
         refreshHandler.executePeriodically(timedUpdateTask, TIMED_UPDATE_INTERVAL);
 
@@ -440,16 +446,22 @@ public class FragmentPlayerFull extends Fragment {
 
     private void playLastFromHistory() {
         RadioDroidApp radioDroidApp = (RadioDroidApp) requireActivity().getApplication();
-        DataRadioStation station = PlayerServiceUtil.getCurrentStation();
+        HistoryManager historyManager = radioDroidApp.getHistoryManager();
+        historyManager.whenLoaded(() -> {
+            if (!isAdded()) {
+                return;
+            }
 
-        if (station == null) {
-            HistoryManager historyManager = radioDroidApp.getHistoryManager();
-            station = historyManager.getFirst();
-        }
+            DataRadioStation station = PlayerServiceUtil.getCurrentStation();
 
-        if (station != null) {
-            Utils.showPlaySelection(radioDroidApp, station, getActivity().getSupportFragmentManager());
-        }
+            if (station == null) {
+                station = historyManager.getFirst();
+            }
+
+            if (station != null) {
+                Utils.showPlaySelection(radioDroidApp, station, getActivity().getSupportFragmentManager());
+            }
+        });
     }
 
     private void fullUpdate() {
@@ -485,8 +497,7 @@ public class FragmentPlayerFull extends Fragment {
 
             artAndInfoPagerAdapter.textViewStationDescription.setText(station.getLongDetails(requireContext()));
 
-            String[] tags = station.TagsAll.split(",");
-            artAndInfoPagerAdapter.viewTags.setTags(Arrays.asList(tags));
+            artAndInfoPagerAdapter.viewTags.setTags(Arrays.asList(station.getTags()));
             //artAndInfoPagerAdapter.viewTags.setTagSelectionCallback(tagSelectionCallback);
         }
 
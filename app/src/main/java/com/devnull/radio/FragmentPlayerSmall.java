@@ -139,6 +139,13 @@ public class FragmentPlayerSmall extends Fragment {
         tryPlayAtStart();
         fullUpdate();
         setupStationIcon();
+
+        // The last station is known once the history is loaded
+        ((RadioDroidApp) requireActivity().getApplication()).getHistoryManager().whenLoaded(() -> {
+            if (isAdded()) {
+                fullUpdate();
+            }
+        });
     }
 
     @Override
@@ -179,16 +186,22 @@ public class FragmentPlayerSmall extends Fragment {
 
     private void playLastFromHistory() {
         RadioDroidApp radioDroidApp = (RadioDroidApp) requireActivity().getApplication();
-        DataRadioStation station = PlayerServiceUtil.getCurrentStation();
+        HistoryManager historyManager = radioDroidApp.getHistoryManager();
+        historyManager.whenLoaded(() -> {
+            if (!isAdded()) {
+                return;
+            }
 
-        if (station == null) {
-            HistoryManager historyManager = radioDroidApp.getHistoryManager();
-            station = historyManager.getFirst();
-        }
+            DataRadioStation station = PlayerServiceUtil.getCurrentStation();
 
-        if (station != null && !PlayerServiceUtil.isPlaying()) {
-            Utils.showPlaySelection(radioDroidApp, station, getActivity().getSupportFragmentManager());
-        }
+            if (station == null) {
+                station = historyManager.getFirst();
+            }
+
+            if (station != null && !PlayerServiceUtil.isPlaying()) {
+                Utils.showPlaySelection(radioDroidApp, station, getActivity().getSupportFragmentManager());
+            }
+        });
     }
 
     private void tryPlayAtStart() {
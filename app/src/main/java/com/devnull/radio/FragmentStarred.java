@@ -3,7 +3,6 @@ package com.devnull.radio;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.os.AsyncTask;
 import android.os.Bundle;
 
 import com.devnull.radio.interfaces.IAdapterRefreshable;
@@ -11,6 +10,7 @@ import com.devnull.radio.station.DataRadioStation;
 import com.devnull.radio.station.ItemAdapterIconOnlyStation;
 import com.devnull.radio.station.ItemAdapterStation;
 import com.devnull.radio.station.StationActions;
+import com.devnull.radio.station.StationBatchRefresher;
 import com.devnull.radio.station.StationsFilter;
 
 import androidx.fragment.app.Fragment;
@@ -31,22 +31,19 @@ import android.widget.Toast;
 
 import com.devnull.radio.R;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Objects;
 import java.util.Observable;
 import java.util.Observer;
 
-import okhttp3.OkHttpClient;
-
 public class FragmentStarred extends Fragment implements IAdapterRefreshable, Observer {
     private static final String TAG = "FragmentStarred";
 
     private RecyclerView rvStations;
     private SwipeRefreshLayout swipeRefreshLayout;
-    private AsyncTask task = null;
 
     private FavouriteManager favouriteManager;
+    // Cancelled with the view, the list is not changed for a view which is gone
+    private StationBatchRefresher refresher;
 
     void onStationClick(DataRadioStation theStation) {
         RadioDroidApp radioDroidApp = (RadioDroidApp) getActivity().getApplication();
@@ -120,7 +117,8 @@ public class FragmentStarred extends Fragment implements IAdapterRefreshable, Ob
             public void onStationMoveFinished() {
                 // We don't want to update RecyclerView during its layout process
                 Objects.requireNonNull(getView()).post(() -> {
-                    favouriteManager.Save();
+                    // Every move was already written, only the shortcuts follow the new order
+                    favouriteManager.scheduleShortcutsUpdate();
                     favouriteManager.notifyObservers();
                 });
             }
@@ -147,72 +145,39 @@ public class FragmentStarred extends Fragment implements IAdapterRefreshable, Ob
     }
 
     void RefreshDownloadList(){
-        RadioDroidApp radioDroidApp = (RadioDroidApp) getActivity().getApplication();
-        final OkHttpClient httpClient = radioDroidApp.getHttpClient();
-        ArrayList<String> listUUids = new ArrayList<String>();
-        for (DataRadioStation station : favouriteManager.listStations){
-            listUUids.add(station.StationUuid);
-        }
-        Log.d(TAG, "Search for items: "+listUUids.size());
-
-        task = new AsyncTask<Void, Void, List<DataRadioStation>>() {
-            @Override
-            protected List<DataRadioStation> doInBackground(Void... params) {
-                return Utils.getStationsByUuid(httpClient, getActivity(), listUUids);
-            }
+        Log.d(TAG, "Search for items: " + favouriteManager.size());
 
+        refresher = favouriteManager.refreshFromServer(new StationSaveManager.RefreshListener() {
             @Override
-            protected void onPostExecute(List<DataRadioStation> result) {
-                DownloadFinished();
-                if(getContext() != null)
-                    LocalBroadcastManager.getInstance(getContext()).sendBroadcast(new Intent(ActivityMain.ACTION_HIDE_LOADING));
+            public void onRefreshProgress(int finishedChunks, int totalChunks) {
                 if (BuildConfig.DEBUG) {
-                    Log.d(TAG, "Download relativeUrl finished");
+                    Log.d(TAG, "Refreshed chunk " + finishedChunks + "/" + totalChunks);
                 }
-                if (result != null) {
-                    if (BuildConfig.DEBUG) {
-                        Log.d(TAG, "Download relativeUrl OK");
-                    }
-                    Log.d(TAG, "Found items: "+result.size());
-                    SyncList(result);
+                if (isAdded()) {
                     RefreshListGui();
-                } else {
-                    try {
-                        Toast toast = Toast.makeText(getContext(), getResources().getText(R.string.error_list_update), Toast.LENGTH_SHORT);
-                        toast.show();
-                    }
-                    catch(Exception e){
-                        Log.e("ERR",e.toString());
-                    }
                 }
-                super.onPostExecute(result);
             }
-        }.execute();
-    }
 
-    private void SyncList(List<DataRadioStation> list_new) {
-        ArrayList<String> to_remove = new ArrayList<String>();
-        for (DataRadioStation station_current: favouriteManager.listStations){
-            boolean found = false;
-            for (DataRadioStation station_new: list_new){
-                if (station_new.StationUuid.equals(station_current.StationUuid)){
-                    found = true;
+            @Override
+            public void onRefreshFinished(boolean success, int deletedOnServer) {
+                refresher = null;
+                if (!isAdded()) {
+                    return;
                 }
-            }
-            if (!found){
-                Log.d(TAG,"Remove station: " + station_current.StationUuid + " - " + station_current.Name);
-                to_remove.add(station_current.StationUuid);
-                station_current.DeletedOnServer = true;
-            }
-        }
-        Log.d(TAG,"replace items");
-        favouriteManager.replaceList(list_new);
-        Log.d(TAG,"fin save");
 
-        if (to_remove.size() > 0) {
-            Toast toast = Toast.makeText(getContext(), getResources().getString(R.string.notify_sync_list_deleted_entries, to_remove.size(), favouriteManager.size()), Toast.LENGTH_LONG);
-            toast.show();
-        }
+                DownloadFinished();
+                LocalBroadcastManager.getInstance(requireContext()).sendBroadcast(new Intent(ActivityMain.ACTION_HIDE_LOADING));
+                RefreshListGui();
+
+                if (!success) {
+                    Toast toast = Toast.makeText(getContext(), getResources().getText(R.string.error_list_update), Toast.LENGTH_SHORT);
+                    toast.show();
+                } else if (deletedOnServer > 0) {
+                    Toast toast = Toast.makeText(getContext(), getResources().getString(R.string.notify_sync_list_deleted_entries, deletedOnServer, favouriteManager.size()), Toast.LENGTH_LONG);
+                    toast.show();
+                }
+            }
+        });
     }
 
     protected void DownloadFinished() {
@@ -225,6 +190,11 @@ public class FragmentStarred extends Fragment implements IAdapterRefreshable, Ob
     public void onDestroyView() {
         super.onDestroyView();
 
+        if (refresher != null) {
+            refresher.cancel();
+            refresher = null;
+        }
+
         rvStations.setAdapter(null);
 
         RadioDroidApp radioDroidApp = (RadioDroidApp) requireActivity().getApplication();
@@ -26,11 +26,13 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class FragmentTabs extends Fragment implements IFragmentRefreshable, IFragmentSearchable {
+    private static final String DEFAULT_COUNTRY_CODE = "pl";
+
     private String itsAdressWWWLocal = "json/stations/bycountryexact/internet?order=clickcount&reverse=true";
-    private String itsAdressWWWTopClick = "json/stations/topclick/100";
-    private String itsAdressWWWTopVote = "json/stations/topvote/100";
-    private String itsAdressWWWChangedLately = "json/stations/lastchange/100";
-    private String itsAdressWWWCurrentlyHeard = "json/stations/lastclick/100";
+    private static final String itsAdressWWWTopClick = "json/stations/topclick/100";
+    private static final String itsAdressWWWTopVote = "json/stations/topvote/100";
+    private static final String itsAdressWWWChangedLately = "json/stations/lastchange/100";
+    private static final String itsAdressWWWCurrentlyHeard = "json/stations/lastclick/100";
     private String itsAdressWWWTags = "json/tags";
     private String itsAdressWWWCountries = "json/countrycodes";
     private String itsAdressWWWLanguages = "json/languages";
@@ -65,6 +67,22 @@ public class FragmentTabs extends Fragment implements IFragmentRefreshable, IFra
             ""
     };
 
+    private static String getLocalAddress(String countryCode) {
+        return "json/stations/bycountrycodeexact/" + countryCode + "?order=clickcount&reverse=true";
+    }
+
+    /**
+     * Register the feeds of the browse tabs, in the order in which they are shown.
+     * Quickly changing feeds are only worth fetching while the connection is unmetered.
+     */
+    public static void addPrefetchEndpoints(FeedPrefetcher prefetcher) {
+        prefetcher.addEndpoint(new FeedPrefetcher.Endpoint(getLocalAddress(DEFAULT_COUNTRY_CODE), 0, FeedPrefetcher.CancellationPolicy.RUN_TO_COMPLETION));
+        prefetcher.addEndpoint(new FeedPrefetcher.Endpoint(itsAdressWWWTopClick, 1, FeedPrefetcher.CancellationPolicy.RUN_TO_COMPLETION));
+        prefetcher.addEndpoint(new FeedPrefetcher.Endpoint(itsAdressWWWTopVote, 2, FeedPrefetcher.CancellationPolicy.RUN_TO_COMPLETION));
+        prefetcher.addEndpoint(new FeedPrefetcher.Endpoint(itsAdressWWWChangedLately, 3, FeedPrefetcher.CancellationPolicy.CANCEL_ON_METERED));
+        prefetcher.addEndpoint(new FeedPrefetcher.Endpoint(itsAdressWWWCurrentlyHeard, 4, FeedPrefetcher.CancellationPolicy.CANCEL_ON_METERED));
+    }
+
     @Nullable
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -116,13 +134,13 @@ public class FragmentTabs extends Fragment implements IFragmentRefreshable, IFra
 
     private void setupViewPager(ViewPager viewPager) {
         Context ctx = getContext();
-        String countryCode = "pl";
+        String countryCode = DEFAULT_COUNTRY_CODE;
         if (ctx != null) {
 
             if (countryCode != null) {
                 if (countryCode.length() == 2) {
                     Log.d("MAIN", "Found countrycode " + countryCode);
-                    addresses[IDX_LOCAL] = "json/stations/bycountrycodeexact/" + countryCode + "?order=clickcount&reverse=true";
+                    addresses[IDX_LOCAL] = getLocalAddress(countryCode);
                 }else{
                     Log.e("MAIN", "countrycode length != 2");
                 }
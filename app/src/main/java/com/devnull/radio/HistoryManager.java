@@ -18,21 +18,13 @@ public class HistoryManager extends StationSaveManager{
 
     @Override
     public void add(DataRadioStation station){
-        DataRadioStation stationFromHistory = getById(station.StationUuid);
-        if (stationFromHistory != null) {
-            listStations.remove(stationFromHistory);
-            listStations.add(0, stationFromHistory);
-            Save();
+        int position = listStations.positionOf(station.StationUuid);
+        if (position >= 0) {
+            moveWithoutNotify(position, 0);
             return;
         }
 
-        cutList(MAXSIZE - 1);
+        cutListWithoutNotify(MAXSIZE - 1);
         super.addFront(station);
     }
-
-    private void cutList(int count){
-        if (listStations.size() > count){
-            listStations = listStations.subList(0,count);
-        }
-    }
 }
@@ -0,0 +1,238 @@
+package com.devnull.radio;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovers radio browser servers behind a round robin dns name without blocking callers.
+ * <p>
+ * {@link #getServerList()} always answers immediately: with the persisted list of a previous
+ * discovery, or with the round robin name itself if nothing has been discovered yet.
+ * Stale or missing lists are refreshed in the background, reverse lookups of all
+ * addresses run in parallel and are bounded by a deadline.
+ */
+public class RadioBrowserServerDiscovery {
+    private static final String TAG = "DNS";
+
+    public static final long DEFAULT_TTL = 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_REVERSE_LOOKUP_DEADLINE = 3000;
+
+    public interface Resolver {
+        InetAddress[] getAllByName(String host) throws UnknownHostException;
+
+        String getCanonicalHostName(InetAddress address);
+    }
+
+    public interface Storage {
+        @Nullable
+        String load();
+
+        void save(String data);
+    }
+
+    public interface ServerListListener {
+        void onServerListChanged(String[] servers);
+    }
+
+    public static final Resolver SYSTEM_RESOLVER = new Resolver() {
+        @Override
+        public InetAddress[] getAllByName(String host) throws UnknownHostException {
+            return InetAddress.getAllByName(host);
+        }
+
+        @Override
+        public String getCanonicalHostName(InetAddress address) {
+            // do not use original address, it could fall back to the round robin name
+            try {
+                return InetAddress.getByName(address.getHostAddress()).getCanonicalHostName();
+            } catch (UnknownHostException e) {
+                return address.getHostAddress();
+            }
+        }
+    };
+
+    private static class PersistedList {
+        String[] servers;
+        long timestamp;
+    }
+
+    private final String roundRobinHost;
+    private final Resolver resolver;
+    private final Storage storage;
+    private final long ttl;
+    private final long reverseLookupDeadline;
+
+    private final ExecutorService discoveryExecutor;
+    private final ExecutorService lookupExecutor;
+
+    private volatile String[] serverList;
+    private volatile long timestamp = 0;
+    private Future<String[]> refreshFuture;
+    private ServerListListener serverListListener;
+
+    public RadioBrowserServerDiscovery(@NonNull String roundRobinHost, @NonNull Resolver resolver, @Nullable Storage storage) {
+        this(roundRobinHost, resolver, storage, DEFAULT_TTL, DEFAULT_REVERSE_LOOKUP_DEADLINE);
+    }
+
+    public RadioBrowserServerDiscovery(@NonNull String roundRobinHost, @NonNull Resolver resolver, @Nullable Storage storage,
+                                       long ttl, long reverseLookupDeadline) {
+        this.roundRobinHost = roundRobinHost;
+        this.resolver = resolver;
+        this.storage = storage;
+        this.ttl = ttl;
+        this.reverseLookupDeadline = reverseLookupDeadline;
+
+        discoveryExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "RadioBrowserServerDiscovery"));
+        lookupExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "RadioBrowserServerDiscovery lookup");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        serverList = new String[]{roundRobinHost};
+        loadPersisted();
+    }
+
+    public synchronized void setServerListListener(@Nullable ServerListListener serverListListener) {
+        this.serverListListener = serverListListener;
+    }
+
+    /**
+     * Non-blocking: return the best currently known server list, start a refresh
+     * in background if it is missing or older than the ttl.
+     */
+    public String[] getServerList() {
+        if (System.currentTimeMillis() - timestamp > ttl) {
+            refresh();
+        }
+        return serverList;
+    }
+
+    /**
+     * Non-blocking: return the current list without triggering a refresh.
+     */
+    public String[] getCachedServerList() {
+        return serverList;
+    }
+
+    /**
+     * Start a background refresh unless one is already running.
+     */
+    public synchronized Future<String[]> refresh() {
+        if (refreshFuture == null || refreshFuture.isDone()) {
+            refreshFuture = discoveryExecutor.submit(this::discover);
+        }
+        return refreshFuture;
+    }
+
+    private void loadPersisted() {
+        if (storage == null) {
+            return;
+        }
+
+        try {
+            String data = storage.load();
+            if (data == null) {
+                return;
+            }
+
+            PersistedList persisted = new Gson().fromJson(data, PersistedList.class);
+            if (persisted != null && persisted.servers != null && persisted.servers.length > 0) {
+                serverList = persisted.servers;
+                timestamp = persisted.timestamp;
+                Log.d(TAG, "Loaded persisted servers: " + persisted.servers.length);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Could not load persisted servers: " + e);
+        }
+    }
+
+    private String[] discover() {
+        Log.d(TAG, "discover()");
+
+        InetAddress[] addresses;
+        try {
+            addresses = resolver.getAllByName(roundRobinHost);
+        } catch (UnknownHostException e) {
+            Log.w(TAG, "Could not resolve " + roundRobinHost + ": " + e);
+            return serverList;
+        }
+
+        List<Callable<String>> lookups = new ArrayList<>(addresses.length);
+        for (final InetAddress address : addresses) {
+            lookups.add(() -> resolver.getCanonicalHostName(address));
+        }
+
+        Set<String> result = new LinkedHashSet<>();
+        try {
+            List<Future<String>> futures = lookupExecutor.invokeAll(lookups, reverseLookupDeadline, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    String name = futures.get(i).get();
+                    String hostAddress = addresses[i].getHostAddress();
+                    if (name != null && !name.equals(roundRobinHost) && !name.equals(hostAddress)) {
+                        Log.i(TAG, "Added entry: '" + name + "'");
+                        result.add(name);
+                    }
+                } catch (CancellationException e) {
+                    Log.w(TAG, "Reverse lookup of " + addresses[i].getHostAddress() + " missed the deadline");
+                } catch (Exception e) {
+                    Log.w(TAG, "Reverse lookup of " + addresses[i].getHostAddress() + " failed: " + e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return serverList;
+        }
+
+        if (result.isEmpty()) {
+            // should we inform people that their internet provider is not able to do reverse lookups?
+            Log.w(TAG, "Go to api V2");
+            result.add(roundRobinHost);
+        }
+
+        String[] servers = result.toArray(new String[0]);
+        Log.d(TAG, "discover() Found servers: " + servers.length);
+
+        boolean changed = !Arrays.equals(servers, serverList);
+        serverList = servers;
+        timestamp = System.currentTimeMillis();
+
+        if (storage != null) {
+            PersistedList persisted = new PersistedList();
+            persisted.servers = servers;
+            persisted.timestamp = timestamp;
+            storage.save(new Gson().toJson(persisted));
+        }
+
+        if (changed) {
+            ServerListListener listener;
+            synchronized (this) {
+                listener = serverListListener;
+            }
+            if (listener != null) {
+                listener.onServerListChanged(servers);
+            }
+        }
+
+        return servers;
+    }
+}
@@ -1,11 +1,24 @@
 package com.devnull.radio;
 
+import android.content.SharedPreferences;
 import android.util.Log;
 
-import java.net.InetAddress;
-import java.net.UnknownHostException;
+import androidx.preference.PreferenceManager;
+
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 /**
  * Created by segler on 15.02.18.
@@ -13,56 +26,177 @@ import java.util.Vector;
 
 public class RadioBrowserServerManager {
     static String currentServer = null;
-    static String[] serverList = null;
+
+    static final String ROUND_ROBIN_HOST = "apiv2.krr.org.pl";
+
+    private static final String PREF_SERVER_LIST = "radio_browser_server_list";
+    private static final String PREF_SERVER_SCORES = "radio_browser_server_scores";
+    private static final long SAVE_SCORES_DELAY = 10 * 1000;
+    private static final String PROBE_PATH = "json/stats";
+
+    private static final RadioBrowserServerScores scores = new RadioBrowserServerScores();
+
+    private static RadioBrowserServerDiscovery discovery =
+            new RadioBrowserServerDiscovery(ROUND_ROBIN_HOST, RadioBrowserServerDiscovery.SYSTEM_RESOLVER, null);
+
+    private static RadioDroidApp radioDroidApp;
+    private static ScheduledExecutorService scheduler;
+    private static ScheduledFuture<?> saveScoresFuture;
+    private static ScheduledFuture<?> probeFuture;
 
     /**
-     * Blocking: do dns request do get a list of all available servers
+     * Restore server list and scores of previous runs and start keeping them up to date.
      */
-    private static String[] doDnsServerListing() {
-        Log.d("DNS", "doDnsServerListing()");
-        Vector<String> listResult = new Vector<String>();
+    public static synchronized void init(RadioDroidApp app) {
+        radioDroidApp = app;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "RadioBrowserServerManager"));
+
+        final SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(app);
+
+        setDiscovery(new RadioBrowserServerDiscovery(ROUND_ROBIN_HOST, RadioBrowserServerDiscovery.SYSTEM_RESOLVER,
+                new RadioBrowserServerDiscovery.Storage() {
+                    @Override
+                    public String load() {
+                        return sharedPref.getString(PREF_SERVER_LIST, null);
+                    }
+
+                    @Override
+                    public void save(String data) {
+                        sharedPref.edit().putString(PREF_SERVER_LIST, data).apply();
+                    }
+                }));
+        discovery.getServerList();
+
         try {
-            // add all round robin servers one by one to select them separately
-            InetAddress[] list = InetAddress.getAllByName("apiv2.krr.org.pl");
-            for (InetAddress item : list) {
-                // do not use original variable, it could fall back to "all.api.radio-browser.info"
-                String currentHostAddress = item.getHostAddress();
-                InetAddress new_item = InetAddress.getByName(currentHostAddress);
-                Log.i("DNS", "Found: " + new_item.toString() + " -> " + new_item.getCanonicalHostName());
-                String name = item.getCanonicalHostName();
-                if (!name.equals("apiv2.krr.org.pl") && !name.equals(currentHostAddress)) {
-                    Log.i("DNS", "Added entry: '" + name+"'");
-                    listResult.add(name);
+            scores.loadJson(sharedPref.getString(PREF_SERVER_SCORES, null));
+        } catch (Exception e) {
+            Log.e("SRV", "Could not load server scores: " + e);
+        }
+
+        scores.setScoresListener(RadioBrowserServerManager::onScoresChanged);
+    }
+
+    /**
+     * Replace the way servers are discovered, mostly useful for tests.
+     */
+    public static synchronized void setDiscovery(RadioBrowserServerDiscovery newDiscovery) {
+        discovery = newDiscovery;
+        discovery.setServerListListener(servers -> scheduleProbe());
+    }
+
+    public static RadioBrowserServerScores getScores() {
+        return scores;
+    }
+
+    /**
+     * Listener factory which should be installed on the http client used for api requests.
+     */
+    public static EventListener.Factory getEventListenerFactory() {
+        return scores.eventListenerFactory(host -> {
+            for (String server : discovery.getCachedServerList()) {
+                if (server.equals(host)) {
+                    return true;
                 }
             }
-        } catch (UnknownHostException e) {
-            e.printStackTrace();
+            return false;
+        });
+    }
+
+    private static synchronized void onScoresChanged() {
+        if (scheduler == null) {
+            return;
+        }
+
+        if (saveScoresFuture == null || saveScoresFuture.isDone()) {
+            saveScoresFuture = scheduler.schedule(RadioBrowserServerManager::saveScores, SAVE_SCORES_DELAY, TimeUnit.MILLISECONDS);
+        }
+
+        scheduleProbe();
+    }
+
+    private static void saveScores() {
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(radioDroidApp);
+        sharedPref.edit().putString(PREF_SERVER_SCORES, scores.toJson()).apply();
+    }
+
+    private static synchronized void scheduleProbe() {
+        String[] servers = discovery.getCachedServerList();
+        if (servers.length < 2 || scheduler == null) {
+            return;
+        }
+
+        scores.updateProbeSchedule(servers, System.currentTimeMillis());
+        long next = scores.getNextProbeTime();
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+
+        if (probeFuture != null) {
+            if (probeFuture.getDelay(TimeUnit.MILLISECONDS) <= next - System.currentTimeMillis() && !probeFuture.isDone()) {
+                return;
+            }
+            probeFuture.cancel(false);
         }
-        if (listResult.size() == 0){
-            // should we inform people that their internet provider is not able to do reverse lookups? (= is shit)
-            Log.w("DNS", "Go to api V2");
-            listResult.add("apiv2.krr.org.pl");
+
+        probeFuture = scheduler.schedule(RadioBrowserServerManager::probeDemotedServers,
+                Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Send a small request to demoted servers so they can earn back their rank.
+     * Results are recorded by the event listener of the http client.
+     */
+    private static void probeDemotedServers() {
+        String[] servers = discovery.getCachedServerList();
+        if (radioDroidApp == null) {
+            return;
         }
-        Log.d("DNS", "doDnsServerListing() Found servers: " + listResult.size());
-        return listResult.toArray(new String[0]);
+
+        OkHttpClient httpClient = radioDroidApp.getHttpClient();
+        for (String server : scores.takeServersToProbe(servers, System.currentTimeMillis())) {
+            Log.d("SRV", "Probing server: " + server);
+            Request request = new Request.Builder().url(constructEndpoint(server, PROBE_PATH)).build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                }
+            });
+        }
+
+        scheduleProbe();
     }
 
     /**
-     * Blocking: return current cached server list. Generate list if still null.
+     * Non-blocking: return current known server list. The list of a previous run or the
+     * round robin name is returned until background discovery has finished.
+     *
+     * @param forceRefresh start a new discovery in background even if the list is still fresh
      */
     public static String[] getServerList(boolean forceRefresh){
-        if (serverList == null || serverList.length == 0 || forceRefresh){
-            serverList = doDnsServerListing();
+        if (forceRefresh) {
+            discovery.refresh();
         }
-        return serverList;
+        return discovery.getServerList();
     }
 
     /**
-     * Blocking: return current selected server. Select one, if there is no current server.
+     * Non-blocking: return current selected server. Best scored server is preferred,
+     * select a random one if no server has been scored yet.
      */
-    public static String getCurrentServer() {
-        if (currentServer == null){
-            String[] serverList = getServerList(false);
+    public static synchronized String getCurrentServer() {
+        String[] serverList = getServerList(false);
+        String best = scores.getBest(serverList);
+        if (best != null) {
+            if (!best.equals(currentServer)) {
+                Log.d("SRV", "Selected best scored server: " + best);
+                currentServer = best;
+            }
+        } else if (currentServer == null || !Arrays.asList(serverList).contains(currentServer)) {
             if (serverList.length > 0){
                 Random rand = new Random();
                 currentServer = serverList[rand.nextInt(serverList.length)];
@@ -81,6 +215,21 @@ public class RadioBrowserServerManager {
         currentServer = newServer;
     }
 
+    /**
+     * Non-blocking: return servers ordered from best to worst score.
+     */
+    public static String[] getServersByPreference() {
+        return scores.rank(getServerList(false));
+    }
+
+    /**
+     * How long to wait for response headers from server before sending
+     * the same request to another server.
+     */
+    public static long getHedgeDelay(String server) {
+        return scores.getHedgeDelay(server);
+    }
+
     /**
      * Construct full url from server and path
      */
@@ -0,0 +1,371 @@
+package com.devnull.radio;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Response;
+
+/**
+ * Keeps exponentially weighted moving averages of time to first byte, throughput and
+ * error rate for every radio browser server and ranks servers by them.
+ * <p>
+ * Samples are fed by the {@link EventListener} from {@link #eventListenerFactory(ServerFilter)}
+ * which should be installed on the api http client.
+ */
+public class RadioBrowserServerScores {
+    static final double ALPHA = 0.3;
+
+    // Servers without samples are assumed to answer a typical request within this time
+    static final double UNKNOWN_SERVER_COST = 1500;
+
+    // Response size which is used to weigh throughput against time to first byte
+    static final long TYPICAL_RESPONSE_BYTES = 64 * 1024;
+
+    // Throughput of smaller bodies is dominated by latency and is not recorded
+    static final long MIN_THROUGHPUT_SAMPLE_BYTES = 16 * 1024;
+
+    static final long HEDGE_DELAY_DEFAULT = 1500;
+    static final long HEDGE_DELAY_MIN = 250;
+    static final long HEDGE_DELAY_MAX = 4000;
+
+    static final long PROBE_INTERVAL_MIN = 30 * 1000;
+    static final long PROBE_INTERVAL_MAX = 60 * 60 * 1000;
+
+    public interface ServerFilter {
+        boolean isServer(String host);
+    }
+
+    public interface ScoresListener {
+        void onScoresChanged();
+    }
+
+    static class Score {
+        double ttfb = -1;
+        double ttfbDeviation = 0;
+        double throughput = -1; // bytes per millisecond
+        double errorRate = 0;
+        int samples = 0;
+
+        long probeInterval = PROBE_INTERVAL_MIN;
+        long nextProbeAt = 0;
+
+        double getCost() {
+            // Servers which only failed so far are still penalized for it
+            double cost = ttfb < 0 ? UNKNOWN_SERVER_COST : ttfb;
+            if (throughput > 0) {
+                cost += TYPICAL_RESPONSE_BYTES / throughput;
+            }
+
+            return cost / Math.max(0.05, 1.0 - errorRate);
+        }
+    }
+
+    private final Map<String, Score> scores = new HashMap<>();
+    private volatile ScoresListener scoresListener;
+
+    /**
+     * Listener is called outside of the scores lock after every recorded sample.
+     */
+    public void setScoresListener(@Nullable ScoresListener scoresListener) {
+        this.scoresListener = scoresListener;
+    }
+
+    public void recordHeaders(@NonNull String server, long ttfb) {
+        synchronized (this) {
+            Score score = getOrCreate(server);
+            if (score.ttfb < 0) {
+                score.ttfb = ttfb;
+                score.ttfbDeviation = ttfb / 2.0;
+            } else {
+                addTtfbSample(score, ttfb);
+            }
+            score.errorRate = (1 - ALPHA) * score.errorRate;
+            score.samples++;
+        }
+        notifyChanged();
+    }
+
+    /**
+     * The server sent no headers within elapsed milliseconds before the call was cancelled,
+     * e.g. because another server won a hedged request. Its ttfb is at least that long, so
+     * the sample only counts if it is worse than the average. Servers which never answered
+     * stay unknown.
+     */
+    public void recordCensoredTtfb(@NonNull String server, long elapsed) {
+        synchronized (this) {
+            Score score = scores.get(server);
+            if (score == null || score.ttfb < 0 || elapsed <= score.ttfb) {
+                return;
+            }
+            addTtfbSample(score, elapsed);
+            score.samples++;
+        }
+        notifyChanged();
+    }
+
+    public void recordBody(@NonNull String server, long bytes, long duration) {
+        if (bytes < MIN_THROUGHPUT_SAMPLE_BYTES) {
+            return;
+        }
+
+        double throughput = (double) bytes / Math.max(1, duration);
+        synchronized (this) {
+            Score score = getOrCreate(server);
+            if (score.throughput < 0) {
+                score.throughput = throughput;
+            } else {
+                score.throughput = (1 - ALPHA) * score.throughput + ALPHA * throughput;
+            }
+        }
+        notifyChanged();
+    }
+
+    public void recordFailure(@NonNull String server) {
+        synchronized (this) {
+            Score score = getOrCreate(server);
+            score.errorRate = (1 - ALPHA) * score.errorRate + ALPHA;
+            score.samples++;
+        }
+        notifyChanged();
+    }
+
+    /**
+     * @return expected time in milliseconds for a typical request to the server,
+     * lower is better.
+     */
+    public synchronized double getCost(@NonNull String server) {
+        Score score = scores.get(server);
+        return score != null ? score.getCost() : UNKNOWN_SERVER_COST;
+    }
+
+    /**
+     * @return best server from the list or null if none of them has answered yet.
+     */
+    public synchronized @Nullable
+    String getBest(@NonNull String[] servers) {
+        String best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (String server : servers) {
+            Score score = scores.get(server);
+            // A server which never answered must not become the current one
+            if (score == null || score.ttfb < 0) {
+                continue;
+            }
+
+            double cost = score.getCost();
+            if (cost < bestCost) {
+                best = server;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return servers ordered from best to worst. Servers without samples are ranked
+     * as if they had an average cost of {@link #UNKNOWN_SERVER_COST}.
+     */
+    public synchronized String[] rank(@NonNull String[] servers) {
+        final Map<String, Double> costs = new HashMap<>();
+        for (String server : servers) {
+            costs.put(server, getCost(server));
+        }
+
+        String[] ranked = Arrays.copyOf(servers, servers.length);
+        Arrays.sort(ranked, (a, b) -> Double.compare(costs.get(a), costs.get(b)));
+        return ranked;
+    }
+
+    /**
+     * Time to wait for response headers before hedging with another server,
+     * derived like a retransmission timeout from the smoothed ttfb and its deviation.
+     */
+    public synchronized long getHedgeDelay(@NonNull String server) {
+        Score score = scores.get(server);
+        if (score == null || score.ttfb < 0) {
+            return HEDGE_DELAY_DEFAULT;
+        }
+
+        long delay = (long) (score.ttfb + 4 * score.ttfbDeviation);
+        return Math.max(HEDGE_DELAY_MIN, Math.min(HEDGE_DELAY_MAX, delay));
+    }
+
+    /**
+     * Make sure every demoted server has a probe scheduled and the best one has none.
+     */
+    public synchronized void updateProbeSchedule(@NonNull String[] servers, long now) {
+        String best = getBest(servers);
+        for (String server : servers) {
+            Score score = getOrCreate(server);
+            if (server.equals(best)) {
+                score.probeInterval = PROBE_INTERVAL_MIN;
+                score.nextProbeAt = 0;
+            } else if (score.nextProbeAt == 0) {
+                score.nextProbeAt = now + score.probeInterval;
+            }
+        }
+    }
+
+    /**
+     * Demoted servers which are due for a probe at the given time. Every returned server
+     * gets its probe interval doubled so servers which stay demoted are probed less and less often.
+     */
+    public synchronized List<String> takeServersToProbe(@NonNull String[] servers, long now) {
+        updateProbeSchedule(servers, now);
+
+        List<String> result = new ArrayList<>();
+        for (String server : servers) {
+            Score score = scores.get(server);
+            if (score.nextProbeAt != 0 && score.nextProbeAt <= now) {
+                result.add(server);
+                score.probeInterval = Math.min(PROBE_INTERVAL_MAX, score.probeInterval * 2);
+                score.nextProbeAt = now + score.probeInterval;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return time of the earliest scheduled probe or {@link Long#MAX_VALUE} if none is scheduled.
+     */
+    public synchronized long getNextProbeTime() {
+        long next = Long.MAX_VALUE;
+        for (Score score : scores.values()) {
+            if (score.nextProbeAt != 0) {
+                next = Math.min(next, score.nextProbeAt);
+            }
+        }
+        return next;
+    }
+
+    public synchronized String toJson() {
+        return new Gson().toJson(scores);
+    }
+
+    public synchronized void loadJson(@Nullable String json) {
+        scores.clear();
+        if (json == null) {
+            return;
+        }
+
+        Type type = new TypeToken<HashMap<String, Score>>() {
+        }.getType();
+        Map<String, Score> loaded = new Gson().fromJson(json, type);
+        if (loaded != null) {
+            for (Map.Entry<String, Score> entry : loaded.entrySet()) {
+                // Probing schedule is only meaningful for the process which made it
+                entry.getValue().nextProbeAt = 0;
+                entry.getValue().probeInterval = PROBE_INTERVAL_MIN;
+                scores.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public synchronized Map<String, Double> getCosts() {
+        Map<String, Double> costs = new HashMap<>();
+        for (Map.Entry<String, Score> entry : scores.entrySet()) {
+            costs.put(entry.getKey(), entry.getValue().getCost());
+        }
+        return Collections.unmodifiableMap(costs);
+    }
+
+    public EventListener.Factory eventListenerFactory(@NonNull final ServerFilter serverFilter) {
+        return call -> {
+            String host = call.request().url().host();
+            if (!serverFilter.isServer(host)) {
+                return EventListener.NONE;
+            }
+            return new ScoringEventListener(host);
+        };
+    }
+
+    private static void addTtfbSample(Score score, long ttfb) {
+        score.ttfbDeviation = (1 - ALPHA) * score.ttfbDeviation + ALPHA * Math.abs(ttfb - score.ttfb);
+        score.ttfb = (1 - ALPHA) * score.ttfb + ALPHA * ttfb;
+    }
+
+    private Score getOrCreate(String server) {
+        Score score = scores.get(server);
+        if (score == null) {
+            score = new Score();
+            scores.put(server, score);
+        }
+        return score;
+    }
+
+    private void notifyChanged() {
+        ScoresListener listener = scoresListener;
+        if (listener != null) {
+            listener.onScoresChanged();
+        }
+    }
+
+    private class ScoringEventListener extends EventListener {
+        private final String server;
+        private long callStart;
+        private long bodyStart;
+        private boolean headersReceived = false;
+        private boolean failed = false;
+
+        ScoringEventListener(String server) {
+            this.server = server;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.currentTimeMillis();
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            headersReceived = true;
+            if (response.isSuccessful() || response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                recordHeaders(server, System.currentTimeMillis() - callStart);
+            } else if (response.code() >= 500) {
+                failed = true;
+                recordFailure(server);
+            }
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            bodyStart = System.currentTimeMillis();
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            if (!failed) {
+                recordBody(server, byteCount, System.currentTimeMillis() - bodyStart);
+            }
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            // Hedged calls which lost the race are cancelled, that is not a failure of the
+            // server but it was slower than the winner
+            if (call.isCanceled()) {
+                if (!headersReceived) {
+                    recordCensoredTtfb(server, System.currentTimeMillis() - callStart);
+                }
+            } else if (!failed) {
+                failed = true;
+                recordFailure(server);
+            }
+        }
+    }
+}
@@ -11,11 +11,18 @@ import androidx.multidex.MultiDexApplication;
 import androidx.preference.PreferenceManager;
 
 import com.devnull.radio.alarm.RadioAlarmManager;
+import com.devnull.radio.cache.ApiResponseCache;
+import com.devnull.radio.catalog.StationCatalog;
 import com.devnull.radio.history.TrackHistoryRepository;
+import com.devnull.radio.players.PlayableUrlCache;
 import com.devnull.radio.players.mpd.MPDClient;
 import com.devnull.radio.proxy.ProxySettings;
 import com.devnull.radio.recording.RecordingsManager;
+import com.devnull.radio.service.ConnectivityChecker;
+import com.devnull.radio.station.StationSearchCache;
 import com.devnull.radio.station.live.metadata.TrackMetadataSearcher;
+import com.devnull.radio.utils.ConnectionPoolStats;
+import com.devnull.radio.utils.HappyEyeballsDns;
 import com.devnull.radio.utils.TvChannelManager;
 import com.squareup.picasso.OkHttp3Downloader;
 import com.squareup.picasso.Picasso;
@@ -24,10 +31,13 @@ import com.devnull.radio.R;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.Proxy;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Cache;
 import okhttp3.ConnectionPool;
+import okhttp3.Dns;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -35,6 +45,10 @@ import okhttp3.Response;
 
 public class RadioDroidApp extends MultiDexApplication {
 
+    private static final int MAX_IDLE_CONNECTIONS = 10;
+    private static final long API_CACHE_SIZE = 10 * 1024 * 1024;
+    private static final String PREF_LEGACY_API_CACHE_PURGED = "legacy_api_cache_purged";
+
     private HistoryManager historyManager;
     private FavouriteManager favouriteManager;
     private RecordingsManager recordingsManager;
@@ -50,7 +64,20 @@ public class RadioDroidApp extends MultiDexApplication {
     private TrackMetadataSearcher trackMetadataSearcher;
 
     private ConnectionPool connectionPool;
+    private ConnectionPoolStats connectionPoolStats;
+    // All clients are derived from this one so they share the connection pool, dispatcher
+    // and tls setup. Connections can only be reused between clients with the same ssl socket factory.
+    private OkHttpClient baseHttpClient;
     private OkHttpClient httpClient;
+    private HappyEyeballsDns streamDns;
+    private final ConnectivityChecker streamDnsConnectivityChecker = new ConnectivityChecker();
+    private ConnectionWarmer connectionWarmer;
+
+    private ApiResponseCache apiResponseCache;
+    private FeedPrefetcher feedPrefetcher;
+    private StationCatalog stationCatalog;
+    private StationSearchCache stationSearchCache;
+    private PlayableUrlCache playableUrlCache;
 
     private Interceptor testsInterceptor;
 
@@ -80,10 +107,35 @@ public class RadioDroidApp extends MultiDexApplication {
 
         GoogleProviderHelper.use(getBaseContext());
 
-        connectionPool = new ConnectionPool();
+        connectionPool = new ConnectionPool(MAX_IDLE_CONNECTIONS, 5, TimeUnit.MINUTES);
+        connectionPoolStats = new ConnectionPoolStats();
+        baseHttpClient = Utils.enableTls12OnPreLollipop(new OkHttpClient.Builder()
+                .connectionPool(connectionPool)
+                .eventListenerFactory(connectionPoolStats))
+                .build();
+        streamDns = new HappyEyeballsDns(Dns.SYSTEM);
+        // Answers and preferred families of the previous network may be wrong for the new one
+        streamDnsConnectivityChecker.setNotifyReconnects(true);
+        streamDnsConnectivityChecker.startListening(this, (connected, connectionType) -> streamDns.clear());
+
+        RadioBrowserServerManager.init(this);
+
+        apiResponseCache = new ApiResponseCache(new File(getCacheDir(), "api-cache"), API_CACHE_SIZE);
+        purgeLegacyApiCache();
 
         rebuildHttpClient();
 
+        stationCatalog = new StationCatalog(this);
+        stationSearchCache = new StationSearchCache(StationSearchCache.DEFAULT_MAX_STATIONS);
+        playableUrlCache = new PlayableUrlCache(
+                stationUuid -> Utils.getRealStationLink(httpClient, this, stationUuid),
+                stationUuid -> Utils.getResolvedStationLink(httpClient, this, stationUuid),
+                Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "ClickReporter");
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }));
+
         Picasso.Builder builder = new Picasso.Builder(this);
         builder.downloader(new OkHttp3Downloader(newHttpClientForPicasso()));
         Picasso picassoInstance = builder.build();
@@ -112,6 +164,43 @@ public class RadioDroidApp extends MultiDexApplication {
         trackMetadataSearcher = new TrackMetadataSearcher(httpClient);
 
         recordingsManager.updateRecordingsList();
+
+        feedPrefetcher = new FeedPrefetcher(this);
+        FragmentTabs.addPrefetchEndpoints(feedPrefetcher);
+        feedPrefetcher.start();
+
+        connectionWarmer = new ConnectionWarmer(this);
+        connectionWarmer.warmUp();
+
+        stationCatalog.syncIfNeeded();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        // The process may be stopped without further notice once it is in background, the
+        // main thread does not wait for the writes here
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            if (favouriteManager != null) {
+                favouriteManager.flushInBackground();
+            }
+            if (historyManager != null) {
+                historyManager.flushInBackground();
+            }
+        }
+    }
+
+    /**
+     * Write pending changes of favourites and history now.
+     */
+    public void flushSavedStations() {
+        if (favouriteManager != null) {
+            favouriteManager.flush();
+        }
+        if (historyManager != null) {
+            historyManager.flush();
+        }
     }
 
     public void setTestsInterceptor(Interceptor testsInterceptor) {
@@ -123,7 +212,8 @@ public class RadioDroidApp extends MultiDexApplication {
                 .connectTimeout(10, TimeUnit.SECONDS)
                 .writeTimeout(10, TimeUnit.SECONDS)
                 .readTimeout(10, TimeUnit.SECONDS)
-                .addInterceptor(new UserAgentInterceptor("KRR/" + BuildConfig.VERSION_NAME));
+                .addInterceptor(new UserAgentInterceptor("KRR/" + BuildConfig.VERSION_NAME))
+                .eventListenerFactory(connectionPoolStats.wrap(RadioBrowserServerManager.getEventListenerFactory()));
 
         httpClient = builder.build();
     }
@@ -164,8 +254,36 @@ public class RadioDroidApp extends MultiDexApplication {
         return httpClient;
     }
 
+    public ApiResponseCache getApiResponseCache() {
+        return apiResponseCache;
+    }
+
+    public FeedPrefetcher getFeedPrefetcher() {
+        return feedPrefetcher;
+    }
+
+    public StationCatalog getStationCatalog() {
+        return stationCatalog;
+    }
+
+    public StationSearchCache getStationSearchCache() {
+        return stationSearchCache;
+    }
+
+    public PlayableUrlCache getPlayableUrlCache() {
+        return playableUrlCache;
+    }
+
+    public ConnectionWarmer getConnectionWarmer() {
+        return connectionWarmer;
+    }
+
+    public ConnectionPoolStats getConnectionPoolStats() {
+        return connectionPoolStats;
+    }
+
     public OkHttpClient.Builder newHttpClient() {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder().connectionPool(connectionPool);
+        OkHttpClient.Builder builder = baseHttpClient.newBuilder();
 
         if (testsInterceptor != null) {
             builder.addInterceptor(testsInterceptor);
@@ -175,17 +293,32 @@ public class RadioDroidApp extends MultiDexApplication {
             Toast toast = Toast.makeText(this, getResources().getString(R.string.ignore_proxy_settings_invalid), Toast.LENGTH_SHORT);
             toast.show();
         }
-        return Utils.enableTls12OnPreLollipop(builder);
+        return builder;
+    }
+
+    /**
+     * Client for connections to radio streams. Its dns caches answers and prefers the
+     * address family which connected first to a host.
+     */
+    public OkHttpClient.Builder newStreamHttpClient() {
+        OkHttpClient.Builder builder = newHttpClient().dns(streamDns);
+
+        ProxySettings proxySettings = ProxySettings.fromPreferences(PreferenceManager.getDefaultSharedPreferences(this));
+        if (proxySettings == null || proxySettings.type == Proxy.Type.DIRECT) {
+            builder.addInterceptor(streamDns.interceptor());
+        }
+
+        return builder;
     }
 
     public OkHttpClient.Builder newHttpClientWithoutProxy() {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder().connectionPool(connectionPool);
+        OkHttpClient.Builder builder = baseHttpClient.newBuilder();
 
         if (testsInterceptor != null) {
             builder.addInterceptor(testsInterceptor);
         }
 
-        return Utils.enableTls12OnPreLollipop(builder);
+        return builder;
     }
 
     public boolean setCurrentOkHttpProxy(@NonNull OkHttpClient.Builder builder) {
@@ -200,6 +333,29 @@ public class RadioDroidApp extends MultiDexApplication {
         return true;
     }
 
+    /**
+     * Api responses used to be cached as one unbounded file per url directly in the cache dir.
+     */
+    private void purgeLegacyApiCache() {
+        final SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(this);
+        if (sharedPref.getBoolean(PREF_LEGACY_API_CACHE_PURGED, false)) {
+            return;
+        }
+
+        new Thread(() -> {
+            File[] files = getCacheDir().listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.isFile()) {
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                    }
+                }
+            }
+            sharedPref.edit().putBoolean(PREF_LEGACY_API_CACHE_PURGED, true).apply();
+        }, "PurgeLegacyApiCache").start();
+    }
+
     private OkHttpClient newHttpClientForPicasso() {
         File cache = new File(getCacheDir(), "picasso-cache");
         if (!cache.exists()) {
@@ -207,7 +363,7 @@ public class RadioDroidApp extends MultiDexApplication {
             cache.mkdirs();
         }
 
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        OkHttpClient.Builder builder = baseHttpClient.newBuilder()
                 .addInterceptor(new UserAgentInterceptor("KRR/" + BuildConfig.VERSION_NAME))
                 .cache(new Cache(cache, Integer.MAX_VALUE));
 
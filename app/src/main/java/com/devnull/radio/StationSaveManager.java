@@ -2,25 +2,27 @@ package com.devnull.radio;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.media.MediaScannerConnection;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Environment;
-import android.preference.PreferenceManager;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import com.devnull.radio.saved.SavedStationLoad;
+import com.devnull.radio.saved.SavedStationPositions;
+import com.devnull.radio.saved.SavedStationRepository;
 import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.IndexedStationList;
+import com.devnull.radio.station.StationBatchRefresher;
 
 import com.devnull.radio.R;
 
-import org.json.JSONArray;
-
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -40,12 +42,24 @@ public class StationSaveManager extends Observable {
     }
 
     Context context;
-    List<DataRadioStation> listStations = new ArrayList<DataRadioStation>();
+    final IndexedStationList listStations = new IndexedStationList();
 
     protected StationStatusListener stationStatusListener;
 
+    private final SavedStationRepository repository;
+    private final SavedStationPositions positions = new SavedStationPositions();
+
+    // Stations are shown and can be changed while the saved ones are still loading, null
+    // once they are loaded
+    private SavedStationLoad load;
+    private final List<Runnable> loadedCallbacks = new ArrayList<>();
+
+    // Refresh from the server which is running, a new one cancels it
+    private StationBatchRefresher refresher;
+
     public StationSaveManager(Context ctx) {
         this.context = ctx;
+        this.repository = new SavedStationRepository(ctx, getSaveId());
         Load();
     }
 
@@ -59,7 +73,8 @@ public class StationSaveManager extends Observable {
 
     public void add(DataRadioStation station) {
         listStations.add(station);
-        Save();
+        saveStationAt(listStations.size() - 1, true);
+        onStationsSaved();
 
         notifyObservers();
 
@@ -70,30 +85,44 @@ public class StationSaveManager extends Observable {
 
     public void addMultiple(List<DataRadioStation> stations) {
         for (DataRadioStation station_new: stations){
+            // Stations are stored once per list
+            if (has(station_new.StationUuid)) {
+                continue;
+            }
             listStations.add(station_new);
+            saveStationAt(listStations.size() - 1, true);
         }
-        Save();
+        onStationsSaved();
 
         notifyObservers();
     }
 
     public void replaceList(List<DataRadioStation> stations_new) {
+        List<DataRadioStation> replaced = new ArrayList<>();
         for (DataRadioStation station_new: stations_new) {
-            for (int i = 0; i < listStations.size(); i++) {
-                if (listStations.get(i).StationUuid.equals(station_new.StationUuid)){
-                    listStations.set(i, station_new);
-                    break;
-                }
+            int index = listStations.positionOf(station_new.StationUuid);
+            if (index >= 0) {
+                listStations.set(index, station_new);
+                replaced.add(station_new);
             }
         }
-        Save();
+        if (load != null) {
+            load.onChanged();
+        } else {
+            repository.update(replaced);
+        }
+        onStationsSaved();
 
         notifyObservers();
     }
 
     public void addFront(DataRadioStation station) {
         listStations.add(0, station);
-        Save();
+        if (load != null) {
+            load.onAddedFront();
+        }
+        saveStationAt(0, true);
+        onStationsSaved();
 
         notifyObservers();
 
@@ -119,40 +148,23 @@ public class StationSaveManager extends Observable {
     }
 
     public DataRadioStation getById(String id) {
-        for (DataRadioStation station : listStations) {
-            if (id.equals(station.StationUuid)) {
-                return station;
-            }
-        }
-        return null;
+        return listStations.getByUuid(id);
     }
 
     public DataRadioStation getNextById(String id) {
-        if (listStations.isEmpty())
-            return null;
-
-        for (int i = 0; i < listStations.size() - 1; i++) {
-            if (listStations.get(i).StationUuid.equals(id)) {
-                return listStations.get(i + 1);
-            }
-        }
-        return listStations.get(0);
+        return listStations.getNext(id);
     }
 
     public DataRadioStation getPreviousById(String id) {
-        if (listStations.isEmpty())
-            return null;
-
-        for (int i = 1; i < listStations.size(); i++) {
-            if (listStations.get(i).StationUuid.equals(id)) {
-                return listStations.get(i - 1);
-            }
-        }
-        return listStations.get(listStations.size() - 1);
+        return listStations.getPrevious(id);
     }
 
     public void moveWithoutNotify(int fromPos, int toPos) {
-        Collections.rotate(listStations.subList(Math.min(fromPos, toPos), Math.max(fromPos, toPos) + 1), Integer.signum(fromPos - toPos));
+        listStations.move(fromPos, toPos);
+        if (load != null) {
+            load.onMoved(fromPos, toPos);
+        }
+        saveStationAt(toPos, false);
     }
 
     public void move(int fromPos, int toPos) {
@@ -179,27 +191,33 @@ public class StationSaveManager extends Observable {
     }
 
     public int remove(String id) {
-        for (int i = 0; i < listStations.size(); i++) {
-            DataRadioStation station = listStations.get(i);
-            if (station.StationUuid.equals(id)) {
-                listStations.remove(i);
-                Save();
-                notifyObservers();
+        int position = listStations.positionOf(id);
+        if (position < 0) {
+            return -1;
+        }
 
-                if (stationStatusListener != null) {
-                    stationStatusListener.onStationStatusChanged(station, false);
-                }
+        DataRadioStation station = listStations.remove(position);
+        if (load != null) {
+            load.onRemoved(position, station);
+        }
+        deleteStations(Collections.singletonList(station));
+        onStationsSaved();
+        notifyObservers();
 
-                return i;
-            }
+        if (stationStatusListener != null) {
+            stationStatusListener.onStationStatusChanged(station, false);
         }
 
-        return -1;
+        return position;
     }
 
     public void restore(DataRadioStation station, int pos) {
         listStations.add(pos, station);
-        Save();
+        if (load != null) {
+            load.onAdded(pos);
+        }
+        saveStationAt(pos, true);
+        onStationsSaved();
 
         notifyObservers();
 
@@ -209,9 +227,16 @@ public class StationSaveManager extends Observable {
     }
 
     public void clear() {
-        List<DataRadioStation> oldStation = listStations;
-        listStations = new ArrayList<>();
-        Save();
+        List<DataRadioStation> oldStation = new ArrayList<>(listStations);
+        listStations.clear();
+        positions.clear();
+        if (load != null) {
+            // Stations which are not loaded yet are deleted as well
+            load = null;
+            runLoadedCallbacks();
+        }
+        repository.clear();
+        onStationsSaved();
 
         notifyObservers();
 
@@ -222,6 +247,22 @@ public class StationSaveManager extends Observable {
         }
     }
 
+    /**
+     * Remove the stations from position count on without notifying observers.
+     */
+    protected void cutListWithoutNotify(int count) {
+        if (listStations.size() <= count) {
+            return;
+        }
+
+        List<DataRadioStation> cutStations = listStations.subList(count, listStations.size());
+        if (load != null) {
+            load.onCut(count, cutStations);
+        }
+        deleteStations(new ArrayList<>(cutStations));
+        cutStations.clear();
+    }
+
     @Override
     public boolean hasChanged() {
         return true;
@@ -236,8 +277,7 @@ public class StationSaveManager extends Observable {
     }
 
     public boolean has(String id) {
-        DataRadioStation station = getById(id);
-        return station != null;
+        return listStations.containsUuid(id);
     }
 
     private boolean hasInvalidUuids() {
@@ -254,6 +294,112 @@ public class StationSaveManager extends Observable {
         return Collections.unmodifiableList(listStations);
     }
 
+    public interface RefreshListener {
+        void onRefreshProgress(int finishedChunks, int totalChunks);
+
+        /**
+         * @param success       false if some stations could not be refreshed
+         * @param deletedOnServer number of stations which the server does not know anymore
+         */
+        void onRefreshFinished(boolean success, int deletedOnServer);
+    }
+
+    private static class RefreshedChunk {
+        @Nullable
+        final List<DataRadioStation> stations;
+        final int finishedChunks;
+        final int totalChunks;
+
+        RefreshedChunk(@Nullable List<DataRadioStation> stations, int finishedChunks, int totalChunks) {
+            this.stations = stations;
+            this.finishedChunks = finishedChunks;
+            this.totalChunks = totalChunks;
+        }
+    }
+
+    /**
+     * Refresh all stations from server in parallel chunks, see {@link StationBatchRefresher}.
+     * Stations are replaced chunk by chunk as they arrive, stations which are unknown to the
+     * server are marked as deleted. A refresh which is still running is cancelled.
+     *
+     * @return refresher which can be used to cancel the refresh, the listener is not called
+     * after it was cancelled
+     */
+    public StationBatchRefresher refreshFromServer(@Nullable final RefreshListener listener) {
+        cancelRefresh();
+
+        final RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
+        final StationBatchRefresher refresher = StationBatchRefresher.forServer(radioDroidApp.getHttpClient(), context);
+        this.refresher = refresher;
+
+        final ArrayList<String> uuids = new ArrayList<>(listStations.size());
+        for (DataRadioStation station : listStations) {
+            uuids.add(station.StationUuid);
+        }
+
+        new AsyncTask<Void, RefreshedChunk, StationBatchRefresher.Result>() {
+            @Override
+            protected StationBatchRefresher.Result doInBackground(Void... params) {
+                // Counts are passed along with the chunk, they are only read on the main thread
+                return refresher.refresh(uuids, (stations, finished, total) ->
+                        publishProgress(new RefreshedChunk(stations, finished, total)));
+            }
+
+            @Override
+            protected void onProgressUpdate(RefreshedChunk... chunks) {
+                if (refresher.isCancelled()) {
+                    return;
+                }
+                if (chunks[0].stations != null) {
+                    replaceList(chunks[0].stations);
+                }
+                if (listener != null) {
+                    listener.onRefreshProgress(chunks[0].finishedChunks, chunks[0].totalChunks);
+                }
+            }
+
+            @Override
+            protected void onPostExecute(StationBatchRefresher.Result result) {
+                if (refresher.isCancelled()) {
+                    return;
+                }
+                if (StationSaveManager.this.refresher == refresher) {
+                    StationSaveManager.this.refresher = null;
+                }
+
+                int deletedOnServer = 0;
+                for (DataRadioStation station : listStations) {
+                    if (result.getMissing().contains(station.StationUuid)) {
+                        Log.d("SAVE", "Station deleted on server: " + station.StationUuid + " - " + station.Name);
+                        station.DeletedOnServer = true;
+                        deletedOnServer++;
+                    }
+                }
+                if (deletedOnServer > 0) {
+                    Save();
+                    onStationsSaved();
+                    notifyObservers();
+                }
+
+                if (listener != null) {
+                    listener.onRefreshFinished(result.isComplete(), deletedOnServer);
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+
+        return refresher;
+    }
+
+    /**
+     * Cancel the refresh from the server which is running, if any.
+     */
+    public void cancelRefresh() {
+        if (refresher != null) {
+            refresher.cancel();
+            refresher = null;
+        }
+    }
+
     private void refreshStationsFromServer() {
         final RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
         final OkHttpClient httpClient = radioDroidApp.getHttpClient();
@@ -269,9 +415,26 @@ public class StationSaveManager extends Observable {
 
             @Override
             protected ArrayList<DataRadioStation> doInBackground(Void... params) {
+                ArrayList<String> uuids = new ArrayList<>(savedStations.size());
+                for (DataRadioStation station : savedStations) {
+                    if (station.hasValidUuid()) {
+                        uuids.add(station.StationUuid);
+                    }
+                }
+                StationBatchRefresher.Result result = StationBatchRefresher.forServer(httpClient, context).refresh(uuids, null);
+
                 ArrayList<DataRadioStation> stationsToRemove = new ArrayList<>();
                 for (DataRadioStation station : savedStations) {
-                    if (!station.refresh(httpClient, context) && !station.hasValidUuid() && station.RefreshRetryCount > DataRadioStation.MAX_REFRESH_RETRIES) {
+                    if (station.hasValidUuid()) {
+                        DataRadioStation refreshedStation = result.get(station.StationUuid);
+                        if (refreshedStation != null) {
+                            station.copyPropertiesFrom(refreshedStation);
+                            station.RefreshRetryCount = 0;
+                        } else if (Utils.hasAnyConnection(context)) {
+                            station.RefreshRetryCount++;
+                        }
+                    } else if (!station.refresh(httpClient, context) && !station.hasValidUuid() && station.RefreshRetryCount > DataRadioStation.MAX_REFRESH_RETRIES) {
+                        // Stations from old versions only have an id which can not be looked up in batches
                         stationsToRemove.add(station);
                     }
                 }
@@ -284,6 +447,7 @@ public class StationSaveManager extends Observable {
                 listStations.removeAll(stationsToRemove);
 
                 Save();
+                onStationsSaved();
 
                 notifyObservers();
 
@@ -293,36 +457,145 @@ public class StationSaveManager extends Observable {
         }.execute();
     }
 
+    /**
+     * Load the saved stations page by page in background, observers are notified for every page.
+     */
     void Load() {
         listStations.clear();
+        positions.clear();
 
-        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
-        String str = sharedPref.getString(getSaveId(), null);
-        if (str != null) {
-            List<DataRadioStation> arr = DataRadioStation.DecodeJson(str);
-            listStations.addAll(arr);
-            if (hasInvalidUuids() && Utils.hasAnyConnection(context)) {
-                refreshStationsFromServer();
+        final SavedStationLoad currentLoad = new SavedStationLoad();
+        load = currentLoad;
+        repository.load(new SavedStationRepository.LoadListener() {
+            @Override
+            public void onStationsLoaded(@NonNull List<DataRadioStation> stations, @NonNull List<Long> loadedPositions) {
+                if (load != currentLoad) {
+                    return;
+                }
+                currentLoad.merge(listStations, positions, stations, loadedPositions);
+                notifyObservers();
             }
+
+            @Override
+            public void onLoadFinished() {
+                if (load != currentLoad) {
+                    return;
+                }
+                finishLoading();
+            }
+        });
+    }
+
+    public boolean isLoading() {
+        return load != null;
+    }
+
+    /**
+     * Run callback on the main thread once the saved stations are loaded, at once if they are
+     * loaded already. Must be called on the main thread.
+     * <p>
+     * Lists are empty until then, e.g. when the service is started by a media button.
+     */
+    public void whenLoaded(@NonNull Runnable callback) {
+        if (load == null) {
+            callback.run();
         } else {
-            Log.w("SAVE", "Load() no stations to load");
+            loadedCallbacks.add(callback);
         }
     }
 
-    void Save() {
-        JSONArray arr = new JSONArray();
-        for (DataRadioStation station : listStations) {
-            arr.put(station.toJson());
+    private void runLoadedCallbacks() {
+        List<Runnable> callbacks = new ArrayList<>(loadedCallbacks);
+        loadedCallbacks.clear();
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+    }
+
+    private void finishLoading() {
+        final boolean changed = load.isChanged();
+        load = null;
+        if (changed) {
+            Save();
+        }
+
+        onStationsSaved();
+        notifyObservers();
+        runLoadedCallbacks();
+
+        if (hasInvalidUuids() && Utils.hasAnyConnection(context)) {
+            refreshStationsFromServer();
+        }
+    }
+
+    /**
+     * Write the station at position with a position between the ones of its neighbours. Only
+     * if there is no gap left the whole list is written again.
+     *
+     * @param stationChanged false if only the position of the station has to be written.
+     */
+    private void saveStationAt(int position, boolean stationChanged) {
+        if (load != null) {
+            load.onChanged();
+            return;
+        }
+
+        DataRadioStation station = listStations.get(position);
+        Long before = position > 0 ? positions.get(listStations.get(position - 1)) : null;
+        Long after = position < listStations.size() - 1 ? positions.get(listStations.get(position + 1)) : null;
+        long savedPosition = SavedStationPositions.between(before, after);
+        if (savedPosition == SavedStationPositions.NO_POSITION) {
+            Save();
+            return;
+        }
+
+        positions.put(station, savedPosition);
+        if (stationChanged) {
+            repository.put(station, savedPosition);
+        } else {
+            repository.setPosition(station, savedPosition);
+        }
+    }
+
+    private void deleteStations(List<DataRadioStation> stations) {
+        for (DataRadioStation station : stations) {
+            positions.remove(station);
+        }
+        if (load == null) {
+            repository.remove(stations);
         }
+    }
 
-        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
-        SharedPreferences.Editor editor = sharedPref.edit();
-        String str = arr.toString();
-        if (BuildConfig.DEBUG) {
-            Log.d("SAVE", "wrote: " + str);
+    /**
+     * Write the whole list again, e.g. after stations were changed in place.
+     */
+    void Save() {
+        if (load != null) {
+            load.onChanged();
+            return;
         }
-        editor.putString(getSaveId(), str);
-        editor.commit();
+
+        repository.replaceAll(listStations, positions.renumber(listStations));
+    }
+
+    /**
+     * Called on the main thread after the list was loaded or changed.
+     */
+    protected void onStationsSaved() {
+    }
+
+    /**
+     * Write changes which are still waiting for the write behind now, blocks until they are written.
+     */
+    public void flush() {
+        repository.flush();
+    }
+
+    /**
+     * Start writing changes which are still waiting for the write behind now, does not block.
+     */
+    public void flushInBackground() {
+        repository.flushInBackground();
     }
 
     public static String getSaveDir() {
@@ -36,28 +36,38 @@ import com.devnull.radio.players.selector.PlayerType;
 import com.devnull.radio.proxy.ProxySettings;
 import com.devnull.radio.service.ConnectivityChecker;
 import com.devnull.radio.service.PlayerServiceUtil;
+import com.devnull.radio.cache.ApiCachePolicy;
+import com.devnull.radio.cache.ApiResponseCache;
+import com.devnull.radio.catalog.StationCatalog;
 import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.StationJsonStreamDecoder;
+import com.devnull.radio.utils.HedgedCall;
+import com.devnull.radio.utils.SingleFlight;
+import com.devnull.radio.utils.TeeInputStream;
 import com.devnull.radio.utils.Tls12SocketFactory;
 
 import com.devnull.radio.R;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
+import java.nio.charset.Charset;
 import java.security.KeyStore;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.SSLContext;
@@ -80,6 +90,8 @@ import okhttp3.TlsVersion;
 public class Utils {
     private static int loadIcons = -1;
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     public static int parseIntWithDefault(String number, int defaultVal) {
         try {
             return Integer.parseInt(number);
@@ -88,142 +100,423 @@ public class Utils {
         }
     }
 
-    public static String getCacheFile(Context ctx, String theURI) {
-        StringBuilder chaine = new StringBuilder("");
-        try {
-            String aFileName = theURI.toLowerCase().replace("http://", "");
-            aFileName = aFileName.toLowerCase().replace("https://", "");
-            aFileName = sanitizeName(aFileName);
+    private static final ExecutorService revalidationExecutor = Executors.newFixedThreadPool(2, runnable -> new Thread(runnable, "ApiRevalidation"));
 
-            File file = new File(ctx.getCacheDir().getAbsolutePath() + "/" + aFileName);
-            Date lastModDate = new Date(file.lastModified());
+    // Concurrent identical api calls share one network request and one result
+    private static final SingleFlight<String, String> feedFlights = new SingleFlight<>();
+    private static final SingleFlight<String, List<DataRadioStation>> stationListFlights = new SingleFlight<>();
 
-            Date now = new Date();
-            long millis = now.getTime() - file.lastModified();
-            long secs = millis / 1000;
-            long mins = secs / 60;
-            long hours = mins / 60;
+    private static @Nullable
+    ApiResponseCache getApiResponseCache(@Nullable Context ctx) {
+        if (ctx == null) {
+            return null;
+        }
+        return ((RadioDroidApp) ctx.getApplicationContext()).getApiResponseCache();
+    }
 
-            if (BuildConfig.DEBUG) {
-                Log.d("UTIL", "File last modified : " + lastModDate.toString() + " secs=" + secs + "  mins=" + mins + " hours=" + hours);
-            }
+    private static @Nullable
+    StationCatalog getStationCatalog(@Nullable Context ctx) {
+        if (ctx == null) {
+            return null;
+        }
+        return ((RadioDroidApp) ctx.getApplicationContext()).getStationCatalog();
+    }
 
-            if (hours < 1) {
-                FileInputStream aStream = new FileInputStream(file);
-                BufferedReader rd = new BufferedReader(new InputStreamReader(aStream));
-                String line;
-                while ((line = rd.readLine()) != null) {
-                    chaine.append(line);
-                }
-                rd.close();
-                if (BuildConfig.DEBUG) {
-                    Log.d("UTIL", "used cache for:" + theURI);
-                }
-                return chaine.toString();
+    private static @Nullable
+    String encodeParams(@Nullable Map<String, String> dictParams) {
+        if (dictParams == null) {
+            return null;
+        }
+
+        Gson gson = new Gson();
+        return gson.toJson(dictParams);
+    }
+
+    private static Request buildFeedRequest(String theURI, @Nullable String jsonBody, @Nullable ApiResponseCache.Entry cachedEntry) {
+        HttpUrl url = HttpUrl.parse(theURI);
+        Request.Builder requestBuilder = new Request.Builder().url(url);
+
+        if (jsonBody != null) {
+            MediaType jsonMediaType = MediaType.parse("application/json; charset=utf-8");
+
+            okhttp3.RequestBody requestBody = RequestBody.create(jsonMediaType, jsonBody);
+
+            requestBuilder.post(requestBody);
+        } else {
+            requestBuilder.get();
+        }
+
+        if (cachedEntry != null) {
+            if (cachedEntry.getEtag() != null) {
+                requestBuilder.header("If-None-Match", cachedEntry.getEtag());
             }
-            if (BuildConfig.DEBUG) {
-                Log.d("UTIL", "do not use cache, because too old:" + theURI);
+            if (cachedEntry.getLastModified() != null) {
+                requestBuilder.header("If-Modified-Since", cachedEntry.getLastModified());
             }
-            return null;
-        } catch (Exception e) {
-            Log.e("UTIL", "getCacheFile() " + e);
         }
-        return null;
+
+        return requestBuilder.build();
     }
 
-    public static void writeFileCache(Context ctx, String theURI, String content) {
+    private static String downloadFeed(OkHttpClient httpClient, Context ctx, String theURI, boolean forceUpdate, Map<String, String> dictParams) {
+        Log.i("DOWN", "Url=" + theURI);
+
         try {
-            String aFileName = theURI.toLowerCase().replace("http://", "");
-            aFileName = aFileName.toLowerCase().replace("https://", "");
-            aFileName = sanitizeName(aFileName);
-
-            File f = new File(ctx.getCacheDir() + "/" + aFileName);
-            FileOutputStream aStream = new FileOutputStream(f);
-            aStream.write(content.getBytes("utf-8"));
-            aStream.close();
+            Request request = buildFeedRequest(theURI, encodeParams(dictParams), null);
+            okhttp3.Response response = httpClient.newCall(request).execute();
+
+            return response.body().string();
         } catch (Exception e) {
-            Log.e("UTIL", "writeFileCache() could not write to cache file for:" + theURI);
+            Log.e("UTIL", "downloadFeed() " + e);
         }
+
+        return null;
     }
 
-    private static String downloadFeed(OkHttpClient httpClient, Context ctx, String theURI, boolean forceUpdate, Map<String, String> dictParams) {
-        Log.i("DOWN", "Url=" + theURI);
-        if (!forceUpdate) {
-            String cache = getCacheFile(ctx, theURI);
-            if (cache != null) {
-                return cache;
-            }
+    /**
+     * Non-blocking on network: return cached response for relative uri if there is one which is
+     * fresh or not too stale. Stale responses are revalidated in background.
+     * Reads from disk, do not call on the main thread.
+     *
+     * @param listener gets the new response if a stale one was returned and it changed on revalidation, may be null.
+     * @return cached response or null if it has to be downloaded
+     */
+    public static @Nullable
+    String getCachedFeedRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, Map<String, String> dictParams,
+                                 @Nullable ApiResponseCache.RevalidationListener listener) {
+        ApiResponseCache cache = getApiResponseCache(ctx);
+        long freshness = ApiCachePolicy.getFreshness(theRelativeUri);
+        if (cache == null || freshness == ApiCachePolicy.NO_CACHE) {
+            return null;
         }
-        Log.i("DOWN", "Url=" + theURI + " (not cached)");
 
-        try {
-            HttpUrl url = HttpUrl.parse(theURI);
-            Request.Builder requestBuilder = new Request.Builder().url(url);
+        String jsonBody = encodeParams(dictParams);
+        String key = ApiResponseCache.key(jsonBody != null ? "POST" : "GET", theRelativeUri, jsonBody);
+        return readCachedFeed(httpClient, cache, key, theRelativeUri, jsonBody, freshness, listener);
+    }
 
-            if (dictParams != null) {
-                MediaType jsonMediaType = MediaType.parse("application/json; charset=utf-8");
+    /**
+     * Download relative uri from radio browser servers. The request is sent to the current server first,
+     * if it does not respond within its latency budget the same request is sent to the next server too.
+     * Whichever answers first is used, timings of all servers are recorded by the event listener
+     * of the http client, see {@link RadioBrowserServerManager#getEventListenerFactory()}.
+     * <p>
+     * Responses are cached according to {@link ApiCachePolicy}. Stale responses are returned
+     * immediately and revalidated in background, unless forceUpdate is set.
+     * Concurrent calls for the same request share a single download.
+     * <p>
+     * If the offline station catalog is ready and can answer the request it is used instead,
+     * unless forceUpdate is set.
+     */
+    public static String downloadFeedRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, boolean forceUpdate, Map<String, String> dictParams) {
+        StationCatalog catalog = getStationCatalog(ctx);
+        if (!forceUpdate && catalog != null) {
+            String local = catalog.queryFeed(theRelativeUri, dictParams);
+            if (local != null) {
+                return local;
+            }
+        }
 
-                Gson gson = new Gson();
-                String json = gson.toJson(dictParams);
+        ApiResponseCache cache = getApiResponseCache(ctx);
+        long freshness = cache != null ? ApiCachePolicy.getFreshness(theRelativeUri) : ApiCachePolicy.NO_CACHE;
 
-                okhttp3.RequestBody requestBody = RequestBody.create(jsonMediaType, json);
+        String jsonBody = encodeParams(dictParams);
+        String key = ApiResponseCache.key(jsonBody != null ? "POST" : "GET", theRelativeUri, jsonBody);
 
-                requestBuilder.post(requestBody);
-            } else {
-                requestBuilder.get();
+        if (!forceUpdate && freshness != ApiCachePolicy.NO_CACHE) {
+            String cached = readCachedFeed(httpClient, cache, key, theRelativeUri, jsonBody, freshness, null);
+            if (cached != null) {
+                return cached;
             }
+        }
 
-            Request request = requestBuilder.build();
-            okhttp3.Response response = httpClient.newCall(request).execute();
+        if (freshness == ApiCachePolicy.NO_CACHE) {
+            // Votes and clicks are not idempotent, never merge them
+            return fetchFeedRelative(httpClient, cache, key, theRelativeUri, jsonBody, false);
+        }
+
+        return feedFlights.execute(key, () -> fetchFeedRelative(httpClient, cache, key, theRelativeUri, jsonBody, true));
+    }
 
-            String responseStr = response.body().string();
+    private static @Nullable
+    String readCachedFeed(OkHttpClient httpClient, ApiResponseCache cache, String key, String theRelativeUri, @Nullable String jsonBody,
+                          long freshness, @Nullable ApiResponseCache.RevalidationListener listener) {
+        ApiResponseCache.Entry entry = cache.get(key);
+        if (entry == null) {
+            return null;
+        }
 
-            writeFileCache(ctx, theURI, responseStr);
+        final long now = System.currentTimeMillis();
+        if (entry.isFresh(now, freshness)) {
             if (BuildConfig.DEBUG) {
-                Log.d("UTIL", "wrote cache file for:" + theURI);
+                Log.d("UTIL", "used cache for:" + theRelativeUri);
             }
-            return responseStr;
-        } catch (Exception e) {
-            Log.e("UTIL", "downloadFeed() " + e);
+            return cache.read(entry);
+        }
+
+        if (entry.getAge(now) < ApiCachePolicy.MAX_STALE) {
+            String body = cache.read(entry);
+            if (body != null) {
+                if (BuildConfig.DEBUG) {
+                    Log.d("UTIL", "used stale cache for:" + theRelativeUri);
+                }
+                revalidateInBackground(httpClient, cache, key, entry, theRelativeUri, jsonBody, listener);
+            }
+            return body;
         }
 
         return null;
     }
 
-    public static String downloadFeedRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, boolean forceUpdate, Map<String, String> dictParams) {
-        // try current server for download
-        String currentServer = RadioBrowserServerManager.getCurrentServer();
-        if (currentServer == null) {
-            return null;
+    private static void revalidateInBackground(final OkHttpClient httpClient, final ApiResponseCache cache, final String key,
+                                               final ApiResponseCache.Entry entry, final String theRelativeUri, @Nullable final String jsonBody,
+                                               @Nullable ApiResponseCache.RevalidationListener listener) {
+        if (!cache.beginRevalidation(entry, listener)) {
+            return;
         }
 
-        String endpoint = RadioBrowserServerManager.constructEndpoint(currentServer, theRelativeUri);
-        String result = downloadFeed(httpClient, ctx, endpoint, forceUpdate, dictParams);
-        if (result != null) {
-            return result;
+        revalidationExecutor.execute(() -> {
+            try {
+                feedFlights.execute(key, () -> fetchFeedRelative(httpClient, cache, key, theRelativeUri, jsonBody, true));
+            } finally {
+                cache.finishRevalidation(key);
+            }
+        });
+    }
+
+    private static HedgedCall.Result executeRelative(OkHttpClient httpClient, String theRelativeUri, @Nullable String jsonBody,
+                                                     @Nullable ApiResponseCache.Entry cachedEntry) throws IOException {
+        final String[] servers = RadioBrowserServerManager.getServersByPreference();
+        if (servers.length == 0) {
+            throw new IOException("No radio browser servers available");
         }
 
-        // get a list of all servers
-        String[] serverList = RadioBrowserServerManager.getServerList(false);
+        Log.i("DOWN", "Url=" + RadioBrowserServerManager.constructEndpoint(servers[0], theRelativeUri));
 
-        // try all other servers for download
-        for (String newServer : serverList) {
-            if (newServer.equals(currentServer)) {
-                continue;
-            }
+        List<Request> requests = new ArrayList<>(servers.length);
+        for (String server : servers) {
+            requests.add(buildFeedRequest(RadioBrowserServerManager.constructEndpoint(server, theRelativeUri), jsonBody, cachedEntry));
+        }
 
-            endpoint = RadioBrowserServerManager.constructEndpoint(newServer, theRelativeUri);
-            result = downloadFeed(httpClient, ctx, endpoint, forceUpdate, dictParams);
-            if (result != null) {
-                // set the working server as new current server
-                RadioBrowserServerManager.setCurrentServer(newServer);
-                return result;
+        HedgedCall hedgedCall = new HedgedCall(httpClient, requests, index -> RadioBrowserServerManager.getHedgeDelay(servers[index]));
+        HedgedCall.Result result = hedgedCall.execute();
+        RadioBrowserServerManager.setCurrentServer(servers[result.index]);
+        return result;
+    }
+
+    private static @Nullable
+    String fetchFeedRelative(OkHttpClient httpClient, @Nullable ApiResponseCache cache, String key, String theRelativeUri,
+                             @Nullable String jsonBody, boolean useCache) {
+        ApiResponseCache.Entry cachedEntry = useCache ? cache.get(key) : null;
+
+        try {
+            HedgedCall.Result result = executeRelative(httpClient, theRelativeUri, jsonBody, cachedEntry);
+
+            try (okhttp3.Response response = result.response) {
+                if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    String cached = cachedEntry != null
+                            ? cache.readNotModified(cachedEntry, response.header("ETag"), response.header("Last-Modified")) : null;
+                    if (cached != null) {
+                        if (BuildConfig.DEBUG) {
+                            Log.d("UTIL", "revalidated cache for:" + theRelativeUri);
+                        }
+                        return cached;
+                    }
+
+                    // Cached copy is gone, ask again without validators
+                    return fetchFeedRelative(httpClient, cache, key, theRelativeUri, jsonBody, false);
+                }
+
+                String responseStr = response.body().string();
+                if (useCache) {
+                    cache.put(key, response.header("ETag"), response.header("Last-Modified"), responseStr);
+                }
+                return responseStr;
             }
+        } catch (Exception e) {
+            Log.e("UTIL", "downloadFeedRelative() " + e);
         }
 
         return null;
     }
 
+    /**
+     * Same as {@link #downloadFeedRelative(OkHttpClient, Context, String, boolean, Map)} for lists of stations,
+     * but stations are decoded while the response is read and handed to callback one by one.
+     * The response is never held in memory as a whole, its raw bytes are written to the cache as they arrive.
+     *
+     * @return number of stations handed to callback or -1 if the list could not be downloaded.
+     * Stations which were already handed to callback before a failure should be discarded.
+     */
+    public static int downloadStationsRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, boolean forceUpdate,
+                                               Map<String, String> dictParams, StationJsonStreamDecoder.StationCallback callback) {
+        return downloadStationsRelative(httpClient, ctx, theRelativeUri, forceUpdate, dictParams,
+                reader -> StationJsonStreamDecoder.decode(reader, callback), null);
+    }
+
+    /**
+     * Same as {@link #downloadStationsRelative(OkHttpClient, Context, String, boolean, Map, StationJsonStreamDecoder.StationCallback)},
+     * callback additionally gets the values of the requested fields which are not part of {@link DataRadioStation}.
+     */
+    public static int downloadStationsRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, boolean forceUpdate,
+                                               Map<String, String> dictParams, Set<String> extraFieldNames,
+                                               StationJsonStreamDecoder.ExtendedStationCallback callback) {
+        return downloadStationsRelative(httpClient, ctx, theRelativeUri, forceUpdate, dictParams,
+                reader -> StationJsonStreamDecoder.decode(reader, extraFieldNames, callback), null);
+    }
+
+    private interface StationsDecoder {
+        int decode(Reader reader) throws IOException;
+    }
+
+    /**
+     * @param reset called before stations of a download are decoded if a corrupt cached copy was partly
+     *              decoded already. If null the download fails instead, see {@link #downloadStationsRelative}.
+     */
+    private static int downloadStationsRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, boolean forceUpdate,
+                                                Map<String, String> dictParams, StationsDecoder decoder, @Nullable Runnable reset) {
+        ApiResponseCache cache = getApiResponseCache(ctx);
+        long freshness = cache != null ? ApiCachePolicy.getFreshness(theRelativeUri) : ApiCachePolicy.NO_CACHE;
+
+        String jsonBody = encodeParams(dictParams);
+        String key = ApiResponseCache.key(jsonBody != null ? "POST" : "GET", theRelativeUri, jsonBody);
+
+        if (!forceUpdate && freshness != ApiCachePolicy.NO_CACHE) {
+            ApiResponseCache.Entry entry = cache.get(key);
+            final long now = System.currentTimeMillis();
+            if (entry != null && entry.getAge(now) < ApiCachePolicy.MAX_STALE) {
+                InputStream cachedStream = cache.open(entry);
+                if (cachedStream != null) {
+                    try (Reader reader = new InputStreamReader(cachedStream, UTF8)) {
+                        int count = decoder.decode(reader);
+                        if (BuildConfig.DEBUG) {
+                            Log.d("UTIL", "used cache for:" + theRelativeUri);
+                        }
+                        if (!entry.isFresh(now, freshness)) {
+                            revalidateInBackground(httpClient, cache, key, entry, theRelativeUri, jsonBody, null);
+                        }
+                        return count;
+                    } catch (Exception e) {
+                        Log.e("UTIL", "downloadStationsRelative() corrupt cache entry " + e);
+                        cache.remove(key);
+                        if (reset == null) {
+                            return -1;
+                        }
+                        // Download it again instead
+                        reset.run();
+                    }
+                }
+            }
+        }
+
+        return fetchStationsRelative(httpClient, cache, key, theRelativeUri, jsonBody, freshness != ApiCachePolicy.NO_CACHE, decoder, reset);
+    }
+
+    /**
+     * Download and decode a list of stations, see {@link #downloadStationsRelative}.
+     * Answered by the offline station catalog if possible, see {@link #downloadFeedRelative}.
+     * Concurrent calls for the same request share a single download and decoded list,
+     * every caller gets its own copy of the list.
+     *
+     * @return stations or null if they could not be downloaded.
+     */
+    public static @Nullable
+    List<DataRadioStation> downloadStationListRelative(OkHttpClient httpClient, Context ctx, String theRelativeUri, boolean forceUpdate,
+                                                       Map<String, String> dictParams) {
+        StationCatalog catalog = getStationCatalog(ctx);
+        if (!forceUpdate && catalog != null) {
+            List<DataRadioStation> local = catalog.queryStations(theRelativeUri, dictParams);
+            if (local != null) {
+                return local;
+            }
+        }
+
+        String jsonBody = encodeParams(dictParams);
+        String key = ApiResponseCache.key(jsonBody != null ? "POST" : "GET", theRelativeUri, jsonBody) + (forceUpdate ? ":force" : "");
+
+        List<DataRadioStation> stations = stationListFlights.execute(key, () -> {
+            final List<DataRadioStation> list = new ArrayList<>();
+            int count = downloadStationsRelative(httpClient, ctx, theRelativeUri, forceUpdate, dictParams,
+                    reader -> StationJsonStreamDecoder.decode(reader, list::add), list::clear);
+            return count >= 0 ? list : null;
+        });
+
+        return stations != null ? new ArrayList<>(stations) : null;
+    }
+
+    private static int fetchStationsRelative(OkHttpClient httpClient, @Nullable ApiResponseCache cache, String key, String theRelativeUri,
+                                             @Nullable String jsonBody, boolean useCache, StationsDecoder decoder,
+                                             @Nullable Runnable reset) {
+        ApiResponseCache.Entry cachedEntry = useCache ? cache.get(key) : null;
+
+        try {
+            HedgedCall.Result result = executeRelative(httpClient, theRelativeUri, jsonBody, cachedEntry);
+
+            try (okhttp3.Response response = result.response) {
+                if (response.code() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    InputStream cachedStream = cachedEntry != null
+                            ? cache.openNotModified(cachedEntry, response.header("ETag"), response.header("Last-Modified")) : null;
+                    if (cachedStream != null) {
+                        try (Reader reader = new InputStreamReader(cachedStream, UTF8)) {
+                            return decoder.decode(reader);
+                        } catch (Exception e) {
+                            Log.e("UTIL", "downloadStationsRelative() corrupt cache entry " + e);
+                            cache.remove(key);
+                            if (reset == null) {
+                                return -1;
+                            }
+                            reset.run();
+                        }
+                    }
+
+                    // Cached copy is gone, ask again without validators
+                    return fetchStationsRelative(httpClient, cache, key, theRelativeUri, jsonBody, false, decoder, reset);
+                }
+
+                InputStream bodyStream = response.body().byteStream();
+
+                ApiResponseCache.Editor editor = null;
+                if (useCache) {
+                    try {
+                        editor = cache.edit(key);
+                    } catch (IOException e) {
+                        Log.w("UTIL", "Could not cache " + theRelativeUri + ": " + e);
+                    }
+                }
+
+                if (editor == null) {
+                    return decoder.decode(new InputStreamReader(bodyStream, UTF8));
+                }
+
+                TeeInputStream teeStream = new TeeInputStream(bodyStream, editor.getOutputStream());
+                int count;
+                try {
+                    count = decoder.decode(new InputStreamReader(teeStream, UTF8));
+                    // Decoder may stop before the end of the body, cache all of it
+                    teeStream.drain();
+                } catch (Exception e) {
+                    editor.abort();
+                    throw e;
+                }
+
+                if (teeStream.isCopyFailed()) {
+                    editor.abort();
+                } else {
+                    try {
+                        editor.commit(response.header("ETag"), response.header("Last-Modified"));
+                    } catch (IOException e) {
+                        Log.e("UTIL", "Could not cache " + theRelativeUri + ": " + e);
+                    }
+                }
+                return count;
+            }
+        } catch (Exception e) {
+            Log.e("UTIL", "downloadStationsRelative() " + e);
+        }
+
+        return -1;
+    }
+
     public static String getRealStationLink(OkHttpClient httpClient, Context ctx, String stationId) {
         Log.i("UTIL", "StationUUID:" + stationId);
         String result = Utils.downloadFeedRelative(httpClient, ctx, "json/url/" + stationId, true, null);
@@ -240,6 +533,27 @@ public class Utils {
         return null;
     }
 
+    /**
+     * Like {@link #getRealStationLink(OkHttpClient, Context, String)} but through the station
+     * details, which does not count a click for the station.
+     */
+    public static String getResolvedStationLink(OkHttpClient httpClient, Context ctx, String stationUuid) {
+        String result = Utils.downloadFeedRelative(httpClient, ctx, "json/stations/byuuid/" + stationUuid, false, null);
+        if (result != null) {
+            try {
+                JSONArray jsonArray = new JSONArray(result);
+                if (jsonArray.length() == 1) {
+                    JSONObject jsonObj = jsonArray.getJSONObject(0);
+                    String url = jsonObj.optString("url_resolved");
+                    return !url.isEmpty() ? url : jsonObj.optString("url", null);
+                }
+            } catch (Exception e) {
+                Log.e("UTIL", "getResolvedStationLink() " + e);
+            }
+        }
+        return null;
+    }
+
     @Deprecated
     public static DataRadioStation getStationById(OkHttpClient httpClient, Context ctx, String stationId) {
         Log.w("UTIL", "Search by id:" + stationId);
@@ -284,22 +598,16 @@ public class Utils {
         Log.d("UTIL", "Search by uuid for items");
         HashMap<String, String> p = new HashMap<String, String>();
         p.put("uuids", uuids);
-        String result = Utils.downloadFeedRelative(httpClient, ctx, "json/stations/byuuid", true, p);
-        if (result != null) {
-            try {
-                List<DataRadioStation> list = DataRadioStation.DecodeJson(result);
-                if (list != null) {
-                    return list;
-                }else{
-                    Log.e("UTIL", "stations by uuid was null");
-                }
-            } catch (Exception e) {
-                Log.e("UTIL", "getStationsByUuid() " + e);
-            }
+        List<DataRadioStation> list = Utils.downloadStationListRelative(httpClient, ctx, "json/stations/byuuid", true, p);
+        if (list == null) {
+            Log.e("UTIL", "getStationsByUuid() failed");
         }
-        return null;
+        return list;
     }
 
+    /**
+     * @return null as well while the history is still loading, see {@link StationSaveManager#whenLoaded(Runnable)}.
+     */
     public static @Nullable
     DataRadioStation getCurrentOrLastStation(@NonNull Context ctx) {
         DataRadioStation station = PlayerServiceUtil.getCurrentStation();
@@ -26,15 +26,13 @@ import androidx.preference.PreferenceManager;
 
 import com.devnull.radio.BuildConfig;
 import com.devnull.radio.IPlayerService;
+import com.devnull.radio.players.PlayableUrlCache;
 import com.devnull.radio.service.ConnectivityChecker;
 import com.devnull.radio.service.PlayerService;
 import com.devnull.radio.station.DataRadioStation;
 
 import com.devnull.radio.R;
 import com.devnull.radio.RadioDroidApp;
-import com.devnull.radio.Utils;
-
-import okhttp3.OkHttpClient;
 
 public class AlarmReceiver extends BroadcastReceiver {
     String url;
@@ -71,7 +69,7 @@ public class AlarmReceiver extends BroadcastReceiver {
             if (warnOnMetered && ConnectivityChecker.getCurrentConnectionType(radioDroidApp) == ConnectivityChecker.ConnectionType.METERED) {
                 PlaySystemAlarm(context);
             } else {
-                Play(context, station.StationUuid);
+                Play(context, station);
             }
         }else{
             toast = Toast.makeText(context, context.getResources().getText(R.string.alert_alarm_not_working), Toast.LENGTH_SHORT);
@@ -145,16 +143,16 @@ public class AlarmReceiver extends BroadcastReceiver {
 
     int timeout = 10;
 
-    private void Play(final Context context, final String stationId) {
+    private void Play(final Context context, final DataRadioStation station) {
         RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
-        final OkHttpClient httpClient = radioDroidApp.getHttpClient();
+        final PlayableUrlCache playableUrlCache = radioDroidApp.getPlayableUrlCache();
 
         new AsyncTask<Void, Void, String>() {
             @Override
             protected String doInBackground(Void... params) {
                 String result = null;
                 for (int i=0;i<20;i++){
-                    result = Utils.getRealStationLink(httpClient, context, stationId);
+                    result = playableUrlCache.resolveForPlaying(station);
                     if (result != null){
                         return result;
                     }
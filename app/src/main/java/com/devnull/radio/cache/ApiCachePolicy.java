@@ -0,0 +1,64 @@
+package com.devnull.radio.cache;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides for how long responses of the radio browser api endpoints stay fresh.
+ */
+public final class ApiCachePolicy {
+    public static final long NO_CACHE = 0;
+
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    /**
+     * Stale entries younger than this are shown immediately while they are revalidated in background.
+     */
+    public static final long MAX_STALE = 7 * DAY;
+
+    private ApiCachePolicy() {
+    }
+
+    /**
+     * @return time in milliseconds a response of the given relative url is considered fresh,
+     * {@link #NO_CACHE} if it should never be cached.
+     */
+    public static long getFreshness(@NonNull String relativeUrl) {
+        String path = relativeUrl;
+        int queryStart = path.indexOf('?');
+        if (queryStart >= 0) {
+            path = path.substring(0, queryStart);
+        }
+
+        // Per click and per vote calls have side effects and must always reach the server
+        if (path.startsWith("json/url/") || path.startsWith("json/vote/")) {
+            return NO_CACHE;
+        }
+
+        // Dump of all stations for the offline catalog, far larger than the cache
+        if (path.equals("json/stations")) {
+            return NO_CACHE;
+        }
+
+        if (path.startsWith("json/stations/lastclick") || path.startsWith("json/stations/lastchange")) {
+            return MINUTE;
+        }
+
+        if (path.startsWith("json/stats")) {
+            return 5 * MINUTE;
+        }
+
+        if (path.startsWith("json/tags") || path.startsWith("json/countries") || path.startsWith("json/countrycodes")
+                || path.startsWith("json/languages") || path.startsWith("json/states") || path.startsWith("json/codecs")) {
+            return 3 * DAY;
+        }
+
+        if (path.startsWith("json/stations/byuuid")) {
+            return 10 * MINUTE;
+        }
+
+        // Top lists and searches
+        return HOUR;
+    }
+}
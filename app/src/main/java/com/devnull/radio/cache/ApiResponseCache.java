@@ -0,0 +1,483 @@
+package com.devnull.radio.cache;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Disk cache for radio browser api responses, bounded by a byte budget with
+ * least recently used eviction.
+ * <p>
+ * Entries are keyed by method, relative path and request body, see {@link #key(String, String, String)},
+ * and remember validators (ETag and Last-Modified) so stale entries can be revalidated
+ * with a conditional request. How long an entry is fresh is decided by {@link ApiCachePolicy}.
+ * <p>
+ * Revalidations of stale entries which were already shown are tracked by the cache, see
+ * {@link #beginRevalidation(Entry, RevalidationListener)}, so whoever shows a stale body
+ * learns about a changed one.
+ */
+public class ApiResponseCache {
+    private static final String TAG = "ApiResponseCache";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    public static class Entry {
+        final String key;
+        long storedAt;
+        @Nullable
+        String etag;
+        @Nullable
+        String lastModified;
+        transient long size;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        public long getAge(long now) {
+            return now - storedAt;
+        }
+
+        public boolean isFresh(long now, long freshness) {
+            return getAge(now) < freshness;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+    }
+
+    public interface RevalidationListener {
+        /**
+         * The body of a stale entry changed while it was revalidated.
+         * Called on the thread which revalidated the entry.
+         */
+        void onRevalidated(@NonNull String body);
+    }
+
+    private static class Revalidation {
+        final Entry staleEntry;
+        final List<RevalidationListener> listeners = new ArrayList<>();
+
+        Revalidation(Entry staleEntry) {
+            this.staleEntry = staleEntry;
+        }
+    }
+
+    private final File directory;
+    private final long maxSize;
+
+    private final HashMap<String, Revalidation> revalidations = new HashMap<>();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+    private boolean initialized = false;
+
+    public ApiResponseCache(@NonNull File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    public static String key(@NonNull String method, @NonNull String path, @Nullable String body) {
+        String raw = method + " " + path + "\n" + (body != null ? body : "");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(raw.getBytes(UTF8));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+                builder.append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * @return entry metadata, or null if there is no such entry. Marks the entry as recently used.
+     */
+    public synchronized @Nullable
+    Entry get(@NonNull String key) {
+        initialize();
+        return entries.get(key);
+    }
+
+    /**
+     * @return cached body of the entry, or null if it could not be read.
+     */
+    public @Nullable
+    String read(@NonNull Entry entry) {
+        File bodyFile = bodyFile(entry.key);
+        try (Reader reader = new InputStreamReader(new FileInputStream(bodyFile), UTF8)) {
+            StringBuilder builder = new StringBuilder((int) entry.size);
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached body: " + e);
+            remove(entry.key);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a new body for an entry. The entry only becomes visible in the cache once
+     * {@link #commit(String, String)} is called, {@link #abort()} discards everything written.
+     */
+    public class Editor {
+        private final String key;
+        private final File tmpFile;
+        private final OutputStream outputStream;
+        private boolean done = false;
+
+        Editor(String key) throws IOException {
+            this.key = key;
+            this.tmpFile = new File(directory, key + BODY_SUFFIX + TMP_SUFFIX + "." + Thread.currentThread().getId());
+            this.outputStream = new BufferedOutputStream(new FileOutputStream(tmpFile));
+        }
+
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        public void commit(@Nullable String etag, @Nullable String lastModified) throws IOException {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            Entry entry = new Entry(key);
+            entry.storedAt = System.currentTimeMillis();
+            entry.etag = etag;
+            entry.lastModified = lastModified;
+
+            try {
+                outputStream.close();
+                entry.size = tmpFile.length();
+
+                synchronized (ApiResponseCache.this) {
+                    if (!tmpFile.renameTo(bodyFile(key))) {
+                        throw new IOException("Could not move " + tmpFile);
+                    }
+                    writeMeta(entry);
+
+                    Entry old = entries.put(key, entry);
+                    if (old != null) {
+                        size -= old.size;
+                    }
+                    size += entry.size;
+
+                    trimToSize();
+                }
+            } catch (IOException e) {
+                //noinspection ResultOfMethodCallIgnored
+                tmpFile.delete();
+                throw e;
+            }
+        }
+
+        public void abort() {
+            if (done) {
+                return;
+            }
+            done = true;
+
+            try {
+                outputStream.close();
+            } catch (IOException ignored) {
+            }
+            //noinspection ResultOfMethodCallIgnored
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Start writing a new body for the entry with given key.
+     */
+    public Editor edit(@NonNull String key) throws IOException {
+        synchronized (this) {
+            initialize();
+        }
+        return new Editor(key);
+    }
+
+    /**
+     * @return stream of the cached body, or null if it could not be opened.
+     */
+    public @Nullable
+    InputStream open(@NonNull Entry entry) {
+        try {
+            return new FileInputStream(bodyFile(entry.key));
+        } catch (IOException e) {
+            Log.w(TAG, "Could not open cached body: " + e);
+            remove(entry.key);
+            return null;
+        }
+    }
+
+    public void put(@NonNull String key, @Nullable String etag, @Nullable String lastModified, @NonNull String body) {
+        Editor editor = null;
+        try {
+            editor = edit(key);
+            editor.getOutputStream().write(body.getBytes(UTF8));
+            editor.commit(etag, lastModified);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not write cache entry: " + e);
+            if (editor != null) {
+                editor.abort();
+            }
+        }
+    }
+
+    /**
+     * Server confirmed that the cached body is still valid, restart its freshness.
+     */
+    public synchronized void markRevalidated(@NonNull String key, @Nullable String etag, @Nullable String lastModified) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+
+        entry.storedAt = System.currentTimeMillis();
+        if (etag != null) {
+            entry.etag = etag;
+        }
+        if (lastModified != null) {
+            entry.lastModified = lastModified;
+        }
+
+        try {
+            writeMeta(entry);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not update cache entry: " + e);
+        }
+    }
+
+    /**
+     * Server answered a conditional request for the entry with 304 Not Modified, restart its freshness.
+     *
+     * @return cached body, or null if it is gone and has to be requested again without validators.
+     */
+    public @Nullable
+    String readNotModified(@NonNull Entry entry, @Nullable String etag, @Nullable String lastModified) {
+        String body = read(entry);
+        if (body != null) {
+            markRevalidated(entry.key, etag, lastModified);
+        }
+        return body;
+    }
+
+    /**
+     * Same as {@link #readNotModified(Entry, String, String)} for streamed bodies.
+     */
+    public @Nullable
+    InputStream openNotModified(@NonNull Entry entry, @Nullable String etag, @Nullable String lastModified) {
+        InputStream stream = open(entry);
+        if (stream != null) {
+            markRevalidated(entry.key, etag, lastModified);
+        }
+        return stream;
+    }
+
+    /**
+     * A stale entry was handed out and is going to be revalidated.
+     *
+     * @param listener told about the new body if it changes, may be null.
+     * @return true if the caller has to revalidate the entry and call {@link #finishRevalidation(String)}
+     * afterwards, false if a revalidation of the entry is already running.
+     */
+    public synchronized boolean beginRevalidation(@NonNull Entry entry, @Nullable RevalidationListener listener) {
+        Revalidation revalidation = revalidations.get(entry.key);
+        boolean started = revalidation == null;
+        if (started) {
+            revalidation = new Revalidation(entry);
+            revalidations.put(entry.key, revalidation);
+        }
+        if (listener != null) {
+            revalidation.listeners.add(listener);
+        }
+        return started;
+    }
+
+    /**
+     * Revalidation of the entry with given key is done. If a new body was stored meanwhile
+     * it is handed to the listeners of the revalidation.
+     */
+    public void finishRevalidation(@NonNull String key) {
+        Revalidation revalidation;
+        Entry current;
+        synchronized (this) {
+            revalidation = revalidations.remove(key);
+            current = entries.get(key);
+        }
+
+        // A 304 keeps the entry, only a new body replaces it
+        if (revalidation == null || revalidation.listeners.isEmpty() || current == null || current == revalidation.staleEntry) {
+            return;
+        }
+
+        String body = read(current);
+        if (body == null) {
+            return;
+        }
+        for (RevalidationListener listener : revalidation.listeners) {
+            listener.onRevalidated(body);
+        }
+    }
+
+    public synchronized void remove(@NonNull String key) {
+        initialize();
+
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.size;
+        }
+        deleteFiles(key);
+    }
+
+    public synchronized void clear() {
+        initialize();
+
+        for (String key : new ArrayList<>(entries.keySet())) {
+            deleteFiles(key);
+        }
+        entries.clear();
+        size = 0;
+    }
+
+    public synchronized long size() {
+        initialize();
+        return size;
+    }
+
+    public long maxSize() {
+        return maxSize;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Entry eldest = iterator.next().getValue();
+            iterator.remove();
+            size -= eldest.size;
+            deleteFiles(eldest.key);
+            Log.d(TAG, "Evicted " + eldest.key);
+        }
+    }
+
+    /**
+     * Build the index from disk, least recently written entries first.
+     */
+    private void initialize() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create cache directory " + directory);
+            return;
+        }
+
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Gson gson = new Gson();
+        List<Entry> loaded = new ArrayList<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.contains(TMP_SUFFIX)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                continue;
+            }
+            if (!name.endsWith(META_SUFFIX)) {
+                continue;
+            }
+
+            String key = name.substring(0, name.length() - META_SUFFIX.length());
+            File bodyFile = bodyFile(key);
+            try (Reader reader = new InputStreamReader(new FileInputStream(file), UTF8)) {
+                Entry entry = gson.fromJson(reader, Entry.class);
+                if (entry == null || !key.equals(entry.key) || !bodyFile.exists()) {
+                    deleteFiles(key);
+                    continue;
+                }
+                entry.size = bodyFile.length();
+                loaded.add(entry);
+            } catch (Exception e) {
+                deleteFiles(key);
+            }
+        }
+
+        Collections.sort(loaded, (a, b) -> Long.compare(a.storedAt, b.storedAt));
+        for (Entry entry : loaded) {
+            entries.put(entry.key, entry);
+            size += entry.size;
+        }
+
+        trimToSize();
+    }
+
+    private void writeMeta(Entry entry) throws IOException {
+        File tmpFile = new File(directory, entry.key + META_SUFFIX + TMP_SUFFIX);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), UTF8)) {
+            new Gson().toJson(entry, writer);
+        }
+        if (!tmpFile.renameTo(new File(directory, entry.key + META_SUFFIX))) {
+            throw new IOException("Could not move " + tmpFile);
+        }
+    }
+
+    private File bodyFile(String key) {
+        return new File(directory, key + BODY_SUFFIX);
+    }
+
+    private void deleteFiles(String key) {
+        //noinspection ResultOfMethodCallIgnored
+        new File(directory, key + META_SUFFIX).delete();
+        //noinspection ResultOfMethodCallIgnored
+        bodyFile(key).delete();
+    }
+}
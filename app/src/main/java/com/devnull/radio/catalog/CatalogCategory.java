@@ -0,0 +1,19 @@
+package com.devnull.radio.catalog;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Name of a category with the number of stations in it, same fields as the
+ * category lists of the radio browser api.
+ */
+public class CatalogCategory {
+    @NonNull
+    public String name;
+
+    public int stationcount;
+
+    public CatalogCategory(@NonNull String name, int stationcount) {
+        this.name = name;
+        this.stationcount = stationcount;
+    }
+}
@@ -0,0 +1,14 @@
+package com.devnull.radio.catalog;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+
+public class CatalogChange {
+    @ColumnInfo(name = "station_uuid")
+    @NonNull
+    public String stationUuid = "";
+
+    @ColumnInfo(name = "change_uuid")
+    @NonNull
+    public String changeUuid = "";
+}
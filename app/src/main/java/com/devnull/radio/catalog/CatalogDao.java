@@ -0,0 +1,67 @@
+package com.devnull.radio.catalog;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.RawQuery;
+import androidx.room.Transaction;
+import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Dao
+public abstract class CatalogDao {
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    abstract List<Long> insertIfAbsent(List<CatalogStation> stations);
+
+    @Update
+    abstract void update(List<CatalogStation> stations);
+
+    /**
+     * Insert new stations and update known ones. REPLACE is not used because rows deleted by it
+     * do not fire the triggers which keep the full text index in sync.
+     */
+    @Transaction
+    public void upsert(List<CatalogStation> stations) {
+        List<Long> rowIds = insertIfAbsent(stations);
+
+        List<CatalogStation> existing = new ArrayList<>();
+        for (int i = 0; i < rowIds.size(); i++) {
+            if (rowIds.get(i) == -1) {
+                existing.add(stations.get(i));
+            }
+        }
+
+        if (!existing.isEmpty()) {
+            update(existing);
+        }
+    }
+
+    @Query("SELECT station_uuid, change_uuid FROM catalog_stations WHERE station_uuid IN (:stationUuids)")
+    public abstract List<CatalogChange> getChanges(List<String> stationUuids);
+
+    @Query("DELETE FROM catalog_stations WHERE sync_generation < :generation")
+    public abstract int deleteOlderGenerations(long generation);
+
+    @Query("DELETE FROM catalog_stations")
+    public abstract void deleteAll();
+
+    @Query("SELECT COUNT(*) FROM catalog_stations")
+    public abstract int count();
+
+    @RawQuery(observedEntities = CatalogStation.class)
+    public abstract List<CatalogStation> query(SupportSQLiteQuery query);
+
+    @Query("SELECT UPPER(country_code) AS name, COUNT(*) AS stationcount FROM catalog_stations " +
+            "WHERE country_code != '' AND (working OR :includeBroken) GROUP BY UPPER(country_code)")
+    public abstract List<CatalogCategory> countCountryCodes(boolean includeBroken);
+
+    @Query("SELECT tags FROM catalog_stations WHERE tags != '' AND (working OR :includeBroken)")
+    public abstract List<String> getTags(boolean includeBroken);
+
+    @Query("SELECT language FROM catalog_stations WHERE language != '' AND (working OR :includeBroken)")
+    public abstract List<String> getLanguages(boolean includeBroken);
+}
@@ -0,0 +1,33 @@
+package com.devnull.radio.catalog;
+
+import android.content.Context;
+
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+
+/**
+ * Kept apart from {@link com.devnull.radio.database.RadioDroidDatabase} because it is only a
+ * mirror of the server: it can be dropped and downloaded again at any time, and large
+ * syncs do not hold up writes of the track history.
+ */
+@Database(entities = {CatalogStation.class, CatalogStationFts.class}, version = 1)
+public abstract class CatalogDatabase extends RoomDatabase {
+    public abstract CatalogDao catalogDao();
+
+    private static volatile CatalogDatabase INSTANCE;
+
+    public static CatalogDatabase getDatabase(final Context context) {
+        if (INSTANCE == null) {
+            synchronized (CatalogDatabase.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
+                            CatalogDatabase.class, "station_catalog_database")
+                            .fallbackToDestructiveMigration()
+                            .build();
+                }
+            }
+        }
+        return INSTANCE;
+    }
+}
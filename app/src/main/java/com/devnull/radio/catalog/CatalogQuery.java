@@ -0,0 +1,314 @@
+package com.devnull.radio.catalog;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Translates relative urls of the radio browser api into queries of the offline catalog.
+ * Only endpoints which the catalog can answer as the server would are recognized.
+ */
+public class CatalogQuery {
+    public enum Type {
+        STATIONS,
+        TAGS,
+        COUNTRY_CODES,
+        LANGUAGES
+    }
+
+    enum Filter {
+        NONE,
+        NAME,
+        COUNTRY_CODE,
+        COUNTRY,
+        LANGUAGE,
+        TAG
+    }
+
+    private static final Map<String, String> ORDER_COLUMNS = new HashMap<>();
+
+    static {
+        ORDER_COLUMNS.put("name", "name");
+        ORDER_COLUMNS.put("votes", "votes");
+        ORDER_COLUMNS.put("clickcount", "click_count");
+        ORDER_COLUMNS.put("clicktrend", "click_trend");
+        ORDER_COLUMNS.put("bitrate", "bitrate");
+        ORDER_COLUMNS.put("country", "country");
+        ORDER_COLUMNS.put("language", "language");
+        ORDER_COLUMNS.put("codec", "codec");
+        ORDER_COLUMNS.put("lastchangetime", "last_change_time");
+    }
+
+    final Type type;
+    final Filter filter;
+    final String value;
+    final String orderColumn;
+    final boolean reverse;
+    final boolean hideBroken;
+    final int limit;
+    final int offset;
+
+    private CatalogQuery(Type type, Filter filter, String value, String orderColumn, boolean reverse, boolean hideBroken,
+                         int limit, int offset) {
+        this.type = type;
+        this.filter = filter;
+        this.value = value;
+        this.orderColumn = orderColumn;
+        this.reverse = reverse;
+        this.hideBroken = hideBroken;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public boolean isHideBroken() {
+        return hideBroken;
+    }
+
+    /**
+     * @param params parameters which are sent in the request body, they override those of the url
+     * @return query or null if the catalog cannot answer the url.
+     */
+    public static @Nullable
+    CatalogQuery parse(@NonNull String relativeUrl, @Nullable Map<String, String> params) {
+        String path = relativeUrl;
+        Map<String, String> allParams = new HashMap<>();
+
+        int queryStart = relativeUrl.indexOf('?');
+        if (queryStart >= 0) {
+            path = relativeUrl.substring(0, queryStart);
+            for (String pair : relativeUrl.substring(queryStart + 1).split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator > 0) {
+                    allParams.put(pair.substring(0, separator), decode(pair.substring(separator + 1)));
+                }
+            }
+        }
+        if (params != null) {
+            allParams.putAll(params);
+        }
+
+        final boolean hideBroken = "true".equals(allParams.get("hidebroken"));
+        final boolean reverse = "true".equals(allParams.get("reverse"));
+        String orderColumn = ORDER_COLUMNS.get(allParams.get("order"));
+        if (orderColumn == null) {
+            orderColumn = "name";
+        }
+        // Pages of search results
+        final int limit = parseLimit(allParams.get("limit"));
+        final int offset = parseLimit(allParams.get("offset"));
+
+        String[] segments = path.split("/");
+        if (segments.length < 2 || !"json".equals(segments[0])) {
+            return null;
+        }
+
+        if (segments.length == 2) {
+            switch (segments[1]) {
+                case "tags":
+                    return new CatalogQuery(Type.TAGS, Filter.NONE, null, null, false, hideBroken, 0, 0);
+                case "countrycodes":
+                    return new CatalogQuery(Type.COUNTRY_CODES, Filter.NONE, null, null, false, hideBroken, 0, 0);
+                case "languages":
+                    return new CatalogQuery(Type.LANGUAGES, Filter.NONE, null, null, false, hideBroken, 0, 0);
+                default:
+                    return null;
+            }
+        }
+
+        if (!"stations".equals(segments[1]) || segments.length != 4) {
+            return null;
+        }
+
+        final String value = decode(segments[3]);
+        switch (segments[2]) {
+            case "topclick":
+                return new CatalogQuery(Type.STATIONS, Filter.NONE, null, "click_count", true, hideBroken, parseLimit(value), 0);
+            case "topvote":
+                return new CatalogQuery(Type.STATIONS, Filter.NONE, null, "votes", true, hideBroken, parseLimit(value), 0);
+            case "lastchange":
+                return new CatalogQuery(Type.STATIONS, Filter.NONE, null, "last_change_time", true, hideBroken, parseLimit(value), 0);
+            case "byname":
+                return new CatalogQuery(Type.STATIONS, Filter.NAME, value, orderColumn, reverse, hideBroken, limit, offset);
+            case "bycountrycodeexact":
+                return new CatalogQuery(Type.STATIONS, Filter.COUNTRY_CODE, value, orderColumn, reverse, hideBroken, limit, offset);
+            case "bycountryexact":
+                return new CatalogQuery(Type.STATIONS, Filter.COUNTRY, value, orderColumn, reverse, hideBroken, limit, offset);
+            case "bylanguageexact":
+                return new CatalogQuery(Type.STATIONS, Filter.LANGUAGE, value, orderColumn, reverse, hideBroken, limit, offset);
+            case "bytagexact":
+                return new CatalogQuery(Type.STATIONS, Filter.TAG, value, orderColumn, reverse, hideBroken, limit, offset);
+            default:
+                // lastclick changes with every click, the catalog only learns about clicks on full syncs
+                return null;
+        }
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "utf-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    private static int parseLimit(String value) {
+        try {
+            return Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @return full text query which matches all words of text in column, null if text has no words.
+     */
+    static @Nullable
+    String toMatchExpression(@NonNull String column, @NonNull String text) {
+        StringBuilder expression = new StringBuilder();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            // Same as the simple tokenizer: everything besides ascii letters and digits separates
+            // words, other characters are part of words. Only ascii letters are case folded.
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            boolean wordChar = c > 127 || Character.isLetterOrDigit(c);
+            if (wordChar) {
+                word.append(c >= 'A' && c <= 'Z' ? (char) (c - 'A' + 'a') : c);
+            } else if (word.length() > 0) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append(column).append(':').append(word);
+                word.setLength(0);
+            }
+        }
+        return expression.length() > 0 ? expression.toString() : null;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * Sql for {@link Type#STATIONS} queries.
+     *
+     * @param args receives the arguments of the placeholders in order
+     */
+    @NonNull
+    String toSql(@NonNull List<Object> args) {
+        if (type != Type.STATIONS) {
+            throw new IllegalStateException("Not a station query: " + type);
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT catalog_stations.* FROM catalog_stations");
+        List<String> conditions = new ArrayList<>();
+
+        String match = null;
+        if (filter == Filter.TAG) {
+            // Narrow down with the index, exact comparison below
+            match = toMatchExpression("tags", value);
+        }
+
+        if (match != null) {
+            sql.append(" JOIN catalog_stations_fts ON catalog_stations.rowid = catalog_stations_fts.rowid");
+            conditions.add("catalog_stations_fts MATCH ?");
+            args.add(match);
+        }
+
+        switch (filter) {
+            case NAME:
+                // The server matches substrings, "fm" finds "RockFM". The full text index only
+                // knows words and prefixes of words, so it can not answer this.
+                conditions.add("catalog_stations.name LIKE ? ESCAPE '\\'");
+                args.add("%" + escapeLike(value) + "%");
+                break;
+            case COUNTRY_CODE:
+                conditions.add("catalog_stations.country_code = ? COLLATE NOCASE");
+                args.add(value);
+                break;
+            case COUNTRY:
+                conditions.add("catalog_stations.country = ? COLLATE NOCASE");
+                args.add(value);
+                break;
+            case LANGUAGE:
+                conditions.add("(',' || catalog_stations.language || ',') LIKE ? ESCAPE '\\'");
+                args.add("%," + escapeLike(value) + ",%");
+                break;
+            case TAG:
+                conditions.add("(',' || catalog_stations.tags || ',') LIKE ? ESCAPE '\\'");
+                args.add("%," + escapeLike(value) + ",%");
+                break;
+            default:
+                break;
+        }
+
+        if (hideBroken) {
+            conditions.add("catalog_stations.working = 1");
+        }
+
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+
+        sql.append(" ORDER BY catalog_stations.").append(orderColumn);
+        if ("name".equals(orderColumn)) {
+            sql.append(" COLLATE NOCASE");
+        }
+        sql.append(reverse ? " DESC" : " ASC");
+
+        if (limit > 0) {
+            sql.append(" LIMIT ").append(limit);
+        } else if (offset > 0) {
+            sql.append(" LIMIT -1");
+        }
+        if (offset > 0) {
+            sql.append(" OFFSET ").append(offset);
+        }
+
+        return sql.toString();
+    }
+
+    /**
+     * Count stations per value of comma separated lists, e.g. tags.
+     */
+    @NonNull
+    static List<CatalogCategory> countListValues(@NonNull List<String> lists) {
+        Map<String, int[]> counts = new HashMap<>();
+        Set<String> namesOfList = new HashSet<>();
+        for (String list : lists) {
+            namesOfList.clear();
+            for (String item : list.split(",")) {
+                String name = item.trim().toLowerCase(Locale.US);
+                if (name.isEmpty() || !namesOfList.add(name)) {
+                    continue;
+                }
+                int[] count = counts.get(name);
+                if (count == null) {
+                    counts.put(name, new int[]{1});
+                } else {
+                    count[0]++;
+                }
+            }
+        }
+
+        List<CatalogCategory> categories = new ArrayList<>(counts.size());
+        for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+            categories.add(new CatalogCategory(entry.getKey(), entry.getValue()[0]));
+        }
+        Collections.sort(categories, (a, b) -> a.name.compareTo(b.name));
+        return categories;
+    }
+}
@@ -0,0 +1,143 @@
+package com.devnull.radio.catalog;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import com.devnull.radio.station.DataRadioStation;
+
+@Entity(tableName = "catalog_stations",
+        indices = {@Index("click_count"), @Index("votes"), @Index("country_code"), @Index("last_change_time"),
+                @Index("sync_generation")})
+public class CatalogStation {
+
+    @PrimaryKey
+    @ColumnInfo(name = "station_uuid")
+    @NonNull
+    public String stationUuid = "";
+
+    @ColumnInfo(name = "change_uuid")
+    @NonNull
+    public String changeUuid = "";
+
+    @ColumnInfo(name = "name")
+    @NonNull
+    public String name = "";
+
+    @ColumnInfo(name = "url")
+    @NonNull
+    public String url = "";
+
+    @ColumnInfo(name = "homepage")
+    @NonNull
+    public String homepage = "";
+
+    @ColumnInfo(name = "favicon")
+    @NonNull
+    public String favicon = "";
+
+    @ColumnInfo(name = "tags")
+    @NonNull
+    public String tags = "";
+
+    @ColumnInfo(name = "country")
+    @NonNull
+    public String country = "";
+
+    @ColumnInfo(name = "country_code")
+    @NonNull
+    public String countryCode = "";
+
+    @ColumnInfo(name = "state")
+    @NonNull
+    public String state = "";
+
+    @ColumnInfo(name = "language")
+    @NonNull
+    public String language = "";
+
+    @ColumnInfo(name = "codec")
+    @NonNull
+    public String codec = "";
+
+    @ColumnInfo(name = "bitrate")
+    public int bitrate;
+
+    @ColumnInfo(name = "votes")
+    public int votes;
+
+    @ColumnInfo(name = "click_count")
+    public int clickCount;
+
+    @ColumnInfo(name = "click_trend")
+    public int clickTrend;
+
+    @ColumnInfo(name = "working")
+    public boolean working;
+
+    @ColumnInfo(name = "hls")
+    public boolean hls;
+
+    // As sent by the server, "yyyy-MM-dd HH:mm:ss" sorts chronologically
+    @ColumnInfo(name = "last_change_time")
+    @NonNull
+    public String lastChangeTime = "";
+
+    // Full syncs remove stations which were not written by them
+    @ColumnInfo(name = "sync_generation")
+    public long syncGeneration;
+
+    private static String nonNull(String value) {
+        return value != null ? value : "";
+    }
+
+    public static CatalogStation fromStation(@NonNull DataRadioStation station, @NonNull String lastChangeTime, long syncGeneration) {
+        CatalogStation catalogStation = new CatalogStation();
+        catalogStation.stationUuid = station.StationUuid;
+        catalogStation.changeUuid = nonNull(station.ChangeUuid);
+        catalogStation.name = nonNull(station.Name);
+        catalogStation.url = nonNull(station.StreamUrl);
+        catalogStation.homepage = nonNull(station.HomePageUrl);
+        catalogStation.favicon = nonNull(station.IconUrl);
+        catalogStation.tags = nonNull(station.TagsAll);
+        catalogStation.country = nonNull(station.Country);
+        catalogStation.countryCode = nonNull(station.CountryCode);
+        catalogStation.state = nonNull(station.State);
+        catalogStation.language = nonNull(station.Language);
+        catalogStation.codec = nonNull(station.Codec);
+        catalogStation.bitrate = station.Bitrate;
+        catalogStation.votes = station.Votes;
+        catalogStation.clickCount = station.ClickCount;
+        catalogStation.clickTrend = station.ClickTrend;
+        catalogStation.working = station.Working;
+        catalogStation.hls = station.Hls;
+        catalogStation.lastChangeTime = lastChangeTime;
+        catalogStation.syncGeneration = syncGeneration;
+        return catalogStation;
+    }
+
+    public DataRadioStation toStation() {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = stationUuid;
+        station.ChangeUuid = changeUuid;
+        station.Name = name;
+        station.StreamUrl = url;
+        station.HomePageUrl = homepage;
+        station.IconUrl = favicon;
+        station.TagsAll = tags;
+        station.Country = country;
+        station.CountryCode = countryCode;
+        station.State = state;
+        station.Language = language;
+        station.Codec = codec;
+        station.Bitrate = bitrate;
+        station.Votes = votes;
+        station.ClickCount = clickCount;
+        station.ClickTrend = clickTrend;
+        station.Working = working;
+        station.Hls = hls;
+        return station;
+    }
+}
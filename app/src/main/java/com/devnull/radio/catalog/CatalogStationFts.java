@@ -0,0 +1,20 @@
+package com.devnull.radio.catalog;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Fts4;
+
+/**
+ * Full text index over names and tags of {@link CatalogStation}, kept in sync by triggers
+ * which Room creates for external content tables.
+ */
+@Fts4(contentEntity = CatalogStation.class)
+@Entity(tableName = "catalog_stations_fts")
+public class CatalogStationFts {
+
+    @ColumnInfo(name = "name")
+    public String name;
+
+    @ColumnInfo(name = "tags")
+    public String tags;
+}
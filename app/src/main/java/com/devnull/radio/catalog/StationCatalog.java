@@ -0,0 +1,467 @@
+package com.devnull.radio.catalog;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.preference.PreferenceManager;
+import androidx.sqlite.db.SimpleSQLiteQuery;
+
+import com.devnull.radio.BuildConfig;
+import com.devnull.radio.RadioDroidApp;
+import com.devnull.radio.Utils;
+import com.devnull.radio.service.ConnectivityChecker;
+import com.devnull.radio.station.CompactStationList;
+import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.StationJsonStreamDecoder;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Optional mirror of all stations of the radio browser servers on the device.
+ * <p>
+ * The catalog is filled from the full station list over unmetered connections and then kept
+ * current with the list of lately changed stations, stations whose change uuid is known are skipped.
+ * Stations deleted on the server disappear with the next full sync.
+ * <p>
+ * Once filled, searches, browse tabs and categories are answered from the catalog,
+ * see {@link #queryFeed(String, Map)} and {@link #queryStations(String, Map)}.
+ */
+public class StationCatalog implements SharedPreferences.OnSharedPreferenceChangeListener {
+    private static final String TAG = "StationCatalog";
+
+    public static final String PREF_ENABLED = "offline_catalog";
+    private static final String PREF_LAST_FULL_SYNC = "catalog_last_full_sync";
+    private static final String PREF_LAST_SYNC = "catalog_last_sync";
+    private static final String PREF_GENERATION = "catalog_generation";
+    private static final String PREF_LAST_CHANGE_TIME = "catalog_last_change_time";
+    private static final String PREF_LAST_CHANGE_UUID = "catalog_last_change_uuid";
+
+    private static final long HOUR = 60 * 60 * 1000;
+    static final long FULL_SYNC_INTERVAL = 7 * 24 * HOUR;
+    static final long INCREMENTAL_SYNC_INTERVAL = HOUR;
+    static final int INCREMENTAL_SYNC_LIMIT = 1000;
+    static final int BATCH_SIZE = 500;
+
+    static final String FIELD_LAST_CHANGE_TIME = "lastchangetime";
+    static final Set<String> EXTRA_FIELDS = Collections.singleton(FIELD_LAST_CHANGE_TIME);
+
+    private enum SyncResult {
+        DONE,
+        // More stations changed than the incremental sync can fetch
+        GAP,
+        FAILED
+    }
+
+    /**
+     * Writes decoded stations to the catalog in batches.
+     */
+    static class BatchWriter implements StationJsonStreamDecoder.ExtendedStationCallback {
+        private final CatalogDao dao;
+        private final long generation;
+        private final List<CatalogStation> batch = new ArrayList<>(BATCH_SIZE);
+
+        String newestChangeTime = "";
+        String newestChangeUuid = "";
+        int written = 0;
+
+        BatchWriter(@NonNull CatalogDao dao, long generation) {
+            this.dao = dao;
+            this.generation = generation;
+        }
+
+        @Override
+        public void onStation(@NonNull DataRadioStation station, @NonNull Map<String, String> extraFields) {
+            if (!station.hasValidUuid()) {
+                return;
+            }
+
+            String changeTime = extraFields.get(FIELD_LAST_CHANGE_TIME);
+            if (changeTime == null) {
+                changeTime = "";
+            }
+            if (changeTime.compareTo(newestChangeTime) > 0) {
+                newestChangeTime = changeTime;
+                newestChangeUuid = station.ChangeUuid;
+            }
+
+            add(CatalogStation.fromStation(station, changeTime, generation));
+        }
+
+        void add(CatalogStation station) {
+            batch.add(station);
+            if (batch.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!batch.isEmpty()) {
+                dao.upsert(batch);
+                written += batch.size();
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Where the stations of syncs come from, see {@link Utils#downloadStationsRelative}.
+     */
+    interface StationSource {
+        /**
+         * @return number of stations handed to callback or -1 if the list could not be downloaded.
+         */
+        int download(@NonNull String relativeUrl, @NonNull StationJsonStreamDecoder.ExtendedStationCallback callback);
+    }
+
+    @Nullable
+    private final RadioDroidApp radioDroidApp;
+    private final SharedPreferences sharedPref;
+    @Nullable
+    private final CatalogDao dao;
+    private final StationSource stationSource;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StationCatalog");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final Map<String, List<CatalogCategory>> categories = new HashMap<>();
+    private volatile long version = 0;
+
+    public StationCatalog(@NonNull RadioDroidApp radioDroidApp) {
+        this.radioDroidApp = radioDroidApp;
+        this.sharedPref = PreferenceManager.getDefaultSharedPreferences(radioDroidApp);
+        this.dao = null;
+        this.stationSource = (relativeUrl, callback) -> Utils.downloadStationsRelative(radioDroidApp.getHttpClient(), radioDroidApp,
+                relativeUrl, true, null, EXTRA_FIELDS, callback);
+        sharedPref.registerOnSharedPreferenceChangeListener(this);
+    }
+
+    StationCatalog(@NonNull SharedPreferences sharedPref, @NonNull CatalogDao dao, @NonNull StationSource stationSource) {
+        this.radioDroidApp = null;
+        this.sharedPref = sharedPref;
+        this.dao = dao;
+        this.stationSource = stationSource;
+    }
+
+    private CatalogDao getDao() {
+        return dao != null ? dao : CatalogDatabase.getDatabase(radioDroidApp).catalogDao();
+    }
+
+    public boolean isEnabled() {
+        return sharedPref.getBoolean(PREF_ENABLED, false);
+    }
+
+    /**
+     * @return true if the catalog is enabled and has been filled at least once.
+     */
+    public boolean isReady() {
+        return isEnabled() && sharedPref.getLong(PREF_LAST_FULL_SYNC, 0) > 0;
+    }
+
+    @Override
+    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        if (!PREF_ENABLED.equals(key)) {
+            return;
+        }
+
+        if (isEnabled()) {
+            syncIfNeeded();
+        } else {
+            executor.execute(this::clear);
+        }
+    }
+
+    /**
+     * Sync in background if the catalog is enabled and a sync is due.
+     */
+    public void syncIfNeeded() {
+        if (isEnabled()) {
+            executor.execute(this::sync);
+        }
+    }
+
+    @WorkerThread
+    private void sync() {
+        if (!isEnabled() || !Utils.hasAnyConnection(radioDroidApp)) {
+            return;
+        }
+
+        final boolean unmetered = ConnectivityChecker.getCurrentConnectionType(radioDroidApp) == ConnectivityChecker.ConnectionType.NOT_METERED;
+        sync(System.currentTimeMillis(), unmetered);
+    }
+
+    /**
+     * Run the sync which is due at now, full syncs only happen over unmetered connections.
+     */
+    @WorkerThread
+    void sync(long now, boolean unmetered) {
+        final long lastFullSync = sharedPref.getLong(PREF_LAST_FULL_SYNC, 0);
+
+        if (now - lastFullSync > FULL_SYNC_INTERVAL && unmetered) {
+            fullSync(now);
+            return;
+        }
+
+        if (lastFullSync > 0 && now - sharedPref.getLong(PREF_LAST_SYNC, 0) > INCREMENTAL_SYNC_INTERVAL) {
+            if (incrementalSync(now) == SyncResult.GAP && unmetered) {
+                fullSync(now);
+            }
+        }
+    }
+
+    @WorkerThread
+    private SyncResult fullSync(long now) {
+        final long startTime = System.currentTimeMillis();
+        final long generation = sharedPref.getLong(PREF_GENERATION, 0) + 1;
+        final CatalogDao dao = getDao();
+
+        BatchWriter writer = new BatchWriter(dao, generation);
+        int count = stationSource.download("json/stations", writer);
+        if (count < 0) {
+            // Stations written so far are newer than what they replaced, keep them
+            writer.flush();
+            Log.e(TAG, "Full sync failed");
+            return SyncResult.FAILED;
+        }
+        writer.flush();
+
+        int deleted = dao.deleteOlderGenerations(generation);
+        invalidateCategories();
+
+        sharedPref.edit()
+                .putLong(PREF_GENERATION, generation)
+                .putLong(PREF_LAST_FULL_SYNC, now)
+                .putLong(PREF_LAST_SYNC, now)
+                .putString(PREF_LAST_CHANGE_TIME, writer.newestChangeTime)
+                .putString(PREF_LAST_CHANGE_UUID, writer.newestChangeUuid)
+                .apply();
+
+        Log.i(TAG, "Full sync of " + writer.written + " stations, " + deleted + " deleted, took "
+                + (System.currentTimeMillis() - startTime) + "ms");
+        return SyncResult.DONE;
+    }
+
+    @WorkerThread
+    private SyncResult incrementalSync(long now) {
+        final long startTime = System.currentTimeMillis();
+        final long generation = sharedPref.getLong(PREF_GENERATION, 0);
+        final String lastChangeTime = sharedPref.getString(PREF_LAST_CHANGE_TIME, "");
+        final CatalogDao dao = getDao();
+
+        final List<CatalogStation> changed = new ArrayList<>();
+        int count = stationSource.download("json/stations/lastchange/" + INCREMENTAL_SYNC_LIMIT, (station, extraFields) -> {
+            String changeTime = extraFields.get(FIELD_LAST_CHANGE_TIME);
+            if (station.hasValidUuid() && changeTime != null) {
+                changed.add(CatalogStation.fromStation(station, changeTime, generation));
+            }
+        });
+        if (count < 0) {
+            Log.e(TAG, "Incremental sync failed");
+            return SyncResult.FAILED;
+        }
+
+        // Newest changes first, if the oldest one is still newer than the catalog some are missing
+        String oldestChangeTime = changed.isEmpty() ? "" : changed.get(changed.size() - 1).lastChangeTime;
+        final boolean complete = count < INCREMENTAL_SYNC_LIMIT || oldestChangeTime.compareTo(lastChangeTime) <= 0;
+
+        BatchWriter writer = new BatchWriter(dao, generation);
+        writer.newestChangeTime = lastChangeTime;
+        for (int start = 0; start < changed.size(); start += BATCH_SIZE) {
+            List<CatalogStation> chunk = changed.subList(start, Math.min(changed.size(), start + BATCH_SIZE));
+
+            List<String> uuids = new ArrayList<>(chunk.size());
+            for (CatalogStation station : chunk) {
+                uuids.add(station.stationUuid);
+            }
+            Map<String, String> knownChanges = new HashMap<>();
+            for (CatalogChange change : dao.getChanges(uuids)) {
+                knownChanges.put(change.stationUuid, change.changeUuid);
+            }
+
+            for (CatalogStation station : chunk) {
+                if (station.lastChangeTime.compareTo(writer.newestChangeTime) > 0) {
+                    writer.newestChangeTime = station.lastChangeTime;
+                    writer.newestChangeUuid = station.changeUuid;
+                }
+                if (!station.changeUuid.equals(knownChanges.get(station.stationUuid))) {
+                    writer.add(station);
+                }
+            }
+        }
+        writer.flush();
+
+        if (writer.written > 0) {
+            invalidateCategories();
+        }
+
+        SharedPreferences.Editor editor = sharedPref.edit().putLong(PREF_LAST_SYNC, now);
+        if (complete) {
+            editor.putString(PREF_LAST_CHANGE_TIME, writer.newestChangeTime);
+            if (!writer.newestChangeUuid.isEmpty()) {
+                editor.putString(PREF_LAST_CHANGE_UUID, writer.newestChangeUuid);
+            }
+        }
+        editor.apply();
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Incremental sync of " + writer.written + " stations, took " + (System.currentTimeMillis() - startTime) + "ms");
+        }
+        return complete ? SyncResult.DONE : SyncResult.GAP;
+    }
+
+    @WorkerThread
+    private void clear() {
+        getDao().deleteAll();
+        invalidateCategories();
+        sharedPref.edit()
+                .remove(PREF_LAST_FULL_SYNC)
+                .remove(PREF_LAST_SYNC)
+                .remove(PREF_LAST_CHANGE_TIME)
+                .remove(PREF_LAST_CHANGE_UUID)
+                .apply();
+    }
+
+    private void invalidateCategories() {
+        synchronized (categories) {
+            categories.clear();
+        }
+        version++;
+    }
+
+    /**
+     * Changes whenever stations in the catalog were added, changed or removed. Results derived
+     * from the catalog are outdated if the version differs from the one they were created with.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private List<DataRadioStation> queryStations(CatalogQuery query) {
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(args);
+
+        List<CatalogStation> catalogStations = getDao().query(new SimpleSQLiteQuery(sql, args.toArray()));
+        List<DataRadioStation> stations = new ArrayList<>(catalogStations.size());
+        for (CatalogStation catalogStation : catalogStations) {
+            stations.add(catalogStation.toStation());
+        }
+        return stations.size() >= CompactStationList.LARGE_LIST_SIZE ? CompactStationList.of(stations) : stations;
+    }
+
+    private List<CatalogCategory> queryCategories(CatalogQuery query) {
+        final String key = query.getType() + ":" + query.isHideBroken();
+        synchronized (categories) {
+            List<CatalogCategory> cached = categories.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final boolean includeBroken = !query.isHideBroken();
+        List<CatalogCategory> result;
+        switch (query.getType()) {
+            case TAGS:
+                result = CatalogQuery.countListValues(getDao().getTags(includeBroken));
+                break;
+            case LANGUAGES:
+                result = CatalogQuery.countListValues(getDao().getLanguages(includeBroken));
+                break;
+            case COUNTRY_CODES:
+                result = getDao().countCountryCodes(includeBroken);
+                break;
+            default:
+                throw new IllegalArgumentException("Not a category query: " + query.getType());
+        }
+
+        synchronized (categories) {
+            categories.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Blocking: answer a request of the radio browser api from the catalog.
+     *
+     * @return json as the server would send it or null if the catalog is not ready
+     * or cannot answer the request.
+     */
+    @WorkerThread
+    public @Nullable
+    String queryFeed(@NonNull String relativeUrl, @Nullable Map<String, String> params) {
+        if (!isReady()) {
+            return null;
+        }
+
+        CatalogQuery query = CatalogQuery.parse(relativeUrl, params);
+        if (query == null) {
+            return null;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        try {
+            JSONArray jsonArray = new JSONArray();
+            if (query.getType() == CatalogQuery.Type.STATIONS) {
+                for (DataRadioStation station : queryStations(query)) {
+                    jsonArray.put(station.toJson());
+                }
+            } else {
+                for (CatalogCategory category : queryCategories(query)) {
+                    JSONObject jsonObject = new JSONObject();
+                    jsonObject.put("name", category.name);
+                    jsonObject.put("stationcount", category.stationcount);
+                    jsonArray.put(jsonObject);
+                }
+            }
+
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Answered " + relativeUrl + " in " + (System.currentTimeMillis() - startTime) + "ms");
+            }
+            return jsonArray.toString();
+        } catch (JSONException | RuntimeException e) {
+            Log.e(TAG, "queryFeed() " + e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Blocking: answer a request for a list of stations from the catalog.
+     *
+     * @return stations or null if the catalog is not ready or cannot answer the request.
+     */
+    @WorkerThread
+    public @Nullable
+    List<DataRadioStation> queryStations(@NonNull String relativeUrl, @Nullable Map<String, String> params) {
+        if (!isReady()) {
+            return null;
+        }
+
+        CatalogQuery query = CatalogQuery.parse(relativeUrl, params);
+        if (query == null || query.getType() != CatalogQuery.Type.STATIONS) {
+            return null;
+        }
+
+        try {
+            return queryStations(query);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "queryStations() " + e);
+        }
+
+        return null;
+    }
+}
@@ -7,21 +7,26 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.devnull.radio.history.TrackHistoryDao;
 import com.devnull.radio.history.TrackHistoryEntry;
+import com.devnull.radio.saved.SavedStationDao;
+import com.devnull.radio.saved.SavedStationEntry;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
 import static com.devnull.radio.history.TrackHistoryEntry.MAX_UNKNOWN_TRACK_DURATION;
 
-@Database(entities = {TrackHistoryEntry.class}, version = 1)
+@Database(entities = {TrackHistoryEntry.class, SavedStationEntry.class}, version = 2)
 @TypeConverters({Converters.class})
 public abstract class RadioDroidDatabase extends RoomDatabase {
     public abstract TrackHistoryDao songHistoryDao();
 
+    public abstract SavedStationDao savedStationDao();
+
     private static volatile RadioDroidDatabase INSTANCE;
 
     private Executor queryExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "RadioDroidDatabase Executor"));
@@ -33,7 +38,8 @@ public abstract class RadioDroidDatabase extends RoomDatabase {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             RadioDroidDatabase.class, "radio_droid_database")
                             .addCallback(CALLBACK)
-                            .fallbackToDestructiveMigration()
+                            // Favourites only live here, a missing migration must not drop them
+                            .addMigrations(MIGRATION_1_2)
                             .build();
                 }
             }
@@ -45,6 +51,16 @@ public abstract class RadioDroidDatabase extends RoomDatabase {
         return queryExecutor;
     }
 
+    // Favourites and history used to be saved in the preferences, they are imported on first load
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `saved_stations` (`list_id` TEXT NOT NULL, `station_key` TEXT NOT NULL, "
+                    + "`position` INTEGER NOT NULL, `station_json` TEXT NOT NULL, PRIMARY KEY(`list_id`, `station_key`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_saved_stations_list_id_position` ON `saved_stations` (`list_id`, `position`)");
+        }
+    };
+
     private static RoomDatabase.Callback CALLBACK = new RoomDatabase.Callback() {
         @Override
         public void onCreate(@NonNull SupportSQLiteDatabase db) {
@@ -22,7 +22,6 @@ import com.devnull.radio.FavouriteManager;
 import com.devnull.radio.HistoryManager;
 import com.devnull.radio.R;
 import com.devnull.radio.RadioDroidApp;
-import com.devnull.radio.Utils;
 
 import java.lang.ref.WeakReference;
 
@@ -45,6 +44,9 @@ public class PlayStationTask extends AsyncTask<Void, Void, String> {
     private DataRadioStation stationToPlay;
     private WeakReference<Context> contextWeakReference;
 
+    private boolean streamUrlAllowed;
+    private volatile boolean unverifiedUrl;
+
     public PlayStationTask(@NonNull DataRadioStation stationToPlay, @NonNull Context ctx,
                            @NonNull PlayFunc playFunc, @Nullable PostExecuteTask postExecuteTask) {
         this.stationToPlay = stationToPlay;
@@ -71,6 +73,23 @@ public class PlayStationTask extends AsyncTask<Void, Void, String> {
         return new PlayStationTask(stationToPlay, ctx, url -> castHandler.playRemote(stationToPlay.Name, url, stationToPlay.IconUrl), null);
     }
 
+    /**
+     * Start from the stream url of the station if it can be played as it is and no resolved url
+     * is cached, instead of waiting for the api. Only for players which report when the url
+     * fails, so it can be resolved and played again.
+     */
+    public void setStreamUrlAllowed(boolean streamUrlAllowed) {
+        this.streamUrlAllowed = streamUrlAllowed;
+    }
+
+    /**
+     * @return true if the url was not resolved by the api just now but taken from the cache or
+     * the stream url of the station.
+     */
+    public boolean isUnverifiedUrl() {
+        return unverifiedUrl;
+    }
+
     @Override
     protected void onPreExecute() {
         super.onPreExecute();
@@ -116,7 +135,21 @@ public class PlayStationTask extends AsyncTask<Void, Void, String> {
                 return null;
             }
 
-            return Utils.getRealStationLink(radioDroidApp.getHttpClient(), ctx.getApplicationContext(), stationToPlay.StationUuid);
+            PlayableUrlCache playableUrlCache = radioDroidApp.getPlayableUrlCache();
+
+            String url = playableUrlCache.get(stationToPlay);
+            if (url == null && streamUrlAllowed && PlayableUrlCache.isDirectStreamUrl(stationToPlay.StreamUrl)) {
+                url = stationToPlay.StreamUrl;
+            }
+
+            if (url != null) {
+                // The click is counted while the stream connects
+                unverifiedUrl = true;
+                playableUrlCache.reportClick(stationToPlay);
+                return url;
+            }
+
+            return playableUrlCache.resolve(stationToPlay);
         } else {
             return null;
         }
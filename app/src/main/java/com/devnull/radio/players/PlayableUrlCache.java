@@ -0,0 +1,331 @@
+package com.devnull.radio.players;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Playable urls of stations as resolved by the radio browser api (json/url), which also counts
+ * a click for the station.
+ * <p>
+ * Urls are kept per StationUuid for {@link #TTL} and only as long as the ChangeUuid of the
+ * station is the same, so playing a station again does not wait for the api. The click is then
+ * counted in background instead, see {@link #reportClick(DataRadioStation)}.
+ * <p>
+ * A url which is resolved again after it could not be played does not count another click if
+ * one was counted recently or is being counted.
+ */
+public class PlayableUrlCache {
+    private static final String TAG = "PlayableUrlCache";
+
+    // Stream urls of stations change rarely
+    static final long TTL = 30 * 60 * 1000;
+
+    // Resolving the url counted a click already
+    static final long MIN_CLICK_INTERVAL = 60 * 1000;
+
+    static final int MAX_ENTRIES = 100;
+
+    // Playlists have to be resolved by the api before they can be played
+    private static final String[] PLAYLIST_EXTENSIONS = {".pls", ".m3u", ".asx", ".xspf", ".ram", ".wax"};
+
+    public interface UrlResolver {
+        /**
+         * Called in background.
+         *
+         * @return playable url of the station with uuid or null.
+         */
+        @Nullable
+        String resolve(@NonNull String stationUuid);
+    }
+
+    private static final class Entry {
+        // Null after the url could not be played, the entry keeps the time of the click then
+        @Nullable
+        final String url;
+        final String changeUuid;
+        final long time;
+        // When resolving the url counted a click, 0 if it did not
+        final long clickTime;
+
+        Entry(String url, String changeUuid, long time, long clickTime) {
+            this.url = url;
+            this.changeUuid = changeUuid;
+            this.time = time;
+            this.clickTime = clickTime;
+        }
+    }
+
+    /**
+     * Counts a click in background, its url is used by {@link #resolve} instead of counting
+     * another one.
+     */
+    private final class ClickReport extends FutureTask<String> {
+        final DataRadioStation station;
+        // The url was resolved for an entry which was invalidated since, guarded by entries
+        boolean invalidated;
+
+        ClickReport(DataRadioStation station) {
+            super(() -> {
+                final Entry entry = getEntry(station, TTL);
+                if (entry != null && System.currentTimeMillis() - entry.clickTime <= MIN_CLICK_INTERVAL) {
+                    return null;
+                }
+
+                final String url = urlResolver.resolve(station.StationUuid);
+                if (url == null) {
+                    Log.d(TAG, "Could not report click of " + station.StationUuid);
+                }
+                return url;
+            });
+            this.station = station;
+        }
+
+        @Override
+        protected void done() {
+            String url = null;
+            if (!isCancelled()) {
+                try {
+                    url = get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.d(TAG, "Could not report click of " + station.StationUuid + ": " + e);
+                }
+            }
+
+            synchronized (entries) {
+                if (clickReports.get(station.StationUuid) == this) {
+                    clickReports.remove(station.StationUuid);
+                }
+                // The cached url is refreshed on the way, only the click is kept if it could not be played
+                if (url != null) {
+                    put(station, invalidated ? null : url, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+
+    private final UrlResolver urlResolver;
+    private final UrlResolver urlLookup;
+    private final Executor clickExecutor;
+
+    // Guarded by itself
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    // Click reports which did not finish yet by StationUuid, guarded by entries
+    private final Map<String, ClickReport> clickReports = new HashMap<>();
+
+    /**
+     * @param urlResolver   resolves urls and counts a click.
+     * @param urlLookup     resolves urls without counting a click.
+     * @param clickExecutor reports clicks of stations which were played from the cache.
+     */
+    public PlayableUrlCache(@NonNull UrlResolver urlResolver, @NonNull UrlResolver urlLookup, @NonNull Executor clickExecutor) {
+        this.urlResolver = urlResolver;
+        this.urlLookup = urlLookup;
+        this.clickExecutor = clickExecutor;
+    }
+
+    /**
+     * @return playable url of the station which was resolved recently or null.
+     */
+    public @Nullable
+    String get(@NonNull DataRadioStation station) {
+        final Entry entry = getEntry(station, TTL);
+        return entry != null ? entry.url : null;
+    }
+
+    /**
+     * Blocks until the url is resolved unless it is cached.
+     *
+     * @return playable url of the station or null.
+     */
+    public @Nullable
+    String resolve(@NonNull DataRadioStation station) {
+        final String cached = get(station);
+        if (cached != null) {
+            return cached;
+        }
+
+        final String reported = awaitClickReport(station);
+        if (reported != null) {
+            return reported;
+        }
+
+        final Entry entry = getEntry(station, TTL);
+        final boolean clickCounted = entry != null && System.currentTimeMillis() - entry.clickTime <= MIN_CLICK_INTERVAL;
+        final String url = clickCounted ? urlLookup.resolve(station.StationUuid) : urlResolver.resolve(station.StationUuid);
+        if (url == null) {
+            Log.d(TAG, "Could not resolve " + station.StationUuid);
+            return null;
+        }
+
+        synchronized (entries) {
+            put(station, url, clickCounted ? entry.clickTime : System.currentTimeMillis());
+        }
+        return url;
+    }
+
+    /**
+     * A click report which did not start yet is cancelled, resolving counts the click instead.
+     *
+     * @return url resolved by a click report which is running or null.
+     */
+    private @Nullable
+    String awaitClickReport(@NonNull DataRadioStation station) {
+        final ClickReport report;
+        synchronized (entries) {
+            report = clickReports.get(station.StationUuid);
+        }
+        if (report == null || report.cancel(false)) {
+            return null;
+        }
+
+        final String url;
+        try {
+            url = report.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+        if (url == null) {
+            return null;
+        }
+
+        synchronized (entries) {
+            // Played again, the report must not drop it if it finishes later
+            report.invalidated = false;
+            put(station, url, System.currentTimeMillis());
+        }
+        return url;
+    }
+
+    /**
+     * Like {@link #resolve(DataRadioStation)} for a station which is about to be played, a cached
+     * url is returned at once and the click is counted in background.
+     *
+     * @return playable url of the station or null.
+     */
+    public @Nullable
+    String resolveForPlaying(@NonNull DataRadioStation station) {
+        final String cached = get(station);
+        if (cached != null) {
+            reportClick(station);
+            return cached;
+        }
+        return resolve(station);
+    }
+
+    /**
+     * Cache a url which was looked up without counting a click, e.g. for a station which may be
+     * played next. The click is counted once the station is played.
+     */
+    public void putPrefetched(@NonNull DataRadioStation station, @NonNull String url) {
+        synchronized (entries) {
+            final Entry entry = getEntry(station, TTL);
+            put(station, url, entry != null ? entry.clickTime : 0);
+        }
+    }
+
+    /**
+     * Count a click for the station in background unless its url was resolved just now, which
+     * counted one already. The cached url is refreshed on the way.
+     */
+    public void reportClick(@NonNull DataRadioStation station) {
+        final ClickReport report = new ClickReport(station);
+        synchronized (entries) {
+            if (clickReports.containsKey(station.StationUuid)) {
+                // Counts this click as well
+                return;
+            }
+            clickReports.put(station.StationUuid, report);
+        }
+        clickExecutor.execute(report);
+    }
+
+    /**
+     * The cached url of the station could not be played. The time of the last click is kept,
+     * a click report which is running does not cache its url.
+     */
+    public void invalidate(@NonNull DataRadioStation station) {
+        synchronized (entries) {
+            final Entry entry = entries.remove(station.StationUuid);
+            if (entry != null && entry.clickTime > 0) {
+                entries.put(station.StationUuid, new Entry(null, entry.changeUuid, entry.time, entry.clickTime));
+            }
+
+            final ClickReport report = clickReports.get(station.StationUuid);
+            if (report != null) {
+                report.invalidated = true;
+            }
+        }
+    }
+
+    /**
+     * @return true if the stream url of a station can be played as it is, without being
+     * resolved by the api first.
+     */
+    public static boolean isDirectStreamUrl(@Nullable String streamUrl) {
+        if (streamUrl == null) {
+            return false;
+        }
+
+        String url = streamUrl.trim().toLowerCase(Locale.US);
+        if (!url.startsWith("http://") && !url.startsWith("https://")) {
+            return false;
+        }
+
+        for (char end : new char[]{'#', '?'}) {
+            final int endIndex = url.indexOf(end);
+            if (endIndex >= 0) {
+                url = url.substring(0, endIndex);
+            }
+        }
+
+        for (String extension : PLAYLIST_EXTENSIONS) {
+            if (url.endsWith(extension)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Entry getEntry(DataRadioStation station, long maxAge) {
+        synchronized (entries) {
+            final Entry entry = entries.get(station.StationUuid);
+            if (entry == null || System.currentTimeMillis() - entry.time > maxAge) {
+                return null;
+            }
+            // Station was edited since, its stream may have moved
+            if (station.ChangeUuid != null && !station.ChangeUuid.isEmpty() && !station.ChangeUuid.equals(entry.changeUuid)) {
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * @param clickTime when the last click was counted, 0 if none was.
+     */
+    private void put(DataRadioStation station, @Nullable String url, long clickTime) {
+        synchronized (entries) {
+            entries.put(station.StationUuid, new Entry(url, station.ChangeUuid, System.currentTimeMillis(), clickTime));
+        }
+    }
+}
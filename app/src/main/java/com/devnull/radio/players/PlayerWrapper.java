@@ -5,6 +5,7 @@ import android.content.Context;
 import androidx.annotation.NonNull;
 
 import com.devnull.radio.recording.Recordable;
+import com.devnull.radio.service.PauseReason;
 import com.devnull.radio.station.live.ShoutcastInfo;
 import com.devnull.radio.station.live.StreamLiveInfo;
 
@@ -25,7 +26,7 @@ public interface PlayerWrapper extends Recordable {
 
     void playRemote(@NonNull OkHttpClient httpClient, @NonNull String streamUrl, @NonNull Context context, boolean isAlarm);
 
-    void pause();
+    void pause(@NonNull PauseReason pauseReason);
 
     void stop();
 
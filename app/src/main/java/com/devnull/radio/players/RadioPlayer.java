@@ -6,12 +6,16 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.preference.PreferenceManager;
 
 import com.devnull.radio.BuildConfig;
+import com.devnull.radio.FavouriteManager;
+import com.devnull.radio.service.ConnectivityChecker;
+import com.devnull.radio.service.PauseReason;
 import com.devnull.radio.players.exoplayer.ExoPlayerWrapper;
 import com.devnull.radio.players.mediaplayer.MediaPlayerWrapper;
 import com.devnull.radio.recording.Recordable;
@@ -26,6 +30,8 @@ import com.devnull.radio.Utils;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.OkHttpClient;
@@ -64,6 +70,24 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
 
     private PlayStationTask playStationTask;
 
+    private final StationZapper stationZapper;
+    private final ExecutorService zappingExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "StationZapper");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final PlayableUrlCache playableUrlCache;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Station which is switched to and when, until it plays
+    private DataRadioStation switchingStation;
+    private long switchStartTime;
+    private boolean switchingFromStandby;
+    // Url was taken from the cache or the station and not resolved by the api just now
+    private boolean switchingWithUnverifiedUrl;
+    private boolean switchingIsAlarm;
+
     private Runnable bufferCheckRunnable = new Runnable() {
         @Override
         public void run() {
@@ -96,6 +120,12 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
         }
 
         currentPlayer.setStateListener(this);
+
+        final RadioDroidApp radioDroidApp = (RadioDroidApp) mainContext.getApplicationContext();
+        playableUrlCache = radioDroidApp.getPlayableUrlCache();
+        stationZapper = new StationZapper(playableUrlCache,
+                stationUuid -> Utils.getResolvedStationLink(radioDroidApp.getHttpClient(), radioDroidApp, stationUuid),
+                zappingExecutor, mainHandler::post, this::prepareStandby);
     }
 
     public final void play(final String stationURL, final String streamName, final boolean isAlarm) {
@@ -103,27 +133,62 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
 
         this.streamName = streamName;
 
+        // TODO: Should we not pass http client if currentPlayer is external?
+
+        final OkHttpClient customizedHttpClient = newStreamHttpClient();
+
+        playerThreadHandler.post(() -> currentPlayer.playRemote(customizedHttpClient, stationURL, mainContext, isAlarm));
+    }
+
+    private OkHttpClient newStreamHttpClient() {
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mainContext.getApplicationContext());
         final int connectTimeout = prefs.getInt("stream_connect_timeout", 4);
         final int readTimeout = prefs.getInt("stream_read_timeout", 10);
 
         RadioDroidApp radioDroidApp = (RadioDroidApp) mainContext.getApplicationContext();
 
-        // TODO: Should we not pass http client if currentPlayer is external?
-
-        final OkHttpClient customizedHttpClient = radioDroidApp.newHttpClient()
+        return radioDroidApp.newStreamHttpClient()
                 .connectTimeout(connectTimeout, TimeUnit.SECONDS)
                 .readTimeout(readTimeout, TimeUnit.SECONDS)
                 .build();
-
-        playerThreadHandler.post(() -> currentPlayer.playRemote(customizedHttpClient, stationURL, mainContext, isAlarm));
     }
 
     public final void play(final DataRadioStation station, final boolean isAlarm) {
+        play(station, isAlarm, true);
+    }
+
+    /**
+     * @param unverifiedUrlAllowed start from a cached url or the stream url of the station
+     *                             without waiting for the api.
+     */
+    private void play(final DataRadioStation station, final boolean isAlarm, final boolean unverifiedUrlAllowed) {
+        switchingStation = station;
+        switchStartTime = SystemClock.elapsedRealtime();
+        switchingFromStandby = false;
+        switchingWithUnverifiedUrl = false;
+        switchingIsAlarm = isAlarm;
+
+        if (unverifiedUrlAllowed && isZappingEnabled()) {
+            final String playableUrl = playableUrlCache.get(station);
+            if (playableUrl != null) {
+                // Resolved while the previous station played, it may be buffered in standby already
+                switchingFromStandby = true;
+                switchingWithUnverifiedUrl = true;
+                station.playableUrl = playableUrl;
+                ((RadioDroidApp) mainContext.getApplicationContext()).getHistoryManager().add(station);
+                playableUrlCache.reportClick(station);
+                play(playableUrl, station.Name, isAlarm);
+                return;
+            }
+        }
+
         setState(PlayState.PrePlaying, -1);
 
         playStationTask = new PlayStationTask(station, mainContext,
-                (url) -> RadioPlayer.this.play(station.playableUrl, station.Name, isAlarm),
+                (url) -> {
+                    switchingWithUnverifiedUrl = playStationTask != null && playStationTask.isUnverifiedUrl();
+                    RadioPlayer.this.play(station.playableUrl, station.Name, isAlarm);
+                },
                 (executionResult) -> {
                     RadioPlayer.this.playStationTask = null;
 
@@ -131,10 +196,44 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
                         RadioPlayer.this.onPlayerError(R.string.error_station_load);
                     }
                 });
+        // Failures of unverified urls are handled in onPlayerError
+        playStationTask.setStreamUrlAllowed(unverifiedUrlAllowed);
 
         playStationTask.execute();
     }
 
+    private boolean isZappingEnabled() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mainContext.getApplicationContext());
+        return currentPlayer instanceof ExoPlayerWrapper && prefs.getBoolean(StationZapper.PREF_ZAPPING, false);
+    }
+
+    /**
+     * Let the zapper prepare the neighbours of the station if it is a favourite.
+     */
+    private void onStationPlaying(DataRadioStation station) {
+        if (!isZappingEnabled()) {
+            return;
+        }
+
+        FavouriteManager favouriteManager = ((RadioDroidApp) mainContext.getApplicationContext()).getFavouriteManager();
+        if (!favouriteManager.has(station.StationUuid)) {
+            return;
+        }
+
+        final boolean metered = ConnectivityChecker.getCurrentConnectionType(mainContext) == ConnectivityChecker.ConnectionType.METERED;
+        stationZapper.onStationPlaying(station, favouriteManager.getNextById(station.StationUuid),
+                favouriteManager.getPreviousById(station.StationUuid), metered);
+    }
+
+    private void prepareStandby(DataRadioStation station, String playableUrl, long bufferMs) {
+        if (!isPlaying()) {
+            return;
+        }
+
+        final OkHttpClient customizedHttpClient = newStreamHttpClient();
+        playerThreadHandler.post(() -> ((ExoPlayerWrapper) currentPlayer).prepareStandby(customizedHttpClient, playableUrl, mainContext, bufferMs));
+    }
+
     private void cancelStationLinkRetrieval() {
         if (playStationTask != null) {
             playStationTask.cancel(true);
@@ -143,6 +242,10 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
     }
 
     public final void pause() {
+        pause(PauseReason.NONE);
+    }
+
+    public final void pause(@NonNull PauseReason pauseReason) {
         cancelStationLinkRetrieval();
 
         playerThreadHandler.post(() -> {
@@ -151,7 +254,7 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
             }
 
             final int audioSessionId = getAudioSessionId();
-            currentPlayer.pause();
+            currentPlayer.pause(pauseReason);
 
             if (BuildConfig.DEBUG) {
                 playerThreadHandler.removeCallbacks(bufferCheckRunnable);
@@ -183,6 +286,7 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
 
     public final void destroy() {
         stop();
+        zappingExecutor.shutdownNow();
 
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
             Looper looper = playerThread.getLooper();
@@ -206,6 +310,29 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
         currentPlayer.setVolume(volume);
     }
 
+    /**
+     * @return true if the stream is kept in a time-shift buffer and can be rewound.
+     */
+    public final boolean canTimeShift() {
+        return currentPlayer instanceof ExoPlayerWrapper && ((ExoPlayerWrapper) currentPlayer).canTimeShift();
+    }
+
+    public final void rewind(final long ms) {
+        playerThreadHandler.post(() -> {
+            if (currentPlayer instanceof ExoPlayerWrapper) {
+                ((ExoPlayerWrapper) currentPlayer).rewind(ms);
+            }
+        });
+    }
+
+    public final void fastForward(final long ms) {
+        playerThreadHandler.post(() -> {
+            if (currentPlayer instanceof ExoPlayerWrapper) {
+                ((ExoPlayerWrapper) currentPlayer).fastForward(ms);
+            }
+        });
+    }
+
     @Override
     public boolean canRecord() {
         return currentPlayer.canRecord();
@@ -277,6 +404,16 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
 
         playState = state;
         playerListener.onStateChanged(state, audioSessionId);
+
+        if (state == PlayState.Playing && switchingStation != null) {
+            Log.i(TAG, String.format("Switched to %s in %d ms%s", switchingStation.Name,
+                    SystemClock.elapsedRealtime() - switchStartTime, switchingFromStandby ? " with standby" : ""));
+
+            onStationPlaying(switchingStation);
+            switchingStation = null;
+        } else if (state == PlayState.Idle || state == PlayState.Paused) {
+            switchingStation = null;
+        }
     }
 
     public long getTotalTransferredBytes() {
@@ -307,6 +444,17 @@ public class RadioPlayer implements PlayerWrapper.PlayListener, Recordable {
 
     @Override
     public void onPlayerError(int messageId) {
+        if (switchingStation != null && switchingWithUnverifiedUrl) {
+            // The cached url may be outdated, resolve it once more before giving up
+            final DataRadioStation station = switchingStation;
+            Log.i(TAG, "Could not play " + station.Name + " from unverified url, resolving it");
+            playableUrlCache.invalidate(station);
+            switchingWithUnverifiedUrl = false;
+            final boolean isAlarm = switchingIsAlarm;
+            mainHandler.post(() -> play(station, isAlarm, false));
+            return;
+        }
+
         pause();
         playerThreadHandler.post(() -> playerListener.onPlayerError(messageId));
     }
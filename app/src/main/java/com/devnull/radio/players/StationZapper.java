@@ -0,0 +1,109 @@
+package com.devnull.radio.players;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Zapping mode for skipping through favourites without waiting: while a favourite plays, the
+ * playable urls of the favourites before and after it are resolved into the
+ * {@link PlayableUrlCache}, and the one the user most likely skips to next is handed to the
+ * {@link StandbyListener} to be buffered in standby.
+ * <p>
+ * The likely next station is the one in the direction the user skipped last. Standby buffers
+ * are kept shorter on metered connections.
+ * <p>
+ * Urls are looked up without counting clicks, the neighbours may never be played. The click is
+ * counted when the station is actually played.
+ */
+public class StationZapper {
+    private static final String TAG = "StationZapper";
+
+    public static final String PREF_ZAPPING = "settings_zapping";
+
+    static final long STANDBY_BUFFER_MS = 5000;
+    static final long METERED_STANDBY_BUFFER_MS = 1500;
+
+    public interface StandbyListener {
+        void onStandbyStation(@NonNull DataRadioStation station, @NonNull String playableUrl, long bufferMs);
+    }
+
+    private final PlayableUrlCache playableUrlCache;
+    private final PlayableUrlCache.UrlResolver urlLookup;
+    private final Executor executor;
+    private final Executor callbackExecutor;
+    private final StandbyListener standbyListener;
+
+    private String lastNextUuid;
+    private String lastPreviousUuid;
+    private boolean backwards;
+
+    /**
+     * @param urlLookup        resolves urls of stations which are not played yet, must not
+     *                         count a click.
+     * @param executor         resolves urls.
+     * @param callbackExecutor calls the standby listener.
+     */
+    public StationZapper(@NonNull PlayableUrlCache playableUrlCache, @NonNull PlayableUrlCache.UrlResolver urlLookup,
+                         @NonNull Executor executor, @NonNull Executor callbackExecutor,
+                         @NonNull StandbyListener standbyListener) {
+        this.playableUrlCache = playableUrlCache;
+        this.urlLookup = urlLookup;
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+        this.standbyListener = standbyListener;
+    }
+
+    /**
+     * The favourite station started playing, prepare its neighbours.
+     */
+    public void onStationPlaying(@NonNull DataRadioStation station, @Nullable DataRadioStation next,
+                                 @Nullable DataRadioStation previous, boolean metered) {
+        if (station.StationUuid.equals(lastPreviousUuid)) {
+            backwards = true;
+        } else if (station.StationUuid.equals(lastNextUuid)) {
+            backwards = false;
+        }
+        lastNextUuid = next != null ? next.StationUuid : null;
+        lastPreviousUuid = previous != null ? previous.StationUuid : null;
+
+        final DataRadioStation likely = backwards ? previous : next;
+        final DataRadioStation other = backwards ? next : previous;
+        final long bufferMs = metered ? METERED_STANDBY_BUFFER_MS : STANDBY_BUFFER_MS;
+
+        executor.execute(() -> {
+            if (likely != null && !likely.StationUuid.equals(station.StationUuid)) {
+                final String url = prefetch(likely);
+                if (url != null) {
+                    callbackExecutor.execute(() -> standbyListener.onStandbyStation(likely, url, bufferMs));
+                }
+            }
+
+            if (other != null && other != likely && !other.StationUuid.equals(station.StationUuid)) {
+                prefetch(other);
+            }
+        });
+    }
+
+    private String prefetch(DataRadioStation station) {
+        final String cached = playableUrlCache.get(station);
+        if (cached != null) {
+            return cached;
+        }
+
+        final String url = PlayableUrlCache.isDirectStreamUrl(station.StreamUrl)
+                ? station.StreamUrl : urlLookup.resolve(station.StationUuid);
+        if (url == null) {
+            Log.d(TAG, "Could not look up " + station.StationUuid);
+            return null;
+        }
+
+        playableUrlCache.putPrefetched(station, url);
+        return url;
+    }
+}
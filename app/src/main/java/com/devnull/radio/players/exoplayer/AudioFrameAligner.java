@@ -0,0 +1,268 @@
+package com.devnull.radio.players.exoplayer;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Keeps the audio of a live stream in whole MP3 or AAC (ADTS) frames, so the stream can be
+ * continued from another connection without handing a cut frame to the extractor.
+ * <p>
+ * Audio is written as it arrives and can be read up to the end of the last complete frame.
+ * After {@link #discontinuity()} the incomplete frame is dropped and the audio written next is
+ * skipped up to the first frame header which is followed by a matching one. Audio of other
+ * formats is passed on as it is.
+ */
+final class AudioFrameAligner {
+    static final int FORMAT_OTHER = 0;
+    static final int FORMAT_MPEG_AUDIO = 1;
+    static final int FORMAT_ADTS = 2;
+
+    // Two frames of the largest kind (ADTS) fit with room to spare
+    static final int CAPACITY = 32 * 1024;
+
+    // Streams in which no frames are found after this are passed on as they are
+    private static final int MAX_SYNC_SEARCH = 64 * 1024;
+
+    private static final int INVALID = -1;
+    private static final int NEED_MORE_DATA = 0;
+
+    private static final int MPEG_AUDIO_HEADER_LENGTH = 4;
+    private static final int ADTS_HEADER_LENGTH = 7;
+
+    private static final int[] MPEG_SAMPLE_RATES = {44100, 48000, 32000};
+    private static final int[] MPEG_1_LAYER_1_BITRATES = {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448};
+    private static final int[] MPEG_1_LAYER_2_BITRATES = {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384};
+    private static final int[] MPEG_1_LAYER_3_BITRATES = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+    private static final int[] MPEG_2_LAYER_1_BITRATES = {0, 32, 48, 56, 64, 80, 96, 112, 128, 144, 160, 176, 192, 224, 256};
+    private static final int[] MPEG_2_LAYER_2_3_BITRATES = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+
+    private final byte[] data = new byte[CAPACITY];
+    private int format;
+
+    // readPosition <= frameEnd <= writePosition, audio after frameEnd is an incomplete frame
+    private int readPosition;
+    private int frameEnd;
+    private int writePosition;
+
+    private boolean synced;
+    private int skippedWhileSearching;
+
+    AudioFrameAligner(int format) {
+        this.format = format;
+    }
+
+    /**
+     * @param type content type of the stream.
+     * @return format of which frames are kept whole for the type.
+     */
+    static int formatOf(@NonNull String type) {
+        final int parameters = type.indexOf(';');
+        final String mimeType = (parameters >= 0 ? type.substring(0, parameters) : type).trim();
+
+        switch (mimeType) {
+            case "audio/mpeg":
+            case "audio/mp3":
+            case "audio/mpeg3":
+            case "audio/x-mpeg":
+                return FORMAT_MPEG_AUDIO;
+            case "audio/aac":
+            case "audio/aacp":
+            case "audio/x-aac":
+            case "audio/aac-adts":
+                return FORMAT_ADTS;
+            default:
+                return FORMAT_OTHER;
+        }
+    }
+
+    int getFormat() {
+        return format;
+    }
+
+    /**
+     * @return number of bytes read, 0 if there is no complete frame which was not read yet.
+     */
+    int read(@NonNull byte[] buffer, int offset, int length) {
+        final int count = Math.min(length, frameEnd - readPosition);
+        System.arraycopy(data, readPosition, buffer, offset, count);
+        readPosition += count;
+        return count;
+    }
+
+    /**
+     * @return number of bytes which can be written now.
+     */
+    int writableLength() {
+        if (readPosition > 0) {
+            System.arraycopy(data, readPosition, data, 0, writePosition - readPosition);
+            frameEnd -= readPosition;
+            writePosition -= readPosition;
+            readPosition = 0;
+        }
+        return CAPACITY - writePosition;
+    }
+
+    /**
+     * @param length at most {@link #writableLength()}.
+     */
+    void write(@NonNull byte[] buffer, int offset, int length) {
+        System.arraycopy(buffer, offset, data, writePosition, length);
+        writePosition += length;
+        align();
+    }
+
+    /**
+     * The audio written next does not continue the audio written so far.
+     */
+    void discontinuity() {
+        writePosition = frameEnd;
+        synced = false;
+        skippedWhileSearching = 0;
+    }
+
+    private void align() {
+        if (format == FORMAT_OTHER) {
+            frameEnd = writePosition;
+            return;
+        }
+
+        while (true) {
+            if (!synced && !sync()) {
+                return;
+            }
+
+            final int length = frameLength(format, data, frameEnd, writePosition - frameEnd);
+            if (length == INVALID) {
+                synced = false;
+            } else if (length == NEED_MORE_DATA || frameEnd + length > writePosition) {
+                return;
+            } else {
+                frameEnd += length;
+            }
+        }
+    }
+
+    /**
+     * Skips audio after {@link #frameEnd} up to the first frame header which is followed by
+     * a header of the same stream.
+     *
+     * @return true if a frame starts at {@link #frameEnd}.
+     */
+    private boolean sync() {
+        int position = frameEnd;
+        boolean found = false;
+        for (; position < writePosition; position++) {
+            final int length = frameLength(format, data, position, writePosition - position);
+            if (length == NEED_MORE_DATA) {
+                break;
+            } else if (length == INVALID) {
+                continue;
+            }
+
+            final int next = position + length;
+            final int nextLength = frameLength(format, data, next, writePosition - next);
+            if (nextLength == NEED_MORE_DATA) {
+                break;
+            } else if (nextLength != INVALID && isSameStream(format, data, position, next)) {
+                found = true;
+                break;
+            }
+        }
+
+        final int skipped = position - frameEnd;
+        if (skipped > 0) {
+            System.arraycopy(data, position, data, frameEnd, writePosition - position);
+            writePosition -= skipped;
+            skippedWhileSearching += skipped;
+        }
+
+        if (!found && skippedWhileSearching > MAX_SYNC_SEARCH) {
+            // Not the format the stream claims to be
+            format = FORMAT_OTHER;
+            frameEnd = writePosition;
+        }
+
+        synced = found;
+        if (found) {
+            skippedWhileSearching = 0;
+        }
+        return found;
+    }
+
+    /**
+     * @return length of the frame at offset including its header, {@link #INVALID} if there
+     * is no frame header at offset or {@link #NEED_MORE_DATA} if the header is not complete.
+     */
+    static int frameLength(int format, @NonNull byte[] data, int offset, int available) {
+        if (format == FORMAT_MPEG_AUDIO) {
+            return available < MPEG_AUDIO_HEADER_LENGTH ? NEED_MORE_DATA : mpegAudioFrameLength(data, offset);
+        } else {
+            return available < ADTS_HEADER_LENGTH ? NEED_MORE_DATA : adtsFrameLength(data, offset);
+        }
+    }
+
+    private static int mpegAudioFrameLength(byte[] data, int offset) {
+        final int b1 = data[offset + 1] & 0xFF;
+        final int b2 = data[offset + 2] & 0xFF;
+        if ((data[offset] & 0xFF) != 0xFF || (b1 & 0xE0) != 0xE0) {
+            return INVALID;
+        }
+
+        // Version 0 is MPEG 2.5, 2 is MPEG 2 and 3 is MPEG 1. Layer 1 is layer III, 3 is layer I.
+        final int version = (b1 >>> 3) & 3;
+        final int layer = (b1 >>> 1) & 3;
+        final int bitrateIndex = b2 >>> 4;
+        final int sampleRateIndex = (b2 >>> 2) & 3;
+        final int padding = (b2 >>> 1) & 1;
+        if (version == 1 || layer == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+            return INVALID;
+        }
+
+        final boolean mpeg1 = version == 3;
+        final int sampleRate = MPEG_SAMPLE_RATES[sampleRateIndex] / (mpeg1 ? 1 : version == 2 ? 2 : 4);
+
+        if (layer == 3) {
+            final int bitrate = (mpeg1 ? MPEG_1_LAYER_1_BITRATES : MPEG_2_LAYER_1_BITRATES)[bitrateIndex] * 1000;
+            return (12 * bitrate / sampleRate + padding) * 4;
+        }
+
+        final int bitrate;
+        if (mpeg1) {
+            bitrate = (layer == 2 ? MPEG_1_LAYER_2_BITRATES : MPEG_1_LAYER_3_BITRATES)[bitrateIndex] * 1000;
+        } else {
+            bitrate = MPEG_2_LAYER_2_3_BITRATES[bitrateIndex] * 1000;
+        }
+        final int samplesPerFrameOver8 = layer == 1 && !mpeg1 ? 72 : 144;
+        return samplesPerFrameOver8 * bitrate / sampleRate + padding;
+    }
+
+    private static int adtsFrameLength(byte[] data, int offset) {
+        if ((data[offset] & 0xFF) != 0xFF || (data[offset + 1] & 0xF6) != 0xF0) {
+            return INVALID;
+        }
+
+        final int sampleRateIndex = (data[offset + 2] >>> 2) & 0xF;
+        if (sampleRateIndex > 12) {
+            return INVALID;
+        }
+
+        final int length = ((data[offset + 3] & 0x03) << 11)
+                | ((data[offset + 4] & 0xFF) << 3)
+                | ((data[offset + 5] & 0xFF) >>> 5);
+        final int headerLength = (data[offset + 1] & 0x01) == 0 ? ADTS_HEADER_LENGTH + 2 : ADTS_HEADER_LENGTH;
+        return length < headerLength ? INVALID : length;
+    }
+
+    /**
+     * Frames of one stream have the same version, layer and sample rate, the bitrate can change.
+     */
+    private static boolean isSameStream(int format, byte[] data, int first, int second) {
+        if (format == FORMAT_MPEG_AUDIO) {
+            return (data[first + 1] & 0xFE) == (data[second + 1] & 0xFE)
+                    && (data[first + 2] & 0x0C) == (data[second + 2] & 0x0C);
+        } else {
+            // Profile, sample rate and channels
+            return (data[first + 2] & 0xFD) == (data[second + 2] & 0xFD)
+                    && (data[first + 3] & 0xC0) == (data[second + 3] & 0xC0);
+        }
+    }
+}
@@ -10,6 +10,7 @@ import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Surface;
 
@@ -38,6 +39,7 @@ import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.source.hls.HlsMediaSource;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
 import com.google.android.exoplayer2.upstream.DefaultLoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
@@ -50,9 +52,10 @@ import com.devnull.radio.Utils;
 import com.devnull.radio.players.PlayState;
 import com.devnull.radio.recording.RecordableListener;
 import com.devnull.radio.players.PlayerWrapper;
+import com.devnull.radio.service.PauseReason;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 
 import okhttp3.OkHttpClient;
@@ -61,6 +64,13 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
 
     final private String TAG = "ExoPlayerWrapper";
 
+    public static final String PREF_TIME_SHIFT_MINUTES = "settings_time_shift_minutes";
+    private static final String TIME_SHIFT_DIR = "time-shift";
+
+    // Live audio buffered in standby falls behind and idle connections get dropped by servers,
+    // older standby players are not worth switching to
+    static final long STANDBY_MAX_AGE_MS = 30 * 1000;
+
     private SimpleExoPlayer player;
     private PlayListener stateListener;
 
@@ -75,6 +85,8 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
 
     private boolean isHls;
     private boolean isPlayingFlag;
+    // Stream of the player was ready to play at least once
+    private boolean streamStarted;
 
     private Handler playerThreadHandler;
 
@@ -83,6 +95,19 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
 
     private Runnable fullStopTask;
 
+    // Keeps loading the stream while paused, null if time-shift is off or the stream is hls
+    private TimeShiftSession timeShiftSession;
+
+    // Buffers the stream which is likely played next without playing it, see prepareStandby
+    private SimpleExoPlayer standbyPlayer;
+    private String standbyStreamUrl;
+    private MediaSource standbyAudioSource;
+    private StandbyLoadControl standbyLoadControl;
+    private CustomLoadErrorHandlingPolicy standbyErrorPolicy;
+    private StandbyDataSourceListener standbyDataSourceListener;
+    private long standbyPreparedAt;
+    private final Runnable releaseStandbyTask = this::releaseStandby;
+
     private final BroadcastReceiver networkChangedReceiver = new BroadcastReceiver() {
         @Override
         public void onReceive(Context context, Intent intent) {
@@ -100,6 +125,9 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         final int MIN_RETRY_DELAY_MS = 10;
         final SharedPreferences sharedPrefs = PreferenceManager.getDefaultSharedPreferences(context);
 
+        // Errors of the standby player must not stop the player which is playing
+        volatile boolean reportErrors = true;
+
         // We need to read the retry delay here on each error again because the user might change
         // this value between retries and experiment with different vales to get the best result for
         // the specific situation. We also need to make sure that a sensible minimum value is chosen.
@@ -117,11 +145,17 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
             int retryDelay = getSanitizedRetryDelaySettingsMs();
 
             if (exception instanceof HttpDataSource.InvalidContentTypeException) {
-                stateListener.onPlayerError(R.string.error_play_stream);
+                if (reportErrors) {
+                    stateListener.onPlayerError(R.string.error_play_stream);
+                }
                 return C.TIME_UNSET; // Immediately surface error if we cannot play content type
             }
 
-            if (!Utils.hasAnyConnection(context)) {
+            if (exception instanceof IcyDataSource.ReconnectFailedException && Utils.hasAnyConnection(context)) {
+                return C.TIME_UNSET; // The data source already tried to reconnect for as long as it is allowed to
+            }
+
+            if (reportErrors && !Utils.hasAnyConnection(context)) {
                 int resumeWithinS = sharedPrefs.getInt("settings_resume_within", 60);
                 if (resumeWithinS > 0) {
                     resumeWhenNetworkConnected();
@@ -153,12 +187,30 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         if (streamUrl == null) {
             return;
         }
+
+        if (player != null && timeShiftSession != null && timeShiftSession.isLoading()
+                && streamUrl.equals(this.streamUrl) && !player.getPlayWhenReady()) {
+            Log.i(TAG, "Resuming from time-shift buffer.");
+
+            cancelStopTask();
+            stateListener.onStateChanged(PlayState.PrePlaying);
+            player.setPlayWhenReady(true);
+            return;
+        }
+
+        if (standbyPlayer != null && streamUrl.equals(standbyStreamUrl) && standbyPlayer.getPlaybackError() == null
+                && SystemClock.elapsedRealtime() - standbyPreparedAt <= STANDBY_MAX_AGE_MS) {
+            playStandby(context, isAlarm);
+            return;
+        }
+
         if (!streamUrl.equals(this.streamUrl)) {
             currentPlaybackTransferredBytes = 0;
         }
 
         this.context = context;
         this.streamUrl = streamUrl;
+        streamStarted = false;
 
         cancelStopTask();
 
@@ -168,6 +220,9 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
             player.stop();
         }
 
+        releaseTimeShift();
+        releaseStandby();
+
         if (player == null) {
             player = new SimpleExoPlayer.Builder(context).build();
             player.setAudioAttributes(new AudioAttributes.Builder().setContentType(C.CONTENT_TYPE_MUSIC)
@@ -187,13 +242,20 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
         final int retryTimeout = prefs.getInt("settings_retry_timeout", 10);
         final int retryDelay = prefs.getInt("settings_retry_delay", 100);
+        final int timeShiftMinutes = prefs.getInt(PREF_TIME_SHIFT_MINUTES, 0);
 
-        DataSource.Factory dataSourceFactory = new RadioDataSourceFactory(httpClient, bandwidthMeter, this, retryTimeout, retryDelay);
+        DataSource.Factory dataSourceFactory = new RadioDataSourceFactory(httpClient, bandwidthMeter, this, retryTimeout * 1000L, retryDelay);
         // Produces Extractor instances for parsing the media data.
         if (!isHls) {
-            audioSource = new ProgressiveMediaSource.Factory(dataSourceFactory)
-                    .setLoadErrorHandlingPolicy(new CustomLoadErrorHandlingPolicy())
-                    .createMediaSource(Uri.parse(streamUrl));
+            if (timeShiftMinutes > 0) {
+                timeShiftSession = new TimeShiftSession(new IcyDataSource(httpClient, bandwidthMeter, this, retryTimeout * 1000L, retryDelay),
+                        new DataSpec(Uri.parse(streamUrl)), new File(context.getCacheDir(), TIME_SHIFT_DIR), timeShiftMinutes);
+                timeShiftSession.start();
+
+                audioSource = createProgressiveSource(timeShiftSession);
+            } else {
+                audioSource = createProgressiveSource(dataSourceFactory);
+            }
             player.prepare(audioSource);
         } else {
             audioSource = new HlsMediaSource.Factory(dataSourceFactory)
@@ -209,11 +271,141 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         // State changed will be called when audio session id is available.
     }
 
-    @Override
-    public void pause() {
-        Log.i(TAG, "Pause. Stopping exoplayer.");
+    /**
+     * Buffer a stream in a second player which does not play it yet, so playing it later only
+     * swaps the players. Nothing is buffered while no stream plays or with time-shift, which
+     * needs to load the stream from the start. The standby player is released after
+     * {@link #STANDBY_MAX_AGE_MS}.
+     *
+     * @param bufferMs length of audio which is buffered ahead.
+     */
+    public void prepareStandby(@NonNull OkHttpClient httpClient, @NonNull String streamUrl, @NonNull Context context, long bufferMs) {
+        if (streamUrl.equals(standbyStreamUrl) || streamUrl.equals(this.streamUrl)) {
+            return;
+        }
+
+        releaseStandby();
+
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+        if (player == null || !player.getPlayWhenReady() || prefs.getInt(PREF_TIME_SHIFT_MINUTES, 0) > 0) {
+            return;
+        }
+
+        final int retryTimeout = prefs.getInt("settings_retry_timeout", 10);
+        final int retryDelay = prefs.getInt("settings_retry_delay", 100);
+
+        Log.d(TAG, "Buffering " + bufferMs + "ms of " + streamUrl + " in standby.");
+
+        standbyStreamUrl = streamUrl;
+        standbyLoadControl = new StandbyLoadControl(bufferMs);
+        standbyErrorPolicy = new CustomLoadErrorHandlingPolicy();
+        standbyErrorPolicy.reportErrors = false;
+        standbyDataSourceListener = new StandbyDataSourceListener();
+
+        standbyPlayer = new SimpleExoPlayer.Builder(context).setLoadControl(standbyLoadControl).build();
+
+        DataSource.Factory dataSourceFactory = new RadioDataSourceFactory(httpClient, bandwidthMeter, standbyDataSourceListener, retryTimeout * 1000L, retryDelay);
+        if (Utils.urlIndicatesHlsStream(streamUrl)) {
+            standbyAudioSource = new HlsMediaSource.Factory(dataSourceFactory)
+                    .setLoadErrorHandlingPolicy(standbyErrorPolicy)
+                    .createMediaSource(Uri.parse(streamUrl));
+        } else {
+            standbyAudioSource = new ProgressiveMediaSource.Factory(dataSourceFactory)
+                    .setLoadErrorHandlingPolicy(standbyErrorPolicy)
+                    .createMediaSource(Uri.parse(streamUrl));
+        }
+
+        standbyPlayer.setPlayWhenReady(false);
+        standbyPlayer.prepare(standbyAudioSource);
+
+        standbyPreparedAt = SystemClock.elapsedRealtime();
+        playerThreadHandler.postDelayed(releaseStandbyTask, STANDBY_MAX_AGE_MS);
+    }
+
+    private void playStandby(@NonNull Context context, boolean isAlarm) {
+        Log.i(TAG, "Switching to standby player.");
+
+        cancelStopTask();
+        releaseTimeShift();
+
+        final float volume = player != null ? player.getVolume() : 1f;
+        if (player != null) {
+            player.stop();
+            player.release();
+        }
+
+        this.context = context;
+        streamUrl = standbyStreamUrl;
+        isHls = Utils.urlIndicatesHlsStream(streamUrl);
+        currentPlaybackTransferredBytes = 0;
+        streamStarted = false;
+
+        player = standbyPlayer;
+        audioSource = standbyAudioSource;
+        standbyLoadControl.leaveStandby();
+        standbyErrorPolicy.reportErrors = true;
+        standbyDataSourceListener.play();
+
+        standbyPlayer = null;
+        standbyStreamUrl = null;
+        standbyAudioSource = null;
+        standbyLoadControl = null;
+        standbyErrorPolicy = null;
+        standbyDataSourceListener = null;
+        playerThreadHandler.removeCallbacks(releaseStandbyTask);
+
+        player.setAudioAttributes(new AudioAttributes.Builder().setContentType(C.CONTENT_TYPE_MUSIC)
+                .setUsage(isAlarm ? C.USAGE_ALARM : C.USAGE_MEDIA).build());
+        player.setVolume(volume);
+        player.addListener(new ExoPlayerListener());
+        player.addAnalyticsListener(new AnalyticEventListener());
+        player.addMetadataOutput(this);
+
+        if (playerThreadHandler == null) {
+            playerThreadHandler = new Handler(Looper.getMainLooper());
+        }
+
+        stateListener.onStateChanged(PlayState.PrePlaying);
+        player.setPlayWhenReady(true);
+
+        context.registerReceiver(networkChangedReceiver, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
 
+    private void releaseStandby() {
+        if (standbyPlayer != null) {
+            playerThreadHandler.removeCallbacks(releaseStandbyTask);
+            if (BuildConfig.DEBUG) {
+                Log.d(TAG, "Releasing standby player of " + standbyStreamUrl + ".");
+            }
+            standbyPlayer.release();
+            standbyPlayer = null;
+            standbyStreamUrl = null;
+            standbyAudioSource = null;
+            standbyLoadControl = null;
+            standbyErrorPolicy = null;
+            standbyDataSourceListener = null;
+        }
+    }
+
+    private MediaSource createProgressiveSource(DataSource.Factory dataSourceFactory) {
+        return new ProgressiveMediaSource.Factory(dataSourceFactory)
+                .setLoadErrorHandlingPolicy(new CustomLoadErrorHandlingPolicy())
+                .createMediaSource(Uri.parse(streamUrl));
+    }
+
+    @Override
+    public void pause(@NonNull PauseReason pauseReason) {
         cancelStopTask();
+        releaseStandby();
+
+        // Pausing on a metered connection is meant to stop using data
+        if (player != null && timeShiftSession != null && pauseReason != PauseReason.METERED_CONNECTION) {
+            Log.i(TAG, "Pause. Stream keeps loading into time-shift buffer.");
+            player.setPlayWhenReady(false);
+            return;
+        }
+
+        Log.i(TAG, "Pause. Stopping exoplayer.");
 
         if (player != null) {
             context.unregisterReceiver(networkChangedReceiver);
@@ -221,6 +413,8 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
             player.release();
             player = null;
         }
+
+        releaseTimeShift();
     }
 
     @Override
@@ -228,6 +422,7 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         Log.i(TAG, "Stopping exoplayer.");
 
         cancelStopTask();
+        releaseStandby();
 
         if (player != null) {
             context.unregisterReceiver(networkChangedReceiver);
@@ -236,9 +431,52 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
             player = null;
         }
 
+        releaseTimeShift();
+
         stopRecording();
     }
 
+    /**
+     * @return true if playback can be moved in the time-shift buffer.
+     */
+    public boolean canTimeShift() {
+        return player != null && timeShiftSession != null;
+    }
+
+    /**
+     * Play audio from earlier, as far back as the time-shift buffer reaches.
+     */
+    public void rewind(long ms) {
+        timeShift(-ms);
+    }
+
+    /**
+     * Skip ahead in the time-shift buffer, at most up to the live position.
+     */
+    public void fastForward(long ms) {
+        timeShift(ms);
+    }
+
+    private void timeShift(long deltaMs) {
+        if (!canTimeShift()) {
+            return;
+        }
+
+        final long position = timeShiftSession.getShiftedPosition(getBufferedMs(), deltaMs);
+        Log.d(TAG, "Time-shift by " + deltaMs + "ms to position " + position);
+
+        timeShiftSession.seekTo(position);
+        audioSource = createProgressiveSource(timeShiftSession);
+        player.prepare(audioSource);
+    }
+
+    private void releaseTimeShift() {
+        if (timeShiftSession != null) {
+            timeShiftSession.release();
+            timeShiftSession = null;
+        }
+    }
+
     @Override
     public boolean isPlaying() {
         return player != null && isPlayingFlag;
@@ -295,7 +533,7 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
 
     @Override
     public void onDataSourceConnectionLost() {
-
+        Log.i(TAG, "Connection lost, data source is reconnecting.");
     }
 
     @Override
@@ -310,15 +548,9 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
                         continue;
                     }
                     if (entry instanceof IcyInfo) {
+                        // Titles are already decoded by IcyDataSource while the stream is read
                         final IcyInfo icyInfo = ((IcyInfo) entry);
                         Log.d(TAG, "IcyInfo: " + icyInfo.toString());
-                        if (icyInfo.title != null) {
-                            Map<String, String> rawMetadata = new HashMap<String, String>() {{
-                                put("StreamTitle", icyInfo.title);
-                            }};
-                            StreamLiveInfo streamLiveInfo = new StreamLiveInfo(rawMetadata);
-                            onDataSourceStreamLiveInfo(streamLiveInfo);
-                        }
                     } else if (entry instanceof IcyHeaders) {
                         final IcyHeaders icyHeaders = ((IcyHeaders) entry);
                         Log.d(TAG, "IcyHeaders: " + icyHeaders.toString());
@@ -374,7 +606,9 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
     }
 
     @Override
-    public void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo) {
+    public void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo, long audioPosition) {
+        if (BuildConfig.DEBUG) Log.d(TAG, "Title changed after " + audioPosition + " audio bytes: " + streamLiveInfo.getTitle());
+
         stateListener.onDataSourceStreamLiveInfo(streamLiveInfo);
     }
 
@@ -428,6 +662,74 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         }
     }
 
+    /**
+     * Holds back what the stream of the standby player reports until the stream is played.
+     */
+    private class StandbyDataSourceListener implements IcyDataSource.IcyDataSourceListener {
+        private boolean playing;
+        private boolean hasShoutcastInfo;
+        private ShoutcastInfo shoutcastInfo;
+        private StreamLiveInfo streamLiveInfo;
+
+        synchronized void play() {
+            playing = true;
+
+            if (hasShoutcastInfo) {
+                ExoPlayerWrapper.this.onDataSourceShoutcastInfo(shoutcastInfo);
+            }
+            if (streamLiveInfo != null) {
+                ExoPlayerWrapper.this.onDataSourceStreamLiveInfo(streamLiveInfo, 0);
+            }
+        }
+
+        @Override
+        public synchronized void onDataSourceConnected() {
+            if (playing) {
+                ExoPlayerWrapper.this.onDataSourceConnected();
+            }
+        }
+
+        @Override
+        public synchronized void onDataSourceConnectionLost() {
+            if (playing) {
+                ExoPlayerWrapper.this.onDataSourceConnectionLost();
+            }
+        }
+
+        @Override
+        public synchronized void onDataSourceConnectionLostIrrecoverably() {
+            if (playing) {
+                ExoPlayerWrapper.this.onDataSourceConnectionLostIrrecoverably();
+            }
+        }
+
+        @Override
+        public synchronized void onDataSourceShoutcastInfo(@Nullable ShoutcastInfo shoutcastInfo) {
+            if (playing) {
+                ExoPlayerWrapper.this.onDataSourceShoutcastInfo(shoutcastInfo);
+            } else {
+                this.hasShoutcastInfo = true;
+                this.shoutcastInfo = shoutcastInfo;
+            }
+        }
+
+        @Override
+        public synchronized void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo, long audioPosition) {
+            if (playing) {
+                ExoPlayerWrapper.this.onDataSourceStreamLiveInfo(streamLiveInfo, audioPosition);
+            } else {
+                this.streamLiveInfo = streamLiveInfo;
+            }
+        }
+
+        @Override
+        public synchronized void onDataSourceBytesRead(byte[] buffer, int offset, int length) {
+            if (playing) {
+                ExoPlayerWrapper.this.onDataSourceBytesRead(buffer, offset, length);
+            }
+        }
+    }
+
     private class ExoPlayerListener implements Player.EventListener {
 
         @Override
@@ -454,7 +756,9 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
         public void onPlayerError(ExoPlaybackException error) {
             Log.d(TAG, "Player error: ", error);
             // Stop playing since it is either irrecoverable error in the player or our data source failed to reconnect.
-            if (fullStopTask != null || error.type != ExoPlaybackException.TYPE_SOURCE) {
+            // A stream which never started could not be opened at all, its url may be outdated.
+            if (fullStopTask != null || error.type != ExoPlaybackException.TYPE_SOURCE || !streamStarted
+                    || error.getSourceException() instanceof IcyDataSource.ReconnectFailedException) {
                 stop();
                 stateListener.onPlayerError(R.string.error_play_stream);
             }
@@ -474,10 +778,16 @@ public class ExoPlayerWrapper implements PlayerWrapper, IcyDataSource.IcyDataSou
     private class AnalyticEventListener implements AnalyticsListener {
         @Override
         public void onPlayerStateChanged(EventTime eventTime, boolean playWhenReady, int playbackState) {
-            isPlayingFlag = playbackState == Player.STATE_READY || playbackState == Player.STATE_BUFFERING;
+            isPlayingFlag = playWhenReady && (playbackState == Player.STATE_READY || playbackState == Player.STATE_BUFFERING);
+
+            if (!playWhenReady) {
+                // Paused with time-shift
+                return;
+            }
 
             switch (playbackState) {
                 case Player.STATE_READY:
+                    streamStarted = true;
                     cancelStopTask();
                     stateListener.onStateChanged(PlayState.Playing);
                     break;
@@ -2,10 +2,12 @@ package com.devnull.radio.players.exoplayer;
 
 
 import android.net.Uri;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
@@ -15,8 +17,11 @@ import com.devnull.radio.station.live.StreamLiveInfo;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
@@ -37,6 +42,14 @@ import static okhttp3.internal.Util.closeQuietly;
  * {@link IcyDataSourceListener#onDataSourceConnectionLost()}.
  * After reconnecting time has passed
  * {@link IcyDataSourceListener#onDataSourceConnectionLostIrrecoverably()} will be called.
+ * <p>
+ * Live streams are read without metadata and in whole frames if they are MP3 or AAC, so the
+ * stream continues from the next connection without a cut frame after reconnecting, also when
+ * the player opens the source again. Reconnection attempts back off with random jitter within
+ * the reconnecting time, once it passed {@link ReconnectFailedException} is thrown.
+ * Files end when the server closes the connection, also if they are sent without length.
+ * <p>
+ * If a {@link TimeShiftBuffer} is set the audio without metadata is also written into it.
  **/
 public class IcyDataSource implements HttpDataSource {
 
@@ -44,6 +57,9 @@ public class IcyDataSource implements HttpDataSource {
 
     public static final long DEFAULT_DELAY_BETWEEN_RECONNECTIONS = 0;
 
+    private static final long MIN_RECONNECT_BACKOFF = 200;
+    private static final long MAX_RECONNECT_BACKOFF = 5 * 1000;
+
     public interface IcyDataSourceListener {
         /**
          * Called on first connection and after successful reconnection.
@@ -62,18 +78,44 @@ public class IcyDataSource implements HttpDataSource {
 
         void onDataSourceShoutcastInfo(@Nullable ShoutcastInfo shoutcastInfo);
 
-        void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo);
+        /**
+         * Called when the title in the stream changed.
+         *
+         * @param audioPosition number of audio bytes passed to {@link #onDataSourceBytesRead}
+         *                      before the new title starts.
+         */
+        void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo, long audioPosition);
 
         void onDataSourceBytesRead(byte[] buffer, int offset, int length);
     }
 
+    /**
+     * The source gave up reconnecting after it tried for the time until stop reconnecting.
+     */
+    public static class ReconnectFailedException extends HttpDataSourceException {
+        public ReconnectFailedException(@NonNull IOException cause, @NonNull DataSpec dataSpec) {
+            super(cause, dataSpec, TYPE_READ);
+        }
+    }
+
     private static final String TAG = "IcyDataSource";
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_METADATA_LENGTH = 255 * 16;
+    private static final byte[] STREAM_TITLE_START = "StreamTitle='".getBytes(UTF8);
+    private static final byte[] STREAM_TITLE_END = "';".getBytes(UTF8);
+
+    private static final String ICY_METAINT_HEADER = "icy-metaint";
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
     private DataSpec dataSpec;
 
     private final OkHttpClient httpClient;
     private final TransferListener transferListener;
     private final IcyDataSourceListener dataSourceListener;
+    private final long timeUntilStopReconnecting;
+    private final long delayBetweenReconnections;
+    private final Random random = new Random();
 
     private Request request;
 
@@ -82,28 +124,69 @@ public class IcyDataSource implements HttpDataSource {
 
     int metadataBytesToSkip = 0;
     int remainingUntilMetadata = Integer.MAX_VALUE;
+
+    // Metadata block which is currently read, it can be split across reads
+    private byte[] metadataBlock;
+    private int metadataBlockLength;
+    private int metadataBlockFilled;
+
+    // Last title as it was in the stream
+    private byte[] title;
+    private int titleLength = -1;
+
+    // Audio bytes without metadata read since the source was opened
+    private long audioPosition;
     private boolean opened;
 
+    // Set for live streams, which are read through it without metadata
+    private AudioFrameAligner frames;
+    private byte[] readBuffer;
+
     ShoutcastInfo shoutcastInfo;
     private StreamLiveInfo streamLiveInfo;
 
+    private TimeShiftBuffer timeShiftBuffer;
+
     public IcyDataSource(@NonNull OkHttpClient httpClient,
                          @NonNull TransferListener listener,
                          @NonNull IcyDataSourceListener dataSourceListener) {
+        this(httpClient, listener, dataSourceListener, DEFAULT_TIME_UNTIL_STOP_RECONNECTING, DEFAULT_DELAY_BETWEEN_RECONNECTIONS);
+    }
+
+    /**
+     * @param timeUntilStopReconnecting  milliseconds after losing the connection until giving up, 0 to not reconnect.
+     * @param delayBetweenReconnections milliseconds between attempts before backing off.
+     */
+    public IcyDataSource(@NonNull OkHttpClient httpClient,
+                         @NonNull TransferListener listener,
+                         @NonNull IcyDataSourceListener dataSourceListener,
+                         long timeUntilStopReconnecting,
+                         long delayBetweenReconnections) {
         this.httpClient = httpClient;
         this.transferListener = listener;
         this.dataSourceListener = dataSourceListener;
+        this.timeUntilStopReconnecting = timeUntilStopReconnecting;
+        this.delayBetweenReconnections = delayBetweenReconnections;
     }
 
     @Override
     public long open(DataSpec dataSpec) throws HttpDataSourceException {
         close();
 
+        return open(dataSpec, HttpUrl.parse(dataSpec.uri.toString()));
+    }
+
+    long open(DataSpec dataSpec, HttpUrl url) throws HttpDataSourceException {
+        // The player opens the source again after errors, the stream continues on whole frames
+        if (request == null || !request.url().equals(url)) {
+            frames = null;
+        }
+
         this.dataSpec = dataSpec;
+        audioPosition = 0;
 
         final boolean allowGzip = (dataSpec.flags & DataSpec.FLAG_ALLOW_GZIP) != 0;
 
-        HttpUrl url = HttpUrl.parse(dataSpec.uri.toString());
         Request.Builder builder = new Request.Builder().url(url)
                 .addHeader("Icy-MetaData", "1");
 
@@ -142,14 +225,16 @@ public class IcyDataSource implements HttpDataSource {
         final String type = contentType == null ? getMimeType(dataSpec.uri.toString(), "audio/mpeg") : contentType.toString().toLowerCase();
 
         if (!REJECT_PAYWALL_TYPES.evaluate(type)) {
-            close();
+            closeQuietly(responseBody);
+            responseBody = null;
             throw new InvalidContentTypeException(type, dataSpec);
         }
 
-        opened = true;
-
         dataSourceListener.onDataSourceConnected();
-        transferListener.onTransferStart(this, dataSpec, true);
+        if (!opened) {
+            opened = true;
+            transferListener.onTransferStart(this, dataSpec, true);
+        }
 
         if (type.equals("application/vnd.apple.mpegurl") || type.equals("application/x-mpegurl")) {
             return responseBody.contentLength();
@@ -159,16 +244,55 @@ public class IcyDataSource implements HttpDataSource {
             dataSourceListener.onDataSourceShoutcastInfo(shoutcastInfo);
 
             metadataBytesToSkip = 0;
-            if (shoutcastInfo != null) {
+            if (shoutcastInfo != null && shoutcastInfo.metadataOffset > 0) {
                 remainingUntilMetadata = shoutcastInfo.metadataOffset;
             } else {
                 remainingUntilMetadata = Integer.MAX_VALUE;
             }
 
+            final int format = AudioFrameAligner.formatOf(type);
+            if (responseBody.contentLength() != C.LENGTH_UNSET || isFile(response)) {
+                frames = null;
+            } else if (frames != null && frames.getFormat() == format) {
+                frames.discontinuity();
+            } else {
+                frames = new AudioFrameAligner(format);
+            }
+
+            if (frames != null) {
+                // Metadata is removed here, the player must not look for it
+                responseHeaders.remove(ICY_METAINT_HEADER);
+            }
+
             return responseBody.contentLength();
         }
     }
 
+    /**
+     * Live streams are sent without length, but so are files which are sent chunked. Those are
+     * told apart by headers which only servers of files send.
+     */
+    static boolean isFile(@NonNull Response response) {
+        for (String name : response.headers().names()) {
+            final String lowerCaseName = name.toLowerCase();
+            if (lowerCaseName.startsWith("icy-") || lowerCaseName.startsWith("ice-")) {
+                return false;
+            }
+        }
+
+        return "bytes".equalsIgnoreCase(response.header("Accept-Ranges"))
+                || response.header("Content-Range") != null
+                || response.header("Last-Modified") != null
+                || response.header("ETag") != null;
+    }
+
+    /**
+     * @param timeShiftBuffer buffer which gets the audio read from now on, null to stop writing it.
+     */
+    public void setTimeShiftBuffer(@Nullable TimeShiftBuffer timeShiftBuffer) {
+        this.timeShiftBuffer = timeShiftBuffer;
+    }
+
     @Override
     public void close() throws HttpDataSourceException {
         if (opened) {
@@ -184,6 +308,10 @@ public class IcyDataSource implements HttpDataSource {
 
     @Override
     public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+        if (frames != null) {
+            return readFrames(buffer, offset, readLength);
+        }
+
         try {
             final int bytesTransferred = readInternal(buffer, offset, readLength);
             transferListener.onBytesTransferred(this, dataSpec, true, bytesTransferred);
@@ -195,32 +323,229 @@ public class IcyDataSource implements HttpDataSource {
     }
 
     void sendToDataSourceListenersWithoutMetadata(byte[] buffer, int offset, int bytesAvailable) {
-        int canSkip = Math.min(metadataBytesToSkip, bytesAvailable);
-        offset += canSkip;
-        bytesAvailable -= canSkip;
-        remainingUntilMetadata -= canSkip;
+        if (shoutcastInfo == null || shoutcastInfo.metadataOffset <= 0) {
+            onAudioBytesRead(buffer, offset, bytesAvailable);
+            return;
+        }
+
         while (bytesAvailable > 0) {
-            if (bytesAvailable > remainingUntilMetadata) { // do we need to handle a metadata frame at all?
-                if (remainingUntilMetadata > 0) { // is there any audio data before the metadata frame?
-                    dataSourceListener.onDataSourceBytesRead(buffer, offset, remainingUntilMetadata);
-                    offset += remainingUntilMetadata;
-                    bytesAvailable -= remainingUntilMetadata;
-                }
-                metadataBytesToSkip = buffer[offset] * 16 + 1;
-                remainingUntilMetadata = shoutcastInfo.metadataOffset + metadataBytesToSkip;
+            final int bytes;
+            if (metadataBytesToSkip > 0) {
+                bytes = Math.min(bytesAvailable, metadataBytesToSkip);
+                onMetadataBytesRead(buffer, offset, bytes);
+                metadataBytesToSkip -= bytes;
+            } else if (remainingUntilMetadata > 0) {
+                bytes = Math.min(bytesAvailable, remainingUntilMetadata);
+                onAudioBytesRead(buffer, offset, bytes);
+            } else {
+                // Length of the metadata block in 16 byte units
+                bytes = 1;
+                metadataBytesToSkip = (buffer[offset] & 0xFF) * 16;
+                remainingUntilMetadata = shoutcastInfo.metadataOffset + metadataBytesToSkip + bytes;
+                onMetadataBlockStarted(metadataBytesToSkip);
             }
 
-            int bytesLeft = Math.min(bytesAvailable, remainingUntilMetadata);
-            if (bytesLeft > metadataBytesToSkip) { // is there audio data left we need to send?
-                dataSourceListener.onDataSourceBytesRead(buffer, offset + metadataBytesToSkip, bytesLeft - metadataBytesToSkip);
-                metadataBytesToSkip = 0;
-            } else {
-                metadataBytesToSkip -= bytesLeft;
+            offset += bytes;
+            bytesAvailable -= bytes;
+            remainingUntilMetadata -= bytes;
+        }
+    }
+
+    private void onAudioBytesRead(byte[] buffer, int offset, int length) {
+        audioPosition += length;
+        dataSourceListener.onDataSourceBytesRead(buffer, offset, length);
+
+        if (frames != null) {
+            // Written to the time-shift buffer when it was aligned to frames
+            frames.write(buffer, offset, length);
+        } else if (timeShiftBuffer != null) {
+            timeShiftBuffer.write(buffer, offset, length);
+        }
+    }
+
+    private void onMetadataBlockStarted(int length) {
+        metadataBlockLength = length;
+        metadataBlockFilled = 0;
+
+        if (length > 0 && metadataBlock == null) {
+            metadataBlock = new byte[MAX_METADATA_LENGTH];
+            title = new byte[MAX_METADATA_LENGTH];
+        }
+    }
+
+    private void onMetadataBytesRead(byte[] buffer, int offset, int length) {
+        if (metadataBlock == null || metadataBlockFilled + length > metadataBlockLength) {
+            return;
+        }
+
+        System.arraycopy(buffer, offset, metadataBlock, metadataBlockFilled, length);
+        metadataBlockFilled += length;
+
+        if (metadataBlockFilled == metadataBlockLength) {
+            decodeMetadataBlock();
+        }
+    }
+
+    /**
+     * Compares the title in the block with the last one as bytes, strings are only created
+     * when it changed.
+     */
+    private void decodeMetadataBlock() {
+        // Padded with zeros up to a multiple of 16 bytes
+        int end = metadataBlockLength;
+        while (end > 0 && metadataBlock[end - 1] == 0) {
+            end--;
+        }
+
+        int titleStart = indexOf(metadataBlock, 0, end, STREAM_TITLE_START);
+        if (titleStart < 0) {
+            return;
+        }
+        titleStart += STREAM_TITLE_START.length;
+
+        int titleEnd = indexOf(metadataBlock, titleStart, end, STREAM_TITLE_END);
+        if (titleEnd < 0) {
+            // Last value without ';'
+            titleEnd = end > titleStart && metadataBlock[end - 1] == '\'' ? end - 1 : end;
+        }
+
+        final int length = titleEnd - titleStart;
+        if (length == titleLength && rangeEquals(metadataBlock, titleStart, title, 0, length)) {
+            return;
+        }
+
+        System.arraycopy(metadataBlock, titleStart, title, 0, length);
+        titleLength = length;
+
+        Map<String, String> rawMetadata = StreamLiveInfo.decodeShoutcastMetadata(new String(metadataBlock, 0, end, UTF8));
+        // Titles may contain ';' which splits them in the generic decoding
+        rawMetadata.put("StreamTitle", new String(title, 0, length, UTF8));
+        streamLiveInfo = new StreamLiveInfo(rawMetadata);
+
+        dataSourceListener.onDataSourceStreamLiveInfo(streamLiveInfo, audioPosition);
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte[] pattern) {
+        for (int i = from; i <= to - pattern.length; i++) {
+            if (rangeEquals(bytes, i, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean rangeEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
             }
-            offset += bytesLeft;
-            bytesAvailable -= bytesLeft;
-            remainingUntilMetadata -= bytesLeft;
         }
+        return true;
+    }
+
+    private int readFrames(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+        if (readLength == 0) {
+            return 0;
+        }
+
+        int bytesRead;
+        while ((bytesRead = frames.read(buffer, offset, readLength)) == 0) {
+            if (!readIntoFrames()) {
+                return C.RESULT_END_OF_INPUT;
+            }
+        }
+
+        if (timeShiftBuffer != null) {
+            timeShiftBuffer.write(buffer, offset, bytesRead);
+        }
+        return bytesRead;
+    }
+
+    /**
+     * @return false if the stream ended and reconnecting is turned off.
+     */
+    private boolean readIntoFrames() throws HttpDataSourceException {
+        if (responseBody == null) {
+            throw new HttpDataSourceException(dataSpec, HttpDataSourceException.TYPE_READ);
+        }
+
+        if (readBuffer == null) {
+            readBuffer = new byte[READ_BUFFER_SIZE];
+        }
+
+        IOException readError = null;
+        int bytesRead;
+        try {
+            bytesRead = responseBody.byteStream().read(readBuffer, 0, Math.min(readBuffer.length, frames.writableLength()));
+        } catch (IOException e) {
+            readError = e;
+            bytesRead = C.RESULT_END_OF_INPUT;
+        }
+
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+            if (readError == null && timeUntilStopReconnecting <= 0) {
+                return false;
+            }
+
+            // Live streams do not end, the connection was lost
+            reconnect(readError);
+            return true;
+        }
+
+        transferListener.onBytesTransferred(this, dataSpec, true, bytesRead);
+        sendToDataSourceListenersWithoutMetadata(readBuffer, 0, bytesRead);
+        return true;
+    }
+
+    private void reconnect(@Nullable IOException readError) throws HttpDataSourceException {
+        closeQuietly(responseBody);
+        responseBody = null;
+
+        if (timeUntilStopReconnecting <= 0) {
+            dataSourceListener.onDataSourceConnectionLostIrrecoverably();
+            throw new HttpDataSourceException(readError, dataSpec, HttpDataSourceException.TYPE_READ);
+        }
+
+        Log.i(TAG, "Connection lost, reconnecting", readError);
+        dataSourceListener.onDataSourceConnectionLost();
+
+        final long deadline = System.nanoTime() / 1000000 + timeUntilStopReconnecting;
+        HttpDataSourceException lastError = new HttpDataSourceException(readError, dataSpec, HttpDataSourceException.TYPE_READ);
+        for (int attempt = 0; ; attempt++) {
+            final long remaining = deadline - System.nanoTime() / 1000000;
+            if (remaining <= 0) {
+                break;
+            }
+
+            try {
+                Thread.sleep(Math.min(remaining, reconnectDelay(attempt, delayBetweenReconnections, random)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new HttpDataSourceException(new InterruptedIOException(), dataSpec, HttpDataSourceException.TYPE_READ);
+            }
+
+            try {
+                connect();
+                Log.i(TAG, "Reconnected after " + (attempt + 1) + " attempts");
+                return;
+            } catch (HttpDataSourceException e) {
+                Log.d(TAG, "Reconnecting failed: " + e.getMessage());
+                lastError = e;
+            }
+        }
+
+        dataSourceListener.onDataSourceConnectionLostIrrecoverably();
+        throw new ReconnectFailedException(lastError, dataSpec);
+    }
+
+    /**
+     * Exponential backoff starting at the delay between reconnections, a random part of it is
+     * left out so listeners of a stream which broke down do not come back all at once.
+     */
+    static long reconnectDelay(int attempt, long delayBetweenReconnections, @NonNull Random random) {
+        final long base = Math.max(delayBetweenReconnections, MIN_RECONNECT_BACKOFF);
+        final long delay = Math.min(MAX_RECONNECT_BACKOFF, base << Math.min(attempt, 16));
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
     }
 
     private int readInternal(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
@@ -237,7 +562,9 @@ public class IcyDataSource implements HttpDataSource {
             throw new HttpDataSourceException(e, dataSpec, HttpDataSourceException.TYPE_READ);
         }
 
-        sendToDataSourceListenersWithoutMetadata(buffer, offset, bytesRead);
+        if (bytesRead > 0) {
+            sendToDataSourceListenersWithoutMetadata(buffer, offset, bytesRead);
+        }
 
         return bytesRead;
     }
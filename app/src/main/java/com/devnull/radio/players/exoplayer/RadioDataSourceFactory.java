@@ -15,6 +15,10 @@ public class RadioDataSourceFactory implements DataSource.Factory {
     private long retryTimeout;
     private long retryDelay;
 
+    /**
+     * @param retryTimeout milliseconds to reconnect lost connections for.
+     * @param retryDelay   milliseconds between reconnection attempts before backing off.
+     */
     public RadioDataSourceFactory(@NonNull OkHttpClient httpClient,
                                   @NonNull TransferListener transferListener,
                                   @NonNull IcyDataSource.IcyDataSourceListener dataSourceListener,
@@ -29,6 +33,6 @@ public class RadioDataSourceFactory implements DataSource.Factory {
 
     @Override
     public DataSource createDataSource() {
-        return new IcyDataSource(httpClient, transferListener, dataSourceListener);
+        return new IcyDataSource(httpClient, transferListener, dataSourceListener, retryTimeout, retryDelay);
     }
 }
@@ -0,0 +1,77 @@
+package com.devnull.radio.players.exoplayer;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Renderer;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.upstream.Allocator;
+
+/**
+ * {@link DefaultLoadControl} of a player which starts in standby. In standby only a small
+ * buffer is loaded, once the player is played it loads like any other player.
+ */
+class StandbyLoadControl implements LoadControl {
+    private final DefaultLoadControl loadControl = new DefaultLoadControl();
+
+    // Read on the playback thread
+    private volatile long standbyBufferUs;
+
+    StandbyLoadControl(long standbyBufferMs) {
+        this.standbyBufferUs = C.msToUs(standbyBufferMs);
+    }
+
+    void leaveStandby() {
+        standbyBufferUs = 0;
+    }
+
+    @Override
+    public boolean shouldContinueLoading(long bufferedDurationUs, float playbackSpeed) {
+        final long standbyBufferUs = this.standbyBufferUs;
+        if (standbyBufferUs > 0) {
+            return bufferedDurationUs < standbyBufferUs;
+        }
+        return loadControl.shouldContinueLoading(bufferedDurationUs, playbackSpeed);
+    }
+
+    @Override
+    public boolean shouldStartPlayback(long bufferedDurationUs, float playbackSpeed, boolean rebuffering) {
+        return loadControl.shouldStartPlayback(bufferedDurationUs, playbackSpeed, rebuffering);
+    }
+
+    @Override
+    public void onPrepared() {
+        loadControl.onPrepared();
+    }
+
+    @Override
+    public void onTracksSelected(Renderer[] renderers, TrackGroupArray trackGroups, TrackSelectionArray trackSelections) {
+        loadControl.onTracksSelected(renderers, trackGroups, trackSelections);
+    }
+
+    @Override
+    public void onStopped() {
+        loadControl.onStopped();
+    }
+
+    @Override
+    public void onReleased() {
+        loadControl.onReleased();
+    }
+
+    @Override
+    public Allocator getAllocator() {
+        return loadControl.getAllocator();
+    }
+
+    @Override
+    public long getBackBufferDurationUs() {
+        return loadControl.getBackBufferDurationUs();
+    }
+
+    @Override
+    public boolean retainBackBufferFromKeyframe() {
+        return loadControl.retainBackBufferFromKeyframe();
+    }
+}
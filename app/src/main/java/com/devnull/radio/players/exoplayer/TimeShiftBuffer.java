@@ -0,0 +1,311 @@
+package com.devnull.radio.players.exoplayer;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Ring buffer of the last minutes of a live stream, backed by a memory mapped file so the
+ * audio does not stay on the heap. It has a fixed size, when it is full the oldest audio is
+ * dropped.
+ * <p>
+ * Positions are counted in bytes since the stream started and are never reused, so readers
+ * can keep reading while the stream is written. The writer can use {@link #getWritableLength}
+ * to wait for a reader instead of dropping audio it has not read, as {@link TimeShiftSession}
+ * does. Readers which fell behind anyway continue with the oldest audio which is still there.
+ * <p>
+ * The file is not allocated up front, parts of it are written through the file the first time
+ * so a full disk fails the write instead of crashing on access to the mapping.
+ */
+public class TimeShiftBuffer {
+    private static final String TAG = "TimeShiftBuffer";
+
+    public static final int END_OF_INPUT = -1;
+
+    public static final int DEFAULT_BITRATE_KBPS = 128;
+
+    private static final int MAX_CAPACITY = 256 * 1024 * 1024;
+    private static final int MIN_CAPACITY = 64 * 1024;
+    // Space which is left to other apps when the buffer is made smaller to fit on the disk
+    private static final long RESERVED_SPACE = 32 * 1024 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private MappedByteBuffer data;
+    private final int capacity;
+    // Bytes which are free after old audio was dropped, so audio is not dropped on every write
+    private final int evictionWatermark;
+
+    private long startPosition;
+    private long endPosition;
+    // Length of the file which was written at least once
+    private int allocatedLength;
+    private boolean finished;
+    private boolean released;
+
+    TimeShiftBuffer(@NonNull File file, int capacity, int evictionWatermark) throws IOException {
+        if (evictionWatermark <= 0 || evictionWatermark >= capacity) {
+            throw new IllegalArgumentException("Eviction watermark " + evictionWatermark + " for capacity " + capacity);
+        }
+
+        this.file = file;
+        this.capacity = capacity;
+        this.evictionWatermark = evictionWatermark;
+
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(capacity);
+            data = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } catch (IOException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Buffer for minutes of audio at bitrate in a new file in dir. Files left over from earlier
+     * buffers are removed.
+     *
+     * @param bitrateKbps bitrate of the stream, {@link #DEFAULT_BITRATE_KBPS} is used if it is not known.
+     */
+    public static TimeShiftBuffer create(@NonNull File dir, int minutes, int bitrateKbps) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+
+        File[] leftovers = dir.listFiles();
+        if (leftovers != null) {
+            for (File leftover : leftovers) {
+                //noinspection ResultOfMethodCallIgnored
+                leftover.delete();
+            }
+        }
+
+        final long usableSpace = dir.getUsableSpace() - RESERVED_SPACE;
+        final int capacity = (int) Math.min(capacityFor(minutes, bitrateKbps), usableSpace);
+        if (capacity < MIN_CAPACITY) {
+            throw new IOException("Not enough space for time-shift buffer in " + dir);
+        }
+
+        return new TimeShiftBuffer(File.createTempFile("timeshift", ".buf", dir), capacity, capacity / 16);
+    }
+
+    static int capacityFor(int minutes, int bitrateKbps) {
+        final long bytes = (long) minutes * 60 * bytesPerSecond(bitrateKbps);
+        return (int) Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, bytes));
+    }
+
+    public static int bytesPerSecond(int bitrateKbps) {
+        return (bitrateKbps > 0 ? bitrateKbps : DEFAULT_BITRATE_KBPS) * 1000 / 8;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return position of the oldest byte which is still in the buffer.
+     */
+    public synchronized long getStartPosition() {
+        return startPosition;
+    }
+
+    /**
+     * @return position after the newest byte, which is the live position.
+     */
+    public synchronized long getEndPosition() {
+        return endPosition;
+    }
+
+    /**
+     * @return number of bytes which can be written before audio after the read position,
+     * which was not read yet, is dropped.
+     */
+    public synchronized long getWritableLength(long readPosition) {
+        final long unread = endPosition - Math.max(startPosition, Math.min(endPosition, readPosition));
+        // Once the buffer is full, writes drop old audio down to the watermark
+        return Math.max(capacity - (endPosition - startPosition), capacity - evictionWatermark - unread);
+    }
+
+    /**
+     * Once writing to the file failed, the buffer is finished.
+     */
+    public synchronized void write(@NonNull byte[] buffer, int offset, int length) {
+        if (finished || length <= 0) {
+            return;
+        }
+
+        final int keep = capacity - evictionWatermark;
+        if (length > capacity) {
+            // More than fits at once, only the newest part is kept
+            final int skip = length - keep;
+            offset += skip;
+            length = keep;
+            endPosition += skip;
+            startPosition = endPosition;
+        }
+
+        if (endPosition + length - startPosition > capacity) {
+            startPosition = endPosition + length - keep;
+        }
+
+        final int at = (int) (endPosition % capacity);
+        final int untilWrap = Math.min(length, capacity - at);
+        try {
+            put(at, buffer, offset, untilWrap);
+            if (untilWrap < length) {
+                put(0, buffer, offset + untilWrap, length - untilWrap);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to write time-shift buffer", e);
+            finish();
+            return;
+        }
+
+        endPosition += length;
+        notifyAll();
+    }
+
+    private void put(int at, byte[] buffer, int offset, int length) throws IOException {
+        if (at + length <= allocatedLength) {
+            data.position(at);
+            data.put(buffer, offset, length);
+            return;
+        }
+
+        // Blocks of the file are allocated by the write, the mapping shares them afterwards
+        final ByteBuffer source = ByteBuffer.wrap(buffer, offset, length);
+        final FileChannel channel = randomAccessFile.getChannel();
+        long position = at;
+        while (source.hasRemaining()) {
+            position += channel.write(source, position);
+        }
+        allocatedLength = Math.max(allocatedLength, at + length);
+    }
+
+    /**
+     * No more audio will be written. Readers read what is left and then get {@link #END_OF_INPUT}.
+     */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Finish, unmap and remove the file. Readers get {@link #END_OF_INPUT} afterwards.
+     */
+    public void release() {
+        final MappedByteBuffer releasedData;
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+
+            released = true;
+            finish();
+            releasedData = data;
+            data = null;
+
+            // Readers and writers check released under the lock, nothing accesses the mapping anymore
+            unmap(releasedData);
+        }
+
+        try {
+            randomAccessFile.close();
+        } catch (IOException ignored) {
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Frees the mapping right away instead of when the garbage collector gets to it, so the
+     * space of the deleted file is given back to the disk when switching stations.
+     */
+    private static void unmap(@NonNull MappedByteBuffer mapping) {
+        try {
+            Method cleanerMethod = mapping.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapping);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (Exception e) {
+            Log.d(TAG, "Mapping is left to the garbage collector: " + e);
+        }
+    }
+
+    /**
+     * @param position first position to read, it is moved to the nearest position in the buffer.
+     */
+    public Reader newReader(long position) {
+        return new Reader(position);
+    }
+
+    public class Reader {
+        private long position;
+
+        private Reader(long position) {
+            synchronized (TimeShiftBuffer.this) {
+                this.position = Math.max(startPosition, Math.min(endPosition, position));
+            }
+        }
+
+        public long getPosition() {
+            synchronized (TimeShiftBuffer.this) {
+                return position;
+            }
+        }
+
+        /**
+         * Blocks until audio after the position of the reader was written.
+         *
+         * @return number of bytes read or {@link #END_OF_INPUT} if the buffer was finished.
+         */
+        public int read(@NonNull byte[] buffer, int offset, int length) throws InterruptedException {
+            synchronized (TimeShiftBuffer.this) {
+                while (position >= endPosition && !finished) {
+                    TimeShiftBuffer.this.wait();
+                }
+
+                if (released) {
+                    return END_OF_INPUT;
+                }
+
+                if (position < startPosition) {
+                    // Paused for longer than the buffer holds
+                    position = startPosition;
+                }
+
+                if (position >= endPosition) {
+                    return END_OF_INPUT;
+                }
+
+                final int count = (int) Math.min(length, endPosition - position);
+                final int at = (int) (position % capacity);
+                final int untilWrap = Math.min(count, capacity - at);
+                data.position(at);
+                data.get(buffer, offset, untilWrap);
+                if (untilWrap < count) {
+                    data.position(0);
+                    data.get(buffer, offset + untilWrap, count - untilWrap);
+                }
+
+                position += count;
+                return count;
+            }
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.devnull.radio.players.exoplayer;
+
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Loads a live stream into a {@link TimeShiftBuffer} on its own thread, also while the player
+ * is paused, and creates data sources which let the player read from the buffer. Loading stops
+ * while the player is paused for as long as the buffer holds, instead of dropping what it has
+ * not played yet.
+ * <p>
+ * The data sources start at the live position or at the position given to {@link #seekTo}.
+ * Data sources which are opened again after a load error continue where the last one stopped.
+ */
+public class TimeShiftSession implements DataSource.Factory {
+    private static final String TAG = "TimeShiftSession";
+
+    public static final long LIVE_POSITION = Long.MAX_VALUE;
+    private static final long CONTINUE_POSITION = -1;
+
+    private static final int READ_SIZE = 16 * 1024;
+
+    // How often a loader which waits for the player checks whether it can go on
+    private static final long READER_POLL_INTERVAL_MS = 1000;
+
+    private final IcyDataSource source;
+    private final DataSpec dataSpec;
+    private final File dir;
+    private final int minutes;
+
+    private volatile boolean released;
+    private Thread loader;
+
+    // Guarded by this
+    private TimeShiftBuffer buffer;
+    private IOException loadError;
+    private int bytesPerSecond = TimeShiftBuffer.bytesPerSecond(0);
+    private long nextReadPosition = LIVE_POSITION;
+    private TimeShiftBuffer.Reader currentReader;
+
+    /**
+     * @param minutes length of audio which is kept for rewinding.
+     */
+    public TimeShiftSession(@NonNull IcyDataSource source, @NonNull DataSpec dataSpec, @NonNull File dir, int minutes) {
+        this.source = source;
+        this.dataSpec = dataSpec;
+        this.dir = dir;
+        this.minutes = minutes;
+    }
+
+    public void start() {
+        loader = new Thread(this::load, "TimeShiftLoader");
+        loader.start();
+    }
+
+    /**
+     * Stop loading and remove the buffer, data sources created before fail on their next read.
+     */
+    public void release() {
+        released = true;
+        if (loader != null) {
+            // Stops waiting for the next reconnection attempt
+            loader.interrupt();
+        }
+
+        final TimeShiftBuffer releasedBuffer;
+        synchronized (this) {
+            releasedBuffer = buffer;
+            buffer = null;
+            notifyAll();
+        }
+
+        if (releasedBuffer != null) {
+            releasedBuffer.release();
+        }
+    }
+
+    @Override
+    public DataSource createDataSource() {
+        return new BufferDataSource();
+    }
+
+    /**
+     * The next data source which is opened starts at position.
+     *
+     * @param position position in the buffer or {@link #LIVE_POSITION}.
+     */
+    public synchronized void seekTo(long position) {
+        nextReadPosition = position;
+    }
+
+    /**
+     * @return position up to which the player has read, the player may not have played it yet.
+     */
+    public synchronized long getReadPosition() {
+        if (currentReader != null) {
+            return currentReader.getPosition();
+        }
+        return buffer != null ? buffer.getEndPosition() : 0;
+    }
+
+    public synchronized long getStartPosition() {
+        return buffer != null ? buffer.getStartPosition() : 0;
+    }
+
+    public synchronized long getEndPosition() {
+        return buffer != null ? buffer.getEndPosition() : 0;
+    }
+
+    /**
+     * @return false after loading the stream failed or the session was released.
+     */
+    public synchronized boolean isLoading() {
+        return !released && loadError == null && (buffer == null || !buffer.isFinished());
+    }
+
+    public synchronized int getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * @param bufferedMs audio which the player has read but not played yet.
+     * @param deltaMs    time to move playback by, negative to rewind.
+     * @return position to pass to {@link #seekTo}.
+     */
+    public synchronized long getShiftedPosition(long bufferedMs, long deltaMs) {
+        return shiftedPosition(getReadPosition(), getEndPosition(), bufferedMs, deltaMs, bytesPerSecond);
+    }
+
+    static long shiftedPosition(long readPosition, long endPosition, long bufferedMs, long deltaMs, long bytesPerSecond) {
+        // The player has read further than it has played
+        final long playedPosition = readPosition - bufferedMs * bytesPerSecond / 1000;
+
+        final long position = playedPosition + deltaMs * bytesPerSecond / 1000;
+        return position >= endPosition ? LIVE_POSITION : position;
+    }
+
+    private void load() {
+        TimeShiftBuffer loadBuffer = null;
+        try {
+            source.open(dataSpec);
+
+            final int bitrate = source.shoutcastInfo != null ? source.shoutcastInfo.bitrate : 0;
+            loadBuffer = TimeShiftBuffer.create(dir, minutes, bitrate);
+            source.setTimeShiftBuffer(loadBuffer);
+
+            synchronized (this) {
+                if (released) {
+                    loadBuffer.release();
+                    return;
+                }
+
+                buffer = loadBuffer;
+                bytesPerSecond = TimeShiftBuffer.bytesPerSecond(bitrate);
+                notifyAll();
+            }
+
+            Log.d(TAG, String.format("Buffering %d minutes in %d bytes", minutes, loadBuffer.getCapacity()));
+
+            final byte[] scratch = new byte[READ_SIZE];
+            // Finished early if writing to the buffer failed
+            while (!released && !loadBuffer.isFinished()) {
+                waitForReader(loadBuffer);
+                if (source.read(scratch, 0, scratch.length) == C.RESULT_END_OF_INPUT) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Released
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (!released) {
+                Log.e(TAG, "Loading stopped", e);
+            }
+
+            synchronized (this) {
+                loadError = e;
+                notifyAll();
+            }
+        } finally {
+            try {
+                source.close();
+            } catch (IOException ignored) {
+            }
+
+            if (loadBuffer != null) {
+                loadBuffer.finish();
+            }
+        }
+    }
+
+    /**
+     * Blocks while the next read could drop audio the player has not read yet. The connection
+     * may be closed by the server meanwhile, the source reconnects once reading goes on.
+     */
+    private synchronized void waitForReader(TimeShiftBuffer loadBuffer) throws InterruptedException {
+        boolean waiting = false;
+        while (!released && currentReader != null && loadBuffer.getWritableLength(currentReader.getPosition()) < READ_SIZE) {
+            if (!waiting) {
+                Log.i(TAG, "Buffer is full of audio which was not played, stopped loading");
+                waiting = true;
+            }
+            wait(READER_POLL_INTERVAL_MS);
+        }
+    }
+
+    private synchronized TimeShiftBuffer.Reader openReader() throws IOException {
+        try {
+            while (buffer == null && loadError == null && !released) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        if (buffer == null) {
+            throw loadError != null ? loadError : new IOException("Time-shift session was released");
+        }
+
+        if (nextReadPosition != CONTINUE_POSITION || currentReader == null) {
+            final long position = nextReadPosition == LIVE_POSITION || nextReadPosition == CONTINUE_POSITION
+                    ? buffer.getEndPosition() : nextReadPosition;
+            currentReader = buffer.newReader(position);
+            nextReadPosition = CONTINUE_POSITION;
+        }
+        return currentReader;
+    }
+
+    private class BufferDataSource implements DataSource {
+        private TimeShiftBuffer.Reader reader;
+        private Uri uri;
+
+        @Override
+        public void addTransferListener(TransferListener transferListener) {
+            // Transfers are reported by the source which loads the stream
+        }
+
+        @Override
+        public long open(DataSpec dataSpec) throws IOException {
+            uri = dataSpec.uri;
+            reader = openReader();
+            return C.LENGTH_UNSET;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int readLength) throws IOException {
+            if (readLength == 0) {
+                return 0;
+            }
+
+            final int bytesRead;
+            try {
+                bytesRead = reader.read(buffer, offset, readLength);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+
+            if (bytesRead == TimeShiftBuffer.END_OF_INPUT) {
+                // Live streams do not end, let the player retry and give up like for a lost connection
+                throw new IOException("Time-shift stream stopped loading");
+            }
+            return bytesRead;
+        }
+
+        @Nullable
+        @Override
+        public Uri getUri() {
+            return uri;
+        }
+
+        @Override
+        public void close() {
+            reader = null;
+        }
+    }
+}
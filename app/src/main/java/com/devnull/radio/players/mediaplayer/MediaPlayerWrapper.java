@@ -17,6 +17,7 @@ import com.devnull.radio.Utils;
 import com.devnull.radio.players.PlayState;
 import com.devnull.radio.players.PlayerWrapper;
 import com.devnull.radio.recording.RecordableListener;
+import com.devnull.radio.service.PauseReason;
 
 import java.io.IOException;
 import java.util.Map;
@@ -122,7 +123,7 @@ public class MediaPlayerWrapper implements PlayerWrapper, StreamProxyListener {
     }
 
     @Override
-    public void pause() {
+    public void pause(@NonNull PauseReason pauseReason) {
         if (mediaPlayer != null) {
             if (mediaPlayer.isPlaying()) {
                 mediaPlayer.stop();
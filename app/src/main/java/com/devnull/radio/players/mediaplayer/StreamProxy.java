@@ -19,7 +19,6 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
@@ -135,7 +134,7 @@ public class StreamProxy implements Recordable {
                 if (metadataBytesToRead <= 0) {
                     String s = new String(readBuffer, 0, metadataBytes, "utf-8");
                     if (BuildConfig.DEBUG) Log.d(TAG, "METADATA:" + s);
-                    Map<String, String> rawMetadata = decodeShoutcastMetadata(s);
+                    Map<String, String> rawMetadata = StreamLiveInfo.decodeShoutcastMetadata(s);
                     StreamLiveInfo streamLiveInfo = new StreamLiveInfo(rawMetadata);
                     if (BuildConfig.DEBUG) Log.d(TAG, "META:" + streamLiveInfo.getTitle());
                     callback.onFoundLiveStreamInfo(streamLiveInfo);
@@ -277,31 +276,6 @@ public class StreamProxy implements Recordable {
         stop();
     }
 
-    private Map<String, String> decodeShoutcastMetadata(String metadataStr) {
-        Map<String, String> metadata = new HashMap<>();
-
-        String[] kvs = metadataStr.split(";");
-
-        for (String kv : kvs) {
-            final int n = kv.indexOf('=');
-            if (n < 1) continue;
-
-            final boolean isString = n + 1 < kv.length()
-                    && kv.charAt(kv.length() - 1) == '\''
-                    && kv.charAt(n + 1) == '\'';
-
-            final String key = kv.substring(0, n);
-            final String val = isString ?
-                    kv.substring(n + 2, kv.length() - 1) :
-                    n + 1 < kv.length() ?
-                            kv.substring(n + 1) : "";
-
-            metadata.put(key, val);
-        }
-
-        return metadata;
-    }
-
     public String getLocalAddress() {
         return localAddress;
     }
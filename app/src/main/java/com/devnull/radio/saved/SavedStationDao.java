@@ -0,0 +1,70 @@
+package com.devnull.radio.saved;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import androidx.room.Transaction;
+
+import java.util.List;
+
+@Dao
+public abstract class SavedStationDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    public abstract void put(SavedStationEntry entry);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    abstract void putAll(List<SavedStationEntry> entries);
+
+    @Query("UPDATE saved_stations SET position = :position WHERE list_id = :listId AND station_key = :stationKey")
+    public abstract void setPosition(@NonNull String listId, @NonNull String stationKey, long position);
+
+    @Query("UPDATE saved_stations SET station_json = :stationJson WHERE list_id = :listId AND station_key = :stationKey")
+    abstract void setStationJson(@NonNull String listId, @NonNull String stationKey, @NonNull String stationJson);
+
+    @Query("DELETE FROM saved_stations WHERE list_id = :listId AND station_key = :stationKey")
+    public abstract void delete(@NonNull String listId, @NonNull String stationKey);
+
+    @Query("DELETE FROM saved_stations WHERE list_id = :listId")
+    public abstract void deleteList(@NonNull String listId);
+
+    // Pages by position instead of offset, rows removed while the list loads do not shift later pages
+    @Query("SELECT * FROM saved_stations WHERE list_id = :listId AND position > :afterPosition ORDER BY position LIMIT :limit")
+    public abstract List<SavedStationEntry> getPage(@NonNull String listId, long afterPosition, int limit);
+
+    /**
+     * Write the changes collected since the last write in one transaction.
+     *
+     * @param replacement new content of the whole list, it is written before the other changes.
+     */
+    @Transaction
+    void write(@NonNull String listId, @Nullable List<SavedStationEntry> replacement, List<SavedStationWrite> writes) {
+        if (replacement != null) {
+            deleteList(listId);
+            putAll(replacement);
+        }
+
+        for (SavedStationWrite write : writes) {
+            if (write.delete) {
+                delete(listId, write.stationKey);
+            } else if (write.entry != null) {
+                put(write.entry);
+            } else {
+                if (write.position != null) {
+                    setPosition(listId, write.stationKey, write.position);
+                }
+                if (write.stationJson != null) {
+                    setStationJson(listId, write.stationKey, write.stationJson);
+                }
+            }
+        }
+    }
+
+    @Transaction
+    public void replaceList(@NonNull String listId, List<SavedStationEntry> entries) {
+        deleteList(listId);
+        putAll(entries);
+    }
+}
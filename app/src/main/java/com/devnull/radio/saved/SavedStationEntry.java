@@ -0,0 +1,48 @@
+package com.devnull.radio.saved;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+
+/**
+ * A station of a saved list like the favourites or the history. Stations are ordered by
+ * position, positions have gaps so a station can be put between two others without
+ * writing them as well.
+ */
+@Entity(tableName = "saved_stations",
+        primaryKeys = {"list_id", "station_key"},
+        indices = {@Index({"list_id", "position"})})
+public class SavedStationEntry {
+
+    @ColumnInfo(name = "list_id")
+    @NonNull
+    public String listId;
+
+    // Station uuid or the id of stations saved by old versions
+    @ColumnInfo(name = "station_key")
+    @NonNull
+    public String stationKey;
+
+    @ColumnInfo(name = "position")
+    public long position;
+
+    @ColumnInfo(name = "station_json")
+    @NonNull
+    public String stationJson;
+
+    public SavedStationEntry() {
+        listId = "";
+        stationKey = "";
+        stationJson = "";
+    }
+
+    @Ignore
+    public SavedStationEntry(@NonNull String listId, @NonNull String stationKey, long position, @NonNull String stationJson) {
+        this.listId = listId;
+        this.stationKey = stationKey;
+        this.position = position;
+        this.stationJson = stationJson;
+    }
+}
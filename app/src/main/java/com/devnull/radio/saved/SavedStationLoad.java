@@ -0,0 +1,92 @@
+package com.devnull.radio.saved;
+
+import androidx.annotation.NonNull;
+
+import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.IndexedStationList;
+
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Load of a saved list which is in progress while the list is already shown and changed.
+ * Loaded stations are merged after the ones added to the front and before the ones added at
+ * the end, stations which were removed meanwhile are not added again.
+ */
+public class SavedStationLoad {
+    // Position of the next loaded station in the list
+    private int insertPosition = 0;
+    private boolean changed = false;
+    private final HashSet<String> removedKeys = new HashSet<>();
+
+    /**
+     * @return true if the list was changed since the load started, it has to be written
+     * completely once the load is finished.
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public void onChanged() {
+        changed = true;
+    }
+
+    public void onAddedFront() {
+        insertPosition++;
+        changed = true;
+    }
+
+    public void onAdded(int position) {
+        if (position < insertPosition) {
+            insertPosition++;
+        }
+        changed = true;
+    }
+
+    public void onMoved(int fromPosition, int toPosition) {
+        if (fromPosition < insertPosition && toPosition >= insertPosition) {
+            insertPosition--;
+        } else if (fromPosition >= insertPosition && toPosition < insertPosition) {
+            insertPosition++;
+        }
+        changed = true;
+    }
+
+    public void onRemoved(int position, @NonNull DataRadioStation station) {
+        if (position < insertPosition) {
+            insertPosition--;
+        }
+        removedKeys.add(SavedStationPositions.keyOf(station));
+        changed = true;
+    }
+
+    /**
+     * The stations from position count on were removed.
+     */
+    public void onCut(int count, @NonNull List<DataRadioStation> stations) {
+        insertPosition = Math.min(insertPosition, count);
+        for (DataRadioStation station : stations) {
+            removedKeys.add(SavedStationPositions.keyOf(station));
+        }
+        changed = true;
+    }
+
+    /**
+     * Add a loaded page to the list.
+     *
+     * @param loadedPositions saved positions of stations.
+     */
+    public void merge(@NonNull IndexedStationList list, @NonNull SavedStationPositions positions,
+                      @NonNull List<DataRadioStation> stations, @NonNull List<Long> loadedPositions) {
+        for (int i = 0; i < stations.size(); i++) {
+            DataRadioStation station = stations.get(i);
+            if (removedKeys.contains(SavedStationPositions.keyOf(station))
+                    || (station.hasValidUuid() && list.containsUuid(station.StationUuid))) {
+                continue;
+            }
+
+            list.add(insertPosition++, station);
+            positions.put(station, loadedPositions.get(i));
+        }
+    }
+}
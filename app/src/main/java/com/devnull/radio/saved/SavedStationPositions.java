@@ -0,0 +1,83 @@
+package com.devnull.radio.saved;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Positions of the stations of a saved list as they are stored in the database. A station
+ * which is added or moved gets a position between the ones of its new neighbours, only when
+ * there is no gap left the whole list has to be numbered again.
+ */
+public class SavedStationPositions {
+    static final long STEP = 1L << 20;
+    public static final long NO_POSITION = Long.MIN_VALUE;
+
+    private final HashMap<String, Long> positionOfKey = new HashMap<>();
+
+    public @Nullable
+    Long get(@NonNull DataRadioStation station) {
+        return positionOfKey.get(keyOf(station));
+    }
+
+    public void put(@NonNull DataRadioStation station, long position) {
+        positionOfKey.put(keyOf(station), position);
+    }
+
+    public void remove(@NonNull DataRadioStation station) {
+        positionOfKey.remove(keyOf(station));
+    }
+
+    public void clear() {
+        positionOfKey.clear();
+    }
+
+    /**
+     * @return key of the station in its list, stations saved by old versions only have an id.
+     */
+    public static @NonNull
+    String keyOf(@NonNull DataRadioStation station) {
+        return station.hasValidUuid() ? station.StationUuid : "id:" + station.StationId;
+    }
+
+    /**
+     * @param before position of the previous station or null if there is none.
+     * @param after  position of the next station or null if there is none.
+     * @return position between before and after or {@link #NO_POSITION} if there is no gap.
+     */
+    public static long between(@Nullable Long before, @Nullable Long after) {
+        if (before == null && after == null) {
+            return 0;
+        } else if (before == null) {
+            return after > Long.MIN_VALUE + STEP ? after - STEP : NO_POSITION;
+        } else if (after == null) {
+            return before < Long.MAX_VALUE - STEP ? before + STEP : NO_POSITION;
+        } else if (after - before < 2) {
+            return NO_POSITION;
+        }
+        return before + (after - before) / 2;
+    }
+
+    /**
+     * Number all stations again with the full gap between them.
+     *
+     * @return positions in the order of stations.
+     */
+    public @NonNull
+    List<Long> renumber(@NonNull List<DataRadioStation> stations) {
+        positionOfKey.clear();
+
+        List<Long> positions = new ArrayList<>(stations.size());
+        for (int i = 0; i < stations.size(); i++) {
+            long position = i * STEP;
+            positionOfKey.put(keyOf(stations.get(i)), position);
+            positions.add(position);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,341 @@
+package com.devnull.radio.saved;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.devnull.radio.database.RadioDroidDatabase;
+import com.devnull.radio.station.DataRadioStation;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Stores one saved list of stations in the database. Changes are collected and written behind
+ * in one transaction at most once per {@link #WRITE_DELAY_MS}, a station changed several times
+ * in between is written once. Stations are serialized on the calling thread.
+ */
+public class SavedStationRepository {
+    private static final String TAG = "SavedStations";
+
+    static final int PAGE_SIZE = 50;
+    static final long WRITE_DELAY_MS = 500;
+    private static final long FLUSH_TIMEOUT_MS = 5000;
+
+    public interface LoadListener {
+        /**
+         * Called on the main thread for every page of the list, in the order of the list.
+         */
+        void onStationsLoaded(@NonNull List<DataRadioStation> stations, @NonNull List<Long> positions);
+
+        /**
+         * Called on the main thread after the last page.
+         */
+        void onLoadFinished();
+    }
+
+    private final String listId;
+    private final SavedStationDao dao;
+    private final SharedPreferences sharedPref;
+    private final Executor queryExecutor;
+    private final Executor mainExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final Object pendingLock = new Object();
+    // Latest change of every station since the last write, in the order of their first change
+    private final LinkedHashMap<String, SavedStationWrite> pendingWrites = new LinkedHashMap<>();
+    private List<SavedStationEntry> pendingReplacement;
+    private boolean writeScheduled = false;
+    private int writesInProgress = 0;
+    private final Runnable writeRunnable;
+
+    /**
+     * @param listId name of the list, also the preference the list was saved in by old versions.
+     */
+    public SavedStationRepository(@NonNull Context context, @NonNull String listId) {
+        this(listId, RadioDroidDatabase.getDatabase(context).savedStationDao(),
+                PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext()),
+                RadioDroidDatabase.getDatabase(context).getQueryExecutor(), null);
+    }
+
+    /**
+     * @param sharedPref   preferences the list may still be saved in, null if there are none.
+     * @param mainExecutor executor for listeners, null for the main thread.
+     */
+    SavedStationRepository(@NonNull String listId, @NonNull SavedStationDao dao, @Nullable SharedPreferences sharedPref,
+                           @NonNull Executor queryExecutor, @Nullable Executor mainExecutor) {
+        this.listId = listId;
+        this.dao = dao;
+        this.sharedPref = sharedPref;
+        this.queryExecutor = queryExecutor;
+        this.mainExecutor = mainExecutor != null ? mainExecutor : mainHandler::post;
+        writeRunnable = () -> queryExecutor.execute(this::writePending);
+    }
+
+    /**
+     * Load the list page by page in background. A list which is still saved in the preferences
+     * is moved to the database first.
+     */
+    public void load(@NonNull final LoadListener listener) {
+        queryExecutor.execute(() -> {
+            writePending();
+            importFromPreferences();
+
+            long afterPosition = Long.MIN_VALUE;
+            List<SavedStationEntry> entries;
+            do {
+                entries = dao.getPage(listId, afterPosition, PAGE_SIZE);
+
+                final List<DataRadioStation> stations = new ArrayList<>(entries.size());
+                final List<Long> positions = new ArrayList<>(entries.size());
+                for (SavedStationEntry entry : entries) {
+                    afterPosition = entry.position;
+
+                    DataRadioStation station = DataRadioStation.DecodeJsonSingle(entry.stationJson);
+                    if (station == null) {
+                        Log.e(TAG, "Could not decode station " + entry.stationKey + " of " + listId);
+                        continue;
+                    }
+                    stations.add(station);
+                    positions.add(entry.position);
+                }
+
+                mainExecutor.execute(() -> listener.onStationsLoaded(stations, positions));
+            } while (entries.size() == PAGE_SIZE);
+
+            mainExecutor.execute(listener::onLoadFinished);
+        });
+    }
+
+    public void put(@NonNull DataRadioStation station, long position) {
+        SavedStationEntry entry = toEntry(station, position);
+        if (entry == null) {
+            return;
+        }
+
+        synchronized (pendingLock) {
+            pendingWrite(entry.stationKey).put(entry);
+        }
+        scheduleWrite();
+    }
+
+    public void setPosition(@NonNull DataRadioStation station, long position) {
+        synchronized (pendingLock) {
+            pendingWrite(SavedStationPositions.keyOf(station)).setPosition(position);
+        }
+        scheduleWrite();
+    }
+
+    public void update(@NonNull List<DataRadioStation> stations) {
+        synchronized (pendingLock) {
+            for (DataRadioStation station : stations) {
+                SavedStationEntry entry = toEntry(station, 0);
+                if (entry != null) {
+                    pendingWrite(entry.stationKey).setStationJson(entry.stationJson);
+                }
+            }
+        }
+        scheduleWrite();
+    }
+
+    public void remove(@NonNull List<DataRadioStation> stations) {
+        synchronized (pendingLock) {
+            for (DataRadioStation station : stations) {
+                pendingWrite(SavedStationPositions.keyOf(station)).delete();
+            }
+        }
+        scheduleWrite();
+    }
+
+    public void replaceAll(@NonNull List<DataRadioStation> stations, @NonNull List<Long> positions) {
+        final List<SavedStationEntry> entries = new ArrayList<>(stations.size());
+        for (int i = 0; i < stations.size(); i++) {
+            SavedStationEntry entry = toEntry(stations.get(i), positions.get(i));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+
+        synchronized (pendingLock) {
+            pendingWrites.clear();
+            pendingReplacement = entries;
+        }
+        scheduleWrite();
+    }
+
+    public void clear() {
+        synchronized (pendingLock) {
+            pendingWrites.clear();
+            pendingReplacement = new ArrayList<>();
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Write all collected changes now and wait for them, e.g. before the process may be stopped.
+     * Returns right away if there are none.
+     */
+    public void flush() {
+        final boolean[] written = {false};
+        final boolean writing = writePendingNow(() -> {
+            synchronized (pendingLock) {
+                written[0] = true;
+                pendingLock.notifyAll();
+            }
+        });
+        if (!writing) {
+            return;
+        }
+
+        // Also waits for writes which took changes before
+        final long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MS;
+        synchronized (pendingLock) {
+            while (!written[0] || writesInProgress > 0) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    Log.e(TAG, "Could not write changes of " + listId + " within " + FLUSH_TIMEOUT_MS + "ms");
+                    return;
+                }
+
+                try {
+                    pendingLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Log.e(TAG, "Interrupted while writing changes of " + listId);
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Start writing all collected changes now without waiting for them, e.g. when the app was
+     * moved to background.
+     */
+    public void flushInBackground() {
+        writePendingNow(null);
+    }
+
+    /**
+     * @param onWritten called on the query executor after the changes were written.
+     * @return false if there is nothing to write and no write in progress, onWritten is not called then.
+     */
+    private boolean writePendingNow(@Nullable Runnable onWritten) {
+        mainHandler.removeCallbacks(writeRunnable);
+
+        synchronized (pendingLock) {
+            if (!hasPendingWrites()) {
+                // The write which was scheduled is not needed anymore
+                writeScheduled = false;
+                if (writesInProgress == 0) {
+                    return false;
+                }
+            }
+        }
+
+        queryExecutor.execute(() -> {
+            try {
+                writePending();
+            } finally {
+                if (onWritten != null) {
+                    onWritten.run();
+                }
+            }
+        });
+        return true;
+    }
+
+    private boolean hasPendingWrites() {
+        return pendingReplacement != null || !pendingWrites.isEmpty();
+    }
+
+    private SavedStationWrite pendingWrite(String stationKey) {
+        SavedStationWrite write = pendingWrites.get(stationKey);
+        if (write == null) {
+            write = new SavedStationWrite(stationKey);
+            pendingWrites.put(stationKey, write);
+        }
+        return write;
+    }
+
+    private void scheduleWrite() {
+        synchronized (pendingLock) {
+            if (writeScheduled) {
+                return;
+            }
+            writeScheduled = true;
+        }
+        mainHandler.postDelayed(writeRunnable, WRITE_DELAY_MS);
+    }
+
+    @WorkerThread
+    private void writePending() {
+        List<SavedStationEntry> replacement;
+        List<SavedStationWrite> writes;
+        synchronized (pendingLock) {
+            writeScheduled = false;
+            replacement = pendingReplacement;
+            pendingReplacement = null;
+            writes = new ArrayList<>(pendingWrites.values());
+            pendingWrites.clear();
+            writesInProgress++;
+        }
+
+        try {
+            if (replacement != null || !writes.isEmpty()) {
+                dao.write(listId, replacement, writes);
+            }
+        } finally {
+            synchronized (pendingLock) {
+                writesInProgress--;
+                pendingLock.notifyAll();
+            }
+        }
+    }
+
+    private @Nullable
+    SavedStationEntry toEntry(@NonNull DataRadioStation station, long position) {
+        JSONObject json = station.toJson();
+        if (json == null) {
+            return null;
+        }
+        return new SavedStationEntry(listId, SavedStationPositions.keyOf(station), position, json.toString());
+    }
+
+    @WorkerThread
+    private void importFromPreferences() {
+        if (sharedPref == null) {
+            return;
+        }
+
+        String str = sharedPref.getString(listId, null);
+        if (str == null) {
+            return;
+        }
+
+        List<DataRadioStation> stations = DataRadioStation.DecodeJson(str);
+        List<Long> positions = new SavedStationPositions().renumber(stations);
+        List<SavedStationEntry> entries = new ArrayList<>(stations.size());
+        for (int i = 0; i < stations.size(); i++) {
+            SavedStationEntry entry = toEntry(stations.get(i), positions.get(i));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        dao.replaceList(listId, entries);
+
+        sharedPref.edit().remove(listId).apply();
+        Log.i(TAG, "Moved " + entries.size() + " stations of " + listId + " from preferences to database");
+    }
+}
@@ -0,0 +1,63 @@
+package com.devnull.radio.saved;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Latest change of a saved station which is not written yet. Later changes of the same station
+ * are merged into it, so a station moved many times is written once.
+ */
+class SavedStationWrite {
+    final String stationKey;
+
+    boolean delete;
+    // Whole row if the station was added, otherwise only the changed columns
+    @Nullable
+    SavedStationEntry entry;
+    @Nullable
+    Long position;
+    @Nullable
+    String stationJson;
+
+    SavedStationWrite(@NonNull String stationKey) {
+        this.stationKey = stationKey;
+    }
+
+    void put(@NonNull SavedStationEntry entry) {
+        delete = false;
+        this.entry = entry;
+        position = null;
+        stationJson = null;
+    }
+
+    void setPosition(long position) {
+        if (delete) {
+            return;
+        }
+
+        if (entry != null) {
+            entry.position = position;
+        } else {
+            this.position = position;
+        }
+    }
+
+    void setStationJson(@NonNull String stationJson) {
+        if (delete) {
+            return;
+        }
+
+        if (entry != null) {
+            entry.stationJson = stationJson;
+        } else {
+            this.stationJson = stationJson;
+        }
+    }
+
+    void delete() {
+        delete = true;
+        entry = null;
+        position = null;
+        stationJson = null;
+    }
+}
@@ -7,9 +7,11 @@ import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
+import android.net.NetworkInfo;
 import android.net.NetworkRequest;
 import android.os.Build;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.core.net.ConnectivityManagerCompat;
 
 public class ConnectivityChecker {
@@ -31,12 +33,23 @@ public class ConnectivityChecker {
     private ConnectivityCallback connectivityCallback;
 
     private ConnectionType lastConnectionType;
+    private boolean lastConnected = true;
+
+    private boolean notifyReconnects = false;
 
     public static ConnectionType getCurrentConnectionType(Context context) {
         ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
         return ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager) ? ConnectionType.METERED : ConnectionType.NOT_METERED;
     }
 
+    /**
+     * Also call back when connectivity is lost and when it returns, even if the connection
+     * type did not change.
+     */
+    public void setNotifyReconnects(boolean notifyReconnects) {
+        this.notifyReconnects = notifyReconnects;
+    }
+
     public void startListening(Context context, ConnectivityCallback connectivityCallback) {
         this.connectivityCallback = connectivityCallback;
 
@@ -47,6 +60,8 @@ public class ConnectivityChecker {
         lastConnectionType = getCurrentConnectionType(context);
 
         connectivityManager = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+        lastConnected = activeNetwork != null && activeNetwork.isConnected();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             networkCallback = new ConnectivityManager.NetworkCallback() {
                 @Override
@@ -55,6 +70,14 @@ public class ConnectivityChecker {
                     boolean metered = !networkCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
                     onConnectivityChanged(connected, metered ? ConnectionType.METERED : ConnectionType.NOT_METERED);
                 }
+
+                @Override
+                public void onLost(Network network) {
+                    NetworkInfo activeNetwork = connectivityManager.getActiveNetworkInfo();
+                    if (activeNetwork == null || !activeNetwork.isConnected()) {
+                        onConnectivityChanged(false, lastConnectionType);
+                    }
+                }
                 // -Snip-
             };
             connectivityManager.registerNetworkCallback(new NetworkRequest.Builder().build(), networkCallback);
@@ -84,14 +107,23 @@ public class ConnectivityChecker {
     }
 
     private void onConnectivityChanged(boolean connected, ConnectionType connectionType) {
-        if (lastConnectionType == connectionType) {
-            return;
-        } else {
-            lastConnectionType = connectionType;
-        }
-
-        if (connectivityCallback != null) {
+        if (update(connected, connectionType) && connectivityCallback != null) {
             connectivityCallback.onConnectivityChanged(connected, connectionType);
         }
     }
+
+    /**
+     * Remember the new state.
+     *
+     * @return true if the callback has to be called for it.
+     */
+    @VisibleForTesting
+    boolean update(boolean connected, ConnectionType connectionType) {
+        final boolean wasConnected = lastConnected;
+        final ConnectionType previousConnectionType = lastConnectionType;
+        lastConnected = connected;
+        lastConnectionType = connectionType;
+
+        return previousConnectionType != connectionType || (notifyReconnects && connected != wasConnected);
+    }
 }
@@ -60,13 +60,15 @@ public class HeadsetConnectionReceiver extends BroadcastReceiver {
         if (play) {
             RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
             HistoryManager historyManager = radioDroidApp.getHistoryManager();
-            DataRadioStation lastStation = historyManager.getFirst();
+            historyManager.whenLoaded(() -> {
+                DataRadioStation lastStation = historyManager.getFirst();
 
-            if (lastStation != null) {
-                if (!PlayerServiceUtil.isPlaying() && !radioDroidApp.getMpdClient().isMpdEnabled()) {
-                    Utils.playAndWarnIfMetered(radioDroidApp, lastStation, PlayerType.RADIODROID, () -> Utils.play(radioDroidApp, lastStation));
+                if (lastStation != null) {
+                    if (!PlayerServiceUtil.isPlaying() && !radioDroidApp.getMpdClient().isMpdEnabled()) {
+                        Utils.playAndWarnIfMetered(radioDroidApp, lastStation, PlayerType.RADIODROID, () -> Utils.play(radioDroidApp, lastStation));
+                    }
                 }
-            }
+            });
         }
     }
 }
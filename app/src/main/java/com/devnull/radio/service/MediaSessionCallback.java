@@ -86,6 +86,24 @@ public class MediaSessionCallback extends MediaSessionCompat.Callback {
         }
     }
 
+    @Override
+    public void onRewind() {
+        try {
+            playerService.Rewind();
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void onFastForward() {
+        try {
+            playerService.FastForward();
+        } catch (RemoteException e) {
+            e.printStackTrace();
+        }
+    }
+
     @Override
     public void onStop() {
         try {
@@ -4,6 +4,7 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.Map;
 
+import android.annotation.TargetApi;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -111,6 +112,8 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
 
     private static final int AUDIO_WARNING_DURATION = 2000;
 
+    private static final long TIME_SHIFT_STEP_MS = 30 * 1000;
+
     private SharedPreferences sharedPref;
 
     private TrackHistoryRepository trackHistoryRepository;
@@ -176,6 +179,14 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
             PlayerService.this.previous();
         }
 
+        public void Rewind() throws RemoteException {
+            radioPlayer.rewind(TIME_SHIFT_STEP_MS);
+        }
+
+        public void FastForward() throws RemoteException {
+            radioPlayer.fastForward(TIME_SHIFT_STEP_MS);
+        }
+
         public void Play(boolean isAlarm) throws RemoteException {
             PlayerService.this.playCurrentStation(isAlarm);
         }
@@ -499,6 +510,9 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
         radioPlayer.destroy();
 
         unregisterReceiver(headsetConnectionReceiver);
+
+        // Nothing keeps the process alive after playback in background ended
+        ((RadioDroidApp) getApplication()).flushSavedStations();
     }
 
     @Override
@@ -507,6 +521,30 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
         // and user presses play/pause media button.
         PlayerServiceUtil.bindService(itsContext.getApplicationContext());
 
+        RadioDroidApp radioDroidApp = (RadioDroidApp) getApplication();
+        final HistoryManager historyManager = radioDroidApp.getHistoryManager();
+        final FavouriteManager favouriteManager = radioDroidApp.getFavouriteManager();
+        if (currentStation == null && (historyManager.isLoading() || favouriteManager.isLoading())) {
+            // The process was started for this intent, the station to resume is known once
+            // the saved stations are loaded
+            final boolean showNotification = intent == null || !intent.getBooleanExtra(PLAYER_SERVICE_NO_NOTIFICATION_EXTRA, false);
+            if (showNotification && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                showTemporaryNotification();
+            }
+            historyManager.whenLoaded(() -> favouriteManager.whenLoaded(() -> handleStartCommand(intent)));
+            return super.onStartCommand(intent, flags, startId);
+        }
+
+        if (!handleStartCommand(intent)) {
+            return START_NOT_STICKY;
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    /**
+     * @return false if the service does not have to be restarted.
+     */
+    private boolean handleStartCommand(Intent intent) {
         if (currentStation == null) {
             RadioDroidApp radioDroidApp = (RadioDroidApp) getApplication();
             HistoryManager historyManager = radioDroidApp.getHistoryManager();
@@ -533,7 +571,7 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
                         break;
                     case ACTION_STOP:
                         stop();
-                        return START_NOT_STICKY;
+                        return false;
                     case ACTION_PAUSE:
                         pause(PauseReason.USER);
                         break;
@@ -571,26 +609,31 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
         if (showNotification && !notificationIsActive) {
             if (currentStation == null) {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    // On Android O+ we MUST show notification if started via startForegroundService
-
-                    NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
-                            "Temporary", NotificationManager.IMPORTANCE_DEFAULT);
-                    ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).createNotificationChannel(channel);
-                    Notification notification = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
-                            .setContentTitle("")
-                            .setContentText("").build();
-                    startForeground(NOTIFY_ID, notification);
-                    stopForeground(true);
+                    showTemporaryNotification();
                 } else {
                     stopSelf();
-                    return START_NOT_STICKY;
+                    return false;
                 }
             } else {
                 updateNotification(PlayState.Paused);
             }
         }
 
-        return super.onStartCommand(intent, flags, startId);
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private void showTemporaryNotification() {
+        // On Android O+ we MUST show notification if started via startForegroundService
+
+        NotificationChannel channel = new NotificationChannel(NOTIFICATION_CHANNEL_ID,
+                "Temporary", NotificationManager.IMPORTANCE_DEFAULT);
+        ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).createNotificationChannel(channel);
+        Notification notification = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+                .setContentTitle("")
+                .setContentText("").build();
+        startForeground(NOTIFY_ID, notification);
+        stopForeground(true);
     }
 
     private void playWithoutWarnings(DataRadioStation station) {
@@ -651,7 +694,7 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
             releaseAudioFocus();
         }
 
-        radioPlayer.pause();
+        radioPlayer.pause(pauseReason);
     }
 
     public void next() {
@@ -712,6 +755,10 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
 
             if (currentStation == null) {
                 HistoryManager historyManager = radioDroidApp.getHistoryManager();
+                if (historyManager.isLoading()) {
+                    historyManager.whenLoaded(this::resume);
+                    return;
+                }
                 station = historyManager.getFirst();
             }
 
@@ -772,6 +819,10 @@ public class PlayerService extends JobIntentService implements RadioPlayer.Playe
             actions |= PlaybackStateCompat.ACTION_PLAY;
         }
 
+        if (radioPlayer.canTimeShift()) {
+            actions |= PlaybackStateCompat.ACTION_REWIND | PlaybackStateCompat.ACTION_FAST_FORWARD;
+        }
+
         PlaybackStateCompat.Builder playbackStateBuilder = new PlaybackStateCompat.Builder();
         playbackStateBuilder.setActions(actions);
 
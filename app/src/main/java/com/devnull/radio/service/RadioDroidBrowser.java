@@ -23,6 +23,7 @@ import com.squareup.picasso.Target;
 
 import com.devnull.radio.R;
 import com.devnull.radio.RadioDroidApp;
+import com.devnull.radio.StationSaveManager;
 import com.devnull.radio.Utils;
 import com.devnull.radio.station.DataRadioStation;
 
@@ -177,36 +178,41 @@ public class RadioDroidBrowser {
             return;
         }
 
-        List<MediaBrowserCompat.MediaItem> mediaItems = new ArrayList<>();
+        final StationSaveManager stationSaveManager = getStationSaveManager(parentId);
+        if (stationSaveManager == null) {
+            result.sendResult(new ArrayList<>());
+            return;
+        }
 
-        List<DataRadioStation> stations = null;
+        // Lists are asked for right after the process was started, before they are loaded
+        result.detach();
+        stationSaveManager.whenLoaded(() -> sendStations(result, stationSaveManager.getList()));
+    }
 
+    private @Nullable
+    StationSaveManager getStationSaveManager(@NonNull String parentId) {
         switch (parentId) {
-            case MEDIA_ID_MUSICS_FAVORITE: {
-                stations = radioDroidApp.getFavouriteManager().getList();
-                break;
-            }
-            case MEDIA_ID_MUSICS_HISTORY: {
-                stations = radioDroidApp.getHistoryManager().getList();
-                break;
-            }
-            case MEDIA_ID_MUSICS_TOP: {
-
-                break;
-            }
+            case MEDIA_ID_MUSICS_FAVORITE:
+                return radioDroidApp.getFavouriteManager();
+            case MEDIA_ID_MUSICS_HISTORY:
+                return radioDroidApp.getHistoryManager();
+            default:
+                return null;
         }
+    }
 
-        if (stations != null && !stations.isEmpty()) {
-            stationIdToStation.clear();
-            for (DataRadioStation station : stations) {
-                stationIdToStation.put(station.StationUuid, station);
-            }
-            result.detach();
-            new RetrieveStationsIconAndSendResult(result, stations, radioDroidApp).execute();
-        } else {
-            result.sendResult(mediaItems);
+    private void sendStations(@NonNull MediaBrowserServiceCompat.Result<List<MediaBrowserCompat.MediaItem>> result,
+                              @NonNull List<DataRadioStation> stations) {
+        if (stations.isEmpty()) {
+            result.sendResult(new ArrayList<>());
+            return;
         }
 
+        stationIdToStation.clear();
+        for (DataRadioStation station : stations) {
+            stationIdToStation.put(station.StationUuid, station);
+        }
+        new RetrieveStationsIconAndSendResult(result, new ArrayList<>(stations), radioDroidApp).execute();
     }
 
     @Nullable
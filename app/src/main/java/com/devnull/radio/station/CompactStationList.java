@@ -0,0 +1,301 @@
+package com.devnull.radio.station;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of many stations which keeps them column by column instead of as one object
+ * with about twenty fields per station.
+ * <p>
+ * Country, country code, state, language, codec and tags repeat across stations, they are
+ * stored once and referenced by 16 bit codes. Tags are split once per distinct tag list into
+ * shared arrays of shared strings. Numbers are kept in primitive arrays and flags in one byte.
+ * <p>
+ * {@link #get} creates a {@link DataRadioStation} on demand. The last stations which were
+ * created are reused, so rows which are bound again get the same object. Changes to these
+ * objects are not written back to the list.
+ */
+public class CompactStationList extends AbstractList<DataRadioStation> implements RandomAccess {
+    // Smaller lists are kept as they are, they do not take enough memory to be worth it
+    public static final int LARGE_LIST_SIZE = 500;
+
+    private static final int FLAG_WORKING = 1;
+    private static final int FLAG_HLS = 1 << 1;
+    private static final int FLAG_DELETED_ON_SERVER = 1 << 2;
+
+    private static final int MATERIALIZED_CACHE_SIZE = 64;
+    private static final String[] NO_TAGS = new String[0];
+
+    /**
+     * Values of one repeating attribute: the distinct values and a code per station.
+     */
+    private static final class DictionaryColumn {
+        final String[] values;
+        // 16 bit codes while there are few enough distinct values, 32 bit codes otherwise
+        final char[] shortCodes;
+        final int[] codes;
+
+        DictionaryColumn(String[] values, char[] shortCodes, int[] codes) {
+            this.values = values;
+            this.shortCodes = shortCodes;
+            this.codes = codes;
+        }
+
+        int codeAt(int index) {
+            return shortCodes != null ? shortCodes[index] : codes[index];
+        }
+
+        String get(int index) {
+            return values[codeAt(index)];
+        }
+    }
+
+    private static final class DictionaryColumnBuilder {
+        private final HashMap<String, Integer> codeOfValue = new HashMap<>();
+        private final ArrayList<String> values = new ArrayList<>();
+        private final int[] codes;
+
+        DictionaryColumnBuilder(int size) {
+            codes = new int[size];
+        }
+
+        void set(int index, @Nullable String value) {
+            Integer code = codeOfValue.get(value);
+            if (code == null) {
+                code = values.size();
+                codeOfValue.put(value, code);
+                values.add(value);
+            }
+            codes[index] = code;
+        }
+
+        DictionaryColumn build() {
+            String[] distinctValues = values.toArray(new String[0]);
+            if (distinctValues.length > Character.MAX_VALUE + 1) {
+                return new DictionaryColumn(distinctValues, null, codes);
+            }
+
+            char[] shortCodes = new char[codes.length];
+            for (int i = 0; i < codes.length; i++) {
+                shortCodes[i] = (char) codes[i];
+            }
+            return new DictionaryColumn(distinctValues, shortCodes, null);
+        }
+    }
+
+    private static final class Materialized {
+        final int index;
+        final DataRadioStation station;
+
+        Materialized(int index, DataRadioStation station) {
+            this.index = index;
+            this.station = station;
+        }
+    }
+
+    private final int size;
+
+    // Different for almost every station
+    private final String[] names;
+    private final String[] stationUuids;
+    private final String[] changeUuids;
+    private final String[] streamUrls;
+    private final String[] homePageUrls;
+    private final String[] iconUrls;
+    private final String[] stationIds;
+
+    private final DictionaryColumn countries;
+    private final DictionaryColumn countryCodes;
+    private final DictionaryColumn states;
+    private final DictionaryColumn languages;
+    private final DictionaryColumn codecs;
+    // Values are the raw tag lists, splitTags holds the split tags of each value
+    private final DictionaryColumn tags;
+    private final String[][] splitTags;
+
+    private final int[] clickCounts;
+    private final int[] clickTrends;
+    private final int[] votes;
+    private final int[] refreshRetryCounts;
+    private final int[] bitrates;
+    private final byte[] flags;
+
+    private final Materialized[] materialized = new Materialized[MATERIALIZED_CACHE_SIZE];
+
+    private CompactStationList(@NonNull List<DataRadioStation> stations) {
+        size = stations.size();
+
+        names = new String[size];
+        stationUuids = new String[size];
+        changeUuids = new String[size];
+        streamUrls = new String[size];
+        homePageUrls = new String[size];
+        iconUrls = new String[size];
+        stationIds = new String[size];
+
+        DictionaryColumnBuilder countryBuilder = new DictionaryColumnBuilder(size);
+        DictionaryColumnBuilder countryCodeBuilder = new DictionaryColumnBuilder(size);
+        DictionaryColumnBuilder stateBuilder = new DictionaryColumnBuilder(size);
+        DictionaryColumnBuilder languageBuilder = new DictionaryColumnBuilder(size);
+        DictionaryColumnBuilder codecBuilder = new DictionaryColumnBuilder(size);
+        DictionaryColumnBuilder tagsBuilder = new DictionaryColumnBuilder(size);
+
+        clickCounts = new int[size];
+        clickTrends = new int[size];
+        votes = new int[size];
+        refreshRetryCounts = new int[size];
+        bitrates = new int[size];
+        flags = new byte[size];
+
+        for (int i = 0; i < size; i++) {
+            DataRadioStation station = stations.get(i);
+
+            names[i] = station.Name;
+            stationUuids[i] = station.StationUuid;
+            changeUuids[i] = station.ChangeUuid;
+            streamUrls[i] = station.StreamUrl;
+            homePageUrls[i] = station.HomePageUrl;
+            iconUrls[i] = station.IconUrl;
+            stationIds[i] = station.StationId;
+
+            countryBuilder.set(i, station.Country);
+            countryCodeBuilder.set(i, station.CountryCode);
+            stateBuilder.set(i, station.State);
+            languageBuilder.set(i, station.Language);
+            codecBuilder.set(i, station.Codec);
+            tagsBuilder.set(i, station.TagsAll);
+
+            clickCounts[i] = station.ClickCount;
+            clickTrends[i] = station.ClickTrend;
+            votes[i] = station.Votes;
+            refreshRetryCounts[i] = station.RefreshRetryCount;
+            bitrates[i] = station.Bitrate;
+            flags[i] = (byte) ((station.Working ? FLAG_WORKING : 0)
+                    | (station.Hls ? FLAG_HLS : 0)
+                    | (station.DeletedOnServer ? FLAG_DELETED_ON_SERVER : 0));
+        }
+
+        countries = countryBuilder.build();
+        countryCodes = countryCodeBuilder.build();
+        states = stateBuilder.build();
+        languages = languageBuilder.build();
+        codecs = codecBuilder.build();
+        tags = tagsBuilder.build();
+
+        // Single tags repeat across different tag lists as well
+        HashMap<String, String> tagPool = new HashMap<>();
+        splitTags = new String[tags.values.length][];
+        for (int i = 0; i < tags.values.length; i++) {
+            String[] split = DataRadioStation.splitTags(tags.values[i]);
+            for (int j = 0; j < split.length; j++) {
+                String pooled = tagPool.get(split[j]);
+                if (pooled == null) {
+                    tagPool.put(split[j], split[j]);
+                } else {
+                    split[j] = pooled;
+                }
+            }
+            splitTags[i] = split.length > 0 ? split : NO_TAGS;
+        }
+    }
+
+    /**
+     * @return stations as compact list, stations which are already one are returned as they are.
+     */
+    public static @NonNull
+    CompactStationList of(@NonNull List<DataRadioStation> stations) {
+        if (stations instanceof CompactStationList) {
+            return (CompactStationList) stations;
+        }
+        return new CompactStationList(stations);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public DataRadioStation get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+
+        final int slot = index & (MATERIALIZED_CACHE_SIZE - 1);
+        Materialized cached = materialized[slot];
+        if (cached != null && cached.index == index) {
+            return cached.station;
+        }
+
+        DataRadioStation station = materialize(index);
+        materialized[slot] = new Materialized(index, station);
+        return station;
+    }
+
+    public String getStationUuid(int index) {
+        return stationUuids[index];
+    }
+
+    public String getName(int index) {
+        return names[index];
+    }
+
+    /**
+     * @return shared array of the tags of the station at index, must not be changed.
+     */
+    public @NonNull
+    String[] getTags(int index) {
+        return splitTags[tags.codeAt(index)];
+    }
+
+    /**
+     * @return first position of the station with uuid or -1, without creating station objects.
+     */
+    public int positionOf(@Nullable String uuid) {
+        if (uuid == null) {
+            return -1;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (uuid.equals(stationUuids[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private DataRadioStation materialize(int index) {
+        DataRadioStation station = new DataRadioStation();
+        station.Name = names[index];
+        station.StationUuid = stationUuids[index];
+        station.ChangeUuid = changeUuids[index];
+        station.StreamUrl = streamUrls[index];
+        station.HomePageUrl = homePageUrls[index];
+        station.IconUrl = iconUrls[index];
+        station.StationId = stationIds[index];
+
+        station.Country = countries.get(index);
+        station.CountryCode = countryCodes.get(index);
+        station.State = states.get(index);
+        station.Language = languages.get(index);
+        station.Codec = codecs.get(index);
+        final int tagsCode = tags.codeAt(index);
+        station.setTags(tags.values[tagsCode], splitTags[tagsCode]);
+
+        station.ClickCount = clickCounts[index];
+        station.ClickTrend = clickTrends[index];
+        station.Votes = votes[index];
+        station.RefreshRetryCount = refreshRetryCounts[index];
+        station.Bitrate = bitrates[index];
+        station.Working = (flags[index] & FLAG_WORKING) != 0;
+        station.Hls = (flags[index] & FLAG_HLS) != 0;
+        station.DeletedOnServer = (flags[index] & FLAG_DELETED_ON_SERVER) != 0;
+        return station;
+    }
+}
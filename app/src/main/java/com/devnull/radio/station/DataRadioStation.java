@@ -71,6 +71,35 @@ public class DataRadioStation implements Parcelable {
 	@Deprecated
 	public String StationId = "";
 
+	// TagsAll split into tags, valid as long as TagsAll is still splitTagsSource
+	private transient String splitTagsSource;
+	private transient String[] splitTags;
+
+	/**
+	 * @return tags of TagsAll, split only again after TagsAll was changed. Must not be changed.
+	 */
+	public String[] getTags() {
+		final String tagsAll = TagsAll;
+		if (splitTags == null || splitTagsSource != tagsAll) {
+			splitTags = splitTags(tagsAll);
+			splitTagsSource = tagsAll;
+		}
+		return splitTags;
+	}
+
+	void setTags(String tagsAll, String[] tags) {
+		TagsAll = tagsAll;
+		splitTagsSource = tagsAll;
+		splitTags = tags;
+	}
+
+	static String[] splitTags(String tagsAll) {
+		if (tagsAll == null || tagsAll.isEmpty()) {
+			return new String[0];
+		}
+		return tagsAll.split(",");
+	}
+
 	public String getShortDetails(Context ctx) {
 		List<String> aList = new ArrayList<String>();
 		if (DeletedOnServer){
@@ -122,7 +151,7 @@ public class DataRadioStation implements Parcelable {
 		return !TextUtils.isEmpty(IconUrl);
 	}
 
-	private void fixStationFields() {
+	void fixStationFields() {
 		if (IconUrl == null || TextUtils.isEmpty(IconUrl.trim())) {
 			IconUrl = "";
 		}
@@ -319,7 +348,7 @@ public class DataRadioStation implements Parcelable {
 	}
 
 	public boolean hasValidUuid() {
-		return !TextUtils.isEmpty(StationUuid);
+		return StationUuid != null && !StationUuid.isEmpty();
 	}
 
 	public void copyPropertiesFrom(DataRadioStation station) {
@@ -3,14 +3,17 @@ package com.devnull.radio.station;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.Toast;
 
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.paging.PagedList;
 import androidx.preference.PreferenceManager;
 import androidx.recyclerview.widget.DividerItemDecoration;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -29,6 +32,7 @@ import com.devnull.radio.Utils;
 import com.devnull.radio.utils.CustomFilter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 
 public class FragmentStations extends FragmentBase implements IFragmentSearchable {
@@ -49,6 +53,9 @@ public class FragmentStations extends FragmentBase implements IFragmentSearchabl
     private StationsFilter.SearchStyle lastSearchStyle = StationsFilter.SearchStyle.ByName;
     private String lastQuery = "";
 
+    private PagedList<DataRadioStation> pagedStations;
+    private AsyncTask<Void, Void, PagedList<DataRadioStation>> pagedTask;
+
     void onStationClick(DataRadioStation theStation, int pos) {
         RadioDroidApp radioDroidApp = (RadioDroidApp) getActivity().getApplication();
         Utils.showPlaySelection(radioDroidApp, theStation, getActivity().getSupportFragmentManager());
@@ -69,14 +76,24 @@ public class FragmentStations extends FragmentBase implements IFragmentSearchabl
 
         boolean show_broken = sharedPref.getBoolean("show_broken", false);
 
-        ArrayList<DataRadioStation> filteredStationsList = new ArrayList<>();
-        List<DataRadioStation> radioStations = DataRadioStation.DecodeJson(getUrlResult());
+        List<DataRadioStation> filteredStationsList;
+        if (pagedStations != null) {
+            // Broken stations are already left out by the server
+            filteredStationsList = pagedStations;
+        } else {
+            filteredStationsList = new ArrayList<>();
+            RadioDroidApp radioDroidApp = (RadioDroidApp) ctx.getApplicationContext();
+            List<DataRadioStation> radioStations = radioDroidApp.getFeedPrefetcher().getDecodedStations(getRelativeUrl(), getUrlResult());
+            if (radioStations == null) {
+                radioStations = DataRadioStation.DecodeJson(getUrlResult());
+            }
 
-        if (BuildConfig.DEBUG) Log.d(TAG, "station count:" + radioStations.size());
+            if (BuildConfig.DEBUG) Log.d(TAG, "station count:" + radioStations.size());
 
-        for (DataRadioStation station : radioStations) {
-            if (show_broken || station.Working) {
-                filteredStationsList.add(station);
+            for (DataRadioStation station : radioStations) {
+                if (show_broken || station.Working) {
+                    filteredStationsList.add(station);
+                }
             }
         }
 
@@ -89,6 +106,80 @@ public class FragmentStations extends FragmentBase implements IFragmentSearchabl
         }
     }
 
+    @Override
+    public void DownloadUrl(final boolean forceUpdate, final boolean displayProgress) {
+        if (!StationPagedDataSource.isPageable(getRelativeUrl())) {
+            super.DownloadUrl(forceUpdate, displayProgress);
+            return;
+        }
+
+        // Search endpoints can list thousands of stations, only the pages around the
+        // visible part are loaded
+        if (pagedTask != null) {
+            pagedTask.cancel(true);
+            pagedTask = null;
+        }
+
+        Context ctx = getContext();
+        if (ctx == null) {
+            return;
+        }
+
+        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(ctx);
+        final boolean show_broken = sharedPref.getBoolean("show_broken", false);
+
+        final HashMap<String, String> p = new HashMap<String, String>();
+        p.put("hidebroken", "" + (!show_broken));
+
+        RadioDroidApp radioDroidApp = (RadioDroidApp) ctx.getApplicationContext();
+        final StationPagedDataSource.PageLoader pageLoader = StationPagedDataSource.remotePageLoader(
+                radioDroidApp.getHttpClient(), radioDroidApp, getRelativeUrl(), forceUpdate, p);
+
+        if (displayProgress) {
+            LocalBroadcastManager.getInstance(ctx).sendBroadcast(new Intent(ActivityMain.ACTION_SHOW_LOADING));
+        }
+
+        pagedTask = new AsyncTask<Void, Void, PagedList<DataRadioStation>>() {
+            @Override
+            protected PagedList<DataRadioStation> doInBackground(Void... params) {
+                // A later page which fails stops the list where it is, refreshing builds a new one
+                return StationPagedDataSource.buildPagedList(pageLoader, FragmentStations.this::showListUpdateError);
+            }
+
+            @Override
+            protected void onPostExecute(PagedList<DataRadioStation> result) {
+                DownloadFinished();
+                if (getContext() != null)
+                    LocalBroadcastManager.getInstance(getContext()).sendBroadcast(new Intent(ActivityMain.ACTION_HIDE_LOADING));
+                if (result != null) {
+                    if (BuildConfig.DEBUG) Log.d(TAG, "first page loaded:" + getRelativeUrl());
+                    pagedStations = result;
+                    RefreshListGui();
+                } else {
+                    showListUpdateError();
+                }
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    private void showListUpdateError() {
+        try {
+            Toast toast = Toast.makeText(getContext(), getResources().getText(R.string.error_list_update), Toast.LENGTH_SHORT);
+            toast.show();
+        } catch (Exception e) {
+            Log.e(TAG, e.toString());
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        if (pagedTask != null) {
+            pagedTask.cancel(true);
+        }
+
+        super.onDestroy();
+    }
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -0,0 +1,237 @@
+package com.devnull.radio.station;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.RandomAccess;
+
+/**
+ * Ordered list of stations with an index from station uuid to position, so membership,
+ * lookup by uuid and neighbours of a station do not need to scan the list.
+ * <p>
+ * Positions stay array backed because adapters read them on every bind. The index is kept up
+ * to date by every change, lookups only read it. Indexed positions are stored relative to an
+ * offset: when stations are inserted or removed, either the stations before the change are
+ * indexed again and the offset moves all others, or the stations after it are indexed again,
+ * whichever are fewer. Adding to the front, as the history does on every play, only moves the offset.
+ * If a uuid is in the list more than once the index points to its first position, such lists
+ * are indexed again completely on every change.
+ * Not thread safe, concurrent lookups are fine while there are no changes.
+ */
+public class IndexedStationList extends AbstractList<DataRadioStation> implements RandomAccess {
+    private final ArrayList<DataRadioStation> stations;
+    // Position of a station is its indexed value plus offset
+    private final HashMap<String, Integer> positionOfUuid = new HashMap<>();
+    private int offset = 0;
+    private boolean hasDuplicates = false;
+
+    public IndexedStationList() {
+        stations = new ArrayList<>();
+    }
+
+    public IndexedStationList(@NonNull Collection<? extends DataRadioStation> stations) {
+        this.stations = new ArrayList<>(stations);
+        rebuildIndex();
+    }
+
+    @Override
+    public DataRadioStation get(int index) {
+        return stations.get(index);
+    }
+
+    @Override
+    public int size() {
+        return stations.size();
+    }
+
+    @Override
+    public DataRadioStation set(int index, DataRadioStation station) {
+        DataRadioStation previous = stations.set(index, station);
+        final String previousUuid = uuidOf(previous);
+        final String uuid = uuidOf(station);
+        if (!previousUuid.equals(uuid)) {
+            if (hasDuplicates || positionOfUuid.containsKey(uuid)) {
+                rebuildIndex();
+            } else {
+                positionOfUuid.remove(previousUuid);
+                positionOfUuid.put(uuid, index - offset);
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public void add(int index, DataRadioStation station) {
+        stations.add(index, station);
+        modCount++;
+
+        final String uuid = uuidOf(station);
+        if (hasDuplicates || positionOfUuid.containsKey(uuid)) {
+            rebuildIndex();
+            return;
+        }
+
+        shiftIndex(index, index + 1, 1);
+        positionOfUuid.put(uuid, index - offset);
+    }
+
+    @Override
+    public DataRadioStation remove(int index) {
+        DataRadioStation station = stations.remove(index);
+        modCount++;
+
+        if (hasDuplicates) {
+            rebuildIndex();
+        } else {
+            positionOfUuid.remove(uuidOf(station));
+            shiftIndex(index, index, -1);
+        }
+        return station;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (!hasDuplicates) {
+            for (int i = fromIndex; i < toIndex; i++) {
+                positionOfUuid.remove(uuidOf(stations.get(i)));
+            }
+        }
+
+        stations.subList(fromIndex, toIndex).clear();
+        modCount++;
+
+        if (hasDuplicates) {
+            rebuildIndex();
+        } else {
+            shiftIndex(fromIndex, fromIndex, fromIndex - toIndex);
+        }
+    }
+
+    @Override
+    public void clear() {
+        stations.clear();
+        modCount++;
+        positionOfUuid.clear();
+        offset = 0;
+        hasDuplicates = false;
+    }
+
+    /**
+     * Move the station at fromPosition to toPosition, the stations in between shift by one.
+     * Only the positions of the moved range are indexed again.
+     */
+    public void move(int fromPosition, int toPosition) {
+        final int start = Math.min(fromPosition, toPosition);
+        final int end = Math.max(fromPosition, toPosition);
+        Collections.rotate(stations.subList(start, end + 1), Integer.signum(fromPosition - toPosition));
+        modCount++;
+
+        if (hasDuplicates) {
+            rebuildIndex();
+        } else {
+            index(start, end + 1);
+        }
+    }
+
+    /**
+     * @return first position of the station with uuid or -1 if it is not in the list.
+     */
+    public int positionOf(@Nullable String uuid) {
+        if (uuid == null) {
+            return -1;
+        }
+
+        Integer position = positionOfUuid.get(uuid);
+        return position != null ? position + offset : -1;
+    }
+
+    public boolean containsUuid(@Nullable String uuid) {
+        return positionOf(uuid) >= 0;
+    }
+
+    public @Nullable
+    DataRadioStation getByUuid(@Nullable String uuid) {
+        int position = positionOf(uuid);
+        return position >= 0 ? stations.get(position) : null;
+    }
+
+    /**
+     * @return station after the one with uuid, the first station if it is the last one or
+     * not in the list, null if the list is empty.
+     */
+    public @Nullable
+    DataRadioStation getNext(@Nullable String uuid) {
+        if (stations.isEmpty()) {
+            return null;
+        }
+
+        int position = positionOf(uuid);
+        if (position >= 0 && position < stations.size() - 1) {
+            return stations.get(position + 1);
+        }
+        return stations.get(0);
+    }
+
+    /**
+     * @return station before the one with uuid, the last station if it is the first one or
+     * not in the list, null if the list is empty.
+     */
+    public @Nullable
+    DataRadioStation getPrevious(@Nullable String uuid) {
+        if (stations.isEmpty()) {
+            return null;
+        }
+
+        int position = positionOf(uuid);
+        if (position > 0) {
+            return stations.get(position - 1);
+        }
+        return stations.get(stations.size() - 1);
+    }
+
+    /**
+     * The stations from movedStart on moved by delta, the ones before unchangedEnd kept their
+     * positions. Stations in between are indexed by the caller.
+     */
+    private void shiftIndex(int unchangedEnd, int movedStart, int delta) {
+        if (movedStart >= stations.size()) {
+            return;
+        }
+
+        if (unchangedEnd < stations.size() - movedStart) {
+            offset += delta;
+            index(0, unchangedEnd);
+        } else {
+            index(movedStart, stations.size());
+        }
+    }
+
+    private void index(int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            positionOfUuid.put(uuidOf(stations.get(i)), i - offset);
+        }
+    }
+
+    private void rebuildIndex() {
+        positionOfUuid.clear();
+        offset = 0;
+        hasDuplicates = false;
+        for (int i = 0; i < stations.size(); i++) {
+            String uuid = uuidOf(stations.get(i));
+            if (positionOfUuid.containsKey(uuid)) {
+                hasDuplicates = true;
+            } else {
+                positionOfUuid.put(uuid, i);
+            }
+        }
+    }
+
+    private static String uuidOf(DataRadioStation station) {
+        return station.StationUuid != null ? station.StationUuid : "";
+    }
+}
@@ -1,7 +1,5 @@
 package com.devnull.radio.station;
 
-import android.content.SharedPreferences;
-import android.util.TypedValue;
 import android.view.ContextMenu;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -9,14 +7,12 @@ import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
-import androidx.preference.PreferenceManager;
 import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.github.zawadz88.materialpopupmenu.MaterialPopupMenu;
 
 import com.devnull.radio.R;
-import com.devnull.radio.Utils;
 import com.devnull.radio.service.PlayerServiceUtil;
 import com.devnull.radio.utils.RecyclerItemMoveAndSwipeHelper;
 import com.devnull.radio.utils.SwipeableViewHolder;
@@ -74,25 +70,20 @@ public class ItemAdapterIconOnlyStation extends ItemAdapaterContextMenuStation i
     @Override
     public void onBindViewHolder(final ItemAdapterStation.StationViewHolder holder, int position) {
         final DataRadioStation station = filteredStationsList.get(position);
-
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getContext().getApplicationContext());
-        boolean useCircularIcons = Utils.useCircularIcons(getContext());
+        final DisplaySettings settings = displaySettings;
 
         if (station.hasIcon()) {
-            setupIcon(useCircularIcons, holder.imageViewIcon, holder.transparentImageView);
+            setupIcon(settings.circularIcons, holder.imageViewIcon, holder.transparentImageView);
             PlayerServiceUtil.getStationIcon(holder.imageViewIcon, station.IconUrl);
         } else {
             holder.imageViewIcon.setImageDrawable(stationImagePlaceholder);
         }
 
-        TypedValue tv = new TypedValue();
         if (playingStationPosition == position) {
-            getContext().getTheme().resolveAttribute(R.attr.colorAccentMy, tv, true);
-            holder.frameLayout.setBackgroundColor(tv.data);
-            holder.transparentImageView.setColorFilter(tv.data);
+            holder.frameLayout.setBackgroundColor(settings.accentColor);
+            holder.transparentImageView.setColorFilter(settings.accentColor);
         } else {
-            getContext().getTheme().resolveAttribute(R.attr.boxBackgroundColor, tv, true);
-            holder.frameLayout.setBackgroundColor(tv.data);
+            holder.frameLayout.setBackgroundColor(settings.boxBackgroundColor);
         }
     }
 
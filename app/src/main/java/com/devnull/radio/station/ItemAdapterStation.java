@@ -15,11 +15,18 @@ import android.content.pm.ShortcutManager;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.text.TextUtils;
 
+import androidx.annotation.NonNull;
 import androidx.fragment.app.FragmentActivity;
 import androidx.core.content.ContextCompat;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+import androidx.paging.PagedList;
 import androidx.preference.PreferenceManager;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.ItemTouchHelper;
 
@@ -73,6 +80,89 @@ public class ItemAdapterStation
 
     private final String TAG = "AdapterStations";
 
+    private static final Object PAYLOAD_STATION_CHANGED = new Object();
+
+    private static final DiffUtil.ItemCallback<DataRadioStation> STATION_DIFF = new DiffUtil.ItemCallback<DataRadioStation>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull DataRadioStation oldStation, @NonNull DataRadioStation newStation) {
+            return TextUtils.equals(oldStation.StationUuid, newStation.StationUuid);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull DataRadioStation oldStation, @NonNull DataRadioStation newStation) {
+            // The server gives a station a new change uuid with every edit. Stations which are kept
+            // in memory like favourites are refreshed in place, the same instance may have changed.
+            return oldStation != newStation
+                    && !TextUtils.isEmpty(oldStation.ChangeUuid)
+                    && oldStation.ChangeUuid.equals(newStation.ChangeUuid)
+                    && oldStation.Working == newStation.Working
+                    && oldStation.DeletedOnServer == newStation.DeletedOnServer
+                    && oldStation.ClickTrend == newStation.ClickTrend;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull DataRadioStation oldStation, @NonNull DataRadioStation newStation) {
+            // Rebind in place instead of cross fading
+            return PAYLOAD_STATION_CHANGED;
+        }
+    };
+
+    /**
+     * Preferences and theme attributes every row needs, read once per list update
+     * instead of for every bound row.
+     */
+    static class DisplaySettings {
+        final boolean loadIcons;
+        final boolean circularIcons;
+        final boolean compactStyle;
+        final boolean iconClickTogglesFavourite;
+        final boolean clickTrendIconVisible;
+        final boolean playExternal;
+        final int accentColor;
+        final int boxBackgroundColor;
+        final int titleColor;
+
+        DisplaySettings(Context context) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext());
+            loadIcons = Utils.shouldLoadIcons(context);
+            circularIcons = Utils.useCircularIcons(context);
+            compactStyle = prefs.getBoolean("compact_style", false);
+            iconClickTogglesFavourite = prefs.getBoolean("icon_click_toggles_favorite", true);
+            clickTrendIconVisible = prefs.getBoolean("click_trend_icon_visible", true);
+            playExternal = prefs.getBoolean("play_external", false);
+
+            TypedValue tv = new TypedValue();
+            context.getTheme().resolveAttribute(R.attr.colorAccentMy, tv, true);
+            accentColor = tv.data;
+            context.getTheme().resolveAttribute(R.attr.boxBackgroundColor, tv, true);
+            boxBackgroundColor = tv.data;
+            context.getTheme().resolveAttribute(R.attr.iconsInItemBackgroundColor, tv, true);
+            titleColor = tv.data;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof DisplaySettings)) return false;
+            DisplaySettings that = (DisplaySettings) o;
+            return loadIcons == that.loadIcons
+                    && circularIcons == that.circularIcons
+                    && compactStyle == that.compactStyle
+                    && iconClickTogglesFavourite == that.iconClickTogglesFavourite
+                    && clickTrendIconVisible == that.clickTrendIconVisible
+                    && playExternal == that.playExternal
+                    && accentColor == that.accentColor
+                    && boxBackgroundColor == that.boxBackgroundColor
+                    && titleColor == that.titleColor;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[]{loadIcons, circularIcons, compactStyle, iconClickTogglesFavourite,
+                    clickTrendIconVisible, playExternal, accentColor, boxBackgroundColor, titleColor});
+        }
+    }
+
     List<DataRadioStation> stationsList;
     List<DataRadioStation> filteredStationsList = new ArrayList<>();
 
@@ -83,7 +173,7 @@ public class ItemAdapterStation
     private boolean supportsStationRemoval = false;
     private StationsFilter.FilterType filterType = StationsFilter.FilterType.LOCAL;
 
-    private boolean shouldLoadIcons;
+    DisplaySettings displaySettings;
 
     private IAdapterRefreshable refreshable;
     FragmentActivity activity;
@@ -99,6 +189,94 @@ public class ItemAdapterStation
 
     private StationsFilter filter;
 
+    // Keeps the expanded and playing station when rows are inserted, removed or moved
+    private final ListUpdateCallback listUpdateCallback = new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            expandedPosition = shiftPosition(expandedPosition, position, count);
+            playingStationPosition = shiftPosition(playingStationPosition, position, count);
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            expandedPosition = shiftPosition(expandedPosition, position, -count);
+            playingStationPosition = shiftPosition(playingStationPosition, position, -count);
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            expandedPosition = movePosition(expandedPosition, fromPosition, toPosition);
+            playingStationPosition = movePosition(playingStationPosition, fromPosition, toPosition);
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            notifyItemRangeChanged(position, count, payload);
+        }
+    };
+
+    // Stations of a paged list arrive while it is scrolled, see StationPagedDataSource
+    private final PagedList.Callback pagedListCallback = new PagedList.Callback() {
+        @Override
+        public void onChanged(int position, int count) {
+            listUpdateCallback.onChanged(position, count, null);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            listUpdateCallback.onInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            listUpdateCallback.onRemoved(position, count);
+        }
+    };
+
+    // True while the rows show something else than the last list of the differ: a paged list
+    // or a list with rows moved by the user. The next list of the differ is not animated then.
+    private boolean displayedListDiffers = false;
+    // Last list given to the differ, getCurrentList() of the differ only offers it unmodifiable
+    // and without its uuid index.
+    private List<DataRadioStation> submittedStations;
+
+    private final AsyncListDiffer<DataRadioStation> differ = new AsyncListDiffer<>(new ListUpdateCallback() {
+        @Override
+        public void onInserted(int position, int count) {
+            if (!displayedListDiffers) {
+                setFilteredStations(submittedStations);
+                listUpdateCallback.onInserted(position, count);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            if (!displayedListDiffers) {
+                setFilteredStations(submittedStations);
+                listUpdateCallback.onRemoved(position, count);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            if (!displayedListDiffers) {
+                setFilteredStations(submittedStations);
+                listUpdateCallback.onMoved(fromPosition, toPosition);
+            }
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            if (!displayedListDiffers) {
+                setFilteredStations(submittedStations);
+                listUpdateCallback.onChanged(position, count, payload);
+            }
+        }
+    }, new AsyncDifferConfig.Builder<>(STATION_DIFF).build());
+
     private TagsView.TagSelectionCallback tagSelectionCallback = new TagsView.TagSelectionCallback() {
         @Override
         public void onTagSelected(String tag) {
@@ -177,6 +355,8 @@ public class ItemAdapterStation
 
         RadioDroidApp radioDroidApp = (RadioDroidApp) fragmentActivity.getApplication();
         favouriteManager = radioDroidApp.getFavouriteManager();
+        updateDisplaySettings();
+
         IntentFilter filter = new IntentFilter();
         filter.addAction(PlayerService.PLAYER_SERVICE_META_UPDATE);
         filter.addAction(DataRadioStation.RADIO_STATION_LOCAL_INFO_CHAGED);
@@ -233,20 +413,93 @@ public class ItemAdapterStation
     public void updateList(FragmentStarred refreshableList, List<DataRadioStation> stationsList) {
         this.refreshable = refreshableList;
         this.stationsList = stationsList;
-        this.filteredStationsList = stationsList;
 
-        notifyStationsChanged();
+        submitStations(stationsList);
     }
 
-    private void notifyStationsChanged() {
-        expandedPosition = -1;
-        playingStationPosition = -1;
+    private void submitStations(List<DataRadioStation> stations) {
+        updateDisplaySettings();
+
+        if (stations == null || stations instanceof PagedList) {
+            // Paged lists tell about added pages themselves. Drops pending lists of the differ.
+            displayedListDiffers = true;
+            submittedStations = null;
+            differ.submitList(null);
+
+            setFilteredStations(stations);
+            expandedPosition = -1;
+            playingStationPosition = -1;
+            notifyDataSetChanged();
+            highlightCurrentStation();
+            return;
+        }
 
-        shouldLoadIcons = Utils.shouldLoadIcons(getContext());
+        // The owner of the list may change it later on, e.g. the favourites, the differ
+        // compares with a snapshot in background. Compact lists can not change.
+        final List<DataRadioStation> snapshot = stations instanceof CompactStationList ? stations : new IndexedStationList(stations);
+        submittedStations = snapshot;
+        differ.submitList(snapshot, () -> {
+            setFilteredStations(snapshot);
+            if (displayedListDiffers) {
+                displayedListDiffers = false;
+                expandedPosition = -1;
+                playingStationPosition = -1;
+                notifyDataSetChanged();
+            }
+            highlightCurrentStation();
+        });
+    }
+
+    private void updateDisplaySettings() {
+        DisplaySettings newSettings = new DisplaySettings(getContext());
+        boolean changed = displaySettings != null && !displaySettings.equals(newSettings);
+        displaySettings = newSettings;
+
+        if (changed) {
+            notifyDataSetChanged();
+        }
+    }
+
+    private void setFilteredStations(List<DataRadioStation> stations) {
+        if (filteredStationsList instanceof PagedList) {
+            ((PagedList<DataRadioStation>) filteredStationsList).removeWeakCallback(pagedListCallback);
+        }
+
+        filteredStationsList = stations;
+
+        if (stations instanceof PagedList) {
+            ((PagedList<DataRadioStation>) stations).addWeakCallback(null, pagedListCallback);
+        }
+    }
 
-        highlightCurrentStation();
+    /**
+     * @param delta count of inserted stations at position, negative for removed ones
+     * @return trackedPosition after the change, -1 if its station was removed
+     */
+    private static int shiftPosition(int trackedPosition, int position, int delta) {
+        if (trackedPosition < position) {
+            return trackedPosition;
+        }
+        if (delta < 0 && trackedPosition < position - delta) {
+            return -1;
+        }
+        return trackedPosition + delta;
+    }
 
-        notifyDataSetChanged();
+    /**
+     * @return trackedPosition after the station at fromPosition was moved to toPosition
+     */
+    private static int movePosition(int trackedPosition, int fromPosition, int toPosition) {
+        if (trackedPosition == fromPosition) {
+            return toPosition;
+        }
+        if (fromPosition < toPosition && trackedPosition > fromPosition && trackedPosition <= toPosition) {
+            return trackedPosition - 1;
+        }
+        if (toPosition < fromPosition && trackedPosition >= toPosition && trackedPosition < fromPosition) {
+            return trackedPosition + 1;
+        }
+        return trackedPosition;
     }
 
     @Override
@@ -259,10 +512,13 @@ public class ItemAdapterStation
 
     @Override
     public void onBindViewHolder(final StationViewHolder holder, int position) {
+        if (filteredStationsList instanceof PagedList) {
+            // Loads the next pages before they are scrolled into view
+            ((PagedList<DataRadioStation>) filteredStationsList).loadAround(position);
+        }
         final DataRadioStation station = filteredStationsList.get(position);
+        final DisplaySettings settings = displaySettings;
 
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(getContext().getApplicationContext());
-        boolean useCircularIcons = Utils.useCircularIcons(getContext());
         if (station.DeletedOnServer){
             // set to red
             holder.itemView.setBackgroundColor(0xFFFF0000);
@@ -274,20 +530,20 @@ public class ItemAdapterStation
             holder.itemView.setBackgroundColor(0x00000000);
         }
 
-        if (!shouldLoadIcons) {
+        if (!settings.loadIcons) {
             holder.imageViewIcon.setVisibility(View.GONE);
         } else {
             if (station.hasIcon()) {
-                setupIcon(useCircularIcons, holder.imageViewIcon, holder.transparentImageView);
+                setupIcon(settings.circularIcons, holder.imageViewIcon, holder.transparentImageView);
                 PlayerServiceUtil.getStationIcon(holder.imageViewIcon, station.IconUrl);
             } else {
                 holder.imageViewIcon.setImageDrawable(stationImagePlaceholder);
             }
 
-            if (prefs.getBoolean("compact_style", false))
+            if (settings.compactStyle)
                 setupCompactStyle(holder);
 
-            if (prefs.getBoolean("icon_click_toggles_favorite", true)) {
+            if (settings.iconClickTogglesFavourite) {
 
                 final boolean isInFavorites = favouriteManager.has(station.StationUuid);
                 holder.imageViewIcon.setContentDescription(getContext().getApplicationContext().getString(isInFavorites ? R.string.detail_unstar : R.string.detail_star));
@@ -330,16 +586,12 @@ public class ItemAdapterStation
             }
         });
 
-        TypedValue tv = new TypedValue();
         if (playingStationPosition == position) {
-            getContext().getTheme().resolveAttribute(R.attr.colorAccentMy, tv, true);
-            holder.textViewTitle.setTextColor(tv.data);
+            holder.textViewTitle.setTextColor(settings.accentColor);
             holder.textViewTitle.setTypeface(null, Typeface.BOLD);
         } else {
-            getContext().getTheme().resolveAttribute(R.attr.boxBackgroundColor, tv, true);
             holder.textViewTitle.setTypeface(holder.textViewShortDescription.getTypeface());
-            getContext().getTheme().resolveAttribute(R.attr.iconsInItemBackgroundColor, tv, true);
-            holder.textViewTitle.setTextColor(tv.data);
+            holder.textViewTitle.setTextColor(settings.titleColor);
         }
 
         holder.textViewTitle.setText(station.Name);
@@ -350,7 +602,7 @@ public class ItemAdapterStation
         holder.starredStatusIcon.setVisibility(inFavourites ? View.VISIBLE : View.GONE);
         holder.starredStatusIcon.setContentDescription(inFavourites ? getContext().getString(R.string.action_favorite) : "");
 
-        if (prefs.getBoolean("click_trend_icon_visible", true)) {
+        if (settings.clickTrendIconVisible) {
             if (station.ClickTrend < 0) {
                 holder.imageTrend.setImageResource(R.drawable.ic_trending_down_black_24dp);
                 holder.imageTrend.setContentDescription(getContext().getString(R.string.icon_click_trend_decreasing));
@@ -399,7 +651,7 @@ public class ItemAdapterStation
 
             holder.buttonShare.setOnClickListener(view -> StationActions.share(activity, station));
 
-            if (favouriteManager.has(station.StationUuid)) {
+            if (inFavourites) {
                 // favorite stations should only be removed in the favorites view
                 holder.buttonBookmark.setVisibility(View.GONE);
             } else {
@@ -430,7 +682,7 @@ public class ItemAdapterStation
                 }
             });
 
-            if (prefs.getBoolean("play_external", false)) {
+            if (settings.playExternal) {
                 holder.buttonPlayInternalOrExternal.setOnClickListener(v -> {
                     StationActions.playInRadioDroid(getContext(), station);
                 });
@@ -441,8 +693,7 @@ public class ItemAdapterStation
                 holder.buttonPlayInternalOrExternal.setOnClickListener(v -> Utils.playAndWarnIfMetered((RadioDroidApp) context.getApplicationContext(), station,
                         PlayerType.EXTERNAL, () -> PlayStationTask.playExternal(station, context).execute()));
             }
-            String[] tags = station.TagsAll.split(",");
-            holder.viewTags.setTags(Arrays.asList(tags));
+            holder.viewTags.setTags(Arrays.asList(station.getTags()));
             holder.viewTags.setTagSelectionCallback(tagSelectionCallback);
         }
         if (holder.viewDetails != null)
@@ -481,7 +732,15 @@ public class ItemAdapterStation
     @Override
     public void onMoved(StationViewHolder viewHolder, int from, int to) {
         stationActionsListener.onStationMoved(from, to);
-        notifyItemMoved(from, to);
+
+        // Same move as in the list of the owner, the differ does not know about it.
+        // It still compares with the displayed list, so that must not change.
+        IndexedStationList movedStations = new IndexedStationList(filteredStationsList);
+        movedStations.move(from, to);
+        setFilteredStations(movedStations);
+        displayedListDiffers = true;
+
+        listUpdateCallback.onMoved(from, to);
     }
 
     @Override
@@ -504,14 +763,17 @@ public class ItemAdapterStation
 
                 @Override
                 public void notifyFilteredStationsChanged(StationsFilter.SearchStatus status, List<DataRadioStation> filteredStations) {
-                    filteredStationsList = filteredStations;
-
-                    notifyStationsChanged();
+                    submitStations(filteredStations);
 
                     if (filterListener != null) {
                         filterListener.onSearchCompleted(status);
                     }
                 }
+
+                @Override
+                public void notifyPartialFilteredStations(List<DataRadioStation> bestStations) {
+                    submitStations(bestStations);
+                }
             });
         }
 
@@ -548,14 +810,7 @@ public class ItemAdapterStation
         if (filteredStationsList == null) return;
 
         int oldPlayingStationPosition = playingStationPosition;
-
-        String currentStationUuid = PlayerServiceUtil.getStationId();
-        for (int i = 0; i < filteredStationsList.size(); i++) {
-            if (filteredStationsList.get(i).StationUuid.equals(currentStationUuid)) {
-                playingStationPosition = i;
-                break;
-            }
-        }
+        playingStationPosition = positionOfStation(PlayerServiceUtil.getStationId());
         if (playingStationPosition != oldPlayingStationPosition) {
             if (oldPlayingStationPosition > -1)
                 notifyItemChanged(oldPlayingStationPosition);
@@ -565,12 +820,30 @@ public class ItemAdapterStation
     }
 
     private void notifyChangedByStationUuid(String uuid) {
-        // TODO: Iterate through view holders instead of whole collection
+        int position = positionOfStation(uuid);
+        if (position > -1) {
+            notifyItemChanged(position);
+        }
+    }
+
+    private int positionOfStation(String uuid) {
+        if (filteredStationsList == null || uuid == null) {
+            return -1;
+        }
+
+        if (filteredStationsList instanceof IndexedStationList) {
+            return ((IndexedStationList) filteredStationsList).positionOf(uuid);
+        }
+        if (filteredStationsList instanceof CompactStationList) {
+            return ((CompactStationList) filteredStationsList).positionOf(uuid);
+        }
+
+        // Paged lists only hold a few pages
         for (int i = 0; i < filteredStationsList.size(); i++) {
-            if (filteredStationsList.get(i).StationUuid.equals(uuid)) {
-                notifyItemChanged(i);
-                break;
+            if (uuid.equals(filteredStationsList.get(i).StationUuid)) {
+                return i;
             }
         }
+        return -1;
     }
 }
@@ -0,0 +1,223 @@
+package com.devnull.radio.station;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.Utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Refreshes many stations by uuid at once: uuids are split into bounded chunks,
+ * chunks are requested concurrently on a small pool and results are reported
+ * chunk by chunk as they arrive.
+ */
+public class StationBatchRefresher {
+    private static final String TAG = "StationBatchRefresher";
+
+    public static final int DEFAULT_CHUNK_SIZE = 100;
+    public static final int DEFAULT_PARALLELISM = 3;
+
+    private static final ExecutorService defaultExecutor = Executors.newFixedThreadPool(DEFAULT_PARALLELISM, runnable -> {
+        Thread thread = new Thread(runnable, "StationBatchRefresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public interface ChunkLoader {
+        /**
+         * @return stations for the uuids, stations unknown to the server are left out.
+         * Null if the chunk could not be loaded.
+         */
+        @Nullable
+        List<DataRadioStation> load(@NonNull List<String> uuids);
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called on the thread which called {@link #refresh(Collection, ProgressListener)}
+         * after every chunk, in the order chunks finish.
+         *
+         * @param stations stations of the finished chunk, null if the chunk failed
+         */
+        void onChunkFinished(@Nullable List<DataRadioStation> stations, int finishedChunks, int totalChunks);
+    }
+
+    public static class Result {
+        private final Map<String, DataRadioStation> stations = new HashMap<>();
+        private final Set<String> missing = new HashSet<>();
+        private int failedChunks = 0;
+        private int totalChunks = 0;
+
+        /**
+         * @return refreshed station or null if the server did not return it.
+         */
+        public @Nullable
+        DataRadioStation get(@NonNull String uuid) {
+            return stations.get(uuid);
+        }
+
+        public Map<String, DataRadioStation> getStations() {
+            return Collections.unmodifiableMap(stations);
+        }
+
+        /**
+         * @return uuids the server does not know, only chunks which were loaded are considered.
+         */
+        public Set<String> getMissing() {
+            return Collections.unmodifiableSet(missing);
+        }
+
+        public int getFailedChunks() {
+            return failedChunks;
+        }
+
+        public int getTotalChunks() {
+            return totalChunks;
+        }
+
+        public boolean isComplete() {
+            return failedChunks == 0;
+        }
+    }
+
+    private final ChunkLoader chunkLoader;
+    private final int chunkSize;
+    private final ExecutorService executor;
+
+    private final List<Future<List<DataRadioStation>>> futures = new ArrayList<>();
+    private volatile boolean cancelled = false;
+
+    public StationBatchRefresher(@NonNull ChunkLoader chunkLoader, int chunkSize, @NonNull ExecutorService executor) {
+        this.chunkLoader = chunkLoader;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.executor = executor;
+    }
+
+    /**
+     * Refresher which requests chunks from radio browser servers.
+     */
+    public static StationBatchRefresher forServer(@NonNull final OkHttpClient httpClient, @NonNull final Context context) {
+        final Context appContext = context.getApplicationContext();
+        return new StationBatchRefresher(uuids -> Utils.getStationsByUuid(httpClient, appContext, uuids),
+                DEFAULT_CHUNK_SIZE, defaultExecutor);
+    }
+
+    static List<List<String>> split(@NonNull Collection<String> uuids, int chunkSize) {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(uuids));
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < unique.size(); start += chunkSize) {
+            chunks.add(new ArrayList<>(unique.subList(start, Math.min(unique.size(), start + chunkSize))));
+        }
+        return chunks;
+    }
+
+    /**
+     * Blocking: load all uuids and return what the server knows about them.
+     * Empty uuids are ignored.
+     */
+    public Result refresh(@NonNull Collection<String> uuids, @Nullable ProgressListener progressListener) {
+        List<String> validUuids = new ArrayList<>(uuids.size());
+        for (String uuid : uuids) {
+            if (uuid != null && !uuid.isEmpty()) {
+                validUuids.add(uuid);
+            }
+        }
+
+        List<List<String>> chunks = split(validUuids, chunkSize);
+
+        Result result = new Result();
+        result.totalChunks = chunks.size();
+
+        CompletionService<List<DataRadioStation>> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<List<DataRadioStation>>, List<String>> chunkOfFuture = new HashMap<>();
+        synchronized (futures) {
+            if (cancelled) {
+                result.failedChunks = chunks.size();
+                return result;
+            }
+            for (final List<String> chunk : chunks) {
+                Future<List<DataRadioStation>> future = completionService.submit(() -> chunkLoader.load(chunk));
+                chunkOfFuture.put(future, chunk);
+                futures.add(future);
+            }
+        }
+
+        for (int finished = 1; finished <= chunks.size(); finished++) {
+            List<DataRadioStation> stations = null;
+            List<String> chunk = null;
+            try {
+                Future<List<DataRadioStation>> future = completionService.take();
+                chunk = chunkOfFuture.get(future);
+                stations = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                result.failedChunks += chunks.size() - finished + 1;
+                break;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Could not load chunk: " + e.getCause());
+            } catch (CancellationException e) {
+                Log.d(TAG, "Chunk cancelled");
+            }
+
+            if (stations == null || chunk == null) {
+                result.failedChunks++;
+            } else {
+                Set<String> notReturned = new HashSet<>(chunk);
+                for (DataRadioStation station : stations) {
+                    result.stations.put(station.StationUuid, station);
+                    notReturned.remove(station.StationUuid);
+                }
+                result.missing.addAll(notReturned);
+            }
+
+            if (progressListener != null && !cancelled) {
+                progressListener.onChunkFinished(stations, finished, chunks.size());
+            }
+        }
+
+        synchronized (futures) {
+            futures.removeAll(chunkOfFuture.keySet());
+        }
+
+        return result;
+    }
+
+    /**
+     * Cancel chunks which are still queued or running, {@link #refresh(Collection, ProgressListener)}
+     * returns with them counted as failed.
+     */
+    public void cancel() {
+        synchronized (futures) {
+            cancelled = true;
+            for (Future<List<DataRadioStation>> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
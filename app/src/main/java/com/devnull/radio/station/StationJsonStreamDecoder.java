@@ -0,0 +1,221 @@
+package com.devnull.radio.station;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decodes a json array of stations while it is being read, without holding
+ * the whole document or a json tree in memory. Accepts the same fields as
+ * {@link DataRadioStation#DecodeJson(String)}.
+ */
+public class StationJsonStreamDecoder {
+    private static final String TAG = "StationStreamDecoder";
+
+    public interface StationCallback {
+        void onStation(@NonNull DataRadioStation station);
+    }
+
+    public interface ExtendedStationCallback {
+        /**
+         * @param extraFields requested fields which are not part of {@link DataRadioStation},
+         *                    fields missing in the json are missing in the map too
+         */
+        void onStation(@NonNull DataRadioStation station, @NonNull Map<String, String> extraFields);
+    }
+
+    private StationJsonStreamDecoder() {
+    }
+
+    /**
+     * Decode stations from reader and hand them to callback one by one.
+     *
+     * @return number of stations decoded
+     * @throws IOException if the document could not be read or is not a json array
+     */
+    public static int decode(@NonNull Reader reader, @NonNull StationCallback callback) throws IOException {
+        return decode(reader, Collections.<String>emptySet(), (station, extraFields) -> callback.onStation(station));
+    }
+
+    /**
+     * Same as {@link #decode(Reader, StationCallback)}, additionally hands the values of
+     * the requested fields which {@link DataRadioStation} does not keep to callback.
+     */
+    public static int decode(@NonNull Reader reader, @NonNull Set<String> extraFieldNames,
+                             @NonNull ExtendedStationCallback callback) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.setLenient(true);
+
+        int count = 0;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            if (jsonReader.peek() != JsonToken.BEGIN_OBJECT) {
+                jsonReader.skipValue();
+                continue;
+            }
+
+            Map<String, String> extraFields = extraFieldNames.isEmpty()
+                    ? Collections.<String, String>emptyMap() : new HashMap<String, String>();
+            DataRadioStation station = decodeStation(jsonReader, extraFieldNames, extraFields);
+            if (station != null) {
+                callback.onStation(station, extraFields);
+                count++;
+            }
+        }
+        jsonReader.endArray();
+
+        return count;
+    }
+
+    public static @NonNull
+    List<DataRadioStation> decode(@NonNull Reader reader) throws IOException {
+        final List<DataRadioStation> result = new ArrayList<>();
+        decode(reader, result::add);
+        return result;
+    }
+
+    private static DataRadioStation decodeStation(JsonReader reader, Set<String> extraFieldNames,
+                                                  Map<String, String> extraFields) throws IOException {
+        DataRadioStation station = new DataRadioStation();
+        station.StreamUrl = "";
+
+        String id = null;
+        boolean hasName = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "name":
+                    station.Name = nextString(reader);
+                    hasName = true;
+                    break;
+                case "url":
+                    station.StreamUrl = nextString(reader);
+                    break;
+                case "stationuuid":
+                    station.StationUuid = nextString(reader);
+                    break;
+                case "id":
+                    id = nextString(reader);
+                    break;
+                case "changeuuid":
+                    station.ChangeUuid = nextString(reader);
+                    break;
+                case "votes":
+                    station.Votes = nextInt(reader);
+                    break;
+                case "refreshretrycount":
+                    station.RefreshRetryCount = nextInt(reader);
+                    break;
+                case "homepage":
+                    station.HomePageUrl = nextString(reader);
+                    break;
+                case "tags":
+                    station.TagsAll = nextString(reader);
+                    break;
+                case "country":
+                    station.Country = nextString(reader);
+                    break;
+                case "countrycode":
+                    station.CountryCode = nextString(reader);
+                    break;
+                case "state":
+                    station.State = nextString(reader);
+                    break;
+                case "favicon":
+                    station.IconUrl = nextString(reader);
+                    break;
+                case "language":
+                    station.Language = nextString(reader);
+                    break;
+                case "clickcount":
+                    station.ClickCount = nextInt(reader);
+                    break;
+                case "clicktrend":
+                    station.ClickTrend = nextInt(reader);
+                    break;
+                case "bitrate":
+                    station.Bitrate = nextInt(reader);
+                    break;
+                case "codec":
+                    station.Codec = nextString(reader);
+                    break;
+                case "lastcheckok":
+                    station.Working = nextInt(reader) != 0;
+                    break;
+                case "hls":
+                    station.Hls = nextInt(reader) != 0;
+                    break;
+                case "DeletedOnServer":
+                    station.DeletedOnServer = nextInt(reader) != 0;
+                    break;
+                default:
+                    if (extraFieldNames.contains(name) && reader.peek() != JsonToken.BEGIN_OBJECT
+                            && reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        extraFields.put(name, reader.peek() == JsonToken.BOOLEAN
+                                ? String.valueOf(reader.nextBoolean()) : nextString(reader));
+                    } else {
+                        reader.skipValue();
+                    }
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (!hasName) {
+            Log.e(TAG, "decodeStation() station without name");
+            return null;
+        }
+
+        if (!station.hasValidUuid() && id != null) {
+            station.StationId = id;
+        }
+
+        station.fixStationFields();
+
+        return station;
+    }
+
+    private static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return "";
+        }
+        return reader.nextString();
+    }
+
+    private static int nextInt(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case NULL:
+                reader.nextNull();
+                return 0;
+            case BOOLEAN:
+                return reader.nextBoolean() ? 1 : 0;
+            case NUMBER:
+                return (int) reader.nextDouble();
+            case STRING:
+                String value = reader.nextString();
+                try {
+                    return Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            default:
+                reader.skipValue();
+                return 0;
+        }
+    }
+}
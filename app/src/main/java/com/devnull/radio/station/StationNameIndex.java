@@ -0,0 +1,393 @@
+package com.devnull.radio.station;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.utils.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+
+/**
+ * Trigram index over the names of a station list which narrows down the stations that
+ * have to be scored with {@link FuzzySearch#partialRatio(String, String)}.
+ * <p>
+ * Trigrams are taken per word with the words padded like pg_trgm does ("  r", " ra", "rad",
+ * ..., "io "), so a single typo still leaves trigrams in common. Stations which share no
+ * trigram with the query are not scored. The fuzzy score of such a station could only pass the
+ * threshold by scattered single characters.
+ * <p>
+ * For every station the number of distinct query trigrams in its name is kept between calls to
+ * {@link #filter(String)}. A new query only applies the trigrams which were added or removed,
+ * so typing another character does not rescan all stations.
+ * <p>
+ * Scoring is split into chunks which run on a pool with one thread per core. Each chunk
+ * sorts its matches, so ranking is mostly done in parallel as well.
+ * <p>
+ * Not thread safe, it is meant to be used by the filter thread only.
+ */
+public class StationNameIndex {
+    private static final int FUZZY_SEARCH_THRESHOLD = 55;
+    private static final int[] NO_STATIONS = new int[0];
+
+    static final int CHUNK_SIZE = 256;
+    private static final int CANCELLATION_CHECK_INTERVAL = 32;
+    private static final int PARTIAL_RESULT_SIZE = 50;
+    private static final int MIN_CHUNKS_FOR_PARTIAL_RESULT = 4;
+
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService defaultExecutor = Executors.newFixedThreadPool(PARALLELISM, runnable -> {
+        Thread thread = new Thread(runnable, "StationNameIndex");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ExecutorService executor;
+    private final List<DataRadioStation> indexedList;
+    private final DataRadioStation[] stations;
+    private final String[] lowerCaseNames;
+    private final Map<Long, int[]> postings;
+
+    private Set<Long> queryTrigrams = Collections.emptySet();
+    private final int[] sharedTrigrams;
+    private final boolean[] isCandidate;
+    private int[] candidates = NO_STATIONS;
+    private int candidateCount = 0;
+
+    public interface PartialResultListener {
+        /**
+         * Called on the filtering thread while the remaining stations are still scored.
+         *
+         * @param bestStations best matches among the stations scored so far
+         */
+        void onPartialResult(@NonNull List<DataRadioStation> bestStations);
+    }
+
+    private static class WeightedStation {
+        final DataRadioStation station;
+        final int weight;
+
+        WeightedStation(DataRadioStation station, int weight) {
+            this.station = station;
+            this.weight = weight;
+        }
+    }
+
+    private static final Comparator<WeightedStation> ORDER = (x, y) -> {
+        if (x.weight == y.weight) {
+            return -Integer.compare(x.station.ClickCount, y.station.ClickCount);
+        }
+        return -Integer.compare(x.weight, y.weight);
+    };
+
+    public StationNameIndex(@NonNull List<DataRadioStation> stationList) {
+        this(stationList, PARALLELISM > 1 ? defaultExecutor : null);
+    }
+
+    /**
+     * @param executor runs chunks of scoring, null to score everything on the calling thread
+     */
+    StationNameIndex(@NonNull List<DataRadioStation> stationList, @Nullable ExecutorService executor) {
+        this.executor = executor;
+        indexedList = stationList;
+        stations = stationList.toArray(new DataRadioStation[0]);
+        lowerCaseNames = new String[stations.length];
+        sharedTrigrams = new int[stations.length];
+        isCandidate = new boolean[stations.length];
+
+        Map<Long, List<Integer>> builder = new HashMap<>();
+        Set<Long> nameTrigrams = new HashSet<>();
+        for (int id = 0; id < stations.length; id++) {
+            String name = stations[id].Name != null ? stations[id].Name : "";
+            lowerCaseNames[id] = name.toLowerCase();
+
+            nameTrigrams.clear();
+            addTrigrams(lowerCaseNames[id], nameTrigrams);
+            for (Long trigram : nameTrigrams) {
+                List<Integer> ids = builder.get(trigram);
+                if (ids == null) {
+                    ids = new ArrayList<>();
+                    builder.put(trigram, ids);
+                }
+                ids.add(id);
+            }
+        }
+
+        postings = new HashMap<>(builder.size() * 4 / 3 + 1);
+        for (Map.Entry<Long, List<Integer>> entry : builder.entrySet()) {
+            List<Integer> ids = entry.getValue();
+            int[] array = new int[ids.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = ids.get(i);
+            }
+            postings.put(entry.getKey(), array);
+        }
+    }
+
+    /**
+     * @return true if this index was built from list and the list did not change in size since.
+     */
+    public boolean isIndexOf(List<DataRadioStation> list) {
+        return list == indexedList && list.size() == stations.length;
+    }
+
+    /**
+     * Stations with a fuzzy score above the threshold, best matches first and stations with
+     * similar scores by click count.
+     *
+     * @param lowerCaseQuery query which was already converted to lower case
+     */
+    @NonNull
+    public List<DataRadioStation> filter(@NonNull String lowerCaseQuery) {
+        //noinspection ConstantConditions never null without token
+        return filter(lowerCaseQuery, null, null);
+    }
+
+    /**
+     * Same as {@link #filter(String)}, scoring is split into chunks which run in parallel.
+     *
+     * @param token    checked between chunks, scoring stops as soon as it is cancelled
+     * @param listener receives the best stations of the first chunks if there are many stations to score
+     * @return null if cancelled
+     */
+    @Nullable
+    public List<DataRadioStation> filter(@NonNull String lowerCaseQuery, @Nullable CancellationToken token,
+                                         @Nullable PartialResultListener listener) {
+        final int[] ids;
+        if (lowerCaseQuery.length() < 3) {
+            // A short query reaches the threshold with any name which contains it, no matter
+            // where. Trigrams do not help here.
+            resetCandidates();
+            ids = new int[stations.length];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = id;
+            }
+        } else {
+            updateCandidates(lowerCaseQuery);
+            // Same order of scoring as a full scan so stations with equal weight keep their order
+            Arrays.sort(candidates, 0, candidateCount);
+            ids = Arrays.copyOf(candidates, candidateCount);
+        }
+
+        List<WeightedStation> weightedStations;
+        if (executor == null || ids.length <= CHUNK_SIZE) {
+            weightedStations = scoreChunk(lowerCaseQuery, ids, 0, ids.length, token);
+        } else {
+            weightedStations = scoreInParallel(lowerCaseQuery, ids, token, listener);
+        }
+
+        if (weightedStations == null || (token != null && token.isCancelled())) {
+            return null;
+        }
+        return toStations(weightedStations, weightedStations.size());
+    }
+
+    @Nullable
+    private List<WeightedStation> scoreInParallel(final String query, final int[] ids, final CancellationToken token,
+                                                  PartialResultListener listener) {
+        final int chunks = (ids.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        CompletionService<List<WeightedStation>> completionService = new ExecutorCompletionService<>(executor);
+        Map<Future<List<WeightedStation>>, Integer> chunkOfFuture = new HashMap<>();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            final int start = chunk * CHUNK_SIZE;
+            final int end = Math.min(ids.length, start + CHUNK_SIZE);
+            chunkOfFuture.put(completionService.submit(() -> scoreChunk(query, ids, start, end, token)), chunk);
+        }
+
+        // Chunks are sorted already, the final sort only has to merge them
+        @SuppressWarnings("unchecked")
+        List<WeightedStation>[] chunkResults = new List[chunks];
+        boolean partialResultPublished = listener == null || chunks < MIN_CHUNKS_FOR_PARTIAL_RESULT;
+        int matches = 0;
+
+        try {
+            for (int finished = 1; finished <= chunks; finished++) {
+                Future<List<WeightedStation>> future = completionService.take();
+                List<WeightedStation> chunkResult = future.get();
+                if (chunkResult == null || (token != null && token.isCancelled())) {
+                    return null;
+                }
+
+                chunkResults[chunkOfFuture.get(future)] = chunkResult;
+                matches += chunkResult.size();
+
+                if (!partialResultPublished && matches >= PARTIAL_RESULT_SIZE && finished < chunks) {
+                    partialResultPublished = true;
+                    List<WeightedStation> best = merge(chunkResults, matches);
+                    listener.onPartialResult(toStations(best, PARTIAL_RESULT_SIZE));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            for (Future<List<WeightedStation>> future : chunkOfFuture.keySet()) {
+                future.cancel(false);
+            }
+        }
+
+        return merge(chunkResults, matches);
+    }
+
+    private List<WeightedStation> merge(List<WeightedStation>[] chunkResults, int matches) {
+        List<WeightedStation> merged = new ArrayList<>(matches);
+        for (List<WeightedStation> chunkResult : chunkResults) {
+            if (chunkResult != null) {
+                merged.addAll(chunkResult);
+            }
+        }
+        // Stable and fast on sorted runs. Chunks are added in the order of the stations, so
+        // equal stations keep their order as with one sort over all of them.
+        Collections.sort(merged, ORDER);
+        return merged;
+    }
+
+    /**
+     * Scores ids from start to end and sorts the matches.
+     *
+     * @return null if cancelled
+     */
+    @Nullable
+    private List<WeightedStation> scoreChunk(String query, int[] ids, int start, int end, CancellationToken token) {
+        List<WeightedStation> weightedStations = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            if ((i - start) % CANCELLATION_CHECK_INTERVAL == 0 && token != null && token.isCancelled()) {
+                return null;
+            }
+
+            int id = ids[i];
+            int weight = FuzzySearch.partialRatio(query, lowerCaseNames[id]);
+            if (weight > FUZZY_SEARCH_THRESHOLD) {
+                // We will sort stations with similar weight by other metric
+                weightedStations.add(new WeightedStation(stations[id], weight / 4));
+            }
+        }
+        Collections.sort(weightedStations, ORDER);
+        return weightedStations;
+    }
+
+    private static List<DataRadioStation> toStations(List<WeightedStation> weightedStations, int limit) {
+        int size = Math.min(limit, weightedStations.size());
+        List<DataRadioStation> result = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            result.add(weightedStations.get(i).station);
+        }
+        return result;
+    }
+
+    /**
+     * Number of stations which share at least one trigram with the query of the last call to
+     * {@link #filter(String)}.
+     */
+    int getCandidateCount() {
+        return candidateCount;
+    }
+
+    private void updateCandidates(String query) {
+        Set<Long> newTrigrams = new HashSet<>();
+        addTrigrams(query, newTrigrams);
+
+        for (Long trigram : queryTrigrams) {
+            if (!newTrigrams.contains(trigram)) {
+                int[] ids = postings.get(trigram);
+                if (ids != null) {
+                    for (int id : ids) {
+                        sharedTrigrams[id]--;
+                    }
+                }
+            }
+        }
+
+        for (Long trigram : newTrigrams) {
+            if (!queryTrigrams.contains(trigram)) {
+                int[] ids = postings.get(trigram);
+                if (ids != null) {
+                    for (int id : ids) {
+                        if (sharedTrigrams[id]++ == 0 && !isCandidate[id]) {
+                            isCandidate[id] = true;
+                            appendCandidate(id);
+                        }
+                    }
+                }
+            }
+        }
+
+        queryTrigrams = newTrigrams;
+
+        // Drop stations which lost their last trigram in common with the query
+        int kept = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int id = candidates[i];
+            if (sharedTrigrams[id] > 0) {
+                candidates[kept++] = id;
+            } else {
+                isCandidate[id] = false;
+            }
+        }
+        candidateCount = kept;
+    }
+
+    private void appendCandidate(int id) {
+        if (candidateCount == candidates.length) {
+            candidates = Arrays.copyOf(candidates, Math.min(stations.length, Math.max(16, candidateCount * 2)));
+        }
+        candidates[candidateCount++] = id;
+    }
+
+    private void resetCandidates() {
+        for (int i = 0; i < candidateCount; i++) {
+            sharedTrigrams[candidates[i]] = 0;
+            isCandidate[candidates[i]] = false;
+        }
+        candidateCount = 0;
+        queryTrigrams = Collections.emptySet();
+    }
+
+    /**
+     * Adds the trigrams of all words in text, every word padded with two spaces in front and
+     * one at the end. Everything besides letters and digits separates words.
+     */
+    static void addTrigrams(@NonNull String text, @NonNull Set<Long> trigrams) {
+        char first = ' ';
+        char second = ' ';
+        boolean inWord = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (!inWord) {
+                    first = ' ';
+                    second = ' ';
+                    inWord = true;
+                }
+                trigrams.add(trigram(first, second, c));
+                first = second;
+                second = c;
+            } else if (inWord) {
+                trigrams.add(trigram(first, second, ' '));
+                inWord = false;
+            }
+        }
+    }
+
+    static long trigram(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+}
@@ -0,0 +1,195 @@
+package com.devnull.radio.station;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.paging.DataSource;
+import androidx.paging.PagedList;
+import androidx.paging.PositionalDataSource;
+
+import com.devnull.radio.Utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import okhttp3.OkHttpClient;
+
+/**
+ * Stations of a search endpoint of the radio browser api, loaded page by page with the
+ * offset and limit parameters while the list is scrolled.
+ * <p>
+ * Positional instead of page keyed because only such lists drop pages which are far away
+ * from the visible part again, long lists need memory for at most {@link #MAX_SIZE} stations.
+ * <p>
+ * A page which could not be loaded invalidates the data source, the list keeps its stations
+ * but does not load more until it is built again.
+ */
+public class StationPagedDataSource extends PositionalDataSource<DataRadioStation> {
+    private static final String TAG = "StationPagedDataSource";
+
+    public static final int PAGE_SIZE = 50;
+    static final int PREFETCH_DISTANCE = PAGE_SIZE;
+    static final int MAX_SIZE = PAGE_SIZE * 6;
+
+    public interface PageLoader {
+        /**
+         * Called on a background thread.
+         *
+         * @return stations or null if the page could not be loaded.
+         */
+        @Nullable
+        List<DataRadioStation> loadPage(int offset, int limit);
+    }
+
+    private final PageLoader pageLoader;
+    private volatile boolean initialLoadFailed = false;
+
+    StationPagedDataSource(@NonNull PageLoader pageLoader) {
+        this.pageLoader = pageLoader;
+    }
+
+    /**
+     * @return true if the endpoint of relativeUrl supports the offset and limit parameters
+     * and has no limit in its path like the top lists.
+     */
+    public static boolean isPageable(@Nullable String relativeUrl) {
+        if (relativeUrl == null) {
+            return false;
+        }
+
+        int queryStart = relativeUrl.indexOf('?');
+        String path = queryStart >= 0 ? relativeUrl.substring(0, queryStart) : relativeUrl;
+        String[] segments = path.split("/");
+        if (segments.length != 4 || !"json".equals(segments[0]) || !"stations".equals(segments[1])) {
+            return false;
+        }
+
+        switch (segments[2]) {
+            case "byname":
+            case "bynameexact":
+            case "bycountry":
+            case "bycountryexact":
+            case "bycountrycodeexact":
+            case "bystate":
+            case "bystateexact":
+            case "bylanguage":
+            case "bylanguageexact":
+            case "bytag":
+            case "bytagexact":
+            case "bycodec":
+            case "bycodecexact":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parameters of a page, everyone who requests the same page has to use this so the
+     * requests share their cache entries.
+     */
+    public static void addPageParams(@NonNull Map<String, String> params, int offset, int limit) {
+        params.put("offset", "" + offset);
+        params.put("limit", "" + limit);
+    }
+
+    public static @NonNull
+    PageLoader remotePageLoader(@NonNull OkHttpClient httpClient, @NonNull Context ctx, @NonNull String relativeUrl,
+                                boolean forceUpdate, @Nullable Map<String, String> params) {
+        final Context appContext = ctx.getApplicationContext();
+        return (offset, limit) -> {
+            HashMap<String, String> p = new HashMap<>();
+            if (params != null) {
+                p.putAll(params);
+            }
+            addPageParams(p, offset, limit);
+
+            List<DataRadioStation> stations = Utils.downloadStationListRelative(httpClient, appContext, relativeUrl, forceUpdate, p);
+            if (stations == null) {
+                Log.e(TAG, "Could not load " + limit + " stations at " + offset + " of " + relativeUrl);
+            }
+            return stations;
+        };
+    }
+
+    /**
+     * The first page is loaded on the calling thread, the others on a background thread
+     * and added on the main thread when the list is scrolled towards them.
+     *
+     * @return stations or null if the first page could not be loaded.
+     */
+    @WorkerThread
+    public static @Nullable
+    PagedList<DataRadioStation> buildPagedList(@NonNull PageLoader pageLoader) {
+        return buildPagedList(pageLoader, null);
+    }
+
+    /**
+     * Like {@link #buildPagedList(PageLoader)}.
+     *
+     * @param invalidatedCallback called on the main thread when a later page could not be loaded.
+     */
+    @WorkerThread
+    public static @Nullable
+    PagedList<DataRadioStation> buildPagedList(@NonNull PageLoader pageLoader,
+                                               @Nullable DataSource.InvalidatedCallback invalidatedCallback) {
+        final Handler mainHandler = new Handler(Looper.getMainLooper());
+        return buildPagedList(pageLoader, AsyncTask.THREAD_POOL_EXECUTOR, mainHandler::post, invalidatedCallback);
+    }
+
+    static @Nullable
+    PagedList<DataRadioStation> buildPagedList(@NonNull PageLoader pageLoader, @NonNull Executor fetchExecutor,
+                                               @NonNull Executor notifyExecutor,
+                                               @Nullable DataSource.InvalidatedCallback invalidatedCallback) {
+        PagedList.Config config = new PagedList.Config.Builder()
+                .setPageSize(PAGE_SIZE)
+                .setInitialLoadSizeHint(PAGE_SIZE)
+                .setPrefetchDistance(PREFETCH_DISTANCE)
+                .setMaxSize(MAX_SIZE)
+                .setEnablePlaceholders(false)
+                .build();
+
+        StationPagedDataSource dataSource = new StationPagedDataSource(pageLoader);
+        if (invalidatedCallback != null) {
+            dataSource.addInvalidatedCallback(() -> notifyExecutor.execute(invalidatedCallback::onInvalidated));
+        }
+        PagedList<DataRadioStation> pagedList = new PagedList.Builder<>(dataSource, config)
+                .setFetchExecutor(fetchExecutor)
+                .setNotifyExecutor(notifyExecutor)
+                .build();
+
+        return dataSource.initialLoadFailed ? null : pagedList;
+    }
+
+    @Override
+    public void loadInitial(@NonNull LoadInitialParams params, @NonNull LoadInitialCallback<DataRadioStation> callback) {
+        int position = params.requestedStartPosition - params.requestedStartPosition % params.pageSize;
+        List<DataRadioStation> stations = pageLoader.loadPage(position, params.requestedLoadSize);
+        if (stations == null) {
+            initialLoadFailed = true;
+            callback.onResult(Collections.<DataRadioStation>emptyList(), 0);
+        } else {
+            callback.onResult(stations, stations.isEmpty() ? 0 : position);
+        }
+    }
+
+    @Override
+    public void loadRange(@NonNull LoadRangeParams params, @NonNull LoadRangeCallback<DataRadioStation> callback) {
+        List<DataRadioStation> stations = pageLoader.loadPage(params.startPosition, params.loadSize);
+        if (stations == null) {
+            // An empty page would end the list for good as if it had no more stations, the
+            // result of an invalid data source detaches the list instead
+            invalidate();
+        }
+        callback.onResult(stations != null ? stations : Collections.<DataRadioStation>emptyList());
+    }
+}
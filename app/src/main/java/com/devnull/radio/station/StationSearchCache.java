@@ -0,0 +1,127 @@
+package com.devnull.radio.station;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded results of station searches in memory, bounded by the total number of stations
+ * in all results with least recently used eviction.
+ * <p>
+ * Entries are keyed by search style, query and whether broken stations are hidden. They expire
+ * after the freshness given on {@link #put} or when the data version passed on lookup differs,
+ * e.g. because the offline catalog was synced in the meantime.
+ */
+public class StationSearchCache {
+    public static final int DEFAULT_MAX_STATIONS = 5000;
+
+    private static class Entry {
+        final String query;
+        final List<DataRadioStation> stations;
+        final long expiresAt;
+        final long dataVersion;
+
+        Entry(String query, List<DataRadioStation> stations, long expiresAt, long dataVersion) {
+            this.query = query;
+            this.stations = stations;
+            this.expiresAt = expiresAt;
+            this.dataVersion = dataVersion;
+        }
+    }
+
+    public static class Hit {
+        /**
+         * Query the stations were found for, the requested query or a prefix of it.
+         */
+        @NonNull
+        public final String query;
+        @NonNull
+        public final List<DataRadioStation> stations;
+
+        Hit(@NonNull String query, @NonNull List<DataRadioStation> stations) {
+            this.query = query;
+            this.stations = stations;
+        }
+    }
+
+    private final int maxStations;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int stationCount = 0;
+
+    public StationSearchCache(int maxStations) {
+        this.maxStations = maxStations;
+    }
+
+    private static String key(StationsFilter.SearchStyle searchStyle, String query, boolean hideBroken) {
+        return searchStyle.name() + "\n" + hideBroken + "\n" + query;
+    }
+
+    /**
+     * @param allowPrefix also look for results of prefixes of query, longest first. Only makes
+     *                    sense for searches whose results narrow down when the query grows.
+     * @return null if neither query nor a prefix of it are cached
+     */
+    @Nullable
+    public synchronized Hit get(@NonNull StationsFilter.SearchStyle searchStyle, @NonNull String query, boolean hideBroken,
+                                boolean allowPrefix, long now, long dataVersion) {
+        int minLength = allowPrefix ? 1 : query.length();
+        for (int length = query.length(); length >= minLength; length--) {
+            String key = key(searchStyle, query.substring(0, length), hideBroken);
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                continue;
+            }
+
+            if (now >= entry.expiresAt || entry.dataVersion != dataVersion) {
+                remove(key);
+                continue;
+            }
+
+            return new Hit(entry.query, entry.stations);
+        }
+        return null;
+    }
+
+    /**
+     * @param freshness time in milliseconds the result stays valid
+     */
+    public synchronized void put(@NonNull StationsFilter.SearchStyle searchStyle, @NonNull String query, boolean hideBroken,
+                                 @NonNull List<DataRadioStation> stations, long freshness, long now, long dataVersion) {
+        String key = key(searchStyle, query, hideBroken);
+        remove(key);
+
+        if (freshness <= 0 || stations.size() > maxStations) {
+            return;
+        }
+
+        // Results stay in memory for a while, kept compact
+        entries.put(key, new Entry(query, CompactStationList.of(stations), now + freshness, dataVersion));
+        stationCount += stations.size();
+
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (stationCount > maxStations && iterator.hasNext()) {
+            stationCount -= iterator.next().getValue().stations.size();
+            iterator.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        stationCount = 0;
+    }
+
+    synchronized int getStationCount() {
+        return stationCount;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            stationCount -= entry.stations.size();
+        }
+    }
+}
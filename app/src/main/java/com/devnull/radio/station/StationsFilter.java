@@ -5,10 +5,12 @@ import android.content.SharedPreferences;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.paging.PagedList;
 import androidx.preference.PreferenceManager;
 
 import com.devnull.radio.RadioDroidApp;
-import com.devnull.radio.Utils;
+import com.devnull.radio.cache.ApiCachePolicy;
+import com.devnull.radio.catalog.StationCatalog;
 import com.devnull.radio.utils.CustomFilter;
 
 import org.jetbrains.annotations.NotNull;
@@ -16,11 +18,9 @@ import org.jetbrains.annotations.NotNull;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
-import me.xdrop.fuzzywuzzy.FuzzySearch;
 import okhttp3.OkHttpClient;
 
 public class StationsFilter extends CustomFilter {
@@ -51,31 +51,29 @@ public class StationsFilter extends CustomFilter {
         List<DataRadioStation> getOriginalStationList();
 
         void notifyFilteredStationsChanged(SearchStatus status, List<DataRadioStation> filteredStations);
+
+        /**
+         * Best matches found so far, the complete result follows with
+         * {@link #notifyFilteredStationsChanged(SearchStatus, List)}.
+         */
+        void notifyPartialFilteredStations(List<DataRadioStation> bestStations);
     }
 
     private final String TAG = "StationsFilter";
-    private final int FUZZY_SEARCH_THRESHOLD = 55;
 
     private FilterType filterType;
     private Context context;
     private DataProvider dataProvider;
 
-    private String lastRemoteQuery = "";
+    private volatile boolean forceRemoteSearch = false;
     private List<DataRadioStation> filteredStationsList;
+    private StationNameIndex nameIndex;
     private SearchStatus lastRemoteSearchStatus = SearchStatus.SUCCESS;
+    // Stations which were published last, only used on the main thread
+    private List<DataRadioStation> publishedStations;
 
     private SearchStyle searchStyle = SearchStyle.ByName;
 
-    private class WeightedStation {
-        DataRadioStation station;
-        int weight;
-
-        WeightedStation(DataRadioStation station, int weight) {
-            this.station = station;
-            this.weight = weight;
-        }
-    }
-
     public StationsFilter(@NonNull Context context, FilterType filterType, @NonNull DataProvider dataProvider) {
         this.context = context;
         this.filterType = filterType;
@@ -88,19 +86,16 @@ public class StationsFilter extends CustomFilter {
     }
 
     private @NonNull
-    List<DataRadioStation> searchGlobal(final @NotNull String query) {
+    List<DataRadioStation> searchGlobal(final @NotNull String query, boolean hideBroken) {
         Log.d("FILTER", "searchGlobal 1:" + query);
         RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
         // TODO: use http client with custom timeouts
         OkHttpClient httpClient = radioDroidApp.getHttpClient();
 
-        SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(this.context);
-        final boolean show_broken = sharedPref.getBoolean("show_broken", false);
-
         HashMap<String, String> p = new HashMap<String, String>();
         p.put("order", "clickcount");
         p.put("reverse", "true");
-        p.put("hidebroken", ""+(!show_broken));
+        p.put("hidebroken", ""+hideBroken);
 
         try {
             String queryEncoded = URLEncoder.encode(query, "utf-8");
@@ -128,11 +123,24 @@ public class StationsFilter extends CustomFilter {
 
             Log.d("FILTER", "searchGlobal 2:" + query);
 
-            String resultString = Utils.downloadFeedRelative(httpClient, radioDroidApp, searchUrl, false, p);
-            if (resultString != null) {
+            // Version before the request, the result may already be outdated when the catalog changes meanwhile
+            final long dataVersion = getDataVersion();
+            // A later page which fails stops the list where it is, searching again builds a new one
+            final List<?>[] resultHolder = new List<?>[1];
+            PagedList<DataRadioStation> result = StationPagedDataSource.buildPagedList(
+                    StationPagedDataSource.remotePageLoader(httpClient, radioDroidApp, searchUrl, false, p),
+                    () -> onRemotePageFailed(resultHolder[0]));
+            resultHolder[0] = result;
+            if (result != null) {
                 Log.d("FILTER", "searchGlobal 3a:" + query);
-                List<DataRadioStation> result = DataRadioStation.DecodeJson(resultString);
                 lastRemoteSearchStatus = SearchStatus.SUCCESS;
+                if (result.size() < StationPagedDataSource.PAGE_SIZE) {
+                    // Complete with the first page, only such results can be filtered for longer queries
+                    List<DataRadioStation> stations = new ArrayList<>(result);
+                    radioDroidApp.getStationSearchCache().put(searchStyle, query, hideBroken, stations,
+                            ApiCachePolicy.getFreshness(searchUrl), System.currentTimeMillis(), dataVersion);
+                    return stations;
+                }
                 return result;
             }else{
                 Log.d("FILTER", "searchGlobal 3b:" + query);
@@ -146,9 +154,21 @@ public class StationsFilter extends CustomFilter {
         }
     }
 
+    private void onRemotePageFailed(List<?> stations) {
+        // Results of a newer search are shown already
+        if (stations != null && stations == publishedStations) {
+            dataProvider.notifyFilteredStationsChanged(SearchStatus.ERROR, publishedStations);
+        }
+    }
+
     public void clearList(){
         Log.d("FILTER", "forced refetch");
-        lastRemoteQuery = "";
+        forceRemoteSearch = true;
+    }
+
+    private long getDataVersion() {
+        StationCatalog catalog = ((RadioDroidApp) context.getApplicationContext()).getStationCatalog();
+        return catalog != null ? catalog.getVersion() : 0;
     }
 
     @Override
@@ -159,60 +179,65 @@ public class StationsFilter extends CustomFilter {
         if (searchStyle == SearchStyle.ByName && (query.isEmpty() || (query.length() < 3 && filterType == FilterType.GLOBAL))) {
             Log.d("FILTER", "performFiltering() 2 " + query);
             filteredStationsList = dataProvider.getOriginalStationList();
-            lastRemoteQuery = "";
         } else {
             Log.d("FILTER", "performFiltering() 3 " + query);
             List<DataRadioStation> stationsToFilter;
 
             boolean needsFiltering = false;
 
-            if (!lastRemoteQuery.isEmpty() && query.startsWith(lastRemoteQuery) && lastRemoteSearchStatus != SearchStatus.ERROR) {
-                Log.d("FILTER", "performFiltering() 3a " + query + " lastRemoteQuery=" + lastRemoteQuery);
-                // We can filter already existing list without making costly http call.
-                stationsToFilter = filteredStationsList;
-                needsFiltering = true;
-            } else {
-                Log.d("FILTER", "performFiltering() 3b " + query);
-                switch (filterType) {
-
-                    case LOCAL:
-                        stationsToFilter = dataProvider.getOriginalStationList();
-                        needsFiltering = true;
-                        break;
-                    case GLOBAL:
-                        stationsToFilter = searchGlobal(query);
+            switch (filterType) {
+                case LOCAL:
+                    stationsToFilter = dataProvider.getOriginalStationList();
+                    needsFiltering = true;
+                    break;
+                case GLOBAL: {
+                    RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
+                    SharedPreferences sharedPref = PreferenceManager.getDefaultSharedPreferences(context);
+                    final boolean hideBroken = !sharedPref.getBoolean("show_broken", false);
+
+                    // Names which contain the query also contain each of its prefixes, the results of
+                    // exact searches have nothing in common.
+                    StationSearchCache.Hit hit = null;
+                    if (!forceRemoteSearch) {
+                        hit = radioDroidApp.getStationSearchCache().get(searchStyle, query, hideBroken,
+                                searchStyle == SearchStyle.ByName, System.currentTimeMillis(), getDataVersion());
+                    }
+
+                    if (hit != null) {
+                        Log.d("FILTER", "performFiltering() 3a " + query + " cached=" + hit.query);
+                        // Result of this query or of a prefix, no costly http call. A prefix result
+                        // is filtered further.
+                        stationsToFilter = hit.stations;
+                        needsFiltering = !hit.query.equals(query);
+                        lastRemoteSearchStatus = SearchStatus.SUCCESS;
+                    } else {
+                        Log.d("FILTER", "performFiltering() 3b " + query);
+                        forceRemoteSearch = false;
+                        stationsToFilter = searchGlobal(query, hideBroken);
                         needsFiltering = false;
-                        lastRemoteQuery = query;
-                        break;
-                    default:
-                        throw new RuntimeException("performFiltering: Unknown filterType!");
+                    }
+                    break;
                 }
+                default:
+                    throw new RuntimeException("performFiltering: Unknown filterType!");
             }
 
             if (needsFiltering) {
                 Log.d("FILTER", "performFiltering() 4a " + query);
-                ArrayList<WeightedStation> filteredStations = new ArrayList<>();
-
-                for (DataRadioStation station : stationsToFilter) {
-                    int weight = FuzzySearch.partialRatio(query, station.Name.toLowerCase());
-                    if (weight > FUZZY_SEARCH_THRESHOLD) {
-                        // We will sort stations with similar weight by other metric
-                        int compressedWeight = weight / 4;
-                        filteredStations.add(new WeightedStation(station, compressedWeight));
-                    }
+                if (nameIndex == null || !nameIndex.isIndexOf(stationsToFilter)) {
+                    nameIndex = new StationNameIndex(stationsToFilter);
                 }
-
-                Collections.sort(filteredStations, (x, y) -> {
-                    if (x.weight == y.weight) {
-                        return -Integer.compare(x.station.ClickCount, y.station.ClickCount);
-                    }
-                    return -Integer.compare(x.weight, y.weight);
+                List<DataRadioStation> result = nameIndex.filter(query, getCancellationToken(), bestStations -> {
+                    FilterResults partialResults = new FilterResults();
+                    partialResults.values = bestStations;
+                    publishPartialResults(partialResults);
                 });
-
-                filteredStationsList = new ArrayList<>();
-                for (WeightedStation weightedStation : filteredStations) {
-                    filteredStationsList.add(weightedStation.station);
+                if (result == null) {
+                    // A newer query was posted, these results would not be published anyway
+                    Log.d("FILTER", "performFiltering() cancelled " + query);
+                    return new FilterResults();
                 }
+                filteredStationsList = result;
             } else {
                 Log.d("FILTER", "performFiltering() 4b " + query);
                 filteredStationsList = stationsToFilter;
@@ -224,8 +249,14 @@ public class StationsFilter extends CustomFilter {
         return filterResults;
     }
 
+    @Override
+    protected void onPartialResults(CharSequence constraint, FilterResults results) {
+        dataProvider.notifyPartialFilteredStations((List<DataRadioStation>) results.values);
+    }
+
     @Override
     protected void publishResults(CharSequence constraint, FilterResults results) {
-        dataProvider.notifyFilteredStationsChanged(lastRemoteSearchStatus, (List<DataRadioStation>) results.values);
+        publishedStations = (List<DataRadioStation>) results.values;
+        dataProvider.notifyFilteredStationsChanged(lastRemoteSearchStatus, publishedStations);
     }
 }
@@ -0,0 +1,17 @@
+package com.devnull.radio.utils;
+
+/**
+ * Flag which a long running operation checks between steps to stop early when its
+ * result is not needed anymore. Can be shared between threads.
+ */
+public class CancellationToken {
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,192 @@
+package com.devnull.radio.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Counts how often calls could reuse a pooled connection and how often a new connection,
+ * dns lookup or tls handshake was needed.
+ * <p>
+ * Only one event listener factory can be installed on a client, {@link #wrap(EventListener.Factory)}
+ * combines counting with another factory.
+ */
+public class ConnectionPoolStats implements EventListener.Factory {
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong dnsLookups = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+
+    @Override
+    public EventListener create(@NonNull Call call) {
+        return new CountingEventListener(EventListener.NONE);
+    }
+
+    /**
+     * @return factory which counts and forwards all events to listeners of delegate.
+     */
+    public EventListener.Factory wrap(@NonNull final EventListener.Factory delegate) {
+        return call -> new CountingEventListener(delegate.create(call));
+    }
+
+    /**
+     * @return number of connections which were taken from the pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of connections which had to be established
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getDnsLookups() {
+        return dnsLookups.get();
+    }
+
+    public long getTlsHandshakes() {
+        return tlsHandshakes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "pool hits=" + hits.get() + " misses=" + misses.get()
+                + " dns=" + dnsLookups.get() + " tls=" + tlsHandshakes.get();
+    }
+
+    private class CountingEventListener extends EventListener {
+        private final EventListener delegate;
+        private boolean connecting = false;
+
+        CountingEventListener(EventListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            delegate.callStart(call);
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsLookups.incrementAndGet();
+            delegate.dnsStart(call, domainName);
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            delegate.dnsEnd(call, domainName, inetAddressList);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connecting = true;
+            delegate.connectStart(call, inetSocketAddress, proxy);
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            tlsHandshakes.incrementAndGet();
+            delegate.secureConnectStart(call);
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, @Nullable Handshake handshake) {
+            delegate.secureConnectEnd(call, handshake);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol) {
+            delegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, @Nullable Protocol protocol, IOException ioe) {
+            delegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            // Redirects and retries acquire again, every acquisition is counted
+            if (connecting) {
+                misses.incrementAndGet();
+            } else {
+                hits.incrementAndGet();
+            }
+            connecting = false;
+            delegate.connectionAcquired(call, connection);
+        }
+
+        @Override
+        public void connectionReleased(Call call, Connection connection) {
+            delegate.connectionReleased(call, connection);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            delegate.requestHeadersStart(call);
+        }
+
+        @Override
+        public void requestHeadersEnd(Call call, Request request) {
+            delegate.requestHeadersEnd(call, request);
+        }
+
+        @Override
+        public void requestBodyStart(Call call) {
+            delegate.requestBodyStart(call);
+        }
+
+        @Override
+        public void requestBodyEnd(Call call, long byteCount) {
+            delegate.requestBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void responseHeadersStart(Call call) {
+            delegate.responseHeadersStart(call);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            delegate.responseHeadersEnd(call, response);
+        }
+
+        @Override
+        public void responseBodyStart(Call call) {
+            delegate.responseBodyStart(call);
+        }
+
+        @Override
+        public void responseBodyEnd(Call call, long byteCount) {
+            delegate.responseBodyEnd(call, byteCount);
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            delegate.callEnd(call);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            delegate.callFailed(call, ioe);
+        }
+    }
+}
@@ -24,6 +24,9 @@ import android.util.Log;
 
 /**
  * This is a copy of {@link CustomFilter} with @hide removed from delayer.
+ * <p>
+ * In addition every request gets a {@link CancellationToken} which is cancelled as soon as a
+ * newer request is posted, and partial results can be published while filtering is in progress.
  */
 public abstract class CustomFilter {
     private static final String LOG_TAG = "CustomFilter";
@@ -31,6 +34,7 @@ public abstract class CustomFilter {
     private static final String THREAD_NAME = "CustomFilter";
     private static final int FILTER_TOKEN = 0xD0D0F00D;
     private static final int FINISH_TOKEN = 0xDEADBEEF;
+    private static final int PARTIAL_TOKEN = 0xD0D0BEEF;
 
     private Handler mThreadHandler;
     private Handler mResultHandler;
@@ -39,6 +43,16 @@ public abstract class CustomFilter {
 
     private final Object mLock = new Object();
 
+    /**
+     * Token of the latest request, guarded by mLock.
+     */
+    private CancellationToken mLatestToken;
+
+    /**
+     * Request which is filtered right now, only accessed by the worker thread.
+     */
+    private RequestArguments mRunningRequest;
+
     /**
      * <p>Creates a new asynchronous filter.</p>
      */
@@ -104,8 +118,15 @@ public abstract class CustomFilter {
             // it doesn't change while the filter operation is in progress
             args.constraint = constraint != null ? constraint.toString() : null;
             args.listener = listener;
+            args.token = new CancellationToken();
             message.obj = args;
 
+            // A request which is still filtering will not be published anymore
+            if (mLatestToken != null) {
+                mLatestToken.cancel();
+            }
+            mLatestToken = args.token;
+
             mThreadHandler.removeMessages(FILTER_TOKEN);
             mThreadHandler.removeMessages(FINISH_TOKEN);
             mThreadHandler.sendMessageDelayed(message, delay);
@@ -148,6 +169,57 @@ public abstract class CustomFilter {
     protected abstract void publishResults(CharSequence constraint,
                                            CustomFilter.FilterResults results);
 
+    /**
+     * <p>Invoked in the UI thread with results passed to
+     * {@link #publishPartialResults(CustomFilter.FilterResults)} while
+     * {@link #performFiltering(CharSequence)} is still running. Not invoked
+     * if a newer request was posted in the meantime. The default
+     * implementation does nothing.</p>
+     *
+     * @param constraint the constraint used to filter the data
+     * @param results first results of the filtering operation
+     */
+    protected void onPartialResults(CharSequence constraint,
+                                    CustomFilter.FilterResults results) {
+    }
+
+    /**
+     * <p>May be called from {@link #performFiltering(CharSequence)} to
+     * show first results before filtering has finished, see
+     * {@link #onPartialResults(CharSequence, CustomFilter.FilterResults)}.</p>
+     *
+     * @param results first results of the filtering operation
+     */
+    protected final void publishPartialResults(CustomFilter.FilterResults results) {
+        RequestArguments running = mRunningRequest;
+        if (running == null || running.token.isCancelled()) {
+            return;
+        }
+
+        RequestArguments args = new RequestArguments();
+        args.constraint = running.constraint;
+        args.token = running.token;
+        args.results = results;
+
+        Message message = mResultHandler.obtainMessage(PARTIAL_TOKEN);
+        message.obj = args;
+        message.sendToTarget();
+    }
+
+    /**
+     * <p>Token of the request which is filtered right now. It is cancelled
+     * when a newer request is posted, {@link #performFiltering(CharSequence)}
+     * should check it and stop early because its results will be
+     * dropped.</p>
+     *
+     * @return the token, null if called outside of
+     * {@link #performFiltering(CharSequence)}
+     */
+    protected final CancellationToken getCancellationToken() {
+        RequestArguments running = mRunningRequest;
+        return running != null ? running.token : null;
+    }
+
     /**
      * <p>Converts a value from the filtered set into a CharSequence. Subclasses
      * should override this method to convert their results. The default
@@ -218,15 +290,19 @@ public abstract class CustomFilter {
             switch (what) {
                 case FILTER_TOKEN:
                     RequestArguments args = (RequestArguments) msg.obj;
+                    mRunningRequest = args;
                     try {
                         args.results = performFiltering(args.constraint);
                     } catch (Exception e) {
                         args.results = new CustomFilter.FilterResults();
                         Log.w(LOG_TAG, "An exception occured during performFiltering()!", e);
                     } finally {
-                        message = mResultHandler.obtainMessage(what);
-                        message.obj = args;
-                        message.sendToTarget();
+                        mRunningRequest = null;
+                        if (!args.token.isCancelled()) {
+                            message = mResultHandler.obtainMessage(what);
+                            message.obj = args;
+                            message.sendToTarget();
+                        }
                     }
 
                     synchronized (mLock) {
@@ -267,6 +343,17 @@ public abstract class CustomFilter {
         public void handleMessage(Message msg) {
             RequestArguments args = (RequestArguments) msg.obj;
 
+            // Checked again on the UI thread, a newer request may have been posted after
+            // these results were sent.
+            if (args.token.isCancelled()) {
+                return;
+            }
+
+            if (msg.what == PARTIAL_TOKEN) {
+                onPartialResults(args.constraint, args.results);
+                return;
+            }
+
             publishResults(args.constraint, args.results);
             if (args.listener != null) {
                 int count = args.results != null ? args.results.count : -1;
@@ -290,6 +377,11 @@ public abstract class CustomFilter {
          */
         CustomFilter.FilterListener listener;
 
+        /**
+         * <p>Cancelled when a newer request is posted.</p>
+         */
+        CancellationToken token;
+
         /**
          * <p>The results of the filtering operation.</p>
          */
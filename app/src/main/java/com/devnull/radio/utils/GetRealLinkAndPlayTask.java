@@ -5,20 +5,18 @@ import android.os.AsyncTask;
 import android.os.RemoteException;
 
 import com.devnull.radio.IPlayerService;
+import com.devnull.radio.players.PlayableUrlCache;
 import com.devnull.radio.station.DataRadioStation;
 import com.devnull.radio.RadioDroidApp;
-import com.devnull.radio.Utils;
 
 import java.lang.ref.WeakReference;
 
-import okhttp3.OkHttpClient;
-
 public class GetRealLinkAndPlayTask extends AsyncTask<Void, Void, String> {
     private WeakReference<Context> contextRef;
     private DataRadioStation station;
     private WeakReference<IPlayerService> playerServiceRef;
 
-    private OkHttpClient httpClient;
+    private PlayableUrlCache playableUrlCache;
 
     public GetRealLinkAndPlayTask(Context context, DataRadioStation station, IPlayerService playerService) {
         this.contextRef = new WeakReference<>(context);
@@ -26,14 +24,14 @@ public class GetRealLinkAndPlayTask extends AsyncTask<Void, Void, String> {
         this.playerServiceRef = new WeakReference<>(playerService);
 
         RadioDroidApp radioDroidApp = (RadioDroidApp) context.getApplicationContext();
-        httpClient = radioDroidApp.getHttpClient();
+        playableUrlCache = radioDroidApp.getPlayableUrlCache();
     }
 
     @Override
     protected String doInBackground(Void... params) {
-        Context context = contextRef.get();
-        if (context != null) {
-            return Utils.getRealStationLink(httpClient, context.getApplicationContext(), station.StationUuid);
+        if (contextRef.get() != null) {
+            // Counting the click is left to the player, which finds the url in the cache
+            return playableUrlCache.resolve(station);
         }
 
         return null;
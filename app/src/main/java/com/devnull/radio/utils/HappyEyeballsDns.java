@@ -0,0 +1,352 @@
+package com.devnull.radio.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+
+/**
+ * Dns for stream connections which caches answers and prefers the address family
+ * that is known to work for a host.
+ * <p>
+ * OkHttp tries the addresses of a host one after another and every attempt may take the whole
+ * connect timeout, on networks with broken IPv6 this delays every stream start. {@link #race(String, int, int)}
+ * connects to the first IPv6 and IPv4 address of a host with a short stagger (RFC 8305) and remembers
+ * the family which connected first. {@link #lookup(String)} returns addresses of that family first.
+ * <p>
+ * Install {@link #interceptor()} on the client to race before a host is connected, but only
+ * without proxy since the race connects directly.
+ */
+public class HappyEyeballsDns implements Dns {
+    private static final String TAG = "HappyEyeballsDns";
+
+    public static final long DEFAULT_POSITIVE_TTL = 5 * 60 * 1000;
+    public static final long DEFAULT_NEGATIVE_TTL = 30 * 1000;
+    public static final long DEFAULT_PREFERENCE_TTL = 10 * 60 * 1000;
+
+    // Head start of the first address, recommended by RFC 8305
+    static final long CONNECTION_ATTEMPT_DELAY = 250;
+
+    private static final ExecutorService raceExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "HappyEyeballsDns");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class CacheEntry {
+        final List<InetAddress> addresses;
+        final UnknownHostException error;
+        final long expiresAt;
+
+        CacheEntry(List<InetAddress> addresses, UnknownHostException error, long expiresAt) {
+            this.addresses = addresses;
+            this.error = error;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Preference {
+        final Class<? extends InetAddress> family;
+        final long expiresAt;
+
+        Preference(Class<? extends InetAddress> family, long expiresAt) {
+            this.family = family;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Attempt implements Callable<InetAddress> {
+        final InetAddress address;
+        final int port;
+        final int timeoutMillis;
+        final Socket socket = new Socket();
+
+        Attempt(InetAddress address, int port, int timeoutMillis) {
+            this.address = address;
+            this.port = port;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        public InetAddress call() throws IOException {
+            try {
+                socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+                return address;
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private final Dns delegate;
+    private final long positiveTtl;
+    private final long negativeTtl;
+    private final long preferenceTtl;
+
+    private final Map<String, CacheEntry> cache = new HashMap<>();
+    private final Map<String, Preference> preferences = new HashMap<>();
+
+    public HappyEyeballsDns(@NonNull Dns delegate) {
+        this(delegate, DEFAULT_POSITIVE_TTL, DEFAULT_NEGATIVE_TTL, DEFAULT_PREFERENCE_TTL);
+    }
+
+    public HappyEyeballsDns(@NonNull Dns delegate, long positiveTtl, long negativeTtl, long preferenceTtl) {
+        this.delegate = delegate;
+        this.positiveTtl = positiveTtl;
+        this.negativeTtl = negativeTtl;
+        this.preferenceTtl = preferenceTtl;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    @Override
+    public List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        return order(hostname, resolve(hostname));
+    }
+
+    private List<InetAddress> resolve(String hostname) throws UnknownHostException {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(hostname);
+            if (entry != null && entry.expiresAt > now()) {
+                if (entry.error != null) {
+                    throw entry.error;
+                }
+                return entry.addresses;
+            }
+        }
+
+        CacheEntry entry;
+        try {
+            List<InetAddress> addresses = Collections.unmodifiableList(new ArrayList<>(delegate.lookup(hostname)));
+            entry = new CacheEntry(addresses, null, now() + positiveTtl);
+        } catch (UnknownHostException e) {
+            entry = new CacheEntry(null, e, now() + negativeTtl);
+        }
+
+        synchronized (cache) {
+            cache.put(hostname, entry);
+        }
+
+        if (entry.error != null) {
+            throw entry.error;
+        }
+        return entry.addresses;
+    }
+
+    /**
+     * Addresses of the preferred family first. Without preference families are interleaved
+     * so a second attempt by OkHttp uses the other family.
+     */
+    private List<InetAddress> order(String hostname, List<InetAddress> addresses) {
+        if (addresses.isEmpty()) {
+            return addresses;
+        }
+
+        final Class<? extends InetAddress> preferredFamily = getPreferredFamily(hostname);
+        final Class<? extends InetAddress> firstFamily = preferredFamily != null ? preferredFamily : addresses.get(0).getClass();
+
+        List<InetAddress> first = new ArrayList<>();
+        List<InetAddress> second = new ArrayList<>();
+        for (InetAddress address : addresses) {
+            if (address.getClass() == firstFamily) {
+                first.add(address);
+            } else {
+                second.add(address);
+            }
+        }
+
+        List<InetAddress> ordered = new ArrayList<>(addresses.size());
+        if (preferredFamily != null) {
+            ordered.addAll(first);
+            ordered.addAll(second);
+        } else {
+            for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+                if (i < first.size()) {
+                    ordered.add(first.get(i));
+                }
+                if (i < second.size()) {
+                    ordered.add(second.get(i));
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * @return family which connected first the last time, null if unknown or expired.
+     */
+    public @Nullable
+    Class<? extends InetAddress> getPreferredFamily(@NonNull String hostname) {
+        synchronized (preferences) {
+            Preference preference = preferences.get(hostname);
+            if (preference == null || preference.expiresAt <= now()) {
+                return null;
+            }
+            return preference.family;
+        }
+    }
+
+    public void setPreferredFamily(@NonNull String hostname, @NonNull Class<? extends InetAddress> family) {
+        synchronized (preferences) {
+            preferences.put(hostname, new Preference(family, now() + preferenceTtl));
+        }
+    }
+
+    /**
+     * Forget all answers and preferences, e.g. after the network changed.
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        synchronized (preferences) {
+            preferences.clear();
+        }
+    }
+
+    /**
+     * Blocking: race connects to both address families of the host unless a family is already
+     * preferred or the host has only one family. The winning family is remembered.
+     *
+     * @return preferred family, null if unknown
+     */
+    public @Nullable
+    Class<? extends InetAddress> race(@NonNull String hostname, int port, int timeoutMillis) {
+        Class<? extends InetAddress> preferredFamily = getPreferredFamily(hostname);
+        if (preferredFamily != null) {
+            return preferredFamily;
+        }
+
+        List<InetAddress> addresses;
+        try {
+            addresses = resolve(hostname);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+
+        if (addresses.isEmpty()) {
+            return null;
+        }
+
+        List<InetAddress> candidates = new ArrayList<>(2);
+        candidates.add(addresses.get(0));
+        for (InetAddress address : addresses) {
+            if (address.getClass() != candidates.get(0).getClass()) {
+                candidates.add(address);
+                break;
+            }
+        }
+
+        if (candidates.size() < 2) {
+            return null;
+        }
+
+        InetAddress winner = connectFirst(candidates, port, timeoutMillis);
+        if (winner == null) {
+            Log.d(TAG, "No family connected to " + hostname);
+            return null;
+        }
+
+        Log.d(TAG, "Preferring " + (winner instanceof Inet4Address ? "IPv4" : "IPv6") + " for " + hostname);
+        setPreferredFamily(hostname, winner.getClass());
+        return winner.getClass();
+    }
+
+    private static InetAddress connectFirst(List<InetAddress> candidates, int port, int timeoutMillis) {
+        final long deadline = now() + timeoutMillis;
+
+        CompletionService<InetAddress> completionService = new ExecutorCompletionService<>(raceExecutor);
+        List<Attempt> attempts = new ArrayList<>();
+        List<Future<InetAddress>> futures = new ArrayList<>();
+
+        InetAddress winner = null;
+        int failed = 0;
+        try {
+            while (winner == null && now() < deadline) {
+                if (attempts.size() == failed && attempts.size() < candidates.size()) {
+                    // Nothing running, start the next attempt right away
+                    Attempt attempt = new Attempt(candidates.get(attempts.size()), port, timeoutMillis);
+                    attempts.add(attempt);
+                    futures.add(completionService.submit(attempt));
+                } else if (attempts.size() == failed) {
+                    break;
+                }
+
+                long wait = deadline - now();
+                if (attempts.size() < candidates.size()) {
+                    wait = Math.min(wait, CONNECTION_ATTEMPT_DELAY);
+                }
+
+                Future<InetAddress> future = completionService.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (future == null) {
+                    if (attempts.size() < candidates.size()) {
+                        Attempt attempt = new Attempt(candidates.get(attempts.size()), port, timeoutMillis);
+                        attempts.add(attempt);
+                        futures.add(completionService.submit(attempt));
+                    }
+                    continue;
+                }
+
+                try {
+                    winner = future.get();
+                } catch (ExecutionException e) {
+                    failed++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (int i = 0; i < attempts.size(); i++) {
+                futures.get(i).cancel(true);
+                attempts.get(i).close();
+            }
+        }
+
+        return winner;
+    }
+
+    /**
+     * @return interceptor which races address families of the requested host before the
+     * request is sent. Must only be used on clients without proxy.
+     */
+    public Interceptor interceptor() {
+        return chain -> {
+            HttpUrl url = chain.request().url();
+            race(url.host(), url.port(), chain.connectTimeoutMillis());
+            return chain.proceed(chain.request());
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package com.devnull.radio.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Executes equivalent requests against several servers in a hedged manner.
+ * <p>
+ * The first request is started immediately. If it has neither delivered response headers
+ * nor failed within its latency budget, the next request is started alongside it, and so on.
+ * A failed request starts the next one right away. The first successful (or not modified)
+ * response wins and all other calls are cancelled.
+ */
+public class HedgedCall {
+    private static final String TAG = "HedgedCall";
+
+    public interface HedgeDelayProvider {
+        /**
+         * @return time in milliseconds to wait for headers of request at {@code index}
+         * before starting the next request.
+         */
+        long getHedgeDelay(int index);
+    }
+
+    public static class Result {
+        public final int index;
+        public final Response response;
+        public final long latency;
+
+        Result(int index, Response response, long latency) {
+            this.index = index;
+            this.response = response;
+            this.latency = latency;
+        }
+    }
+
+    private final OkHttpClient httpClient;
+    private final List<Request> requests;
+    private final HedgeDelayProvider delayProvider;
+
+    private final Object lock = new Object();
+    private final Call[] calls;
+    private final boolean[] failedCalls;
+
+    private int launched = 0;
+    private int failed = 0;
+    private Result winner;
+    private IOException lastError;
+
+    public HedgedCall(@NonNull OkHttpClient httpClient, @NonNull List<Request> requests, @NonNull HedgeDelayProvider delayProvider) {
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("At least one request is required");
+        }
+
+        this.httpClient = httpClient;
+        this.requests = requests;
+        this.delayProvider = delayProvider;
+
+        calls = new Call[requests.size()];
+        failedCalls = new boolean[requests.size()];
+    }
+
+    /**
+     * Blocking: run requests until one of them succeeds or all of them fail.
+     *
+     * @return the winning response, caller is responsible for closing it.
+     * @throws IOException if every request failed.
+     */
+    public Result execute() throws IOException {
+        synchronized (lock) {
+            long hedgeAt = launchNext();
+
+            try {
+                while (winner == null) {
+                    if (failed == launched) {
+                        if (launched == requests.size()) {
+                            throw lastError != null ? lastError : new IOException("All requests failed");
+                        }
+
+                        hedgeAt = launchNext();
+                        continue;
+                    }
+
+                    if (launched < requests.size()) {
+                        long wait = hedgeAt - System.currentTimeMillis();
+                        if (wait <= 0) {
+                            Log.d(TAG, "No headers within budget, hedging with request " + launched);
+                            hedgeAt = launchNext();
+                        } else {
+                            lock.wait(wait);
+                        }
+                    } else {
+                        lock.wait();
+                    }
+                }
+            } catch (InterruptedException e) {
+                cancelAllExcept(-1);
+                throw new InterruptedIOException("Hedged call interrupted");
+            }
+
+            return winner;
+        }
+    }
+
+    /**
+     * @return true if request at {@code index} was started and failed.
+     */
+    public boolean isFailed(int index) {
+        synchronized (lock) {
+            return failedCalls[index];
+        }
+    }
+
+    public void cancel() {
+        synchronized (lock) {
+            cancelAllExcept(-1);
+        }
+    }
+
+    private long launchNext() {
+        final int index = launched++;
+        final long startTime = System.currentTimeMillis();
+
+        Call call = httpClient.newCall(requests.get(index));
+        calls[index] = call;
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                synchronized (lock) {
+                    if (winner == null) {
+                        markFailed(index, e);
+                    }
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                synchronized (lock) {
+                    if (winner == null && isAcceptable(response)) {
+                        winner = new Result(index, response, System.currentTimeMillis() - startTime);
+                        cancelAllExcept(index);
+                        lock.notifyAll();
+                        return;
+                    }
+
+                    if (winner == null) {
+                        markFailed(index, new IOException("Unexpected response code " + response.code()));
+                    }
+                }
+
+                response.close();
+            }
+        });
+
+        return startTime + delayProvider.getHedgeDelay(index);
+    }
+
+    private static boolean isAcceptable(Response response) {
+        // Not modified is a valid answer to a conditional request
+        return response.isSuccessful() || response.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+    }
+
+    private void markFailed(int index, IOException e) {
+        failedCalls[index] = true;
+        failed++;
+        lastError = e;
+        lock.notifyAll();
+    }
+
+    private void cancelAllExcept(int index) {
+        for (int i = 0; i < launched; i++) {
+            if (i != index && calls[i] != null) {
+                calls[i].cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.devnull.radio.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent identical loads: while a load for a key is in flight, further callers
+ * with the same key wait for it and get the same result instead of starting their own.
+ * <p>
+ * Nothing is cached, once a load finished the next caller starts a new one.
+ */
+public class SingleFlight<K, V> {
+    public interface Loader<V> {
+        @Nullable
+        V load();
+    }
+
+    private static class Flight<V> {
+        FutureTask<V> task;
+        // The owner was interrupted while loading, its result may be cut short
+        volatile boolean interrupted;
+    }
+
+    private final Map<K, Flight<V>> inFlight = new HashMap<>();
+
+    /**
+     * Run loader on the calling thread unless a load for key is already in flight,
+     * in which case wait for that one. If the thread running that load is interrupted
+     * and the load fails, waiting callers run their own load instead of sharing the failure.
+     *
+     * @return result of the load, or null if the calling thread was interrupted while waiting.
+     */
+    public @Nullable
+    V execute(@NonNull K key, @NonNull Loader<V> loader) {
+        while (true) {
+            Flight<V> flight;
+            boolean owner = false;
+
+            synchronized (inFlight) {
+                flight = inFlight.get(key);
+                if (flight == null) {
+                    flight = new Flight<>();
+                    final Flight<V> ownFlight = flight;
+                    flight.task = new FutureTask<>(() -> {
+                        try {
+                            return loader.load();
+                        } finally {
+                            if (Thread.currentThread().isInterrupted()) {
+                                ownFlight.interrupted = true;
+                            }
+                        }
+                    });
+                    inFlight.put(key, flight);
+                    owner = true;
+                }
+            }
+
+            if (owner) {
+                try {
+                    flight.task.run();
+                } finally {
+                    remove(key, flight);
+                }
+            }
+
+            V result;
+            try {
+                result = flight.task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                if (!owner && flight.interrupted) {
+                    remove(key, flight);
+                    continue;
+                }
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+
+            if (result == null && !owner && flight.interrupted) {
+                remove(key, flight);
+                continue;
+            }
+            return result;
+        }
+    }
+
+    private void remove(K key, Flight<V> flight) {
+        synchronized (inFlight) {
+            if (inFlight.get(key) == flight) {
+                inFlight.remove(key);
+            }
+        }
+    }
+
+    public int getInFlightCount() {
+        synchronized (inFlight) {
+            return inFlight.size();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.devnull.radio.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies every byte which is read from the wrapped stream into a second stream.
+ * <p>
+ * Failing writes to the copy do not disturb the reader, the copy is given up instead
+ * and {@link #isCopyFailed()} reports it.
+ */
+public class TeeInputStream extends FilterInputStream {
+    private static final String TAG = "TeeInputStream";
+
+    private final OutputStream copy;
+    private boolean copyFailed = false;
+
+    public TeeInputStream(@NonNull InputStream in, @NonNull OutputStream copy) {
+        super(in);
+        this.copy = copy;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1 && !copyFailed) {
+            try {
+                copy.write(b);
+            } catch (IOException e) {
+                onCopyFailed(e);
+            }
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0 && !copyFailed) {
+            try {
+                copy.write(buffer, offset, read);
+            } catch (IOException e) {
+                onCopyFailed(e);
+            }
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes have to end up in the copy as well
+        byte[] buffer = new byte[(int) Math.min(8192, Math.max(0, n))];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Read the rest of the wrapped stream so the copy is complete.
+     */
+    public void drain() throws IOException {
+        byte[] buffer = new byte[8192];
+        //noinspection StatementWithEmptyBody
+        while (read(buffer, 0, buffer.length) != -1) {
+        }
+    }
+
+    public boolean isCopyFailed() {
+        return copyFailed;
+    }
+
+    private void onCopyFailed(IOException e) {
+        Log.w(TAG, "Could not write copy: " + e);
+        copyFailed = true;
+    }
+}
@@ -0,0 +1,141 @@
+package com.devnull.radio;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+class RadioBrowserServerDiscoveryTest {
+    private static final String ROUND_ROBIN = "all.example.org";
+
+    private InetAddress[] addresses;
+
+    @BeforeEach
+    void init() throws UnknownHostException {
+        addresses = new InetAddress[]{
+                InetAddress.getByAddress(new byte[]{10, 0, 0, 1}),
+                InetAddress.getByAddress(new byte[]{10, 0, 0, 2}),
+                InetAddress.getByAddress(new byte[]{10, 0, 0, 3}),
+        };
+    }
+
+    static class MemoryStorage implements RadioBrowserServerDiscovery.Storage {
+        String data;
+
+        @Override
+        public String load() {
+            return data;
+        }
+
+        @Override
+        public void save(String data) {
+            this.data = data;
+        }
+    }
+
+    /**
+     * Resolver which blocks until released and maps addresses to names, the last address
+     * takes longer than any reasonable deadline.
+     */
+    class FakeResolver implements RadioBrowserServerDiscovery.Resolver {
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile int forwardLookups = 0;
+
+        @Override
+        public InetAddress[] getAllByName(String host) throws UnknownHostException {
+            forwardLookups++;
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new UnknownHostException(host);
+            }
+            return addresses;
+        }
+
+        @Override
+        public String getCanonicalHostName(InetAddress address) {
+            byte last = address.getAddress()[3];
+            if (last == 3) {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException ignored) {
+                }
+            } else {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            return "srv" + last + ".example.org";
+        }
+    }
+
+    @Test
+    void getServerList_neverBlocksOnDiscovery() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        RadioBrowserServerDiscovery discovery = new RadioBrowserServerDiscovery(ROUND_ROBIN, resolver, new MemoryStorage(), 60000, 500);
+
+        long start = System.currentTimeMillis();
+        String[] servers = discovery.getServerList();
+        assertTrue(System.currentTimeMillis() - start < 100);
+        assertArrayEquals(new String[]{ROUND_ROBIN}, servers);
+
+        resolver.release.countDown();
+        discovery.refresh().get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(new String[]{"srv1.example.org", "srv2.example.org"}, discovery.getServerList());
+    }
+
+    @Test
+    void refresh_reverseLookupsRunInParallelWithDeadline() throws Exception {
+        FakeResolver resolver = new FakeResolver();
+        resolver.release.countDown();
+        RadioBrowserServerDiscovery discovery = new RadioBrowserServerDiscovery(ROUND_ROBIN, resolver, null, 60000, 500);
+
+        long start = System.currentTimeMillis();
+        String[] servers = discovery.refresh().get(5, TimeUnit.SECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(elapsed < 1500, "discovery took " + elapsed + "ms");
+        assertArrayEquals(new String[]{"srv1.example.org", "srv2.example.org"}, servers);
+    }
+
+    @Test
+    void persistedListIsServedOnStartup() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+
+        FakeResolver resolver = new FakeResolver();
+        resolver.release.countDown();
+        new RadioBrowserServerDiscovery(ROUND_ROBIN, resolver, storage, 60000, 500).refresh().get(5, TimeUnit.SECONDS);
+        assertNotNull(storage.data);
+
+        FakeResolver blockedResolver = new FakeResolver();
+        RadioBrowserServerDiscovery discovery = new RadioBrowserServerDiscovery(ROUND_ROBIN, blockedResolver, storage, 60000, 500);
+        assertArrayEquals(new String[]{"srv1.example.org", "srv2.example.org"}, discovery.getServerList());
+
+        // the persisted list is still fresh, no discovery needed
+        Thread.sleep(100);
+        assertEquals(0, blockedResolver.forwardLookups);
+        blockedResolver.release.countDown();
+    }
+
+    @Test
+    void expiredListIsServedWhileRefreshing() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+        storage.data = "{\"servers\":[\"old.example.org\"],\"timestamp\":1}";
+
+        FakeResolver resolver = new FakeResolver();
+        RadioBrowserServerDiscovery discovery = new RadioBrowserServerDiscovery(ROUND_ROBIN, resolver, storage, 60000, 500);
+
+        assertArrayEquals(new String[]{"old.example.org"}, discovery.getServerList());
+
+        resolver.release.countDown();
+        discovery.refresh().get(5, TimeUnit.SECONDS);
+        assertEquals(1, resolver.forwardLookups);
+        assertArrayEquals(new String[]{"srv1.example.org", "srv2.example.org"}, discovery.getServerList());
+    }
+}
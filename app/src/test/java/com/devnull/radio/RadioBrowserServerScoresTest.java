@@ -0,0 +1,149 @@
+package com.devnull.radio;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+class RadioBrowserServerScoresTest {
+    private static final String[] SERVERS = new String[]{"de1.example.org", "fr1.example.org", "nl1.example.org"};
+
+    private RadioBrowserServerScores scores;
+
+    @BeforeEach
+    void init() {
+        scores = new RadioBrowserServerScores();
+    }
+
+    @Test
+    void getBest_returnsNullWithoutSamples() {
+        assertNull(scores.getBest(SERVERS));
+    }
+
+    @Test
+    void getBest_prefersLowerTtfb() {
+        for (int i = 0; i < 5; i++) {
+            scores.recordHeaders("de1.example.org", 400);
+            scores.recordHeaders("fr1.example.org", 80);
+        }
+
+        assertEquals("fr1.example.org", scores.getBest(SERVERS));
+    }
+
+    @Test
+    void getBest_errorsDemoteFastServer() {
+        scores.recordHeaders("de1.example.org", 300);
+        scores.recordHeaders("fr1.example.org", 100);
+        for (int i = 0; i < 4; i++) {
+            scores.recordFailure("fr1.example.org");
+        }
+
+        assertEquals("de1.example.org", scores.getBest(SERVERS));
+    }
+
+    @Test
+    void getBest_failingServerLosesAgainstSlowServer() {
+        scores.recordFailure("fr1.example.org");
+        assertNull(scores.getBest(SERVERS));
+
+        scores.recordHeaders("de1.example.org", 3000);
+        scores.recordFailure("fr1.example.org");
+
+        assertEquals("de1.example.org", scores.getBest(SERVERS));
+        assertTrue(scores.getCost("fr1.example.org") > RadioBrowserServerScores.UNKNOWN_SERVER_COST);
+        assertTrue(scores.getCost("fr1.example.org") > scores.getCost("nl1.example.org"));
+    }
+
+    @Test
+    void recordCensoredTtfb_hangingServerLosesItsRank() {
+        scores.recordHeaders("de1.example.org", 100);
+        scores.recordHeaders("fr1.example.org", 400);
+        assertEquals("de1.example.org", scores.getBest(SERVERS));
+
+        // Faster than its average, the real ttfb of a cancelled call is unknown
+        scores.recordCensoredTtfb("de1.example.org", 50);
+        assertEquals(100, scores.getCost("de1.example.org"), 0.001);
+
+        // Lost hedged races since it hangs
+        for (int i = 0; i < 5; i++) {
+            scores.recordCensoredTtfb("de1.example.org", 400 + RadioBrowserServerScores.HEDGE_DELAY_DEFAULT);
+        }
+        assertEquals("fr1.example.org", scores.getBest(SERVERS));
+        assertTrue(scores.getHedgeDelay("de1.example.org") > scores.getHedgeDelay("fr1.example.org"));
+
+        // Servers which never answered stay unknown
+        scores.recordCensoredTtfb("nl1.example.org", 10);
+        assertEquals("fr1.example.org", scores.getBest(SERVERS));
+    }
+
+    @Test
+    void getBest_throughputIsConsidered() {
+        scores.recordHeaders("de1.example.org", 100);
+        scores.recordHeaders("fr1.example.org", 120);
+        scores.recordBody("de1.example.org", 1024 * 1024, 4000);
+        scores.recordBody("fr1.example.org", 1024 * 1024, 400);
+
+        assertEquals("fr1.example.org", scores.getBest(SERVERS));
+    }
+
+    @Test
+    void rank_unknownServersRankBetweenFastAndSlow() {
+        scores.recordHeaders("de1.example.org", 5000);
+        scores.recordHeaders("fr1.example.org", 50);
+
+        assertArrayEquals(new String[]{"fr1.example.org", "nl1.example.org", "de1.example.org"}, scores.rank(SERVERS));
+    }
+
+    @Test
+    void getHedgeDelay_followsHistory() {
+        assertEquals(RadioBrowserServerScores.HEDGE_DELAY_DEFAULT, scores.getHedgeDelay("de1.example.org"));
+
+        for (int i = 0; i < 20; i++) {
+            scores.recordHeaders("de1.example.org", 100);
+        }
+        long delay = scores.getHedgeDelay("de1.example.org");
+        assertTrue(delay >= RadioBrowserServerScores.HEDGE_DELAY_MIN && delay < 500, "delay " + delay);
+
+        for (int i = 0; i < 20; i++) {
+            scores.recordHeaders("fr1.example.org", 100000);
+        }
+        assertEquals(RadioBrowserServerScores.HEDGE_DELAY_MAX, scores.getHedgeDelay("fr1.example.org"));
+    }
+
+    @Test
+    void takeServersToProbe_intervalDecays() {
+        scores.recordHeaders("de1.example.org", 50);
+        scores.recordHeaders("fr1.example.org", 500);
+        String[] servers = new String[]{"de1.example.org", "fr1.example.org"};
+
+        long now = 1000;
+        scores.updateProbeSchedule(servers, now);
+        assertTrue(scores.takeServersToProbe(servers, now).isEmpty());
+
+        long interval = RadioBrowserServerScores.PROBE_INTERVAL_MIN;
+        for (int i = 0; i < 3; i++) {
+            now += interval;
+            List<String> probes = scores.takeServersToProbe(servers, now);
+            assertEquals(1, probes.size());
+            assertEquals("fr1.example.org", probes.get(0));
+
+            interval *= 2;
+            assertEquals(now + interval, scores.getNextProbeTime());
+        }
+    }
+
+    @Test
+    void loadJson_restoresRanking() {
+        for (int i = 0; i < 5; i++) {
+            scores.recordHeaders("de1.example.org", 400);
+            scores.recordHeaders("nl1.example.org", 60);
+        }
+
+        RadioBrowserServerScores restored = new RadioBrowserServerScores();
+        restored.loadJson(scores.toJson());
+
+        assertEquals("nl1.example.org", restored.getBest(SERVERS));
+        assertEquals(scores.getCost("de1.example.org"), restored.getCost("de1.example.org"), 0.001);
+    }
+}
@@ -0,0 +1,245 @@
+package com.devnull.radio.cache;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+class ApiResponseCacheTest {
+    private File directory;
+
+    @BeforeEach
+    void init() throws IOException {
+        directory = Files.createTempDirectory("api-cache").toFile();
+    }
+
+    @AfterEach
+    void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static String body(int length, char c) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    @Test
+    void key_includesRequestBody() {
+        String hideBroken = ApiResponseCache.key("POST", "json/stations/topclick/100", "{\"hidebroken\":\"true\"}");
+        String showBroken = ApiResponseCache.key("POST", "json/stations/topclick/100", "{\"hidebroken\":\"false\"}");
+        String get = ApiResponseCache.key("GET", "json/stations/topclick/100", null);
+
+        assertNotEquals(hideBroken, showBroken);
+        assertNotEquals(hideBroken, get);
+        assertEquals(hideBroken, ApiResponseCache.key("POST", "json/stations/topclick/100", "{\"hidebroken\":\"true\"}"));
+    }
+
+    @Test
+    void put_storesBodyAndValidators() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"etag-1\"", "Wed, 21 Oct 2015 07:28:00 GMT", "[{\"name\":\"Radio\"}]");
+
+        ApiResponseCache.Entry entry = cache.get("a");
+        assertNotNull(entry);
+        assertEquals("\"etag-1\"", entry.getEtag());
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", entry.getLastModified());
+        assertEquals("[{\"name\":\"Radio\"}]", cache.read(entry));
+        assertTrue(entry.isFresh(System.currentTimeMillis(), 60 * 1000));
+        assertFalse(entry.isFresh(System.currentTimeMillis() + 120 * 1000, 60 * 1000));
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsed() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 3000);
+        cache.put("a", null, null, body(1000, 'a'));
+        cache.put("b", null, null, body(1000, 'b'));
+        cache.put("c", null, null, body(1000, 'c'));
+
+        // touch "a" so "b" is the least recently used one
+        assertNotNull(cache.get("a"));
+
+        cache.put("d", null, null, body(1000, 'd'));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertNotNull(cache.get("d"));
+        assertTrue(cache.size() <= 3000);
+        assertFalse(new File(directory, "b.body").exists());
+    }
+
+    @Test
+    void put_replacesEntry() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 3000);
+        cache.put("a", null, null, body(1000, 'a'));
+        cache.put("a", null, null, body(500, 'b'));
+
+        assertEquals(500, cache.size());
+        assertEquals(body(500, 'b'), cache.read(cache.get("a")));
+    }
+
+    @Test
+    void markRevalidated_restartsFreshness() throws InterruptedException {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "body");
+        long storedAt = cache.get("a").storedAt;
+
+        Thread.sleep(20);
+        cache.markRevalidated("a", "\"v2\"", null);
+
+        ApiResponseCache.Entry entry = cache.get("a");
+        assertTrue(entry.storedAt > storedAt);
+        assertEquals("\"v2\"", entry.getEtag());
+        assertEquals("body", cache.read(entry));
+    }
+
+    @Test
+    void readNotModified_restartsFreshnessAndKeepsBody() throws InterruptedException {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT", "body");
+        ApiResponseCache.Entry entry = cache.get("a");
+        long storedAt = entry.storedAt;
+
+        Thread.sleep(20);
+        assertEquals("body", cache.readNotModified(entry, null, "Thu, 22 Oct 2015 07:28:00 GMT"));
+
+        ApiResponseCache.Entry revalidated = cache.get("a");
+        assertSame(entry, revalidated);
+        assertTrue(revalidated.storedAt > storedAt);
+        // Validators missing from the 304 are kept
+        assertEquals("\"v1\"", revalidated.getEtag());
+        assertEquals("Thu, 22 Oct 2015 07:28:00 GMT", revalidated.getLastModified());
+    }
+
+    @Test
+    void readNotModified_missingBodyDropsEntry() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "body");
+        ApiResponseCache.Entry entry = cache.get("a");
+        assertTrue(new File(directory, "a.body").delete());
+
+        assertNull(cache.readNotModified(entry, "\"v1\"", null));
+        assertNull(cache.openNotModified(entry, "\"v1\"", null));
+        // Next request has to go without validators
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void revalidation_changedBodyIsHandedToListeners() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "old");
+        ApiResponseCache.Entry stale = cache.get("a");
+
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        assertTrue(cache.beginRevalidation(stale, first::add));
+        // Revalidation is already running, only the listener is added
+        assertFalse(cache.beginRevalidation(stale, second::add));
+
+        cache.put("a", "\"v2\"", null, "new");
+        cache.finishRevalidation("a");
+
+        assertEquals(1, first.size());
+        assertEquals("new", first.get(0));
+        assertEquals(first, second);
+
+        // Finished revalidations can be started again
+        assertTrue(cache.beginRevalidation(cache.get("a"), null));
+    }
+
+    @Test
+    void revalidation_notModifiedIsNotHandedToListeners() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "old");
+        ApiResponseCache.Entry stale = cache.get("a");
+
+        List<String> updates = new ArrayList<>();
+        assertTrue(cache.beginRevalidation(stale, updates::add));
+        assertEquals("old", cache.readNotModified(stale, "\"v1\"", null));
+        cache.finishRevalidation("a");
+
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    void revalidation_failureIsNotHandedToListeners() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "old");
+
+        List<String> updates = new ArrayList<>();
+        assertTrue(cache.beginRevalidation(cache.get("a"), updates::add));
+        // Request failed and the entry was evicted meanwhile
+        cache.remove("a");
+        cache.finishRevalidation("a");
+
+        assertTrue(updates.isEmpty());
+    }
+
+    @Test
+    void editor_entryVisibleOnlyAfterCommit() throws IOException {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "old");
+
+        ApiResponseCache.Editor editor = cache.edit("a");
+        editor.getOutputStream().write("new".getBytes("UTF-8"));
+        assertEquals("old", cache.read(cache.get("a")));
+
+        editor.commit("\"v2\"", null);
+        assertEquals("new", cache.read(cache.get("a")));
+        assertEquals("\"v2\"", cache.get("a").getEtag());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void editor_abortKeepsOldEntry() throws IOException {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", null, null, "old");
+
+        ApiResponseCache.Editor editor = cache.edit("a");
+        editor.getOutputStream().write("partial".getBytes("UTF-8"));
+        editor.abort();
+
+        assertEquals("old", cache.read(cache.get("a")));
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    void entriesSurviveRestart() {
+        ApiResponseCache cache = new ApiResponseCache(directory, 1024 * 1024);
+        cache.put("a", "\"v1\"", null, "first");
+        cache.put("b", null, null, "second");
+
+        ApiResponseCache restored = new ApiResponseCache(directory, 1024 * 1024);
+        assertEquals(cache.size(), restored.size());
+        assertEquals("first", restored.read(restored.get("a")));
+        assertEquals("\"v1\"", restored.get("a").getEtag());
+        assertEquals("second", restored.read(restored.get("b")));
+    }
+
+    @Test
+    void getFreshness_dependsOnEndpoint() {
+        assertEquals(ApiCachePolicy.NO_CACHE, ApiCachePolicy.getFreshness("json/url/1234"));
+        assertEquals(ApiCachePolicy.NO_CACHE, ApiCachePolicy.getFreshness("json/vote/1234"));
+        assertTrue(ApiCachePolicy.getFreshness("json/stations/lastclick/100") <= 60 * 1000);
+        assertTrue(ApiCachePolicy.getFreshness("json/tags") >= 24 * 60 * 60 * 1000);
+        assertTrue(ApiCachePolicy.getFreshness("json/countrycodes") >= 24 * 60 * 60 * 1000);
+        assertTrue(ApiCachePolicy.getFreshness("json/stations/bycountryexact/internet?order=clickcount&reverse=true")
+                > ApiCachePolicy.getFreshness("json/stations/lastclick/100"));
+    }
+}
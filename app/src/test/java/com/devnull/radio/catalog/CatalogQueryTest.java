@@ -0,0 +1,119 @@
+package com.devnull.radio.catalog;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class CatalogQueryTest {
+
+    @Test
+    void parse_topListsOfBrowseTabs() {
+        List<Object> args = new ArrayList<>();
+
+        CatalogQuery topClick = CatalogQuery.parse("json/stations/topclick/100", null);
+        assertNotNull(topClick);
+        assertEquals("SELECT catalog_stations.* FROM catalog_stations ORDER BY catalog_stations.click_count DESC LIMIT 100",
+                topClick.toSql(args));
+        assertTrue(args.isEmpty());
+
+        CatalogQuery topVote = CatalogQuery.parse("json/stations/topvote/50", null);
+        assertNotNull(topVote);
+        assertTrue(topVote.toSql(args).endsWith("ORDER BY catalog_stations.votes DESC LIMIT 50"));
+    }
+
+    @Test
+    void parse_unsupportedEndpoints() {
+        assertNull(CatalogQuery.parse("json/stations/lastclick/100", null));
+        assertNull(CatalogQuery.parse("json/stations/byuuid", null));
+        assertNull(CatalogQuery.parse("json/url/1234", null));
+        assertNull(CatalogQuery.parse("json/stats", null));
+        assertNull(CatalogQuery.parse("json/tags/rock", null));
+    }
+
+    @Test
+    void parse_searchByNameMatchesSubstrings() {
+        Map<String, String> params = new HashMap<>();
+        params.put("order", "clickcount");
+        params.put("reverse", "true");
+        params.put("hidebroken", "true");
+
+        CatalogQuery query = CatalogQuery.parse("json/stations/byname/fm%25", params);
+        assertNotNull(query);
+
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(args);
+
+        assertEquals("SELECT catalog_stations.* FROM catalog_stations"
+                + " WHERE catalog_stations.name LIKE ? ESCAPE '\\' AND catalog_stations.working = 1"
+                + " ORDER BY catalog_stations.click_count DESC", sql);
+        assertEquals(Arrays.<Object>asList("%fm\\%%"), args);
+    }
+
+    @Test
+    void parse_exactFiltersFromUrlParameters() {
+        CatalogQuery query = CatalogQuery.parse("json/stations/bycountrycodeexact/DE?order=clickcount&reverse=true", null);
+        assertNotNull(query);
+
+        List<Object> args = new ArrayList<>();
+        assertEquals("SELECT catalog_stations.* FROM catalog_stations"
+                + " WHERE catalog_stations.country_code = ? COLLATE NOCASE"
+                + " ORDER BY catalog_stations.click_count DESC", query.toSql(args));
+        assertEquals(Arrays.<Object>asList("DE"), args);
+    }
+
+    @Test
+    void parse_pagesOfSearchResults() {
+        Map<String, String> params = new HashMap<>();
+        params.put("limit", "50");
+        params.put("offset", "100");
+
+        CatalogQuery page = CatalogQuery.parse("json/stations/bylanguageexact/german?order=clickcount&reverse=true", params);
+        assertNotNull(page);
+        assertTrue(page.toSql(new ArrayList<>()).endsWith("ORDER BY catalog_stations.click_count DESC LIMIT 50 OFFSET 100"));
+
+        params.remove("limit");
+        CatalogQuery rest = CatalogQuery.parse("json/stations/bylanguageexact/german", params);
+        assertNotNull(rest);
+        assertTrue(rest.toSql(new ArrayList<>()).endsWith("ASC LIMIT -1 OFFSET 100"));
+    }
+
+    @Test
+    void parse_tagNarrowsWithIndexAndComparesExactly() {
+        CatalogQuery query = CatalogQuery.parse("json/stations/bytagexact/classic%20rock", null);
+        assertNotNull(query);
+
+        List<Object> args = new ArrayList<>();
+        String sql = query.toSql(args);
+
+        assertTrue(sql.contains("catalog_stations_fts MATCH ?"));
+        assertTrue(sql.contains("(',' || catalog_stations.tags || ',') LIKE ?"));
+        assertTrue(sql.endsWith("ORDER BY catalog_stations.name COLLATE NOCASE ASC"));
+        assertEquals(Arrays.<Object>asList("tags:classic tags:rock", "%,classic rock,%"), args);
+    }
+
+    @Test
+    void toMatchExpression_onlyAsciiIsFoldedAndSeparates() {
+        assertEquals("tags:80s tags:hits", CatalogQuery.toMatchExpression("tags", "80S-hits"));
+        assertEquals("tags:\u00d6l", CatalogQuery.toMatchExpression("tags", "\"\u00d6l\""));
+        assertNull(CatalogQuery.toMatchExpression("tags", " * - "));
+    }
+
+    @Test
+    void countListValues_countsEveryStationOncePerValue() {
+        List<CatalogCategory> categories = CatalogQuery.countListValues(Arrays.asList("rock,pop", "Rock, jazz,rock", "", "pop"));
+
+        assertEquals(3, categories.size());
+        assertEquals("jazz", categories.get(0).name);
+        assertEquals(1, categories.get(0).stationcount);
+        assertEquals("pop", categories.get(1).name);
+        assertEquals(2, categories.get(1).stationcount);
+        assertEquals("rock", categories.get(2).name);
+        assertEquals(2, categories.get(2).stationcount);
+    }
+}
@@ -0,0 +1,350 @@
+package com.devnull.radio.catalog;
+
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SupportSQLiteQuery;
+
+import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.StationJsonStreamDecoder;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+class StationCatalogTest {
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long START = 1000 * HOUR;
+
+    private static class MemoryDao extends CatalogDao {
+        final LinkedHashMap<String, CatalogStation> rows = new LinkedHashMap<>();
+        final List<String> updated = new ArrayList<>();
+
+        @Override
+        List<Long> insertIfAbsent(List<CatalogStation> stations) {
+            List<Long> rowIds = new ArrayList<>();
+            for (CatalogStation station : stations) {
+                if (rows.containsKey(station.stationUuid)) {
+                    rowIds.add(-1L);
+                } else {
+                    rows.put(station.stationUuid, station);
+                    rowIds.add((long) rows.size());
+                }
+            }
+            return rowIds;
+        }
+
+        @Override
+        void update(List<CatalogStation> stations) {
+            for (CatalogStation station : stations) {
+                rows.put(station.stationUuid, station);
+                updated.add(station.stationUuid);
+            }
+        }
+
+        @Override
+        public List<CatalogChange> getChanges(List<String> stationUuids) {
+            List<CatalogChange> changes = new ArrayList<>();
+            for (String stationUuid : stationUuids) {
+                CatalogStation station = rows.get(stationUuid);
+                if (station != null) {
+                    CatalogChange change = new CatalogChange();
+                    change.stationUuid = station.stationUuid;
+                    change.changeUuid = station.changeUuid;
+                    changes.add(change);
+                }
+            }
+            return changes;
+        }
+
+        @Override
+        public int deleteOlderGenerations(long generation) {
+            int before = rows.size();
+            rows.values().removeIf(station -> station.syncGeneration < generation);
+            return before - rows.size();
+        }
+
+        @Override
+        public void deleteAll() {
+            rows.clear();
+        }
+
+        @Override
+        public int count() {
+            return rows.size();
+        }
+
+        @Override
+        public List<CatalogStation> query(SupportSQLiteQuery query) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<CatalogCategory> countCountryCodes(boolean includeBroken) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getTags(boolean includeBroken) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<String> getLanguages(boolean includeBroken) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static class MemoryPreferences implements SharedPreferences {
+        final Map<String, Object> values = new HashMap<>();
+
+        @Override
+        public Map<String, ?> getAll() {
+            return values;
+        }
+
+        @Nullable
+        @Override
+        public String getString(String key, @Nullable String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new Editor() {
+                final Map<String, Object> changes = new HashMap<>();
+
+                @Override
+                public Editor putString(String key, @Nullable String value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putStringSet(String key, @Nullable Set<String> values) {
+                    changes.put(key, values);
+                    return this;
+                }
+
+                @Override
+                public Editor putInt(String key, int value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putLong(String key, long value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putFloat(String key, float value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor putBoolean(String key, boolean value) {
+                    changes.put(key, value);
+                    return this;
+                }
+
+                @Override
+                public Editor remove(String key) {
+                    changes.put(key, null);
+                    return this;
+                }
+
+                @Override
+                public Editor clear() {
+                    values.clear();
+                    return this;
+                }
+
+                @Override
+                public boolean commit() {
+                    apply();
+                    return true;
+                }
+
+                @Override
+                public void apply() {
+                    for (Map.Entry<String, Object> change : changes.entrySet()) {
+                        if (change.getValue() == null) {
+                            values.remove(change.getKey());
+                        } else {
+                            values.put(change.getKey(), change.getValue());
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+    }
+
+    private static class FakeServer implements StationCatalog.StationSource {
+        final List<String> requests = new ArrayList<>();
+        // Station and its change time, newest changes first for lastchange
+        final Map<String, List<Object[]>> lists = new HashMap<>();
+
+        void set(String relativeUrl, Object[]... stations) {
+            List<Object[]> list = new ArrayList<>();
+            Collections.addAll(list, stations);
+            lists.put(relativeUrl, list);
+        }
+
+        @Override
+        public int download(@NonNull String relativeUrl, @NonNull StationJsonStreamDecoder.ExtendedStationCallback callback) {
+            requests.add(relativeUrl);
+            List<Object[]> list = lists.get(relativeUrl);
+            if (list == null) {
+                return -1;
+            }
+            for (Object[] entry : list) {
+                callback.onStation((DataRadioStation) entry[0],
+                        Collections.singletonMap(StationCatalog.FIELD_LAST_CHANGE_TIME, (String) entry[1]));
+            }
+            return list.size();
+        }
+    }
+
+    private static final String LAST_CHANGE = "json/stations/lastchange/" + StationCatalog.INCREMENTAL_SYNC_LIMIT;
+
+    private static Object[] station(String uuid, String changeUuid, String changeTime) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        station.ChangeUuid = changeUuid;
+        station.Name = uuid;
+        return new Object[]{station, changeTime};
+    }
+
+    private MemoryDao dao;
+    private FakeServer server;
+    private StationCatalog catalog;
+
+    @BeforeEach
+    void init() {
+        dao = new MemoryDao();
+        server = new FakeServer();
+        catalog = new StationCatalog(new MemoryPreferences(), dao, server);
+
+        server.set("json/stations",
+                station("a", "a1", "2020-01-01 10:00:00"),
+                station("b", "b1", "2020-01-01 11:00:00"));
+        catalog.sync(START, true);
+        server.requests.clear();
+    }
+
+    @Test
+    void incrementalSync_skipsStationsWithKnownChangeUuid() {
+        server.set(LAST_CHANGE,
+                station("c", "c1", "2020-01-02 09:00:00"),
+                station("a", "a2", "2020-01-02 08:00:00"),
+                station("b", "b1", "2020-01-01 11:00:00"));
+
+        catalog.sync(START + 2 * HOUR, false);
+
+        assertEquals(Collections.singletonList(LAST_CHANGE), server.requests);
+        assertEquals(Collections.singletonList("a"), dao.updated);
+        assertEquals("a2", dao.rows.get("a").changeUuid);
+        assertEquals(3, dao.rows.size());
+    }
+
+    @Test
+    void incrementalSync_notDueWithinInterval() {
+        catalog.sync(START + HOUR / 2, true);
+
+        assertTrue(server.requests.isEmpty());
+    }
+
+    @Test
+    void incrementalSync_gapFallsBackToFullSync() {
+        // Every change of the window is newer than the catalog, older ones are missing
+        Object[][] changes = new Object[StationCatalog.INCREMENTAL_SYNC_LIMIT][];
+        for (int i = 0; i < changes.length; i++) {
+            changes[i] = station("s" + i, "c" + i, String.format("2020-01-03 %02d:%02d:00", 23 - i / 60, 59 - i % 60));
+        }
+        server.set(LAST_CHANGE, changes);
+
+        catalog.sync(START + 2 * HOUR, false);
+        // No full sync over metered connections
+        assertEquals(Collections.singletonList(LAST_CHANGE), server.requests);
+
+        server.requests.clear();
+        catalog.sync(START + 4 * HOUR, true);
+        assertEquals(Arrays.asList(LAST_CHANGE, "json/stations"), server.requests);
+        // Full sync removed what it did not see
+        assertEquals(2, dao.rows.size());
+    }
+
+    @Test
+    void fullSync_deletesStationsOfOlderGenerations() {
+        server.set("json/stations", station("a", "a2", "2020-01-05 10:00:00"));
+
+        catalog.sync(START + StationCatalog.FULL_SYNC_INTERVAL + HOUR, true);
+
+        assertEquals(Collections.singletonList("json/stations"), server.requests);
+        assertEquals(1, dao.rows.size());
+        assertEquals(2, dao.rows.get("a").syncGeneration);
+    }
+
+    @Test
+    void fullSync_failureKeepsCatalog() {
+        server.lists.remove("json/stations");
+
+        catalog.sync(START + StationCatalog.FULL_SYNC_INTERVAL + HOUR, true);
+
+        assertEquals(2, dao.rows.size());
+        assertEquals(1, dao.rows.get("a").syncGeneration);
+    }
+}
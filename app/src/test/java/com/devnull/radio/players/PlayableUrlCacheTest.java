@@ -0,0 +1,170 @@
+package com.devnull.radio.players;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class PlayableUrlCacheTest {
+    private final List<String> resolved = new ArrayList<>();
+    private final List<String> lookedUp = new ArrayList<>();
+    private final List<Runnable> clicks = new ArrayList<>();
+    // Runs while the api resolves a url
+    private Runnable onResolve = () -> {
+    };
+
+    private PlayableUrlCache cache;
+
+    @BeforeEach
+    void init() {
+        cache = new PlayableUrlCache(uuid -> {
+            resolved.add(uuid);
+            onResolve.run();
+            return uuid.startsWith("broken") ? null : "http://stream/" + uuid + "/" + resolved.size();
+        }, uuid -> {
+            lookedUp.add(uuid);
+            return "http://stream/" + uuid + "/lookup";
+        }, clicks::add);
+    }
+
+    private static DataRadioStation station(String uuid, String changeUuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        station.ChangeUuid = changeUuid;
+        station.Name = uuid;
+        return station;
+    }
+
+    @Test
+    void resolve_onlyOnce() {
+        assertNull(cache.get(station("a", "1")));
+        assertEquals("http://stream/a/1", cache.resolve(station("a", "1")));
+        assertEquals("http://stream/a/1", cache.resolve(station("a", "1")));
+        assertEquals("http://stream/a/1", cache.get(station("a", "1")));
+        assertEquals(1, resolved.size());
+
+        assertNull(cache.resolve(station("broken", "1")));
+        assertNull(cache.get(station("broken", "1")));
+    }
+
+    @Test
+    void get_changedStationIsResolvedAgain() {
+        cache.resolve(station("a", "1"));
+
+        assertNull(cache.get(station("a", "2")));
+        assertEquals("http://stream/a/2", cache.resolve(station("a", "2")));
+        // Station without change uuid, e.g. from an old favourites list
+        assertEquals("http://stream/a/2", cache.get(station("a", "")));
+    }
+
+    @Test
+    void resolveForPlaying_countsClickOfCachedUrlInBackground() {
+        assertEquals("http://stream/a/1", cache.resolveForPlaying(station("a", "1")));
+        // Resolving counted the click
+        assertTrue(clicks.isEmpty());
+
+        assertEquals("http://stream/a/1", cache.resolveForPlaying(station("a", "1")));
+        assertEquals(1, clicks.size());
+        assertEquals(1, resolved.size());
+
+        // Resolved just now, no need to count again
+        clicks.get(0).run();
+        assertEquals(1, resolved.size());
+    }
+
+    @Test
+    void reportClick_resolvesUncachedStation() {
+        cache.reportClick(station("a", "1"));
+        assertTrue(resolved.isEmpty());
+
+        clicks.get(0).run();
+        assertEquals(1, resolved.size());
+        assertEquals("http://stream/a/1", cache.get(station("a", "1")));
+    }
+
+    @Test
+    void invalidate() {
+        cache.resolve(station("a", "1"));
+        cache.invalidate(station("a", "1"));
+
+        assertNull(cache.get(station("a", "1")));
+        // Resolving counted the click just now
+        assertEquals("http://stream/a/lookup", cache.resolve(station("a", "1")));
+        assertEquals(1, resolved.size());
+    }
+
+    @Test
+    void invalidate_resolveCancelsPendingClickReport() {
+        cache.putPrefetched(station("a", "1"), "http://stream/a/prefetched");
+        assertEquals("http://stream/a/prefetched", cache.resolveForPlaying(station("a", "1")));
+        assertEquals(1, clicks.size());
+
+        // Could not be played before the click was reported
+        cache.invalidate(station("a", "1"));
+        assertEquals("http://stream/a/1", cache.resolve(station("a", "1")));
+
+        clicks.get(0).run();
+        assertEquals(1, resolved.size());
+        assertTrue(lookedUp.isEmpty());
+        assertEquals("http://stream/a/1", cache.get(station("a", "1")));
+    }
+
+    @Test
+    void invalidate_clickReportedMeanwhileIsNotCountedAgain() {
+        cache.putPrefetched(station("a", "1"), "http://stream/a/prefetched");
+        cache.resolveForPlaying(station("a", "1"));
+
+        // Could not be played while the click was reported
+        onResolve = () -> cache.invalidate(station("a", "1"));
+        clicks.get(0).run();
+        assertNull(cache.get(station("a", "1")));
+
+        assertEquals("http://stream/a/lookup", cache.resolve(station("a", "1")));
+        assertEquals(1, resolved.size());
+        assertEquals(1, lookedUp.size());
+    }
+
+    @Test
+    void reportClick_onlyOncePerPendingReport() {
+        cache.putPrefetched(station("a", "1"), "http://stream/a/prefetched");
+        cache.reportClick(station("a", "1"));
+        cache.reportClick(station("a", "1"));
+        assertEquals(1, clicks.size());
+
+        clicks.get(0).run();
+        cache.reportClick(station("a", "1"));
+        // Counted just now
+        clicks.get(1).run();
+        assertEquals(1, resolved.size());
+    }
+
+    @Test
+    void resolve_keepsRecentlyUsedStations() {
+        for (int i = 0; i < PlayableUrlCache.MAX_ENTRIES + 1; i++) {
+            cache.resolve(station("s" + i, "1"));
+            // Used all the time
+            assertNotNull(cache.get(station("s0", "1")));
+        }
+
+        assertNotNull(cache.get(station("s0", "1")));
+        assertNull(cache.get(station("s1", "1")));
+    }
+
+    @Test
+    void isDirectStreamUrl() {
+        assertTrue(PlayableUrlCache.isDirectStreamUrl("http://example.com/stream"));
+        assertTrue(PlayableUrlCache.isDirectStreamUrl("https://example.com/live.mp3?type=.pls"));
+        assertTrue(PlayableUrlCache.isDirectStreamUrl("https://example.com/live/index.m3u8"));
+
+        assertFalse(PlayableUrlCache.isDirectStreamUrl(null));
+        assertFalse(PlayableUrlCache.isDirectStreamUrl(""));
+        assertFalse(PlayableUrlCache.isDirectStreamUrl("mms://example.com/stream"));
+        assertFalse(PlayableUrlCache.isDirectStreamUrl("http://example.com/listen.pls"));
+        assertFalse(PlayableUrlCache.isDirectStreamUrl("http://example.com/listen.M3U?id=1"));
+        assertFalse(PlayableUrlCache.isDirectStreamUrl("http://example.com/listen.asx#x"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.devnull.radio.players;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class StationZapperTest {
+    private final List<String> resolved = new ArrayList<>();
+    private final List<String> clicked = new ArrayList<>();
+    private final List<String> standbyUrls = new ArrayList<>();
+    private final List<Long> standbyBuffers = new ArrayList<>();
+
+    private PlayableUrlCache cache;
+    private StationZapper zapper;
+
+    @BeforeEach
+    void init() {
+        cache = new PlayableUrlCache(uuid -> {
+            clicked.add(uuid);
+            return "http://stream/" + uuid;
+        }, uuid -> "http://stream/" + uuid, Runnable::run);
+        zapper = new StationZapper(cache, uuid -> {
+            resolved.add(uuid);
+            return uuid.startsWith("broken") ? null : "http://stream/" + uuid;
+        }, Runnable::run, Runnable::run, (station, playableUrl, bufferMs) -> {
+            standbyUrls.add(playableUrl);
+            standbyBuffers.add(bufferMs);
+        });
+    }
+
+    private static DataRadioStation station(String uuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        station.Name = uuid;
+        return station;
+    }
+
+    @Test
+    void onStationPlaying_resolvesNeighboursAndPreparesNext() {
+        zapper.onStationPlaying(station("b"), station("c"), station("a"), false);
+
+        assertEquals(2, resolved.size());
+        assertEquals("c", resolved.get(0));
+        assertEquals("a", resolved.get(1));
+
+        assertEquals(1, standbyUrls.size());
+        assertEquals("http://stream/c", standbyUrls.get(0));
+        assertEquals(Long.valueOf(StationZapper.STANDBY_BUFFER_MS), standbyBuffers.get(0));
+
+        assertEquals("http://stream/a", cache.get(station("a")));
+        assertNull(cache.get(station("d")));
+
+        // Stations which were not played are not clicked
+        assertTrue(clicked.isEmpty());
+    }
+
+    @Test
+    void onStationPlaying_clickIsCountedWhenPlayed() {
+        zapper.onStationPlaying(station("b"), station("c"), station("a"), false);
+        assertTrue(clicked.isEmpty());
+
+        cache.reportClick(station("c"));
+        assertEquals(1, clicked.size());
+        assertEquals("c", clicked.get(0));
+    }
+
+    @Test
+    void onStationPlaying_usesDirectStreamUrl() {
+        DataRadioStation next = station("c");
+        next.StreamUrl = "http://example.com/c.mp3";
+        DataRadioStation previous = station("a");
+        previous.StreamUrl = "http://example.com/a.pls";
+
+        zapper.onStationPlaying(station("b"), next, previous, false);
+
+        assertEquals("http://example.com/c.mp3", standbyUrls.get(0));
+        // Only the playlist had to be looked up
+        assertEquals(1, resolved.size());
+        assertEquals("a", resolved.get(0));
+        assertTrue(clicked.isEmpty());
+    }
+
+    @Test
+    void onStationPlaying_followsDirectionOfLastSkip() {
+        zapper.onStationPlaying(station("b"), station("c"), station("a"), false);
+        // Skipped back to a
+        zapper.onStationPlaying(station("a"), station("b"), station("z"), false);
+
+        assertEquals("http://stream/z", standbyUrls.get(standbyUrls.size() - 1));
+        assertEquals(4, resolved.size());
+
+        // Skipped forward again, urls which were resolved are not resolved again
+        zapper.onStationPlaying(station("b"), station("c"), station("a"), false);
+        assertEquals("http://stream/c", standbyUrls.get(standbyUrls.size() - 1));
+        assertEquals(4, resolved.size());
+    }
+
+    @Test
+    void onStationPlaying_shorterBufferWhenMetered() {
+        zapper.onStationPlaying(station("b"), station("c"), station("a"), true);
+
+        assertEquals(Long.valueOf(StationZapper.METERED_STANDBY_BUFFER_MS), standbyBuffers.get(0));
+    }
+
+    @Test
+    void onStationPlaying_nothingToPrepare() {
+        // Only favourite
+        zapper.onStationPlaying(station("a"), station("a"), station("a"), false);
+        assertTrue(resolved.isEmpty());
+        assertTrue(standbyUrls.isEmpty());
+
+        zapper.onStationPlaying(station("b"), station("broken"), null, false);
+        assertEquals(1, resolved.size());
+        assertTrue(standbyUrls.isEmpty());
+        assertNull(cache.get(station("broken")));
+    }
+}
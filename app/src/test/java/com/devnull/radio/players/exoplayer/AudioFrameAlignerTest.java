@@ -0,0 +1,166 @@
+package com.devnull.radio.players.exoplayer;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+class AudioFrameAlignerTest {
+    // MPEG 1 layer III, 128 kbit/s, 44.1 kHz
+    private static final int MP3_FRAME_LENGTH = 417;
+    // ADTS, AAC LC, 44.1 kHz, stereo
+    private static final int ADTS_FRAME_LENGTH = 300;
+
+    static byte[] mp3Frame(int index) {
+        byte[] frame = new byte[MP3_FRAME_LENGTH];
+        Arrays.fill(frame, (byte) index);
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xFB;
+        frame[2] = (byte) 0x90;
+        frame[3] = (byte) 0x00;
+        return frame;
+    }
+
+    static byte[] mp3Frames(int from, int to) {
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        for (int i = from; i < to; i++) {
+            frames.write(mp3Frame(i), 0, MP3_FRAME_LENGTH);
+        }
+        return frames.toByteArray();
+    }
+
+    private static byte[] adtsFrame(int index) {
+        byte[] frame = new byte[ADTS_FRAME_LENGTH];
+        Arrays.fill(frame, (byte) index);
+        frame[0] = (byte) 0xFF;
+        frame[1] = (byte) 0xF1;
+        frame[2] = (byte) 0x50;
+        frame[3] = (byte) (0x80 | (ADTS_FRAME_LENGTH >> 11));
+        frame[4] = (byte) (ADTS_FRAME_LENGTH >> 3);
+        frame[5] = (byte) ((ADTS_FRAME_LENGTH & 0x07) << 5 | 0x1F);
+        frame[6] = (byte) 0xFC;
+        return frame;
+    }
+
+    private static void write(AudioFrameAligner frames, byte[] audio, int from, int to, int pieceLength) {
+        for (int offset = from; offset < to; offset += pieceLength) {
+            final int length = Math.min(pieceLength, to - offset);
+            assertTrue(frames.writableLength() >= length);
+            frames.write(audio, offset, length);
+        }
+    }
+
+    private static byte[] readAll(AudioFrameAligner frames) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] chunk = new byte[100];
+        int read;
+        while ((read = frames.read(chunk, 0, chunk.length)) > 0) {
+            result.write(chunk, 0, read);
+        }
+        return result.toByteArray();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            result.write(part, 0, part.length);
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    void formatOf_contentTypes() {
+        assertEquals(AudioFrameAligner.FORMAT_MPEG_AUDIO, AudioFrameAligner.formatOf("audio/mpeg"));
+        assertEquals(AudioFrameAligner.FORMAT_MPEG_AUDIO, AudioFrameAligner.formatOf("audio/mpeg; charset=utf-8"));
+        assertEquals(AudioFrameAligner.FORMAT_ADTS, AudioFrameAligner.formatOf("audio/aacp"));
+        assertEquals(AudioFrameAligner.FORMAT_OTHER, AudioFrameAligner.formatOf("application/ogg"));
+    }
+
+    @Test
+    void frameLength_headers() {
+        assertEquals(MP3_FRAME_LENGTH, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_MPEG_AUDIO, mp3Frame(1), 0, 4));
+        // Padding
+        byte[] padded = new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) 0x92, 0};
+        assertEquals(MP3_FRAME_LENGTH + 1, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_MPEG_AUDIO, padded, 0, 4));
+        // MPEG 2 layer III, 64 kbit/s, 22.05 kHz
+        byte[] mpeg2 = new byte[]{(byte) 0xFF, (byte) 0xF3, (byte) 0x80, 0};
+        assertEquals(208, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_MPEG_AUDIO, mpeg2, 0, 4));
+        // Free bitrate is not supported
+        byte[] free = new byte[]{(byte) 0xFF, (byte) 0xFB, (byte) 0x00, 0};
+        assertEquals(-1, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_MPEG_AUDIO, free, 0, 4));
+        assertEquals(0, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_MPEG_AUDIO, mp3Frame(1), 0, 3));
+
+        assertEquals(ADTS_FRAME_LENGTH, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_ADTS, adtsFrame(1), 0, 7));
+        assertEquals(-1, AudioFrameAligner.frameLength(AudioFrameAligner.FORMAT_ADTS, mp3Frame(1), 0, 7));
+    }
+
+    @Test
+    void read_onlyCompleteFrames() {
+        byte[] audio = mp3Frames(1, 20);
+
+        for (int pieceLength : new int[]{1, 5, 100, 1000}) {
+            AudioFrameAligner frames = new AudioFrameAligner(AudioFrameAligner.FORMAT_MPEG_AUDIO);
+            ByteArrayOutputStream read = new ByteArrayOutputStream();
+            for (int offset = 0; offset < audio.length; offset += pieceLength) {
+                write(frames, audio, offset, Math.min(audio.length, offset + pieceLength), pieceLength);
+                byte[] chunk = readAll(frames);
+                assertEquals(0, chunk.length % MP3_FRAME_LENGTH);
+                read.write(chunk, 0, chunk.length);
+            }
+
+            assertArrayEquals(audio, read.toByteArray());
+        }
+    }
+
+    @Test
+    void discontinuity_dropsCutFrameAndSkipsToNextFrame() {
+        AudioFrameAligner frames = new AudioFrameAligner(AudioFrameAligner.FORMAT_MPEG_AUDIO);
+        byte[] before = mp3Frames(1, 4);
+        byte[] after = mp3Frames(10, 14);
+
+        // Connection lost in the middle of the third frame
+        write(frames, before, 0, 2 * MP3_FRAME_LENGTH + 100, 64);
+        assertArrayEquals(Arrays.copyOf(before, 2 * MP3_FRAME_LENGTH), readAll(frames));
+        frames.discontinuity();
+
+        // The next connection starts in the middle of a frame
+        write(frames, after, 200, after.length, 64);
+        assertArrayEquals(Arrays.copyOfRange(after, MP3_FRAME_LENGTH, after.length), readAll(frames));
+    }
+
+    @Test
+    void read_adtsFrames() {
+        AudioFrameAligner frames = new AudioFrameAligner(AudioFrameAligner.FORMAT_ADTS);
+        byte[] audio = concat(new byte[]{1, 2, 3}, adtsFrame(1), adtsFrame(2), adtsFrame(3));
+
+        write(frames, audio, 0, audio.length, 50);
+        assertArrayEquals(concat(adtsFrame(1), adtsFrame(2), adtsFrame(3)), readAll(frames));
+    }
+
+    @Test
+    void write_otherFormatIsPassedOn() {
+        AudioFrameAligner frames = new AudioFrameAligner(AudioFrameAligner.FORMAT_OTHER);
+        byte[] audio = new byte[]{'O', 'g', 'g', 'S', 0, 1, 2};
+
+        write(frames, audio, 0, audio.length, 3);
+        assertArrayEquals(audio, readAll(frames));
+    }
+
+    @Test
+    void write_givesUpWithoutFrames() {
+        AudioFrameAligner frames = new AudioFrameAligner(AudioFrameAligner.FORMAT_MPEG_AUDIO);
+        byte[] noise = new byte[1000];
+        Arrays.fill(noise, (byte) 0x55);
+
+        for (int i = 0; i < 70; i++) {
+            write(frames, noise, 0, noise.length, noise.length);
+            readAll(frames);
+        }
+
+        assertEquals(AudioFrameAligner.FORMAT_OTHER, frames.getFormat());
+        write(frames, noise, 0, noise.length, noise.length);
+        assertArrayEquals(noise, readAll(frames));
+    }
+}
@@ -0,0 +1,282 @@
+package com.devnull.radio.players.exoplayer;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import com.devnull.radio.station.live.ShoutcastInfo;
+import com.devnull.radio.station.live.StreamLiveInfo;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Random;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+/**
+ * Streams from a local server which cuts connections in the middle of frames.
+ */
+class IcyDataSourceReconnectTest {
+    private static final int METADATA_INTERVAL = 1000;
+    private static final String METADATA = "StreamTitle='a';";
+    private static final int FRAME_LENGTH = 417;
+
+    private final Deque<MockResponse> responses = new ArrayDeque<>();
+    private MockWebServer server;
+
+    private int connectionsLost;
+    private int connectionsLostIrrecoverably;
+
+    @BeforeEach
+    void init() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                synchronized (responses) {
+                    MockResponse response = responses.poll();
+                    return response != null ? response : new MockResponse().setResponseCode(503);
+                }
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private void enqueue(MockResponse response) {
+        synchronized (responses) {
+            responses.add(response);
+        }
+    }
+
+    /**
+     * Live stream of unknown length with a metadata block after every interval.
+     */
+    private static MockResponse liveStream(byte[] audio) {
+        Buffer body = new Buffer();
+        for (int offset = 0; offset < audio.length; offset += METADATA_INTERVAL) {
+            body.write(audio, offset, Math.min(METADATA_INTERVAL, audio.length - offset));
+            body.writeByte(1);
+            body.writeUtf8(METADATA);
+        }
+
+        return new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "audio/mpeg")
+                .setHeader("icy-metaint", METADATA_INTERVAL)
+                .setChunkedBody(body, 512);
+    }
+
+    private IcyDataSource open(long timeUntilStopReconnecting) throws IOException {
+        IcyDataSource source = new IcyDataSource(new OkHttpClient(), new IcyDataSourceTest.TestTransferListener(),
+                new CountingDataSourceListener(), timeUntilStopReconnecting, 0);
+        source.open(new DataSpec(Uri.parse(server.url("/stream").toString())), server.url("/stream"));
+        return source;
+    }
+
+    private static byte[] readUntilFailure(IcyDataSource source) {
+        ByteArrayOutputStream audio = new ByteArrayOutputStream();
+        byte[] chunk = new byte[100];
+        assertThrows(HttpDataSource.HttpDataSourceException.class, () -> {
+            int read;
+            while ((read = source.read(chunk, 0, chunk.length)) != C.RESULT_END_OF_INPUT) {
+                audio.write(chunk, 0, read);
+            }
+        });
+        return audio.toByteArray();
+    }
+
+    private static HttpDataSource.HttpDataSourceException readError(IcyDataSource source) {
+        byte[] chunk = new byte[100];
+        return assertThrows(HttpDataSource.HttpDataSourceException.class, () -> {
+            //noinspection StatementWithEmptyBody
+            while (source.read(chunk, 0, chunk.length) != C.RESULT_END_OF_INPUT) {
+            }
+        });
+    }
+
+    @Test
+    void read_reconnectsAndContinuesWithWholeFrames() throws Exception {
+        byte[] before = AudioFrameAlignerTest.mp3Frames(1, 30);
+        byte[] after = AudioFrameAlignerTest.mp3Frames(40, 60);
+
+        enqueue(liveStream(before).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        // Joined in the middle of a frame
+        enqueue(liveStream(Arrays.copyOfRange(after, 200, after.length)));
+
+        IcyDataSource source = open(500);
+        assertFalse(source.getResponseHeaders().containsKey("icy-metaint"));
+
+        // Gives up after the second stream ended as well
+        byte[] audio = readUntilFailure(source);
+        source.close();
+
+        final int continued = after.length - FRAME_LENGTH;
+        final int cut = audio.length - continued;
+        assertTrue(cut > 0 && cut < before.length);
+        assertEquals(0, cut % FRAME_LENGTH);
+        assertArrayEquals(Arrays.copyOf(before, cut), Arrays.copyOf(audio, cut));
+        assertArrayEquals(Arrays.copyOfRange(after, FRAME_LENGTH, after.length), Arrays.copyOfRange(audio, cut, audio.length));
+
+        assertEquals(2, connectionsLost);
+        assertEquals(1, connectionsLostIrrecoverably);
+    }
+
+    @Test
+    void read_withoutReconnecting() throws Exception {
+        byte[] audio = AudioFrameAlignerTest.mp3Frames(1, 10);
+        enqueue(liveStream(audio));
+
+        IcyDataSource source = open(0);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] chunk = new byte[100];
+        int bytesRead;
+        while ((bytesRead = source.read(chunk, 0, chunk.length)) != C.RESULT_END_OF_INPUT) {
+            read.write(chunk, 0, bytesRead);
+        }
+        source.close();
+
+        assertArrayEquals(audio, read.toByteArray());
+
+        enqueue(liveStream(audio).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        source = open(0);
+        readUntilFailure(source);
+        source.close();
+
+        assertEquals(0, connectionsLost);
+        assertEquals(1, connectionsLostIrrecoverably);
+    }
+
+    @Test
+    void read_givesUpWithReconnectFailed() throws Exception {
+        enqueue(liveStream(AudioFrameAlignerTest.mp3Frames(1, 10)).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+
+        // Not reconnecting at all, the player may retry
+        IcyDataSource source = open(0);
+        HttpDataSource.HttpDataSourceException error = readError(source);
+        assertFalse(error instanceof IcyDataSource.ReconnectFailedException);
+        source.close();
+
+        enqueue(liveStream(AudioFrameAlignerTest.mp3Frames(1, 10)).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        source = open(300);
+        assertTrue(readError(source) instanceof IcyDataSource.ReconnectFailedException);
+        source.close();
+    }
+
+    @Test
+    void read_fileWithoutLengthEnds() throws Exception {
+        byte[] audio = AudioFrameAlignerTest.mp3Frames(1, 10);
+        enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "audio/mpeg")
+                .setHeader("Accept-Ranges", "bytes")
+                .setChunkedBody(new Buffer().write(audio), 512));
+
+        // A reconnect would get an error, the file is not played again
+        IcyDataSource source = open(500);
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        byte[] chunk = new byte[100];
+        int bytesRead;
+        while ((bytesRead = source.read(chunk, 0, chunk.length)) != C.RESULT_END_OF_INPUT) {
+            read.write(chunk, 0, bytesRead);
+        }
+        source.close();
+
+        assertArrayEquals(audio, read.toByteArray());
+        assertEquals(0, connectionsLost);
+    }
+
+    @Test
+    void open_againByPlayerContinuesWithWholeFrames() throws Exception {
+        byte[] before = AudioFrameAlignerTest.mp3Frames(1, 30);
+        byte[] after = AudioFrameAlignerTest.mp3Frames(40, 60);
+
+        enqueue(liveStream(before).setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY));
+        IcyDataSource source = open(0);
+        byte[] first = readUntilFailure(source);
+        source.close();
+
+        // Joined in the middle of a frame
+        enqueue(liveStream(Arrays.copyOfRange(after, 200, after.length)));
+        source.open(new DataSpec(Uri.parse(server.url("/stream").toString())), server.url("/stream"));
+        assertFalse(source.getResponseHeaders().containsKey("icy-metaint"));
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        byte[] chunk = new byte[100];
+        int bytesRead;
+        while ((bytesRead = source.read(chunk, 0, chunk.length)) != C.RESULT_END_OF_INPUT) {
+            second.write(chunk, 0, bytesRead);
+        }
+        source.close();
+
+        assertTrue(first.length > 0 && first.length < before.length);
+        assertEquals(0, first.length % FRAME_LENGTH);
+        assertArrayEquals(Arrays.copyOf(before, first.length), first);
+        assertArrayEquals(Arrays.copyOfRange(after, FRAME_LENGTH, after.length), second.toByteArray());
+    }
+
+    @Test
+    void reconnectDelay_backsOffWithJitter() {
+        Random random = new Random(1);
+        long previousMaximum = 0;
+        for (int attempt = 0; attempt < 10; attempt++) {
+            final long maximum = Math.min(5000, 200L << attempt);
+            final long delay = IcyDataSource.reconnectDelay(attempt, 0, random);
+            assertTrue(delay >= maximum / 2 && delay <= maximum, "Attempt " + attempt + ": " + delay);
+            assertTrue(maximum >= previousMaximum);
+            previousMaximum = maximum;
+        }
+
+        // Never shorter than the configured delay
+        assertTrue(IcyDataSource.reconnectDelay(0, 1000, random) >= 500);
+    }
+
+    private class CountingDataSourceListener implements IcyDataSource.IcyDataSourceListener {
+        @Override
+        public void onDataSourceConnected() {
+        }
+
+        @Override
+        public void onDataSourceConnectionLost() {
+            connectionsLost++;
+        }
+
+        @Override
+        public void onDataSourceConnectionLostIrrecoverably() {
+            connectionsLostIrrecoverably++;
+        }
+
+        @Override
+        public void onDataSourceShoutcastInfo(@Nullable ShoutcastInfo shoutcastInfo) {
+        }
+
+        @Override
+        public void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo, long audioPosition) {
+        }
+
+        @Override
+        public void onDataSourceBytesRead(byte[] buffer, int offset, int length) {
+        }
+    }
+}
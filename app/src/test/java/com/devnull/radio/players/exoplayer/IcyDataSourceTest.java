@@ -12,12 +12,19 @@ import com.devnull.radio.station.live.StreamLiveInfo;
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
 import okhttp3.OkHttpClient;
 
 
 class IcyDataSourceTest {
     private static IcyDataSource icyDataSource;
     private static StringBuffer transferredBytesWithoutMetadata;
+    private static List<String> titles;
+    private static List<Long> titlePositions;
 
     @BeforeAll
     public static void setup() {
@@ -29,6 +36,45 @@ class IcyDataSourceTest {
     @BeforeEach
     void init() {
         transferredBytesWithoutMetadata = new StringBuffer();
+        titles = new ArrayList<>();
+        titlePositions = new ArrayList<>();
+    }
+
+    private static IcyDataSource newIcyDataSource(int metadataOffset) {
+        IcyDataSource dataSource = new IcyDataSource(new OkHttpClient(), new TestTransferListener(), new TestDataSourceListener());
+        dataSource.shoutcastInfo = new ShoutcastInfo();
+        dataSource.shoutcastInfo.metadataOffset = metadataOffset;
+        dataSource.remainingUntilMetadata = metadataOffset;
+        dataSource.metadataBytesToSkip = 0;
+        return dataSource;
+    }
+
+    /**
+     * Stream with a metadata block after each audio chunk, metadata is padded with zeros.
+     */
+    private static byte[] stream(String... audioAndMetadata) {
+        final Charset utf8 = Charset.forName("UTF-8");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int i = 0; i < audioAndMetadata.length; i++) {
+            byte[] bytes = audioAndMetadata[i].getBytes(utf8);
+            if (i % 2 == 0) {
+                stream.write(bytes, 0, bytes.length);
+            } else {
+                final int blocks = (bytes.length + 15) / 16;
+                stream.write(blocks);
+                stream.write(bytes, 0, bytes.length);
+                for (int padding = bytes.length; padding < blocks * 16; padding++) {
+                    stream.write(0);
+                }
+            }
+        }
+        return stream.toByteArray();
+    }
+
+    private static void sendInPieces(IcyDataSource dataSource, byte[] stream, int pieceLength) {
+        for (int offset = 0; offset < stream.length; offset += pieceLength) {
+            dataSource.sendToDataSourceListenersWithoutMetadata(stream, offset, Math.min(pieceLength, stream.length - offset));
+        }
     }
 
     @Test
@@ -77,6 +123,76 @@ class IcyDataSourceTest {
         assertEquals(0, icyDataSource.metadataBytesToSkip);
     }
 
+    @Test
+    void sendToDataSourceListenersWithoutMetadata_canHandleMetadataEndingInOwnRead() {
+        final IcyDataSource dataSource = newIcyDataSource("audioN".length() * 2);
+        final byte[] stream = stream("audio1audio2", "StreamTitle='A';", "audio3");
+
+        // Audio, length and first part of metadata, rest of metadata, audio
+        dataSource.sendToDataSourceListenersWithoutMetadata(stream, 0, 16);
+        dataSource.sendToDataSourceListenersWithoutMetadata(stream, 16, 13);
+        dataSource.sendToDataSourceListenersWithoutMetadata(stream, 29, stream.length - 29);
+
+        assertEquals("audio1audio2audio3", transferredBytesWithoutMetadata.toString());
+        assertEquals("audioN".length(), dataSource.remainingUntilMetadata);
+    }
+
+    @Test
+    void metadata_decodedAcrossReads() {
+        final byte[] stream = stream(
+                "audio1audio2", "StreamTitle='Artist - Track';StreamUrl='http://example.com';",
+                "audio3audio4", "");
+
+        for (int pieceLength = 1; pieceLength <= stream.length; pieceLength++) {
+            init();
+            final IcyDataSource dataSource = newIcyDataSource("audioN".length() * 2);
+            sendInPieces(dataSource, stream, pieceLength);
+
+            assertEquals("audio1audio2audio3audio4", transferredBytesWithoutMetadata.toString());
+            assertEquals(1, titles.size());
+            assertEquals("Artist - Track", titles.get(0));
+            assertEquals(Long.valueOf(12), titlePositions.get(0));
+        }
+    }
+
+    @Test
+    void metadata_onlyChangedTitlesAreReported() {
+        final IcyDataSource dataSource = newIcyDataSource("audioN".length());
+        final byte[] stream = stream(
+                "audio1", "StreamTitle='First';",
+                "audio2", "StreamTitle='First';",
+                "audio3", "",
+                "audio4", "StreamTitle='Second; with semicolon';",
+                "audio5", "StreamTitle='First';");
+
+        sendInPieces(dataSource, stream, 7);
+
+        assertEquals("audio1audio2audio3audio4audio5", transferredBytesWithoutMetadata.toString());
+        assertEquals(3, titles.size());
+        assertEquals("First", titles.get(0));
+        assertEquals("Second; with semicolon", titles.get(1));
+        assertEquals("First", titles.get(2));
+        assertEquals(Long.valueOf(6), titlePositions.get(0));
+        assertEquals(Long.valueOf(24), titlePositions.get(1));
+        assertEquals(Long.valueOf(30), titlePositions.get(2));
+    }
+
+    @Test
+    void metadata_largeBlock() {
+        // Length byte above 127
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            title.append("0123456789");
+        }
+        final IcyDataSource dataSource = newIcyDataSource("audioN".length());
+        final byte[] stream = stream("audio1", "StreamTitle='" + title + "';", "audio2");
+
+        sendInPieces(dataSource, stream, 100);
+
+        assertEquals("audio1audio2", transferredBytesWithoutMetadata.toString());
+        assertEquals(title.toString(), titles.get(0));
+    }
+
     static class TestDataSourceListener implements IcyDataSource.IcyDataSourceListener {
 
         @Override
@@ -100,8 +216,9 @@ class IcyDataSourceTest {
         }
 
         @Override
-        public void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo) {
-
+        public void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo, long audioPosition) {
+            titles.add(streamLiveInfo.getTitle());
+            titlePositions.add(audioPosition);
         }
 
         @Override
@@ -0,0 +1,275 @@
+package com.devnull.radio.players.exoplayer;
+
+import android.net.Uri;
+
+import androidx.annotation.Nullable;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSpec;
+
+import com.devnull.radio.station.live.ShoutcastInfo;
+import com.devnull.radio.station.live.StreamLiveInfo;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+class TimeShiftBufferTest {
+    private static final int METADATA_INTERVAL = 16;
+    private static final String METADATA = "StreamTitle='a';";
+
+    private File directory;
+    private MockWebServer server;
+
+    @BeforeEach
+    void init() throws IOException {
+        directory = Files.createTempDirectory("time-shift").toFile();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private TimeShiftBuffer buffer(int capacity, int evictionWatermark) throws IOException {
+        return new TimeShiftBuffer(new File(directory, "buffer"), capacity, evictionWatermark);
+    }
+
+    private static byte[] audio(int length) {
+        byte[] audio = new byte[length];
+        for (int i = 0; i < length; i++) {
+            audio[i] = (byte) (i % 251);
+        }
+        return audio;
+    }
+
+    private static byte[] readAll(TimeShiftBuffer.Reader reader) throws InterruptedException {
+        byte[] result = new byte[0];
+        byte[] chunk = new byte[37];
+        int read;
+        while ((read = reader.read(chunk, 0, chunk.length)) != TimeShiftBuffer.END_OF_INPUT) {
+            result = Arrays.copyOf(result, result.length + read);
+            System.arraycopy(chunk, 0, result, result.length - read, read);
+        }
+        return result;
+    }
+
+    /**
+     * Stand-in for an icecast server, audio with a metadata block after every interval.
+     */
+    private MockResponse icyStream(byte[] audio) {
+        Buffer body = new Buffer();
+        for (int offset = 0; offset < audio.length; offset += METADATA_INTERVAL) {
+            body.write(audio, offset, Math.min(METADATA_INTERVAL, audio.length - offset));
+            body.writeByte(1);
+            body.writeUtf8(METADATA);
+        }
+
+        return new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "audio/mpeg")
+                .setHeader("icy-metaint", METADATA_INTERVAL)
+                .setHeader("icy-br", 128)
+                .setBody(body);
+    }
+
+    private void load(TimeShiftBuffer buffer) throws IOException {
+        IcyDataSource source = new IcyDataSource(new OkHttpClient(), new IcyDataSourceTest.TestTransferListener(), new IgnoringDataSourceListener());
+        source.open(new DataSpec(Uri.parse(server.url("/stream").toString())), server.url("/stream"));
+        source.setTimeShiftBuffer(buffer);
+
+        assertEquals(128, source.shoutcastInfo.bitrate);
+
+        byte[] scratch = new byte[100];
+        while (source.read(scratch, 0, scratch.length) != C.RESULT_END_OF_INPUT) {
+            // Everything goes into the buffer
+        }
+        source.close();
+        buffer.finish();
+    }
+
+    @Test
+    void read_acrossEndOfFile() throws Exception {
+        TimeShiftBuffer buffer = buffer(100, 10);
+        byte[] audio = audio(250);
+
+        TimeShiftBuffer.Reader reader = buffer.newReader(0);
+        byte[] chunk = new byte[60];
+        for (int offset = 0; offset < audio.length; offset += 60) {
+            final int length = Math.min(60, audio.length - offset);
+            buffer.write(audio, offset, length);
+            assertEquals(length, reader.read(chunk, 0, chunk.length));
+            assertArrayEquals(Arrays.copyOfRange(audio, offset, offset + length), Arrays.copyOf(chunk, length));
+        }
+
+        assertEquals(250, buffer.getEndPosition());
+        buffer.release();
+    }
+
+    @Test
+    void write_dropsOldestDownToWatermark() throws Exception {
+        TimeShiftBuffer buffer = buffer(100, 20);
+        byte[] audio = audio(150);
+
+        buffer.write(audio, 0, 100);
+        assertEquals(0, buffer.getStartPosition());
+
+        // Full, the next write makes room for the watermark
+        buffer.write(audio, 100, 1);
+        assertEquals(21, buffer.getStartPosition());
+        assertEquals(101, buffer.getEndPosition());
+
+        // There is room left, nothing is dropped
+        buffer.write(audio, 101, 19);
+        assertEquals(21, buffer.getStartPosition());
+
+        // Larger than the buffer, only the newest part is kept
+        byte[] large = audio(500);
+        buffer.write(large, 0, large.length);
+        assertEquals(620, buffer.getEndPosition());
+        assertEquals(540, buffer.getStartPosition());
+
+        buffer.finish();
+        assertArrayEquals(Arrays.copyOfRange(large, 420, 500), readAll(buffer.newReader(0)));
+        buffer.release();
+    }
+
+    @Test
+    void getWritableLength_keepsUnreadAudio() throws Exception {
+        TimeShiftBuffer buffer = buffer(100, 20);
+        byte[] audio = audio(300);
+
+        TimeShiftBuffer.Reader paused = buffer.newReader(0);
+        assertEquals(100, buffer.getWritableLength(paused.getPosition()));
+
+        buffer.write(audio, 0, 70);
+        assertEquals(30, buffer.getWritableLength(paused.getPosition()));
+
+        byte[] chunk = new byte[50];
+        assertEquals(50, paused.read(chunk, 0, chunk.length));
+        // Old audio which was read is dropped down to the watermark
+        assertEquals(60, buffer.getWritableLength(paused.getPosition()));
+        assertEquals(80, buffer.getWritableLength(TimeShiftSession.LIVE_POSITION));
+
+        // Writing what is writable keeps all unread audio
+        buffer.write(audio, 70, 60);
+        assertEquals(50, buffer.getStartPosition());
+        assertEquals(20, buffer.getWritableLength(paused.getPosition()));
+        buffer.finish();
+        assertArrayEquals(Arrays.copyOfRange(audio, 50, 130), readAll(paused));
+        buffer.release();
+    }
+
+    @Test
+    void read_waitsForWrite() throws Exception {
+        TimeShiftBuffer buffer = buffer(100, 10);
+        TimeShiftBuffer.Reader reader = buffer.newReader(TimeShiftSession.LIVE_POSITION);
+
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            buffer.write(audio(5), 0, 5);
+            buffer.finish();
+        });
+        writer.start();
+
+        byte[] chunk = new byte[10];
+        assertEquals(5, reader.read(chunk, 0, chunk.length));
+        assertEquals(TimeShiftBuffer.END_OF_INPUT, reader.read(chunk, 0, chunk.length));
+        writer.join();
+        buffer.release();
+    }
+
+    @Test
+    void capacityFor_minutesAtBitrate() {
+        assertEquals(10 * 60 * 16000, TimeShiftBuffer.capacityFor(10, 128));
+        // Unknown bitrate
+        assertEquals(10 * 60 * 16000, TimeShiftBuffer.capacityFor(10, 0));
+        assertEquals(60 * 40000, TimeShiftBuffer.capacityFor(1, 320));
+    }
+
+    @Test
+    void icyStream_audioWithoutMetadata() throws Exception {
+        byte[] audio = audio(2000);
+        server.enqueue(icyStream(audio));
+
+        TimeShiftBuffer buffer = buffer(4000, 400);
+        TimeShiftBuffer.Reader reader = buffer.newReader(0);
+        load(buffer);
+
+        assertArrayEquals(audio, readAll(reader));
+        buffer.release();
+    }
+
+    @Test
+    void icyStream_pausedLongerThanBuffer() throws Exception {
+        byte[] audio = audio(5000);
+        server.enqueue(icyStream(audio));
+
+        // Paused reader at the start of the stream
+        TimeShiftBuffer buffer = buffer(1000, 100);
+        TimeShiftBuffer.Reader paused = buffer.newReader(0);
+        load(buffer);
+
+        final long start = buffer.getStartPosition();
+        assertEquals(5000, buffer.getEndPosition());
+        assertTrue(start >= 4000 && start <= 4100);
+
+        // Rewind from live by 300 bytes
+        assertArrayEquals(Arrays.copyOfRange(audio, 4700, 5000), readAll(buffer.newReader(buffer.getEndPosition() - 300)));
+
+        // The paused reader continues with the oldest audio that is left
+        assertArrayEquals(Arrays.copyOfRange(audio, (int) start, 5000), readAll(paused));
+        buffer.release();
+    }
+
+    static class IgnoringDataSourceListener implements IcyDataSource.IcyDataSourceListener {
+        @Override
+        public void onDataSourceConnected() {
+        }
+
+        @Override
+        public void onDataSourceConnectionLost() {
+        }
+
+        @Override
+        public void onDataSourceConnectionLostIrrecoverably() {
+        }
+
+        @Override
+        public void onDataSourceShoutcastInfo(@Nullable ShoutcastInfo shoutcastInfo) {
+        }
+
+        @Override
+        public void onDataSourceStreamLiveInfo(StreamLiveInfo streamLiveInfo, long audioPosition) {
+        }
+
+        @Override
+        public void onDataSourceBytesRead(byte[] buffer, int offset, int length) {
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.devnull.radio.players.exoplayer;
+
+import android.net.Uri;
+
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+
+class TimeShiftSessionTest {
+    private static final int METADATA_INTERVAL = 1000;
+    private static final String METADATA = "StreamTitle='a';";
+    // Smallest buffer, one minute at 8 kbps is less
+    private static final int CAPACITY = 64 * 1024;
+    private static final int BITRATE = 8;
+
+    private File directory;
+    private MockWebServer server;
+    private TimeShiftSession session;
+
+    @BeforeEach
+    void init() throws IOException {
+        directory = Files.createTempDirectory("time-shift").toFile();
+        server = new MockWebServer();
+        server.start();
+
+        // Uri is not available in unit tests, the source connects to the server directly
+        IcyDataSource source = new IcyDataSource(new OkHttpClient(), new IcyDataSourceTest.TestTransferListener(),
+                new TimeShiftBufferTest.IgnoringDataSourceListener(), 0, 0) {
+            @Override
+            public long open(DataSpec dataSpec) throws HttpDataSource.HttpDataSourceException {
+                close();
+                return open(dataSpec, server.url("/stream"));
+            }
+        };
+        session = new TimeShiftSession(source, new DataSpec(Uri.parse(server.url("/stream").toString())), directory, 1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        session.release();
+        server.shutdown();
+
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static byte[] audio(int length) {
+        byte[] audio = new byte[length];
+        for (int i = 0; i < length; i++) {
+            audio[i] = (byte) (i % 251);
+        }
+        return audio;
+    }
+
+    private static MockResponse icyStream(byte[] audio) {
+        Buffer body = new Buffer();
+        for (int offset = 0; offset < audio.length; offset += METADATA_INTERVAL) {
+            body.write(audio, offset, Math.min(METADATA_INTERVAL, audio.length - offset));
+            body.writeByte(1);
+            body.writeUtf8(METADATA);
+        }
+
+        return new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "audio/mpeg")
+                .setHeader("icy-metaint", METADATA_INTERVAL)
+                .setHeader("icy-br", BITRATE)
+                .setBody(body);
+    }
+
+    private DataSource open() throws IOException {
+        DataSource dataSource = session.createDataSource();
+        dataSource.open(new DataSpec(Uri.parse(server.url("/stream").toString())));
+        return dataSource;
+    }
+
+    private static byte[] read(DataSource dataSource, int length) throws IOException {
+        byte[] result = new byte[length];
+        int filled = 0;
+        while (filled < length) {
+            filled += dataSource.read(result, filled, length - filled);
+        }
+        return result;
+    }
+
+    /**
+     * Reads until the data source fails at the end of the finished buffer.
+     */
+    private static byte[] readToEnd(DataSource dataSource) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1000];
+        try {
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                result.write(chunk, 0, dataSource.read(chunk, 0, chunk.length));
+            }
+        } catch (IOException e) {
+            return result.toByteArray();
+        }
+    }
+
+    private void awaitLoaded() throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 10 * 1000;
+        while (session.isLoading()) {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Waits until the loader did not write for longer than it polls for the reader.
+     */
+    private void awaitStalled() throws InterruptedException {
+        long endPosition = -1;
+        while (endPosition != session.getEndPosition()) {
+            endPosition = session.getEndPosition();
+            Thread.sleep(1500);
+        }
+    }
+
+    @Test
+    void open_startsAtLivePosition() throws Exception {
+        server.enqueue(icyStream(audio(5000)));
+        session.start();
+        awaitLoaded();
+
+        assertEquals(5000, session.getEndPosition());
+        assertEquals(BITRATE * 1000 / 8, session.getBytesPerSecond());
+
+        // Nothing after the live position of a finished stream
+        DataSource dataSource = open();
+        assertEquals(5000, session.getReadPosition());
+        assertThrows(IOException.class, () -> dataSource.read(new byte[10], 0, 10));
+    }
+
+    @Test
+    void seekTo_nextDataSourceStartsThereAndReopenedOnesContinue() throws Exception {
+        byte[] audio = audio(5000);
+        server.enqueue(icyStream(audio));
+        session.start();
+        awaitLoaded();
+
+        session.seekTo(1000);
+        DataSource first = open();
+        assertArrayEquals(Arrays.copyOfRange(audio, 1000, 1500), read(first, 500));
+        first.close();
+
+        // Opened again after a load error
+        DataSource second = open();
+        assertArrayEquals(Arrays.copyOfRange(audio, 1500, 5000), readToEnd(second));
+        assertEquals(5000, session.getReadPosition());
+    }
+
+    @Test
+    void waitForReader_keepsAudioWhichWasNotRead() throws Exception {
+        byte[] audio = audio(3 * CAPACITY);
+        // Slow enough that the data source is opened before the buffer fills up
+        server.enqueue(icyStream(audio).throttleBody(16 * 1024, 100, TimeUnit.MILLISECONDS));
+
+        session.seekTo(0);
+        session.start();
+        DataSource paused = open();
+
+        awaitStalled();
+        assertTrue(session.isLoading());
+        assertEquals(0, session.getStartPosition());
+        assertTrue(session.getEndPosition() <= CAPACITY);
+
+        // Loading goes on while the player reads, nothing was dropped
+        assertArrayEquals(audio, readToEnd(paused));
+        assertEquals(audio.length, session.getEndPosition());
+    }
+
+    @Test
+    void release_failsDataSources() throws Exception {
+        server.enqueue(icyStream(audio(5000)));
+        session.start();
+        awaitLoaded();
+
+        session.seekTo(0);
+        DataSource dataSource = open();
+        session.release();
+
+        assertThrows(IOException.class, () -> dataSource.read(new byte[10], 0, 10));
+        assertThrows(IOException.class, this::open);
+        File[] files = directory.listFiles();
+        assertTrue(files == null || files.length == 0);
+    }
+
+    @Test
+    void shiftedPosition_fromPlayedPosition() {
+        // 2 seconds are read but not played yet
+        assertEquals(50000 - 2 * 16000 - 16000,
+                TimeShiftSession.shiftedPosition(50000, 100000, 2000, -1000, 16000));
+        assertEquals(100000 - 2 * 16000 - 10 * 16000,
+                TimeShiftSession.shiftedPosition(100000, 100000, 2000, -10000, 16000));
+
+        // Forward past the live position
+        assertEquals(TimeShiftSession.LIVE_POSITION,
+                TimeShiftSession.shiftedPosition(100000, 100000, 2000, 5000, 16000));
+        assertEquals(TimeShiftSession.LIVE_POSITION,
+                TimeShiftSession.shiftedPosition(100000, 100000, 0, 0, 16000));
+        assertEquals(100000 - 16000,
+                TimeShiftSession.shiftedPosition(100000, 100000, 2000, 1000, 16000));
+    }
+}
@@ -0,0 +1,115 @@
+package com.devnull.radio.saved;
+
+import com.devnull.radio.station.DataRadioStation;
+import com.devnull.radio.station.IndexedStationList;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class SavedStationLoadTest {
+    private final IndexedStationList list = new IndexedStationList();
+    private final SavedStationPositions positions = new SavedStationPositions();
+    private final SavedStationLoad load = new SavedStationLoad();
+
+    private static DataRadioStation station(String uuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        return station;
+    }
+
+    private void mergePage(String... uuids) {
+        List<DataRadioStation> stations = new ArrayList<>();
+        List<Long> loadedPositions = new ArrayList<>();
+        for (String uuid : uuids) {
+            stations.add(station(uuid));
+            loadedPositions.add((long) uuid.charAt(0) * SavedStationPositions.STEP);
+        }
+        load.merge(list, positions, stations, loadedPositions);
+    }
+
+    private void assertOrder(String... uuids) {
+        List<String> order = new ArrayList<>();
+        for (DataRadioStation station : list) {
+            order.add(station.StationUuid);
+        }
+        assertEquals(Arrays.asList(uuids), order);
+    }
+
+    @Test
+    void merge_betweenStationsAddedToFrontAndEnd() {
+        assertFalse(load.isChanged());
+
+        list.add(0, station("front"));
+        load.onAddedFront();
+        mergePage("a", "b");
+
+        list.add(station("end"));
+        load.onChanged();
+        mergePage("c");
+
+        assertOrder("front", "a", "b", "c", "end");
+        assertEquals(Long.valueOf('c' * SavedStationPositions.STEP), positions.get(list.get(3)));
+        assertNull(positions.get(list.get(0)));
+        assertTrue(load.isChanged());
+    }
+
+    @Test
+    void merge_skipsStationsWhichAreInTheListAlready() {
+        list.add(0, station("b"));
+        load.onAddedFront();
+        mergePage("a", "b", "c");
+
+        assertOrder("b", "a", "c");
+    }
+
+    @Test
+    void merge_skipsStationsRemovedMeanwhile() {
+        list.add(0, station("b"));
+        load.onAddedFront();
+        mergePage("a");
+
+        DataRadioStation removed = list.remove(0);
+        load.onRemoved(0, removed);
+        mergePage("b", "c");
+
+        assertOrder("a", "c");
+    }
+
+    @Test
+    void merge_afterMovesAndRestores() {
+        mergePage("a", "b");
+        list.add(station("end"));
+        load.onChanged();
+
+        // Loaded station moved behind the station added at the end
+        list.move(0, 2);
+        load.onMoved(0, 2);
+        mergePage("c");
+        assertOrder("b", "c", "end", "a");
+
+        // Station added at the end moved to the front
+        list.move(2, 0);
+        load.onMoved(2, 0);
+        list.add(1, station("restored"));
+        load.onAdded(1);
+        mergePage("d");
+        assertOrder("end", "restored", "b", "c", "d", "a");
+    }
+
+    @Test
+    void merge_afterCut() {
+        mergePage("a", "b", "c");
+
+        List<DataRadioStation> cut = list.subList(1, list.size());
+        load.onCut(1, cut);
+        cut.clear();
+        mergePage("b", "d");
+
+        assertOrder("a", "d");
+    }
+}
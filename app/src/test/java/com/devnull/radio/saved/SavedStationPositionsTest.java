@@ -0,0 +1,72 @@
+package com.devnull.radio.saved;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+class SavedStationPositionsTest {
+
+    private static DataRadioStation station(String uuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        return station;
+    }
+
+    @Test
+    void between_endsAndGaps() {
+        assertEquals(0, SavedStationPositions.between(null, null));
+        assertEquals(SavedStationPositions.STEP, SavedStationPositions.between(0L, null));
+        assertEquals(-SavedStationPositions.STEP, SavedStationPositions.between(null, 0L));
+        assertEquals(50, SavedStationPositions.between(0L, 100L));
+        assertEquals(1, SavedStationPositions.between(0L, 2L));
+    }
+
+    @Test
+    void between_noGapLeft() {
+        assertEquals(SavedStationPositions.NO_POSITION, SavedStationPositions.between(4L, 5L));
+        assertEquals(SavedStationPositions.NO_POSITION, SavedStationPositions.between(Long.MAX_VALUE - 1, null));
+        assertEquals(SavedStationPositions.NO_POSITION, SavedStationPositions.between(null, Long.MIN_VALUE + 1));
+    }
+
+    @Test
+    void between_repeatedInsertsBeforeSameStation() {
+        // Stations moved to the front of the list one after another halve the same gap
+        long first = 0;
+        long next = SavedStationPositions.STEP;
+        int inserts = 0;
+        while (true) {
+            long position = SavedStationPositions.between(first, next);
+            if (position == SavedStationPositions.NO_POSITION) {
+                break;
+            }
+            assertTrue(position > first && position < next);
+            next = position;
+            inserts++;
+        }
+        assertEquals(20, inserts);
+    }
+
+    @Test
+    void renumber_positionsInListOrder() {
+        DataRadioStation a = station("a");
+        DataRadioStation b = station("b");
+        DataRadioStation legacy = station(null);
+        legacy.StationId = "42";
+
+        SavedStationPositions positions = new SavedStationPositions();
+        positions.put(station("removed"), 7);
+        List<Long> numbered = positions.renumber(Arrays.asList(b, legacy, a));
+
+        assertEquals(Arrays.asList(0L, SavedStationPositions.STEP, 2 * SavedStationPositions.STEP), numbered);
+        assertEquals(Long.valueOf(0), positions.get(b));
+        assertEquals(Long.valueOf(SavedStationPositions.STEP), positions.get(legacy));
+        assertEquals(Long.valueOf(2 * SavedStationPositions.STEP), positions.get(a));
+        assertNull(positions.get(station("removed")));
+        assertEquals("id:42", SavedStationPositions.keyOf(legacy));
+    }
+}
@@ -0,0 +1,236 @@
+package com.devnull.radio.saved;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.devnull.radio.station.DataRadioStation;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class SavedStationRepositoryTest {
+    private static final String LIST_ID = "favourites";
+
+    private static class MemoryDao extends SavedStationDao {
+        // Rows of the list by station key
+        final TreeMap<String, SavedStationEntry> rows = new TreeMap<>();
+        int transactions = 0;
+        final List<Integer> rowsAtPageQuery = new ArrayList<>();
+
+        @Override
+        void write(@NonNull String listId, @Nullable List<SavedStationEntry> replacement, List<SavedStationWrite> writes) {
+            transactions++;
+            super.write(listId, replacement, writes);
+        }
+
+        @Override
+        public void put(SavedStationEntry entry) {
+            rows.put(entry.stationKey, entry);
+        }
+
+        @Override
+        void putAll(List<SavedStationEntry> entries) {
+            for (SavedStationEntry entry : entries) {
+                put(entry);
+            }
+        }
+
+        @Override
+        public void setPosition(@NonNull String listId, @NonNull String stationKey, long position) {
+            SavedStationEntry entry = rows.get(stationKey);
+            if (entry != null) {
+                entry.position = position;
+            }
+        }
+
+        @Override
+        void setStationJson(@NonNull String listId, @NonNull String stationKey, @NonNull String stationJson) {
+            SavedStationEntry entry = rows.get(stationKey);
+            if (entry != null) {
+                entry.stationJson = stationJson;
+            }
+        }
+
+        @Override
+        public void delete(@NonNull String listId, @NonNull String stationKey) {
+            rows.remove(stationKey);
+        }
+
+        @Override
+        public void deleteList(@NonNull String listId) {
+            rows.clear();
+        }
+
+        @Override
+        public List<SavedStationEntry> getPage(@NonNull String listId, long afterPosition, int limit) {
+            rowsAtPageQuery.add(rows.size());
+
+            List<SavedStationEntry> entries = new ArrayList<>();
+            for (SavedStationEntry entry : rows.values()) {
+                if (entry.position > afterPosition) {
+                    entries.add(entry);
+                }
+            }
+            Collections.sort(entries, (a, b) -> Long.compare(a.position, b.position));
+            return new ArrayList<>(entries.subList(0, Math.min(limit, entries.size())));
+        }
+    }
+
+    // Runs what was queued only when asked to
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> queued = new ArrayList<>();
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            queued.add(command);
+        }
+
+        void runAll() {
+            List<Runnable> commands = new ArrayList<>(queued);
+            queued.clear();
+            for (Runnable command : commands) {
+                command.run();
+            }
+        }
+    }
+
+    private final MemoryDao dao = new MemoryDao();
+    private final SavedStationRepository repository = new SavedStationRepository(LIST_ID, dao, null, Runnable::run, Runnable::run);
+
+    private static DataRadioStation station(String uuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        station.Name = uuid;
+        return station;
+    }
+
+    @Test
+    void changesOfAStation_areWrittenOnceInOneTransaction() {
+        DataRadioStation a = station("a");
+        DataRadioStation b = station("b");
+        repository.put(a, 10);
+        repository.setPosition(a, 20);
+        repository.setPosition(a, 30);
+        repository.put(b, 40);
+        repository.remove(Collections.singletonList(b));
+        assertEquals(0, dao.transactions);
+
+        repository.flush();
+
+        assertEquals(1, dao.transactions);
+        assertEquals(1, dao.rows.size());
+        assertEquals(30, dao.rows.get("a").position);
+    }
+
+    @Test
+    void replaceAll_dropsEarlierChanges() {
+        repository.put(station("a"), 10);
+        repository.flush();
+
+        repository.put(station("b"), 20);
+        repository.replaceAll(Collections.singletonList(station("c")), Collections.singletonList(5L));
+        repository.flush();
+
+        assertEquals(2, dao.transactions);
+        assertEquals(Collections.singleton("c"), dao.rows.keySet());
+        assertEquals(5, dao.rows.get("c").position);
+    }
+
+    @Test
+    void load_writesPendingChangesBeforeReadingPages() {
+        for (int i = 0; i < SavedStationRepository.PAGE_SIZE + 1; i++) {
+            repository.put(station(String.format("%03d", i)), i);
+        }
+
+        final List<String> events = new ArrayList<>();
+        repository.load(new SavedStationRepository.LoadListener() {
+            @Override
+            public void onStationsLoaded(@NonNull List<DataRadioStation> stations, @NonNull List<Long> positions) {
+                assertEquals(stations.size(), positions.size());
+                events.add("page");
+            }
+
+            @Override
+            public void onLoadFinished() {
+                events.add("finished");
+            }
+        });
+
+        assertEquals(1, dao.transactions);
+        assertEquals(SavedStationRepository.PAGE_SIZE + 1, dao.rowsAtPageQuery.get(0).intValue());
+        // The second page is shorter than a full one
+        assertEquals(2, dao.rowsAtPageQuery.size());
+        assertEquals(Arrays.asList("page", "page", "finished"), events);
+    }
+
+    @Test
+    void changesOfAStation_updateIsMergedIntoPut() {
+        DataRadioStation a = station("a");
+        repository.put(a, 10);
+        a.Name = "renamed";
+        repository.update(Collections.singletonList(a));
+        repository.setPosition(a, 20);
+
+        repository.flush();
+
+        assertEquals(1, dao.transactions);
+        assertEquals(20, dao.rows.get("a").position);
+        assertTrue(dao.rows.get("a").stationJson.contains("renamed"));
+    }
+
+    @Test
+    void flush_withoutChangesReturnsRightAway() {
+        // Would wait for the whole timeout if anything was queued
+        QueuedExecutor executor = new QueuedExecutor();
+        SavedStationRepository repository = new SavedStationRepository(LIST_ID, dao, null, executor, Runnable::run);
+
+        repository.flush();
+        repository.remove(Collections.<DataRadioStation>emptyList());
+        repository.flush();
+
+        assertTrue(executor.queued.isEmpty());
+        assertEquals(0, dao.transactions);
+    }
+
+    @Test
+    void flush_waitsForWriteOnQueryThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        SavedStationRepository repository = new SavedStationRepository(LIST_ID, dao, null, executor, Runnable::run);
+
+        repository.put(station("a"), 10);
+        repository.put(station("b"), 20);
+        repository.flush();
+
+        assertEquals(1, dao.transactions);
+        assertEquals(2, dao.rows.size());
+        executor.shutdown();
+    }
+
+    @Test
+    void flushInBackground_doesNotWait() {
+        QueuedExecutor executor = new QueuedExecutor();
+        SavedStationRepository repository = new SavedStationRepository(LIST_ID, dao, null, executor, Runnable::run);
+
+        repository.put(station("a"), 10);
+        repository.flushInBackground();
+        assertEquals(1, executor.queued.size());
+        assertEquals(0, dao.transactions);
+
+        executor.runAll();
+        assertEquals(1, dao.transactions);
+
+        // Everything was written already
+        repository.flushInBackground();
+        assertTrue(executor.queued.isEmpty());
+    }
+}
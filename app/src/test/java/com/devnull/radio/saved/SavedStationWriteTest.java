@@ -0,0 +1,52 @@
+package com.devnull.radio.saved;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SavedStationWriteTest {
+
+    @Test
+    void movesOfAddedStation_writeOneRow() {
+        SavedStationWrite write = new SavedStationWrite("a");
+        write.put(new SavedStationEntry("favourites", "a", 10, "{}"));
+        write.setPosition(20);
+        write.setPosition(30);
+        write.setStationJson("{\"name\":\"A\"}");
+
+        assertFalse(write.delete);
+        assertNotNull(write.entry);
+        assertEquals(30, write.entry.position);
+        assertEquals("{\"name\":\"A\"}", write.entry.stationJson);
+        assertNull(write.position);
+        assertNull(write.stationJson);
+    }
+
+    @Test
+    void movesOfStoredStation_keepLastPosition() {
+        SavedStationWrite write = new SavedStationWrite("a");
+        write.setPosition(20);
+        write.setPosition(5);
+
+        assertNull(write.entry);
+        assertEquals(Long.valueOf(5), write.position);
+        assertNull(write.stationJson);
+    }
+
+    @Test
+    void delete_dropsEarlierChanges() {
+        SavedStationWrite write = new SavedStationWrite("a");
+        write.put(new SavedStationEntry("history", "a", 10, "{}"));
+        write.delete();
+        write.setPosition(20);
+
+        assertTrue(write.delete);
+        assertNull(write.entry);
+        assertNull(write.position);
+
+        // Added again after it was removed
+        write.put(new SavedStationEntry("history", "a", 40, "{}"));
+        assertFalse(write.delete);
+        assertEquals(40, write.entry.position);
+    }
+}
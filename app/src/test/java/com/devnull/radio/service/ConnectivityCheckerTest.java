@@ -0,0 +1,39 @@
+package com.devnull.radio.service;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import static com.devnull.radio.service.ConnectivityChecker.ConnectionType.METERED;
+import static com.devnull.radio.service.ConnectivityChecker.ConnectionType.NOT_METERED;
+
+class ConnectivityCheckerTest {
+    private ConnectivityChecker connectivityChecker;
+
+    @BeforeEach
+    void init() {
+        connectivityChecker = new ConnectivityChecker();
+        connectivityChecker.update(true, NOT_METERED);
+    }
+
+    @Test
+    void update_connectionTypeChanges() {
+        assertFalse(connectivityChecker.update(true, NOT_METERED));
+        assertTrue(connectivityChecker.update(true, METERED));
+        assertFalse(connectivityChecker.update(true, METERED));
+        // Only the type is reported by default
+        assertFalse(connectivityChecker.update(false, METERED));
+        assertFalse(connectivityChecker.update(true, METERED));
+    }
+
+    @Test
+    void update_lostAndReturnedConnection() {
+        connectivityChecker.setNotifyReconnects(true);
+
+        // Lost networks keep the last connection type
+        assertTrue(connectivityChecker.update(false, NOT_METERED));
+        assertFalse(connectivityChecker.update(false, NOT_METERED));
+        assertTrue(connectivityChecker.update(true, NOT_METERED));
+        assertFalse(connectivityChecker.update(true, NOT_METERED));
+    }
+}
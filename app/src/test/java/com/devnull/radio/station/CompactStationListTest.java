@@ -0,0 +1,127 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class CompactStationListTest {
+
+    private static DataRadioStation station(String uuid, String tags) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        station.ChangeUuid = "change-" + uuid;
+        station.Name = "Radio " + uuid;
+        station.StreamUrl = "http://" + uuid + ".example.com/live.mp3";
+        station.HomePageUrl = "http://" + uuid + ".example.com";
+        station.IconUrl = "http://" + uuid + ".example.com/favicon.png";
+        station.Country = "Poland";
+        station.CountryCode = "PL";
+        station.State = "Mazowieckie";
+        station.Language = "polish";
+        station.Codec = "MP3";
+        station.TagsAll = tags;
+        return station;
+    }
+
+    @Test
+    void get_keepsAllFields() {
+        DataRadioStation original = station("a", "pop,rock");
+        original.StationId = "42";
+        original.ClickCount = 1234;
+        original.ClickTrend = -3;
+        original.Votes = 17;
+        original.RefreshRetryCount = 2;
+        original.Bitrate = 128;
+        original.Working = false;
+        original.Hls = true;
+        original.DeletedOnServer = true;
+
+        DataRadioStation copy = CompactStationList.of(Arrays.asList(station("b", null), original)).get(1);
+
+        assertNotSame(original, copy);
+        assertEquals(original.StationUuid, copy.StationUuid);
+        assertEquals(original.ChangeUuid, copy.ChangeUuid);
+        assertEquals(original.StationId, copy.StationId);
+        assertEquals(original.Name, copy.Name);
+        assertEquals(original.StreamUrl, copy.StreamUrl);
+        assertEquals(original.HomePageUrl, copy.HomePageUrl);
+        assertEquals(original.IconUrl, copy.IconUrl);
+        assertEquals(original.Country, copy.Country);
+        assertEquals(original.CountryCode, copy.CountryCode);
+        assertEquals(original.State, copy.State);
+        assertEquals(original.Language, copy.Language);
+        assertEquals(original.Codec, copy.Codec);
+        assertEquals(original.TagsAll, copy.TagsAll);
+        assertEquals(original.ClickCount, copy.ClickCount);
+        assertEquals(original.ClickTrend, copy.ClickTrend);
+        assertEquals(original.Votes, copy.Votes);
+        assertEquals(original.RefreshRetryCount, copy.RefreshRetryCount);
+        assertEquals(original.Bitrate, copy.Bitrate);
+        assertEquals(original.Working, copy.Working);
+        assertEquals(original.Hls, copy.Hls);
+        assertEquals(original.DeletedOnServer, copy.DeletedOnServer);
+        assertArrayEquals(new String[]{"pop", "rock"}, copy.getTags());
+    }
+
+    @Test
+    void tags_splitOncePerDistinctList() {
+        List<DataRadioStation> stations = new ArrayList<>();
+        stations.add(station("a", "pop,rock"));
+        stations.add(station("b", new String("pop,rock")));
+        stations.add(station("c", "rock,news"));
+
+        CompactStationList list = CompactStationList.of(stations);
+
+        assertSame(list.getTags(0), list.getTags(1));
+        assertSame(list.get(0).getTags(), list.get(1).getTags());
+        // Same tag in different lists is one string
+        assertSame(list.getTags(0)[1], list.getTags(2)[0]);
+        assertSame(list.get(0).Country, list.get(2).Country);
+    }
+
+    @Test
+    void tags_emptyOrMissing() {
+        CompactStationList list = CompactStationList.of(Arrays.asList(station("a", null), station("b", "")));
+
+        assertEquals(0, list.getTags(0).length);
+        assertEquals(0, list.getTags(1).length);
+        assertNull(list.get(0).TagsAll);
+        assertEquals("", list.get(1).TagsAll);
+        assertEquals(0, list.get(1).getTags().length);
+    }
+
+    @Test
+    void get_reusesRecentStations() {
+        List<DataRadioStation> stations = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            stations.add(station("s" + i, "pop"));
+        }
+        CompactStationList list = CompactStationList.of(stations);
+
+        DataRadioStation first = list.get(5);
+        assertSame(first, list.get(5));
+
+        // Replaced in the cache by a station which falls into the same slot
+        list.get(5 + 64);
+        DataRadioStation again = list.get(5);
+        assertNotSame(first, again);
+        assertEquals("s5", again.StationUuid);
+    }
+
+    @Test
+    void positionOf_andOf() {
+        CompactStationList list = CompactStationList.of(Arrays.asList(station("a", "x"), station("b", "y")));
+
+        assertEquals(1, list.positionOf("b"));
+        assertEquals(-1, list.positionOf("c"));
+        assertEquals(-1, list.positionOf(null));
+        assertEquals("b", list.getStationUuid(1));
+        assertEquals("Radio a", list.getName(0));
+        assertSame(list, CompactStationList.of(list));
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(2));
+    }
+}
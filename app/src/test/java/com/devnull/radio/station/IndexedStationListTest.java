@@ -0,0 +1,185 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+class IndexedStationListTest {
+
+    private static DataRadioStation station(String uuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        return station;
+    }
+
+    private static IndexedStationList listOf(String... uuids) {
+        IndexedStationList list = new IndexedStationList();
+        for (String uuid : uuids) {
+            list.add(station(uuid));
+        }
+        return list;
+    }
+
+    private static void assertOrder(IndexedStationList list, String... uuids) {
+        assertEquals(uuids.length, list.size());
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(uuids[i], list.get(i).StationUuid);
+            assertEquals(i, list.positionOf(uuids[i]));
+        }
+    }
+
+    @Test
+    void positionOf_afterAppendInsertAndRemove() {
+        IndexedStationList list = listOf("a", "b", "c");
+        assertOrder(list, "a", "b", "c");
+        assertEquals(-1, list.positionOf("d"));
+        assertEquals(-1, list.positionOf(null));
+
+        list.add(0, station("d"));
+        assertOrder(list, "d", "a", "b", "c");
+
+        list.remove(1);
+        assertOrder(list, "d", "b", "c");
+        assertFalse(list.containsUuid("a"));
+
+        list.set(1, station("e"));
+        assertOrder(list, "d", "e", "c");
+        assertNull(list.getByUuid("b"));
+        assertSame(list.get(1), list.getByUuid("e"));
+    }
+
+    @Test
+    void move_reindexesMovedRange() {
+        IndexedStationList list = listOf("a", "b", "c", "d", "e");
+        assertEquals(0, list.positionOf("a"));
+
+        list.move(3, 0);
+        assertOrder(list, "d", "a", "b", "c", "e");
+
+        list.move(1, 4);
+        assertOrder(list, "d", "b", "c", "e", "a");
+    }
+
+    @Test
+    void subListClear_cutsTheEnd() {
+        IndexedStationList list = listOf("a", "b", "c", "d");
+        assertEquals(3, list.positionOf("d"));
+
+        list.subList(2, list.size()).clear();
+        assertOrder(list, "a", "b");
+        assertEquals(-1, list.positionOf("c"));
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(-1, list.positionOf("a"));
+        list.addAll(Arrays.asList(station("x"), station("y")));
+        assertOrder(list, "x", "y");
+    }
+
+    @Test
+    void duplicates_firstPositionWins() {
+        IndexedStationList list = listOf("a", "b", "a");
+        assertEquals(0, list.positionOf("a"));
+
+        list.move(0, 2);
+        assertEquals(0, list.positionOf("b"));
+        assertEquals(1, list.positionOf("a"));
+
+        list.remove(1);
+        assertOrder(list, "b", "a");
+        list.remove(1);
+        assertEquals(-1, list.positionOf("a"));
+    }
+
+    @Test
+    void getNextAndPrevious_wrapAround() {
+        IndexedStationList list = listOf("a", "b", "c");
+
+        assertEquals("b", list.getNext("a").StationUuid);
+        assertEquals("a", list.getNext("c").StationUuid);
+        assertEquals("a", list.getNext("unknown").StationUuid);
+
+        assertEquals("b", list.getPrevious("c").StationUuid);
+        assertEquals("c", list.getPrevious("a").StationUuid);
+        assertEquals("c", list.getPrevious("unknown").StationUuid);
+
+        assertNull(new IndexedStationList().getNext("a"));
+        assertNull(new IndexedStationList().getPrevious("a"));
+    }
+
+    @Test
+    void addFront_keepsIndexOfWholeList() {
+        IndexedStationList list = listOf("a", "b", "c");
+        for (String uuid : new String[]{"d", "e", "f"}) {
+            list.add(0, station(uuid));
+        }
+        list.remove(0);
+        list.add(2, station("g"));
+        list.remove(4);
+
+        assertOrder(list, "e", "d", "g", "a", "c");
+    }
+
+    @Test
+    void randomChanges_matchScanningTheList() {
+        Random random = new Random(42);
+        IndexedStationList list = new IndexedStationList();
+        List<DataRadioStation> expected = new ArrayList<>();
+
+        for (int step = 0; step < 2000; step++) {
+            final int size = expected.size();
+            final int position = random.nextInt(size + 1);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1: {
+                    // Mostly unique uuids, sometimes a duplicate
+                    DataRadioStation station = station("s" + random.nextInt(step < 1000 ? 100000 : 40));
+                    list.add(position, station);
+                    expected.add(position, station);
+                    break;
+                }
+                case 2:
+                    if (size > 0) {
+                        assertSame(expected.remove(position % size), list.remove(position % size));
+                    }
+                    break;
+                case 3:
+                    if (size > 0) {
+                        int to = random.nextInt(size);
+                        list.move(position % size, to);
+                        expected.add(to, expected.remove(position % size));
+                    }
+                    break;
+                default: {
+                    int end = Math.min(size, position + random.nextInt(3));
+                    list.subList(position, end).clear();
+                    expected.subList(position, end).clear();
+                    break;
+                }
+            }
+
+            assertEquals(expected, list);
+            for (int i = 0; i < 5; i++) {
+                String uuid = "s" + random.nextInt(100);
+                assertEquals(firstPosition(expected, uuid), list.positionOf(uuid));
+            }
+            for (DataRadioStation station : expected) {
+                assertEquals(firstPosition(expected, station.StationUuid), list.positionOf(station.StationUuid));
+            }
+        }
+    }
+
+    private static int firstPosition(List<DataRadioStation> stations, String uuid) {
+        for (int i = 0; i < stations.size(); i++) {
+            if (uuid.equals(stations.get(i).StationUuid)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,144 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class StationBatchRefresherTest {
+    private ExecutorService executor;
+
+    @BeforeEach
+    void init() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static List<String> uuids(int count) {
+        List<String> uuids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            uuids.add("uuid-" + i);
+        }
+        return uuids;
+    }
+
+    private static DataRadioStation station(String uuid) {
+        DataRadioStation station = new DataRadioStation();
+        station.StationUuid = uuid;
+        station.Name = "Station " + uuid;
+        return station;
+    }
+
+    @Test
+    void split_boundsChunksAndRemovesDuplicates() {
+        List<List<String>> chunks = StationBatchRefresher.split(Arrays.asList("a", "b", "c", "a", "d", "e"), 2);
+
+        assertEquals(3, chunks.size());
+        assertEquals(Arrays.asList("a", "b"), chunks.get(0));
+        assertEquals(Arrays.asList("c", "d"), chunks.get(1));
+        assertEquals(Arrays.asList("e"), chunks.get(2));
+    }
+
+    @Test
+    void refresh_loadsChunksConcurrently() {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        StationBatchRefresher refresher = new StationBatchRefresher(uuids -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            running.decrementAndGet();
+
+            List<DataRadioStation> stations = new ArrayList<>();
+            for (String uuid : uuids) {
+                stations.add(station(uuid));
+            }
+            return stations;
+        }, 10, executor);
+
+        final List<Integer> progress = new ArrayList<>();
+        StationBatchRefresher.Result result = refresher.refresh(uuids(60), (stations, finished, total) -> {
+            assertEquals(6, total);
+            assertNotNull(stations);
+            progress.add(finished);
+        });
+
+        assertTrue(result.isComplete());
+        assertEquals(6, result.getTotalChunks());
+        assertEquals(60, result.getStations().size());
+        assertEquals("Station uuid-42", result.get("uuid-42").Name);
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), progress);
+        assertEquals(3, maxRunning.get());
+    }
+
+    @Test
+    void refresh_reportsMissingStationsAndFailedChunks() {
+        StationBatchRefresher refresher = new StationBatchRefresher(uuids -> {
+            if (uuids.contains("uuid-0")) {
+                return null;
+            }
+
+            List<DataRadioStation> stations = new ArrayList<>();
+            for (String uuid : uuids) {
+                if (!uuid.equals("uuid-7")) {
+                    stations.add(station(uuid));
+                }
+            }
+            return stations;
+        }, 5, executor);
+
+        StationBatchRefresher.Result result = refresher.refresh(uuids(10), null);
+
+        assertFalse(result.isComplete());
+        assertEquals(1, result.getFailedChunks());
+        assertEquals(4, result.getStations().size());
+        assertNull(result.get("uuid-0"));
+        // stations of failed chunks are not known to be missing
+        assertEquals(1, result.getMissing().size());
+        assertTrue(result.getMissing().contains("uuid-7"));
+    }
+
+    @Test
+    void refresh_ignoresEmptyUuids() {
+        final AtomicInteger loads = new AtomicInteger();
+        StationBatchRefresher refresher = new StationBatchRefresher(uuids -> {
+            loads.incrementAndGet();
+            return new ArrayList<>();
+        }, 5, executor);
+
+        StationBatchRefresher.Result result = refresher.refresh(Arrays.asList("", null, ""), null);
+
+        assertEquals(0, result.getTotalChunks());
+        assertEquals(0, loads.get());
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    void cancel_failsRemainingChunks() {
+        ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+        final StationBatchRefresher[] refresher = new StationBatchRefresher[1];
+        refresher[0] = new StationBatchRefresher(uuids -> {
+            refresher[0].cancel();
+            return new ArrayList<>();
+        }, 1, singleThreadExecutor);
+
+        StationBatchRefresher.Result result = refresher[0].refresh(uuids(5), null);
+
+        assertTrue(refresher[0].isCancelled());
+        assertFalse(result.isComplete());
+        singleThreadExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,203 @@
+package com.devnull.radio.station;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares peak heap and decode time of {@link StationJsonStreamDecoder} with the
+ * string based decoding which was used before.
+ * <p>
+ * Run with {@code ./gradlew testDebugUnitTest -Pbenchmark --tests '*StationDecodeBenchmark'}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StationDecodeBenchmark {
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int ROUNDS = 5;
+
+    private interface Decoder {
+        List<DataRadioStation> decode(File file) throws Exception;
+    }
+
+    @Test
+    void benchmark() throws Exception {
+        for (int stations : new int[]{1000, 10000, 50000}) {
+            File file = File.createTempFile("stations", ".json");
+            try {
+                writeStations(file, stations);
+
+                measure("string  ", stations, file, StationDecodeBenchmark::decodeString);
+                measure("stream  ", stations, file, StationDecodeBenchmark::decodeStream);
+            } finally {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private static void measure(String name, int stations, File file, Decoder decoder) throws Exception {
+        // warm up
+        assertEquals(stations, decoder.decode(file).size());
+
+        long bestTime = Long.MAX_VALUE;
+        long bestPeak = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            System.gc();
+            long baseline = usedHeap();
+            resetPeakHeap();
+
+            long start = System.nanoTime();
+            List<DataRadioStation> result = decoder.decode(file);
+            long time = System.nanoTime() - start;
+
+            long peak = peakHeap() - baseline;
+            assertEquals(stations, result.size());
+
+            bestTime = Math.min(bestTime, time);
+            bestPeak = Math.min(bestPeak, peak);
+        }
+
+        System.out.println(String.format("%s %6d stations (%5d KiB): %6d ms, peak heap %7d KiB",
+                name, stations, file.length() / 1024, bestTime / 1000000, bestPeak / 1024));
+    }
+
+    /**
+     * Same pipeline as {@link DataRadioStation#DecodeJson(String)}: body as string, json tree, objects.
+     * DecodeJson itself cannot be called here because TextUtils is only a stub in unit tests.
+     */
+    private static List<DataRadioStation> decodeString(File file) throws Exception {
+        String body = readString(file);
+
+        List<DataRadioStation> list = new ArrayList<>();
+        JSONArray jsonArray = new JSONArray(body);
+        for (int i = 0; i < jsonArray.length(); i++) {
+            JSONObject anObject = jsonArray.getJSONObject(i);
+
+            DataRadioStation aStation = new DataRadioStation();
+            aStation.Name = anObject.getString("name");
+            aStation.StreamUrl = anObject.getString("url");
+            aStation.StationUuid = anObject.getString("stationuuid");
+            aStation.ChangeUuid = anObject.getString("changeuuid");
+            aStation.Votes = anObject.getInt("votes");
+            aStation.HomePageUrl = anObject.getString("homepage");
+            aStation.TagsAll = anObject.getString("tags");
+            aStation.Country = anObject.getString("country");
+            aStation.CountryCode = anObject.getString("countrycode");
+            aStation.State = anObject.getString("state");
+            aStation.IconUrl = anObject.getString("favicon");
+            aStation.Language = anObject.getString("language");
+            aStation.ClickCount = anObject.getInt("clickcount");
+            aStation.ClickTrend = anObject.getInt("clicktrend");
+            aStation.Bitrate = anObject.getInt("bitrate");
+            aStation.Codec = anObject.getString("codec");
+            aStation.Working = anObject.getInt("lastcheckok") != 0;
+            aStation.Hls = anObject.getInt("hls") != 0;
+            list.add(aStation);
+        }
+        return list;
+    }
+
+    private static List<DataRadioStation> decodeStream(File file) throws IOException {
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), UTF8)) {
+            return StationJsonStreamDecoder.decode(reader);
+        }
+    }
+
+    private static String readString(File file) throws IOException {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int offset = 0;
+            int read;
+            while (offset < bytes.length && (read = inputStream.read(bytes, offset, bytes.length - offset)) != -1) {
+                offset += read;
+            }
+            return new String(bytes, 0, offset, UTF8);
+        }
+    }
+
+    private static void writeStations(File file, int count) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), UTF8))) {
+            writer.write('[');
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+
+                JSONObject station = new JSONObject();
+                try {
+                    station.put("changeuuid", "8f1e0c1a-" + i);
+                    station.put("stationuuid", "96062a7b-" + i);
+                    station.put("name", "Benchmark Radio " + i);
+                    station.put("url", "http://stream" + i + ".example.com:8000/live.mp3");
+                    station.put("url_resolved", "http://stream" + i + ".example.com:8000/live.mp3");
+                    station.put("homepage", "http://www.example.com/radio/" + i);
+                    station.put("favicon", "http://www.example.com/radio/" + i + "/favicon.png");
+                    station.put("tags", "pop,rock,news,talk," + (i % 50));
+                    station.put("country", "Poland");
+                    station.put("countrycode", "PL");
+                    station.put("state", "Mazowieckie");
+                    station.put("language", "polish");
+                    station.put("votes", i % 1000);
+                    station.put("lastchangetime", "2020-05-01 12:00:00");
+                    station.put("codec", "MP3");
+                    station.put("bitrate", 128);
+                    station.put("hls", 0);
+                    station.put("lastcheckok", 1);
+                    station.put("clickcount", i % 5000);
+                    station.put("clicktrend", i % 7 - 3);
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+                writer.write(station.toString());
+            }
+            writer.write(']');
+        }
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
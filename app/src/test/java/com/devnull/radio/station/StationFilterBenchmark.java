@@ -0,0 +1,160 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import me.xdrop.fuzzywuzzy.FuzzySearch;
+
+/**
+ * Compares the time per keystroke of the local station filter using {@link StationNameIndex},
+ * on one thread and on all cores, with scoring every station name as it was done before.
+ * <p>
+ * Run with {@code ./gradlew testDebugUnitTest -Pbenchmark --tests '*StationFilterBenchmark'}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StationFilterBenchmark {
+    private static final int STATIONS = 20000;
+    private static final int ROUNDS = 5;
+
+    private static final String[] WORDS = {"radio", "fm", "bob", "jazz", "rock", "classic", "antenne", "bayern",
+            "news", "talk", "hits", "deutschlandfunk", "kultur", "smooth", "lounge", "chillout", "dance", "1live",
+            "wdr", "bbc", "paloma", "schlager", "oldies", "80s", "90s", "country", "metal", "punk", "latino", "salsa"};
+    private static final String[] QUERIES = {"radio bob", "deutschlandfunk", "jazz lounge", "schlagr"};
+
+    private interface Filter {
+        List<DataRadioStation> filter(String query);
+    }
+
+    private static class WeightedStation {
+        DataRadioStation station;
+        int weight;
+
+        WeightedStation(DataRadioStation station, int weight) {
+            this.station = station;
+            this.weight = weight;
+        }
+    }
+
+    @Test
+    void benchmark() {
+        List<DataRadioStation> stations = generateStations(STATIONS);
+
+        long start = System.nanoTime();
+        StationNameIndex index = new StationNameIndex(stations, null);
+        System.out.println(String.format("index of %d stations built in %d ms", STATIONS, (System.nanoTime() - start) / 1000000));
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            StationNameIndex parallelIndex = new StationNameIndex(stations, executor);
+
+            for (String query : QUERIES) {
+                compareResults(query, scanAll(stations, query), index.filter(query));
+                assertEquals(index.filter(query), parallelIndex.filter(query), query);
+
+                measure("scan          ", query, q -> scanAll(stations, q));
+                measure("index         ", query, index::filter);
+                measure(String.format("index pool %2d", threads), query, parallelIndex::filter);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The index may only miss stations which barely passed the threshold.
+     */
+    private static void compareResults(String query, List<DataRadioStation> scanned, List<DataRadioStation> indexed) {
+        Set<DataRadioStation> missing = new HashSet<>(scanned);
+        missing.removeAll(indexed);
+
+        int bestMissingWeight = 0;
+        for (DataRadioStation station : missing) {
+            bestMissingWeight = Math.max(bestMissingWeight, FuzzySearch.partialRatio(query, station.Name.toLowerCase()));
+        }
+
+        System.out.println(String.format("%-16s scan %5d, index %5d, missing %4d with weight <= %d",
+                query, scanned.size(), indexed.size(), missing.size(), bestMissingWeight));
+        assertTrue(scanned.containsAll(indexed), query);
+        assertTrue(bestMissingWeight < 70, query);
+    }
+
+    private static void measure(String name, String query, Filter filter) {
+        // warm up
+        typeQuery(query, filter);
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            best = Math.min(best, typeQuery(query, filter));
+        }
+
+        System.out.println(String.format("%s %-16s %6.2f ms per keystroke", name, query, best / 1000000.0 / query.length()));
+    }
+
+    private static long typeQuery(String query, Filter filter) {
+        long start = System.nanoTime();
+        for (int i = 1; i <= query.length(); i++) {
+            filter.filter(query.substring(0, i));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Filtering as it was done before {@link StationNameIndex}.
+     */
+    private static List<DataRadioStation> scanAll(List<DataRadioStation> stations, String query) {
+        ArrayList<WeightedStation> filteredStations = new ArrayList<>();
+
+        for (DataRadioStation station : stations) {
+            int weight = FuzzySearch.partialRatio(query, station.Name.toLowerCase());
+            if (weight > 55) {
+                filteredStations.add(new WeightedStation(station, weight / 4));
+            }
+        }
+
+        Collections.sort(filteredStations, (x, y) -> {
+            if (x.weight == y.weight) {
+                return -Integer.compare(x.station.ClickCount, y.station.ClickCount);
+            }
+            return -Integer.compare(x.weight, y.weight);
+        });
+
+        List<DataRadioStation> result = new ArrayList<>();
+        for (WeightedStation weightedStation : filteredStations) {
+            result.add(weightedStation.station);
+        }
+        return result;
+    }
+
+    private static List<DataRadioStation> generateStations(int count) {
+        Random random = new Random(42);
+        List<DataRadioStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder name = new StringBuilder();
+            int words = 1 + random.nextInt(3);
+            for (int w = 0; w < words; w++) {
+                String word = WORDS[random.nextInt(WORDS.length)];
+                name.append(Character.toUpperCase(word.charAt(0))).append(word.substring(1)).append(' ');
+            }
+            name.append(i);
+
+            DataRadioStation station = new DataRadioStation();
+            station.Name = name.toString();
+            station.StationUuid = "96062a7b-" + i;
+            station.ClickCount = random.nextInt(5000);
+            stations.add(station);
+        }
+        return stations;
+    }
+}
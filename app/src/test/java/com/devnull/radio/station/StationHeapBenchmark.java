@@ -0,0 +1,92 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the retained heap of stations kept as {@link DataRadioStation} objects with the
+ * same stations kept in a {@link CompactStationList}.
+ * <p>
+ * Run with {@code ./gradlew testDebugUnitTest -Pbenchmark --tests '*StationHeapBenchmark'}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StationHeapBenchmark {
+    private static final String[] COUNTRIES = {"Poland", "Germany", "France", "United States", "Brazil"};
+    private static final String[] COUNTRY_CODES = {"PL", "DE", "FR", "US", "BR"};
+    private static final String[] LANGUAGES = {"polish", "german", "french", "english", "portuguese"};
+    private static final String[] CODECS = {"MP3", "AAC", "AAC+", "OGG"};
+    private static final String[] TAGS = {"pop", "rock", "news", "talk", "jazz", "classical", "dance", "oldies"};
+
+    @Test
+    void benchmark() {
+        for (int count : new int[]{1000, 10000, 50000}) {
+            System.gc();
+            long baseline = usedHeap();
+            List<DataRadioStation> objects = createStations(count);
+            long objectsHeap = retainedSince(baseline);
+
+            System.gc();
+            baseline = usedHeap();
+            CompactStationList compact = CompactStationList.of(createStations(count));
+            long compactHeap = retainedSince(baseline);
+
+            assertEquals(count, objects.size());
+            assertEquals(count, compact.size());
+
+            System.out.println(String.format("%6d stations: objects %7d KiB, compact %7d KiB",
+                    count, objectsHeap / 1024, compactHeap / 1024));
+        }
+    }
+
+    /**
+     * Stations as decoded from json, every string is its own object like it is after parsing.
+     */
+    private static List<DataRadioStation> createStations(int count) {
+        List<DataRadioStation> stations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DataRadioStation station = new DataRadioStation();
+            station.ChangeUuid = "8f1e0c1a-5d2b-4c7e-9a3f-" + String.format("%012d", i);
+            station.StationUuid = "96062a7b-0601-11e8-ae97-" + String.format("%012d", i);
+            station.Name = "Benchmark Radio " + i;
+            station.StreamUrl = "http://stream" + i + ".example.com:8000/live.mp3";
+            station.HomePageUrl = "http://www.example.com/radio/" + i;
+            station.IconUrl = "http://www.example.com/radio/" + i + "/favicon.png";
+            station.Country = new String(COUNTRIES[i % COUNTRIES.length]);
+            station.CountryCode = new String(COUNTRY_CODES[i % COUNTRY_CODES.length]);
+            station.State = new String("State " + (i % 40));
+            station.Language = new String(LANGUAGES[i % LANGUAGES.length]);
+            station.Codec = new String(CODECS[i % CODECS.length]);
+            station.TagsAll = TAGS[i % TAGS.length] + "," + TAGS[(i / 8) % TAGS.length] + "," + (i % 50);
+            station.Votes = i % 1000;
+            station.ClickCount = i % 5000;
+            station.ClickTrend = i % 7 - 3;
+            station.Bitrate = 128;
+            // Tags are split when a station is shown, keep the split tags as the list would
+            station.getTags();
+            stations.add(station);
+        }
+        return stations;
+    }
+
+    private static long retainedSince(long baseline) {
+        System.gc();
+        return usedHeap() - baseline;
+    }
+
+    private static long usedHeap() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                used += pool.getUsage().getUsed();
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,106 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+
+class StationJsonStreamDecoderTest {
+
+    @Test
+    void decode_readsAllFields() throws IOException {
+        final String json = "[{\"name\":\"Radio 1\",\"url\":\"http://example.com/stream\",\"stationuuid\":\"uuid-1\"," +
+                "\"changeuuid\":\"change-1\",\"votes\":12,\"homepage\":\"http://example.com\",\"tags\":\"rock,pop\"," +
+                "\"country\":\"Poland\",\"countrycode\":\"PL\",\"state\":\"\",\"favicon\":\"http://example.com/icon.png\"," +
+                "\"language\":\"polish\",\"clickcount\":34,\"clicktrend\":-2,\"bitrate\":128,\"codec\":\"MP3\"," +
+                "\"lastcheckok\":1,\"hls\":0,\"unknown\":{\"nested\":[1,2,3]}}]";
+
+        List<DataRadioStation> stations = StationJsonStreamDecoder.decode(new StringReader(json));
+
+        assertEquals(1, stations.size());
+        DataRadioStation station = stations.get(0);
+        assertEquals("Radio 1", station.Name);
+        assertEquals("http://example.com/stream", station.StreamUrl);
+        assertEquals("uuid-1", station.StationUuid);
+        assertEquals("change-1", station.ChangeUuid);
+        assertEquals(12, station.Votes);
+        assertEquals("rock,pop", station.TagsAll);
+        assertEquals("PL", station.CountryCode);
+        assertEquals(34, station.ClickCount);
+        assertEquals(-2, station.ClickTrend);
+        assertEquals(128, station.Bitrate);
+        assertEquals("MP3", station.Codec);
+        assertTrue(station.Working);
+        assertFalse(station.Hls);
+    }
+
+    @Test
+    void decode_acceptsNumbersAsStringsAndNulls() throws IOException {
+        // Favourites are stored by DataRadioStation.toJson() which writes some numbers as strings
+        final String json = "[{\"name\":\"Radio 2\",\"bitrate\":\"96\",\"lastcheckok\":\"0\",\"votes\":null,\"homepage\":null}]";
+
+        List<DataRadioStation> stations = StationJsonStreamDecoder.decode(new StringReader(json));
+
+        assertEquals(1, stations.size());
+        assertEquals(96, stations.get(0).Bitrate);
+        assertFalse(stations.get(0).Working);
+        assertEquals(0, stations.get(0).Votes);
+        assertEquals("", stations.get(0).HomePageUrl);
+        assertEquals("", stations.get(0).StreamUrl);
+    }
+
+    @Test
+    void decode_handsRequestedExtraFieldsToCallback() throws IOException {
+        final String json = "[{\"name\":\"Radio 4\",\"lastchangetime\":\"2020-05-01 10:00:00\",\"geo_lat\":51.1," +
+                "\"clicktimestamp\":\"2020-05-02 11:00:00\"},{\"name\":\"Radio 5\",\"lastchangetime\":null}]";
+
+        final List<Map<String, String>> extras = new ArrayList<>();
+        int count = StationJsonStreamDecoder.decode(new StringReader(json), new HashSet<>(Arrays.asList("lastchangetime", "geo_lat")),
+                (station, extraFields) -> extras.add(extraFields));
+
+        assertEquals(2, count);
+        assertEquals("2020-05-01 10:00:00", extras.get(0).get("lastchangetime"));
+        assertEquals("51.1", extras.get(0).get("geo_lat"));
+        assertFalse(extras.get(0).containsKey("clicktimestamp"));
+        assertEquals("", extras.get(1).get("lastchangetime"));
+    }
+
+    @Test
+    void decode_skipsStationsWithoutName() throws IOException {
+        final String json = "[{\"url\":\"http://example.com/a\"},{\"name\":\"Radio 3\"},42]";
+
+        List<DataRadioStation> stations = StationJsonStreamDecoder.decode(new StringReader(json));
+
+        assertEquals(1, stations.size());
+        assertEquals("Radio 3", stations.get(0).Name);
+    }
+
+    @Test
+    void decode_handsStationsToCallbackInOrder() throws IOException {
+        final String json = "[{\"name\":\"A\"},{\"name\":\"B\"},{\"name\":\"C\"}]";
+        final List<String> names = new ArrayList<>();
+
+        int count = StationJsonStreamDecoder.decode(new StringReader(json), station -> names.add(station.Name));
+
+        assertEquals(3, count);
+        assertEquals("A", names.get(0));
+        assertEquals("B", names.get(1));
+        assertEquals("C", names.get(2));
+    }
+
+    @Test
+    void decode_failsOnTruncatedDocument() {
+        final String json = "[{\"name\":\"A\"},{\"name\":\"B\"";
+        final List<String> names = new ArrayList<>();
+
+        assertThrows(IOException.class, () -> StationJsonStreamDecoder.decode(new StringReader(json), station -> names.add(station.Name)));
+        assertEquals(1, names.size());
+    }
+}
@@ -0,0 +1,170 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.devnull.radio.utils.CancellationToken;
+
+class StationNameIndexTest {
+
+    private static List<DataRadioStation> stations(String... names) {
+        List<DataRadioStation> list = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            DataRadioStation station = new DataRadioStation();
+            station.Name = names[i];
+            station.StationUuid = "uuid-" + i;
+            station.ClickCount = i;
+            list.add(station);
+        }
+        return list;
+    }
+
+    private static List<String> names(List<DataRadioStation> stations) {
+        List<String> names = new ArrayList<>();
+        for (DataRadioStation station : stations) {
+            names.add(station.Name);
+        }
+        return names;
+    }
+
+    @Test
+    void addTrigrams_padsEveryWord() {
+        Set<Long> trigrams = new HashSet<>();
+        StationNameIndex.addTrigrams("fm-1", trigrams);
+
+        Set<Long> expected = new HashSet<>(Arrays.asList(
+                StationNameIndex.trigram(' ', ' ', 'f'),
+                StationNameIndex.trigram(' ', 'f', 'm'),
+                StationNameIndex.trigram('f', 'm', ' '),
+                StationNameIndex.trigram(' ', ' ', '1'),
+                StationNameIndex.trigram(' ', '1', ' ')));
+        assertEquals(expected, trigrams);
+    }
+
+    @Test
+    void filter_onlyScoresStationsWithTrigramsInCommon() {
+        StationNameIndex index = new StationNameIndex(stations("Jazz FM", "Smooth Jazz", "Radio Bob", "Rock Antenne", "Jazz Radio"));
+
+        List<DataRadioStation> result = index.filter("jazz");
+        assertEquals(3, index.getCandidateCount());
+        assertEquals(new HashSet<>(Arrays.asList("Jazz FM", "Smooth Jazz", "Jazz Radio")), new HashSet<>(names(result)));
+        // Equal weight, more clicks first
+        assertEquals("Jazz Radio", result.get(0).Name);
+    }
+
+    @Test
+    void filter_keepsStationsWithTypo() {
+        StationNameIndex index = new StationNameIndex(stations("Radio Rock", "Classic FM", "Rockabilly Radio"));
+
+        assertTrue(names(index.filter("rokc")).contains("Radio Rock"));
+        assertFalse(names(index.filter("rokc")).contains("Classic FM"));
+    }
+
+    @Test
+    void filter_shortQueryScoresAllStations() {
+        StationNameIndex index = new StationNameIndex(stations("Antenne Bayern", "Bayern 3", "Radio Bob"));
+
+        index.filter("bayern");
+        assertNotEquals(0, index.getCandidateCount());
+
+        // "ob" is inside of "bob", there is no trigram for it
+        assertEquals(Arrays.asList("Radio Bob"), names(index.filter("ob")));
+        assertEquals(0, index.getCandidateCount());
+    }
+
+    @Test
+    void filter_refinedQueriesSameAsFreshIndex() {
+        List<DataRadioStation> list = stations("Radio Bob", "Bob Marley Radio", "Bayern 3", "BBC Radio 1", "Radio Bobby",
+                "Antenne Bayern", "Deutschlandfunk", "Absolut Relax", "Radio Paloma", "Bob's Country");
+        StationNameIndex refined = new StationNameIndex(list);
+
+        String[] typed = {"r", "ra", "rad", "radi", "radio", "radio ", "radio b", "radio bo", "radio bob",
+                "radio bo", "radio b", "radio", "bay", "baye", "bayer", "bayern 3", "b", "bob", "bob'", "bob's"};
+        for (String query : typed) {
+            StationNameIndex fresh = new StationNameIndex(list);
+            List<DataRadioStation> expected = fresh.filter(query);
+
+            assertEquals(names(expected), names(refined.filter(query)), query);
+            assertEquals(fresh.getCandidateCount(), refined.getCandidateCount(), query);
+        }
+    }
+
+    private static List<DataRadioStation> manyStations(int count) {
+        String[] words = {"Radio", "Bob", "Jazz", "Rock", "Antenne", "Bayern", "Classic", "FM", "Hits", "Lounge"};
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = words[i % words.length] + " " + words[(i / words.length) % words.length] + " " + (i % 7);
+        }
+        return stations(names);
+    }
+
+    @Test
+    void filter_parallelSameAsSequential() {
+        List<DataRadioStation> list = manyStations(StationNameIndex.CHUNK_SIZE * 8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            StationNameIndex sequential = new StationNameIndex(list, null);
+            StationNameIndex parallel = new StationNameIndex(list, executor);
+
+            for (String query : new String[]{"ro", "rock", "jazz lo", "bayern 3"}) {
+                List<List<DataRadioStation>> partialResults = new ArrayList<>();
+                List<DataRadioStation> result = parallel.filter(query, new CancellationToken(), partialResults::add);
+
+                List<DataRadioStation> expected = sequential.filter(query);
+                assertEquals(expected, result, query);
+
+                assertTrue(partialResults.size() <= 1, query);
+                for (List<DataRadioStation> partialResult : partialResults) {
+                    assertFalse(partialResult.isEmpty(), query);
+                    assertTrue(expected.containsAll(partialResult), query);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void filter_cancelledReturnsNull() {
+        List<DataRadioStation> list = manyStations(StationNameIndex.CHUNK_SIZE * 8);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            StationNameIndex index = new StationNameIndex(list, executor);
+
+            CancellationToken cancelled = new CancellationToken();
+            cancelled.cancel();
+            assertNull(index.filter("radio", cancelled, null));
+
+            // Cancelled while the remaining chunks are scored, short queries score all stations
+            CancellationToken token = new CancellationToken();
+            assertNull(index.filter("ra", token, bestStations -> token.cancel()));
+            assertTrue(token.isCancelled());
+
+            // Still usable afterwards
+            assertEquals(new StationNameIndex(list, null).filter("radio"), index.filter("radio", new CancellationToken(), null));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void isIndexOf_listChanged() {
+        List<DataRadioStation> list = stations("Radio Bob", "Bayern 3");
+        StationNameIndex index = new StationNameIndex(list);
+
+        assertTrue(index.isIndexOf(list));
+        assertFalse(index.isIndexOf(new ArrayList<>(list)));
+
+        list.remove(0);
+        assertFalse(index.isIndexOf(list));
+    }
+}
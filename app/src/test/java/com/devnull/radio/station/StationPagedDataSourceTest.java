@@ -0,0 +1,133 @@
+package com.devnull.radio.station;
+
+import androidx.paging.PagedList;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class StationPagedDataSourceTest {
+
+    private static class ListLoader implements StationPagedDataSource.PageLoader {
+        final List<DataRadioStation> stations = new ArrayList<>();
+        final List<Integer> loadedOffsets = new ArrayList<>();
+        int failAtOffset = -1;
+
+        ListLoader(int count) {
+            for (int i = 0; i < count; i++) {
+                DataRadioStation station = new DataRadioStation();
+                station.StationUuid = "uuid-" + i;
+                stations.add(station);
+            }
+        }
+
+        @Override
+        public List<DataRadioStation> loadPage(int offset, int limit) {
+            loadedOffsets.add(offset);
+            if (offset == failAtOffset) {
+                return null;
+            }
+            return new ArrayList<>(stations.subList(Math.min(offset, stations.size()), Math.min(offset + limit, stations.size())));
+        }
+    }
+
+    private int invalidations;
+
+    private PagedList<DataRadioStation> build(StationPagedDataSource.PageLoader loader) {
+        return StationPagedDataSource.buildPagedList(loader, Runnable::run, Runnable::run, () -> invalidations++);
+    }
+
+    @Test
+    void isPageable_onlySearchEndpoints() {
+        assertTrue(StationPagedDataSource.isPageable("json/stations/bycountrycodeexact/de?order=clickcount&reverse=true"));
+        assertTrue(StationPagedDataSource.isPageable("json/stations/bytagexact/rock"));
+        assertFalse(StationPagedDataSource.isPageable("json/stations/topclick/100"));
+        assertFalse(StationPagedDataSource.isPageable("json/stations/byuuid"));
+        assertFalse(StationPagedDataSource.isPageable("json/tags"));
+        assertFalse(StationPagedDataSource.isPageable(null));
+    }
+
+    @Test
+    void addPageParams_keepsOtherParameters() {
+        Map<String, String> params = new HashMap<>();
+        params.put("hidebroken", "true");
+        StationPagedDataSource.addPageParams(params, 100, 50);
+
+        assertEquals("true", params.get("hidebroken"));
+        assertEquals("100", params.get("offset"));
+        assertEquals("50", params.get("limit"));
+    }
+
+    @Test
+    void buildPagedList_firstPageOnly() {
+        ListLoader loader = new ListLoader(500);
+        PagedList<DataRadioStation> list = build(loader);
+
+        assertNotNull(list);
+        assertEquals(StationPagedDataSource.PAGE_SIZE, list.size());
+        assertEquals("uuid-0", list.get(0).StationUuid);
+        assertEquals(1, loader.loadedOffsets.size());
+    }
+
+    @Test
+    void loadAround_prefetchesAndDropsDistantPages() {
+        ListLoader loader = new ListLoader(500);
+        PagedList<DataRadioStation> list = build(loader);
+        assertNotNull(list);
+
+        // Binding the first row already loads the next page
+        list.loadAround(0);
+        assertEquals(2 * StationPagedDataSource.PAGE_SIZE, list.size());
+
+        for (int i = 0; i < 20; i++) {
+            list.loadAround(list.size() - 1);
+            assertTrue(list.size() <= StationPagedDataSource.MAX_SIZE);
+        }
+        assertEquals("uuid-499", list.get(list.size() - 1).StationUuid);
+        assertNotEquals("uuid-0", list.get(0).StationUuid);
+
+        // Scrolling back loads the dropped pages again
+        for (int i = 0; i < 20; i++) {
+            list.loadAround(0);
+            assertTrue(list.size() <= StationPagedDataSource.MAX_SIZE);
+        }
+        assertEquals("uuid-0", list.get(0).StationUuid);
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals("uuid-" + i, list.get(i).StationUuid);
+        }
+        assertFalse(list.isDetached());
+        assertEquals(0, invalidations);
+    }
+
+    @Test
+    void buildPagedList_failedFirstPage() {
+        ListLoader loader = new ListLoader(500);
+        loader.failAtOffset = 0;
+
+        assertNull(build(loader));
+        assertEquals(0, invalidations);
+    }
+
+    @Test
+    void loadAround_failedPageDetachesList() {
+        ListLoader loader = new ListLoader(500);
+        loader.failAtOffset = StationPagedDataSource.PAGE_SIZE;
+        PagedList<DataRadioStation> list = build(loader);
+        assertNotNull(list);
+
+        for (int i = 0; i < 5; i++) {
+            list.loadAround(list.size() - 1);
+        }
+
+        // Stations loaded so far are kept, no more pages are loaded until the list is built again
+        assertEquals(StationPagedDataSource.PAGE_SIZE, list.size());
+        assertEquals(2, loader.loadedOffsets.size());
+        assertTrue(list.isDetached());
+        assertEquals(1, invalidations);
+    }
+}
@@ -0,0 +1,104 @@
+package com.devnull.radio.station;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.devnull.radio.station.StationsFilter.SearchStyle.ByName;
+import static com.devnull.radio.station.StationsFilter.SearchStyle.ByTagExact;
+
+class StationSearchCacheTest {
+    private static final long HOUR = 60 * 60 * 1000;
+
+    private static List<DataRadioStation> stations(int count) {
+        List<DataRadioStation> list = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            DataRadioStation station = new DataRadioStation();
+            station.StationUuid = "uuid-" + i;
+            list.add(station);
+        }
+        return list;
+    }
+
+    @Test
+    void get_exactQuery() {
+        StationSearchCache cache = new StationSearchCache(100);
+        List<DataRadioStation> rock = stations(3);
+        cache.put(ByTagExact, "rock", true, rock, HOUR, 0, 0);
+
+        StationSearchCache.Hit hit = cache.get(ByTagExact, "rock", true, false, 1000, 0);
+        assertNotNull(hit);
+        assertEquals("rock", hit.query);
+        // Kept as compact copy
+        assertTrue(hit.stations instanceof CompactStationList);
+        assertEquals(rock.size(), hit.stations.size());
+        for (int i = 0; i < rock.size(); i++) {
+            assertEquals(rock.get(i).StationUuid, hit.stations.get(i).StationUuid);
+        }
+
+        assertNull(cache.get(ByTagExact, "rock", false, false, 1000, 0));
+        assertNull(cache.get(ByName, "rock", true, false, 1000, 0));
+        assertNull(cache.get(ByTagExact, "roc", true, false, 1000, 0));
+    }
+
+    @Test
+    void get_longestCachedPrefix() {
+        StationSearchCache cache = new StationSearchCache(100);
+        cache.put(ByName, "roc", true, stations(10), HOUR, 0, 0);
+        cache.put(ByName, "rock", true, stations(5), HOUR, 0, 0);
+
+        StationSearchCache.Hit hit = cache.get(ByName, "rock an", true, true, 1000, 0);
+        assertNotNull(hit);
+        assertEquals("rock", hit.query);
+        assertEquals(5, hit.stations.size());
+
+        assertNull(cache.get(ByName, "rock an", true, false, 1000, 0));
+        assertNull(cache.get(ByName, "jazz", true, true, 1000, 0));
+    }
+
+    @Test
+    void get_expiredOrOtherDataVersion() {
+        StationSearchCache cache = new StationSearchCache(100);
+        cache.put(ByName, "jazz", true, stations(4), HOUR, 0, 7);
+
+        assertNull(cache.get(ByName, "jazz", true, false, HOUR, 7));
+        assertEquals(0, cache.getStationCount());
+
+        cache.put(ByName, "jazz", true, stations(4), HOUR, 0, 7);
+        assertNull(cache.get(ByName, "jazz", true, false, 1000, 8));
+        assertEquals(0, cache.getStationCount());
+    }
+
+    @Test
+    void put_evictsLeastRecentlyUsedByStationCount() {
+        StationSearchCache cache = new StationSearchCache(10);
+        cache.put(ByTagExact, "pop", true, stations(4), HOUR, 0, 0);
+        cache.put(ByTagExact, "rock", true, stations(4), HOUR, 0, 0);
+        assertNotNull(cache.get(ByTagExact, "pop", true, false, 0, 0));
+
+        cache.put(ByTagExact, "jazz", true, stations(4), HOUR, 0, 0);
+
+        assertEquals(8, cache.getStationCount());
+        assertNotNull(cache.get(ByTagExact, "pop", true, false, 0, 0));
+        assertNull(cache.get(ByTagExact, "rock", true, false, 0, 0));
+        assertNotNull(cache.get(ByTagExact, "jazz", true, false, 0, 0));
+
+        // Replacing an entry does not count twice
+        cache.put(ByTagExact, "jazz", true, stations(2), HOUR, 0, 0);
+        assertEquals(6, cache.getStationCount());
+    }
+
+    @Test
+    void put_ignoresTooLargeAndUncachableResults() {
+        StationSearchCache cache = new StationSearchCache(10);
+        cache.put(ByName, "radio", true, stations(11), HOUR, 0, 0);
+        cache.put(ByName, "news", true, stations(1), 0, 0, 0);
+
+        assertEquals(0, cache.getStationCount());
+        assertNull(cache.get(ByName, "radio", true, false, 0, 0));
+        assertNull(cache.get(ByName, "news", true, false, 0, 0));
+    }
+}
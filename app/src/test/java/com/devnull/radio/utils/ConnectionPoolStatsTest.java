@@ -0,0 +1,86 @@
+package com.devnull.radio.utils;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+class ConnectionPoolStatsTest {
+    private MockWebServer server;
+    private ConnectionPoolStats stats;
+
+    @BeforeEach
+    void init() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        stats = new ConnectionPoolStats();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    private void get(OkHttpClient httpClient) throws IOException {
+        server.enqueue(new MockResponse().setBody("ok"));
+        Request request = new Request.Builder().url(server.url("/")).build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            assertEquals("ok", response.body().string());
+        }
+    }
+
+    @Test
+    void secondCall_reusesPooledConnection() throws IOException {
+        OkHttpClient httpClient = new OkHttpClient.Builder().eventListenerFactory(stats).build();
+
+        get(httpClient);
+        get(httpClient);
+
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    void derivedClient_sharesPool() throws IOException {
+        OkHttpClient baseClient = new OkHttpClient.Builder().eventListenerFactory(stats).build();
+        OkHttpClient derivedClient = baseClient.newBuilder().addInterceptor(chain -> chain.proceed(chain.request())).build();
+
+        get(baseClient);
+        get(derivedClient);
+
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getHits());
+        assertEquals(1, server.getConnectionCount());
+    }
+
+    @Test
+    void wrap_forwardsEvents() throws IOException {
+        final AtomicInteger acquired = new AtomicInteger();
+        EventListener.Factory delegate = call -> new EventListener() {
+            @Override
+            public void connectionAcquired(Call call, Connection connection) {
+                acquired.incrementAndGet();
+            }
+        };
+
+        OkHttpClient httpClient = new OkHttpClient.Builder().eventListenerFactory(stats.wrap(delegate)).build();
+
+        get(httpClient);
+
+        assertEquals(1, acquired.get());
+        assertEquals(1, stats.getMisses());
+    }
+}
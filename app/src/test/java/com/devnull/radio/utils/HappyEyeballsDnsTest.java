@@ -0,0 +1,175 @@
+package com.devnull.radio.utils;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Dns;
+
+class HappyEyeballsDnsTest {
+    private static final String HOST = "dualstack.test";
+
+    private InetAddress ipv4Loopback;
+    private InetAddress ipv6Loopback;
+
+    private ServerSocket ipv4Server;
+    private ServerSocket ipv6Server;
+
+    private AtomicInteger lookups;
+    private Dns dualStackDns;
+
+    @BeforeEach
+    void init() throws IOException {
+        ipv4Loopback = InetAddress.getByName("127.0.0.1");
+        ipv6Loopback = InetAddress.getByName("::1");
+
+        lookups = new AtomicInteger();
+        // IPv6 first like most resolvers return it
+        dualStackDns = hostname -> {
+            lookups.incrementAndGet();
+            if (!HOST.equals(hostname)) {
+                throw new UnknownHostException(hostname);
+            }
+            return Arrays.asList(ipv6Loopback, ipv4Loopback);
+        };
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (ipv4Server != null) {
+            ipv4Server.close();
+        }
+        if (ipv6Server != null) {
+            ipv6Server.close();
+        }
+    }
+
+    private int listenIpv4() throws IOException {
+        ipv4Server = new ServerSocket();
+        ipv4Server.bind(new InetSocketAddress(ipv4Loopback, 0));
+        return ipv4Server.getLocalPort();
+    }
+
+    private boolean listenIpv6(int port) {
+        try {
+            ipv6Server = new ServerSocket();
+            ipv6Server.bind(new InetSocketAddress(ipv6Loopback, port));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Test
+    void lookup_cachesPositiveAnswers() throws IOException {
+        HappyEyeballsDns dns = new HappyEyeballsDns(dualStackDns, 100, 100, 1000);
+
+        dns.lookup(HOST);
+        dns.lookup(HOST);
+        assertEquals(1, lookups.get());
+
+        try {
+            Thread.sleep(150);
+        } catch (InterruptedException ignored) {
+        }
+
+        dns.lookup(HOST);
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    void lookup_cachesNegativeAnswers() {
+        HappyEyeballsDns dns = new HappyEyeballsDns(dualStackDns, 1000, 1000, 1000);
+
+        assertThrows(UnknownHostException.class, () -> dns.lookup("unknown.test"));
+        assertThrows(UnknownHostException.class, () -> dns.lookup("unknown.test"));
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void clear_forgetsAnswersAndPreferences() throws IOException {
+        HappyEyeballsDns dns = new HappyEyeballsDns(dualStackDns, 1000, 1000, 1000);
+
+        dns.lookup(HOST);
+        assertThrows(UnknownHostException.class, () -> dns.lookup("unknown.test"));
+        dns.setPreferredFamily(HOST, Inet4Address.class);
+        assertEquals(2, lookups.get());
+
+        // Network changed
+        dns.clear();
+
+        assertNull(dns.getPreferredFamily(HOST));
+        assertEquals(ipv6Loopback, dns.lookup(HOST).get(0));
+        assertThrows(UnknownHostException.class, () -> dns.lookup("unknown.test"));
+        assertEquals(4, lookups.get());
+    }
+
+    @Test
+    void lookup_interleavesFamiliesWithoutPreference() throws IOException {
+        final InetAddress otherIpv4 = InetAddress.getByName("127.0.0.2");
+        final InetAddress otherIpv6 = InetAddress.getByName("::2");
+        HappyEyeballsDns dns = new HappyEyeballsDns(hostname -> Arrays.asList(ipv6Loopback, otherIpv6, ipv4Loopback, otherIpv4));
+
+        assertEquals(Arrays.asList(ipv6Loopback, ipv4Loopback, otherIpv6, otherIpv4), dns.lookup(HOST));
+
+        dns.setPreferredFamily(HOST, Inet4Address.class);
+        assertEquals(Arrays.asList(ipv4Loopback, otherIpv4, ipv6Loopback, otherIpv6), dns.lookup(HOST));
+    }
+
+    @Test
+    void race_prefersIpv4WhenIpv6IsBroken() throws IOException {
+        // Only IPv4 listens, IPv6 connects are refused
+        int port = listenIpv4();
+        HappyEyeballsDns dns = new HappyEyeballsDns(dualStackDns);
+
+        long start = System.currentTimeMillis();
+        assertEquals(Inet4Address.class, dns.race(HOST, port, 2000));
+        assertTrue(System.currentTimeMillis() - start < 2000);
+
+        List<InetAddress> addresses = dns.lookup(HOST);
+        assertEquals(ipv4Loopback, addresses.get(0));
+        assertEquals(Inet4Address.class, dns.getPreferredFamily(HOST));
+    }
+
+    @Test
+    void race_prefersIpv6WhenBothConnect() throws IOException {
+        int port = listenIpv4();
+        Assumptions.assumeTrue(listenIpv6(port), "IPv6 loopback not available");
+
+        HappyEyeballsDns dns = new HappyEyeballsDns(dualStackDns);
+
+        // The first address has a head start
+        assertEquals(Inet6Address.class, dns.race(HOST, port, 2000));
+        assertEquals(ipv6Loopback, dns.lookup(HOST).get(0));
+    }
+
+    @Test
+    void race_noWinnerWhenNothingListens() throws IOException {
+        int port = listenIpv4();
+        ipv4Server.close();
+        ipv4Server = null;
+
+        HappyEyeballsDns dns = new HappyEyeballsDns(dualStackDns);
+
+        assertNull(dns.race(HOST, port, 1000));
+        assertNull(dns.getPreferredFamily(HOST));
+    }
+
+    @Test
+    void race_skipsSingleFamilyHosts() {
+        HappyEyeballsDns dns = new HappyEyeballsDns(hostname -> Arrays.asList(ipv4Loopback));
+
+        assertNull(dns.race(HOST, 1, 1000));
+    }
+}
@@ -0,0 +1,145 @@
+package com.devnull.radio.utils;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+class HedgedCallTest {
+    private static final long HEDGE_DELAY = 200;
+
+    private OkHttpClient httpClient;
+    private List<MockWebServer> servers;
+
+    @BeforeEach
+    void init() throws IOException {
+        httpClient = new OkHttpClient.Builder()
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+
+        servers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            MockWebServer server = new MockWebServer();
+            server.start();
+            servers.add(server);
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (MockWebServer server : servers) {
+            server.shutdown();
+        }
+    }
+
+    private List<Request> requests() {
+        List<Request> requests = new ArrayList<>();
+        for (MockWebServer server : servers) {
+            requests.add(new Request.Builder().url(server.url("/json/stations")).build());
+        }
+        return requests;
+    }
+
+    private static MockResponse delayed(String body, long delayMs) {
+        return new MockResponse().setBody(body).setHeadersDelay(delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    void execute_fastPrimaryIsNotHedged() throws Exception {
+        servers.get(0).enqueue(delayed("primary", 0));
+        servers.get(1).enqueue(delayed("secondary", 0));
+
+        HedgedCall.Result result = new HedgedCall(httpClient, requests(), index -> HEDGE_DELAY).execute();
+
+        assertEquals(0, result.index);
+        assertEquals("primary", result.response.body().string());
+        assertEquals(0, servers.get(1).getRequestCount());
+        assertEquals(0, servers.get(2).getRequestCount());
+    }
+
+    @Test
+    void execute_slowPrimaryIsHedged() throws Exception {
+        servers.get(0).enqueue(delayed("primary", 3000));
+        servers.get(1).enqueue(delayed("secondary", 0));
+
+        long start = System.currentTimeMillis();
+        HedgedCall.Result result = new HedgedCall(httpClient, requests(), index -> HEDGE_DELAY).execute();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(1, result.index);
+        assertEquals("secondary", result.response.body().string());
+        assertTrue(elapsed < 2000, "hedged request took " + elapsed + "ms");
+        assertEquals(1, servers.get(0).getRequestCount());
+        assertEquals(0, servers.get(2).getRequestCount());
+    }
+
+    @Test
+    void execute_primaryWinsIfItAnswersBeforeHedge() throws Exception {
+        servers.get(0).enqueue(delayed("primary", 400));
+        servers.get(1).enqueue(delayed("secondary", 2000));
+
+        HedgedCall.Result result = new HedgedCall(httpClient, requests(), index -> HEDGE_DELAY).execute();
+
+        assertEquals(0, result.index);
+        assertEquals("primary", result.response.body().string());
+        assertEquals(1, servers.get(1).getRequestCount());
+    }
+
+    @Test
+    void execute_failureStartsNextImmediately() throws Exception {
+        servers.get(0).enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        servers.get(1).enqueue(new MockResponse().setResponseCode(500));
+        servers.get(2).enqueue(delayed("third", 0));
+
+        long start = System.currentTimeMillis();
+        HedgedCall hedgedCall = new HedgedCall(httpClient, requests(), index -> 5000);
+        HedgedCall.Result result = hedgedCall.execute();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(2, result.index);
+        assertEquals("third", result.response.body().string());
+        assertTrue(elapsed < 2000, "failover took " + elapsed + "ms");
+        assertTrue(hedgedCall.isFailed(0));
+        assertTrue(hedgedCall.isFailed(1));
+        assertFalse(hedgedCall.isFailed(2));
+    }
+
+    @Test
+    void execute_allFailedThrows() {
+        for (MockWebServer server : servers) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+        }
+
+        HedgedCall hedgedCall = new HedgedCall(httpClient, requests(), index -> HEDGE_DELAY);
+        assertThrows(IOException.class, hedgedCall::execute);
+        for (int i = 0; i < servers.size(); i++) {
+            assertTrue(hedgedCall.isFailed(i));
+        }
+    }
+
+    @Test
+    void execute_loserIsCancelled() throws Exception {
+        servers.get(0).enqueue(delayed("primary", 5000));
+        servers.get(1).enqueue(delayed("secondary", 0));
+
+        HedgedCall.Result result = new HedgedCall(httpClient, requests(), index -> HEDGE_DELAY).execute();
+        result.response.close();
+
+        // The cancelled call has released its connection and no longer runs.
+        long deadline = System.currentTimeMillis() + 2000;
+        while (httpClient.dispatcher().runningCallsCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, httpClient.dispatcher().runningCallsCount());
+    }
+}
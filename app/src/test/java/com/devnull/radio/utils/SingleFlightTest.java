@@ -0,0 +1,183 @@
+package com.devnull.radio.utils;
+
+import org.junit.jupiter.api.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private OkHttpClient httpClient;
+    private MockWebServer server;
+    private AtomicInteger requestCount;
+    private CountDownLatch releaseResponses;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void init() throws IOException {
+        httpClient = new OkHttpClient.Builder()
+                .readTimeout(10, TimeUnit.SECONDS)
+                .build();
+
+        requestCount = new AtomicInteger();
+        releaseResponses = new CountDownLatch(1);
+
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                requestCount.incrementAndGet();
+                // Keep the request in flight until every caller had a chance to join it
+                releaseResponses.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody("response for " + request.getPath());
+            }
+        });
+        server.start();
+
+        executor = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        executor.shutdownNow();
+        server.shutdown();
+    }
+
+    private String download(String path) {
+        Request request = new Request.Builder().url(server.url(path)).build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            return response.body().string();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private List<Future<String>> startCallers(final SingleFlight<String, String> singleFlight, final String path, int count) {
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(() -> singleFlight.execute(path, () -> download(path))));
+        }
+        return futures;
+    }
+
+    private static void awaitInFlight(SingleFlight<?, ?> singleFlight, int count) throws InterruptedException {
+        for (int i = 0; i < 100 && singleFlight.getInFlightCount() < count; i++) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void execute_concurrentIdenticalCallsShareOneRequest() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        List<Future<String>> futures = startCallers(singleFlight, "/json/stations/topclick/100", CALLERS);
+        awaitInFlight(singleFlight, 1);
+        // give remaining callers time to join the request in flight
+        Thread.sleep(200);
+        releaseResponses.countDown();
+
+        for (Future<String> future : futures) {
+            assertEquals("response for /json/stations/topclick/100", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, requestCount.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    void execute_differentKeysAreNotMerged() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        List<Future<String>> topClick = startCallers(singleFlight, "/json/stations/topclick/100", 2);
+        List<Future<String>> topVote = startCallers(singleFlight, "/json/stations/topvote/100", 2);
+        awaitInFlight(singleFlight, 2);
+        releaseResponses.countDown();
+
+        for (Future<String> future : topClick) {
+            assertEquals("response for /json/stations/topclick/100", future.get(5, TimeUnit.SECONDS));
+        }
+        for (Future<String> future : topVote) {
+            assertEquals("response for /json/stations/topvote/100", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    void execute_finishedCallIsNotReused() {
+        releaseResponses.countDown();
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+        singleFlight.execute("/json/stats", () -> download("/json/stats"));
+        singleFlight.execute("/json/stats", () -> download("/json/stats"));
+
+        assertEquals(2, requestCount.get());
+    }
+
+    @Test
+    void execute_failureIsSharedWithWaiters() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch fail = new CountDownLatch(1);
+
+        Future<String> owner = executor.submit(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            try {
+                fail.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {
+            }
+            throw new IllegalStateException("broken");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> waiter = executor.submit(() -> singleFlight.execute("key", () -> "should not run"));
+        Thread.sleep(100);
+        fail.countDown();
+
+        Exception ownerException = assertThrows(Exception.class, () -> owner.get(5, TimeUnit.SECONDS));
+        Exception waiterException = assertThrows(Exception.class, () -> waiter.get(5, TimeUnit.SECONDS));
+        assertTrue(ownerException.getCause() instanceof IllegalStateException);
+        assertTrue(waiterException.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    void execute_waitersRetryWhenOwnerIsInterrupted() throws Exception {
+        final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        final CountDownLatch started = new CountDownLatch(1);
+
+        Future<String> owner = executor.submit(() -> singleFlight.execute("key", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(5000);
+                return "owner";
+            } catch (InterruptedException e) {
+                // Like an interrupted download which gives up
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }));
+        started.await(5, TimeUnit.SECONDS);
+        Future<String> waiter = executor.submit(() -> singleFlight.execute("key", () -> "waiter"));
+        Thread.sleep(100);
+
+        owner.cancel(true);
+
+        assertEquals("waiter", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+}